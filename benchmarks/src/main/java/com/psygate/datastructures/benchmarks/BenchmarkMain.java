@@ -0,0 +1,49 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of the benchmark jar. Delegates to the JMH runner and writes the
+ * results as JSON to jmh-result.json in the working directory, unless a result
+ * format is passed on the command line. The JSON files of two runs can be
+ * compared with any JMH result viewer.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.addAll(Arrays.asList("-rf", "json"));
+            if (!arguments.contains("-rff")) {
+                arguments.addAll(Arrays.asList("-rff", "jmh-result.json"));
+            }
+        }
+
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[arguments.size()]));
+    }
+}
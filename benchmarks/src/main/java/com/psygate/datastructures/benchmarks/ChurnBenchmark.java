@@ -0,0 +1,125 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Traversal cost of a quad tree after heavy churn. The churned tree held the
+ * full population once and lost most of it again, the fresh tree received
+ * only the survivors. With merging on removal both trees should be about as
+ * fast to traverse.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChurnBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"16"})
+    private int maxNodeSize;
+
+    @Param({"0", "8"})
+    private int mergeThreshold;
+
+    @Param({"10"})
+    private int survivorPercent;
+
+    private ID2BoundingBox[] windows;
+    private QuadTree<D2Point, Integer> churned;
+    private QuadTree<D2Point, Integer> fresh;
+    private int window = 0;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random(9327490235L);
+        final D2Point[] points = Distribution.UNIFORM.points2D(rand, size);
+        churned = new QuadTree<>(BOUNDS, maxNodeSize, mergeThreshold);
+        fresh = new QuadTree<>(BOUNDS, maxNodeSize, mergeThreshold);
+        for (int i = 0; i < size; i++) {
+            churned.put(points[i], i);
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (i % 100 < survivorPercent) {
+                fresh.put(points[i], i);
+            } else {
+                churned.remove(points[i], i);
+            }
+        }
+
+        windows = new ID2BoundingBox[1024];
+        for (int i = 0; i < windows.length; i++) {
+            final double x = rand.nextDouble() * 0.95;
+            final double y = rand.nextDouble() * 0.95;
+            windows[i] = new D2BoundingBox(x, y, x + 0.05, y + 0.05);
+        }
+    }
+
+    @Benchmark
+    public long churnedScan() {
+        return churned.entryStream().filter((en) -> en.getValue() >= 0).count();
+    }
+
+    @Benchmark
+    public long freshScan() {
+        return fresh.entryStream().filter((en) -> en.getValue() >= 0).count();
+    }
+
+    @Benchmark
+    public long churnedWindowQuery() {
+        final ID2BoundingBox box = windows[window++ & (windows.length - 1)];
+        return churned.selectiveEntryStream((b) -> b.intersects(box))
+                .filter((en) -> box.contains(en.getKey()))
+                .count();
+    }
+
+    @Benchmark
+    public long freshWindowQuery() {
+        final ID2BoundingBox box = windows[window++ & (windows.length - 1)];
+        return fresh.selectiveEntryStream((b) -> b.intersects(box))
+                .filter((en) -> box.contains(en.getKey()))
+                .count();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.ConcurrentQuadTree;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mixed read and write throughput of the concurrent quad tree, compared to a
+ * quad tree guarded by a read write lock. Writers insert and remove random
+ * points, so the tree size stays constant, readers run window queries.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentQuadTreeBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"16"})
+    private int maxNodeSize;
+
+    private D2Point[] updates;
+    private ID2BoundingBox[] windows;
+    private ConcurrentQuadTree<D2Point, Integer> concurrent;
+    private QuadTree<D2Point, Integer> locked;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Per thread cursor into the update points and windows.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next = new Random().nextInt();
+    }
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random(9327490235L);
+        concurrent = new ConcurrentQuadTree<>(BOUNDS, maxNodeSize);
+        locked = new QuadTree<>(BOUNDS, maxNodeSize);
+        for (int i = 0; i < size; i++) {
+            final D2Point point = new D2Point(rand.nextDouble(), rand.nextDouble());
+            concurrent.put(point, i);
+            locked.put(point, i);
+        }
+
+        updates = new D2Point[4096];
+        for (int i = 0; i < updates.length; i++) {
+            updates[i] = new D2Point(rand.nextDouble(), rand.nextDouble());
+        }
+
+        windows = new ID2BoundingBox[1024];
+        for (int i = 0; i < windows.length; i++) {
+            final double x = rand.nextDouble() * 0.95;
+            final double y = rand.nextDouble() * 0.95;
+            windows[i] = new D2BoundingBox(x, y, x + 0.05, y + 0.05);
+        }
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(2)
+    public int concurrentUpdate(Cursor cursor) {
+        final D2Point point = updates[cursor.next++ & (updates.length - 1)];
+        concurrent.put(point, -1);
+        return concurrent.remove(point, -1).size();
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(2)
+    public long concurrentQuery(Cursor cursor) {
+        final ID2BoundingBox box = windows[cursor.next++ & (windows.length - 1)];
+        return concurrent.selectiveEntryStream((b) -> b.intersects(box))
+                .filter((en) -> box.contains(en.getKey()))
+                .count();
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(2)
+    public int lockedUpdate(Cursor cursor) {
+        final D2Point point = updates[cursor.next++ & (updates.length - 1)];
+        lock.writeLock().lock();
+        try {
+            locked.put(point, -1);
+            return locked.remove(point, -1).size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(2)
+    public long lockedQuery(Cursor cursor) {
+        final ID2BoundingBox box = windows[cursor.next++ & (windows.length - 1)];
+        lock.readLock().lock();
+        try {
+            return locked.selectiveEntryStream((b) -> b.intersects(box))
+                    .filter((en) -> box.contains(en.getKey()))
+                    .count();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
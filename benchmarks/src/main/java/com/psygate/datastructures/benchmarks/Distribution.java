@@ -0,0 +1,90 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.D3Point;
+import java.util.Random;
+
+/**
+ * Point distributions inside the unit square or cube used by the benchmarks.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public enum Distribution {
+
+    /**
+     * Points spread uniformly over the bounds.
+     */
+    UNIFORM,
+    /**
+     * Points in eight tight gaussian clusters along the diagonal.
+     */
+    CLUSTERED,
+    /**
+     * All points are the same point.
+     */
+    DEGENERATE;
+
+    private static final double SPREAD = 0.001;
+
+    /**
+     *
+     * @param rand Source of randomness.
+     * @param size Number of points.
+     * @return Points inside the unit square.
+     */
+    public D2Point[] points2D(Random rand, int size) {
+        final D2Point[] points = new D2Point[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = new D2Point(coordinate(rand, i), coordinate(rand, i));
+        }
+
+        return points;
+    }
+
+    /**
+     *
+     * @param rand Source of randomness.
+     * @param size Number of points.
+     * @return Points inside the unit cube.
+     */
+    public D3Point[] points3D(Random rand, int size) {
+        final D3Point[] points = new D3Point[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = new D3Point(coordinate(rand, i), coordinate(rand, i), coordinate(rand, i));
+        }
+
+        return points;
+    }
+
+    private double coordinate(Random rand, int index) {
+        switch (this) {
+            case UNIFORM:
+                return rand.nextDouble();
+            case CLUSTERED:
+                final double center = 0.1 + (index & 7) * 0.1;
+                return Math.min(1, Math.max(0, center + rand.nextGaussian() * SPREAD));
+            case DEGENERATE:
+                return 0.3;
+            default:
+                throw new AssertionError(this);
+        }
+    }
+}
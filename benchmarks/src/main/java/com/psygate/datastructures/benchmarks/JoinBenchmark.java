@@ -0,0 +1,126 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTreeJoin;
+import com.psygate.datastructures.util.Pair;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Spatial join of units against trigger zones and of units against uniformly
+ * spread sensors within a distance, traversing both trees in lockstep compared
+ * with one window query per entry. Both variants produce the matching pairs.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JoinBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+    private static final double ZONE = 0.01;
+    private static final double DISTANCE = 0.002;
+
+    @Param({"100000"})
+    private int units;
+
+    @Param({"5000"})
+    private int zones;
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    private Distribution distribution;
+
+    private QuadTree<D2Point, Integer> unitTree;
+    private QuadTree<D2Point, Integer> sensorTree;
+    private QuadTree<ID2BoundingBox, Integer> zoneTree;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random(9327490235L);
+        final D2Point[] points = distribution.points2D(rand, units);
+        unitTree = new QuadTree<>(BOUNDS, 16);
+        for (int i = 0; i < units; i++) {
+            unitTree.put(points[i], i);
+        }
+
+        final D2Point[] sensors = Distribution.UNIFORM.points2D(rand, units);
+        sensorTree = new QuadTree<>(BOUNDS, 16);
+        for (int i = 0; i < units; i++) {
+            sensorTree.put(sensors[i], i);
+        }
+
+        zoneTree = new QuadTree<>(BOUNDS, 16);
+        for (int i = 0; i < zones; i++) {
+            final double x = rand.nextDouble() * (1 - ZONE);
+            final double y = rand.nextDouble() * (1 - ZONE);
+            zoneTree.put(new D2BoundingBox(x, y, x + ZONE, y + ZONE), i);
+        }
+    }
+
+    @Benchmark
+    public long join() {
+        return QuadTreeJoin.join(unitTree, zoneTree, 0, false).count();
+    }
+
+    @Benchmark
+    public long windowPerZone() {
+        return zoneTree.entryStream()
+                .mapToLong((zone) -> unitTree.selectiveEntryStream((b) -> b.intersects(zone.getKey()))
+                        .filter((en) -> zone.getKey().contains(en.getKey()))
+                        .map((en) -> new Pair<>(en, zone))
+                        .count())
+                .sum();
+    }
+
+    @Benchmark
+    public long proximityJoin() {
+        return QuadTreeJoin.join(unitTree, sensorTree, DISTANCE, false).count();
+    }
+
+    @Benchmark
+    public long proximityWindow() {
+        final double distSqr = DISTANCE * DISTANCE;
+        return unitTree.entryStream()
+                .mapToLong((unit) -> sensorTree.selectiveEntryStream((b) -> b.distSqr(unit.getKey()) <= distSqr)
+                        .filter((en) -> en.getKey().distSqr(unit.getKey()) <= distSqr)
+                        .map((en) -> new Pair<>(unit, en))
+                        .count())
+                .sum();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.KDTree;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert, window and nearest neighbour query throughput of the kd tree on
+ * uniform and clustered points. The quad* benchmarks run the same queries on
+ * a quad tree holding the same points.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KDTreeBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"16"})
+    private int maxNodeSize;
+
+    @Param({"false", "true"})
+    private boolean clustered;
+
+    private D2Point[] points;
+    private ID2BoundingBox[] windows;
+    private KDTree<D2Point, Integer> tree;
+    private QuadTree<D2Point, Integer> quad;
+    private int window = 0;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random(9327490235L);
+        points = new D2Point[size];
+        for (int i = 0; i < size; i++) {
+            if (clustered) {
+                final double cx = 0.1 + (i & 7) * 0.1;
+                points[i] = new D2Point(
+                        Math.min(1, Math.max(0, cx + rand.nextGaussian() * 0.001)),
+                        Math.min(1, Math.max(0, cx + rand.nextGaussian() * 0.001)));
+            } else {
+                points[i] = new D2Point(rand.nextDouble(), rand.nextDouble());
+            }
+        }
+
+        windows = new ID2BoundingBox[1024];
+        for (int i = 0; i < windows.length; i++) {
+            final D2Point center = points[rand.nextInt(size)];
+            windows[i] = new D2BoundingBox(center.getX() - 0.001, center.getY() - 0.001,
+                    center.getX() + 0.001, center.getY() + 0.001);
+        }
+
+        tree = insert();
+        quad = new QuadTree<>(BOUNDS, maxNodeSize);
+        for (int i = 0; i < points.length; i++) {
+            quad.put(points[i], i);
+        }
+    }
+
+    @Benchmark
+    public KDTree<D2Point, Integer> insert() {
+        final KDTree<D2Point, Integer> fresh = new KDTree<>(BOUNDS, maxNodeSize);
+        for (int i = 0; i < points.length; i++) {
+            fresh.put(points[i], i);
+        }
+
+        return fresh;
+    }
+
+    @Benchmark
+    public long windowQuery() {
+        final ID2BoundingBox box = windows[window++ & (windows.length - 1)];
+        return tree.selectiveEntryStream((b) -> b.intersects(box))
+                .filter((en) -> box.contains(en.getKey()))
+                .count();
+    }
+
+    @Benchmark
+    public Object nearest() {
+        final ID2BoundingBox box = windows[window++ & (windows.length - 1)];
+        return tree.nearest(box.getCenter(), 16);
+    }
+
+    @Benchmark
+    public long quadWindowQuery() {
+        final ID2BoundingBox box = windows[window++ & (windows.length - 1)];
+        return quad.selectiveEntryStream((b) -> b.intersects(box))
+                .filter((en) -> box.contains(en.getKey()))
+                .count();
+    }
+
+    @Benchmark
+    public Object quadNearest() {
+        final ID2BoundingBox box = windows[window++ & (windows.length - 1)];
+        return quad.nearest(box.getCenter(), 16);
+    }
+}
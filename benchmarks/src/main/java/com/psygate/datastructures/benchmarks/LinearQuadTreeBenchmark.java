@@ -0,0 +1,147 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.linear.LinearQuadTree;
+import com.psygate.datastructures.spatial.trees.recursive.ImmutableQuadTree;
+import com.psygate.datastructures.spatial.trees.recursive.PackedPointQuadTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Build and window query throughput of the Morton ordered linear quad tree,
+ * compared with the immutable quad tree and the packed point quad tree on the
+ * same points and windows.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinearQuadTreeBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+    private static final double WINDOW = 0.025;
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    private Distribution distribution;
+
+    private List<Pair<D2Point, Integer>> entries;
+    private ID2BoundingBox[] windows;
+    private LinearQuadTree<Integer> linear;
+    private ImmutableQuadTree<D2Point, Integer> immutable;
+    private PackedPointQuadTree<Integer> packed;
+    private int window = 0;
+    private long hits = 0;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random(9327490235L);
+        final D2Point[] points = distribution.points2D(rand, size);
+
+        entries = new ArrayList<>(size);
+        packed = new PackedPointQuadTree<>(BOUNDS, 16);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Pair<>(points[i], i));
+            packed.put(points[i].getX(), points[i].getY(), i);
+        }
+
+        windows = new ID2BoundingBox[1024];
+        for (int i = 0; i < windows.length; i++) {
+            final D2Point center = points[rand.nextInt(size)];
+            windows[i] = new D2BoundingBox(
+                    Math.max(0, center.getX() - WINDOW), Math.max(0, center.getY() - WINDOW),
+                    Math.min(1, center.getX() + WINDOW), Math.min(1, center.getY() + WINDOW));
+        }
+
+        linear = buildLinear();
+        immutable = buildImmutable();
+    }
+
+    private ID2BoundingBox nextWindow() {
+        return windows[window++ & (windows.length - 1)];
+    }
+
+    @Benchmark
+    public LinearQuadTree<Integer> buildLinear() {
+        return new LinearQuadTree<>(entries, BOUNDS);
+    }
+
+    @Benchmark
+    public ImmutableQuadTree<D2Point, Integer> buildImmutable() {
+        return new ImmutableQuadTree<>(entries, BOUNDS, 16);
+    }
+
+    @Benchmark
+    public long linearWindow() {
+        final ID2BoundingBox box = nextWindow();
+        hits = 0;
+        linear.forEachInWindow(box.getLower().getX(), box.getLower().getY(),
+                box.getUpper().getX(), box.getUpper().getY(), (x, y, v) -> hits++);
+        return hits;
+    }
+
+    @Benchmark
+    public long linearWindowStream() {
+        final ID2BoundingBox box = nextWindow();
+        return linear.selectiveEntryStream((b) -> b.intersects(box))
+                .filter((en) -> box.contains(en.getKey()))
+                .count();
+    }
+
+    @Benchmark
+    public long immutableWindow() {
+        final ID2BoundingBox box = nextWindow();
+        return immutable.selectiveEntryStream((b) -> b.intersects(box))
+                .filter((en) -> box.contains(en.getKey()))
+                .count();
+    }
+
+    @Benchmark
+    public long packedWindow() {
+        final ID2BoundingBox box = nextWindow();
+        hits = 0;
+        packed.forEachInWindow(box.getLower().getX(), box.getLower().getY(),
+                box.getUpper().getX(), box.getUpper().getY(), (x, y, v) -> hits++);
+        return hits;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Regular against loose quad trees with small rectangle keys. In a regular
+ * tree every rectangle crossing a split line stays in the node of that line,
+ * so the upper nodes collect many entries that every query passing them has
+ * to test. A looseness of 0 selects a regular tree, 1 a loose tree with
+ * regular child bounds.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LooseQuadTreeBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+    private static final double SIDE = 0.01;
+    private static final double WINDOW = 0.025;
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"16"})
+    private int maxNodeSize;
+
+    @Param({"0", "1", "2"})
+    private double looseness;
+
+    private ID2BoundingBox[] keys;
+    private List<Pair<ID2BoundingBox, Integer>> pairs;
+    private ID2BoundingBox[] windows;
+    private QuadTree<ID2BoundingBox, Integer> tree;
+    private int window = 0;
+    private long visited = 0;
+    private final BiConsumer<ID2BoundingBox, Integer> visitor = (key, value) -> visited++;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random(9327490235L);
+        final D2Point[] centers = Distribution.UNIFORM.points2D(rand, size);
+        keys = new ID2BoundingBox[size];
+        for (int i = 0; i < size; i++) {
+            final double half = rand.nextDouble() * SIDE / 2;
+            keys[i] = new D2BoundingBox(
+                    Math.max(0, centers[i].getX() - half), Math.max(0, centers[i].getY() - half),
+                    Math.min(1, centers[i].getX() + half), Math.min(1, centers[i].getY() + half));
+        }
+        pairs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            pairs.add(new Pair<>(keys[i], i));
+        }
+        tree = build();
+
+        windows = new ID2BoundingBox[1024];
+        for (int i = 0; i < windows.length; i++) {
+            final D2Point center = centers[rand.nextInt(size)];
+            windows[i] = new D2BoundingBox(
+                    Math.max(0, center.getX() - WINDOW), Math.max(0, center.getY() - WINDOW),
+                    Math.min(1, center.getX() + WINDOW), Math.min(1, center.getY() + WINDOW));
+        }
+    }
+
+    private QuadTree<ID2BoundingBox, Integer> newTree() {
+        return looseness == 0
+                ? new QuadTree<>(BOUNDS, maxNodeSize)
+                : new QuadTree<>(BOUNDS, maxNodeSize, maxNodeSize / 2, looseness);
+    }
+
+    private QuadTree<ID2BoundingBox, Integer> build() {
+        final QuadTree<ID2BoundingBox, Integer> built = newTree();
+        for (int i = 0; i < keys.length; i++) {
+            built.put(keys[i], i);
+        }
+        return built;
+    }
+
+    @Benchmark
+    @Measurement(iterations = 5, time = 2)
+    public int insert() {
+        return build().size();
+    }
+
+    @Benchmark
+    @Measurement(iterations = 5, time = 2)
+    public int insertAll() {
+        final QuadTree<ID2BoundingBox, Integer> built = newTree();
+        built.putAll(pairs);
+        return built.size();
+    }
+
+    @Benchmark
+    public long windowQuery() {
+        final ID2BoundingBox box = windows[window++ & (windows.length - 1)];
+        return tree.selectiveEntryStream((b) -> b.intersects(box))
+                .filter((en) -> box.intersects(en.getKey()))
+                .count();
+    }
+
+    @Benchmark
+    public long windowVisit() {
+        final ID2BoundingBox box = windows[window++ & (windows.length - 1)];
+        final long before = visited;
+        tree.forEachInWindow(box.getLower().getX(), box.getLower().getY(),
+                box.getUpper().getX(), box.getUpper().getY(), visitor);
+        return visited - before;
+    }
+
+    @Benchmark
+    public long withinDistance() {
+        final ID2BoundingBox box = windows[window++ & (windows.length - 1)];
+        return tree.withinDistance(box.getCenter(), WINDOW).count();
+    }
+}
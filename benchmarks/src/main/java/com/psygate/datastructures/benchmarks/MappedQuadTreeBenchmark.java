@@ -0,0 +1,135 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.mapped.MappedQuadTree;
+import com.psygate.datastructures.spatial.trees.recursive.PackedPointQuadTree;
+import com.psygate.datastructures.util.Codec;
+import com.psygate.datastructures.util.Pair;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Window query throughput of the memory mapped quad tree compared with the
+ * packed point quad tree on the heap, and the cost of opening a mapped file.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappedQuadTreeBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+    private static final double WINDOW = 0.025;
+
+    @Param({"1000000"})
+    private int size;
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    private Distribution distribution;
+
+    private Path file;
+    private ID2BoundingBox[] windows;
+    private MappedQuadTree<Integer> mapped;
+    private PackedPointQuadTree<Integer> packed;
+    private int window = 0;
+    private long hits = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        final Random rand = new Random(9327490235L);
+        final D2Point[] points = distribution.points2D(rand, size);
+
+        final List<Pair<D2Point, Integer>> entries = new ArrayList<>(size);
+        packed = new PackedPointQuadTree<>(BOUNDS, 16);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Pair<>(points[i], i));
+            packed.put(points[i].getX(), points[i].getY(), i);
+        }
+
+        windows = new ID2BoundingBox[1024];
+        for (int i = 0; i < windows.length; i++) {
+            final D2Point center = points[rand.nextInt(size)];
+            windows[i] = new D2BoundingBox(
+                    Math.max(0, center.getX() - WINDOW), Math.max(0, center.getY() - WINDOW),
+                    Math.min(1, center.getX() + WINDOW), Math.min(1, center.getY() + WINDOW));
+        }
+
+        file = Files.createTempFile("benchmark", ".qt");
+        MappedQuadTree.write(entries, BOUNDS, 16, Codec.INTEGER, file);
+        mapped = open();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mapped = null;
+        Files.deleteIfExists(file);
+    }
+
+    private ID2BoundingBox nextWindow() {
+        return windows[window++ & (windows.length - 1)];
+    }
+
+    @Benchmark
+    public MappedQuadTree<Integer> open() throws IOException {
+        return MappedQuadTree.open(file, Codec.INTEGER);
+    }
+
+    @Benchmark
+    public long mappedWindow() {
+        final ID2BoundingBox box = nextWindow();
+        hits = 0;
+        mapped.forEachInWindow(box.getLower().getX(), box.getLower().getY(),
+                box.getUpper().getX(), box.getUpper().getY(), (x, y, v) -> hits++);
+        return hits;
+    }
+
+    @Benchmark
+    public long packedWindow() {
+        final ID2BoundingBox box = nextWindow();
+        hits = 0;
+        packed.forEachInWindow(box.getLower().getX(), box.getLower().getY(),
+                box.getUpper().getX(), box.getUpper().getY(), (x, y, v) -> hits++);
+        return hits;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Update throughput for moving points, each operation moves one point by a
+ * small random step. Compares move against removing and inserting again.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MoveBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+
+    @Param({"1000000"})
+    private int size;
+
+    @Param({"16"})
+    private int maxNodeSize;
+
+    @Param({"0.001"})
+    private double step;
+
+    private D2Point[] points;
+    private QuadTree<D2Point, Integer> tree;
+    private Random rand;
+
+    @Setup
+    public void setUp() {
+        rand = new Random(9327490235L);
+        points = Distribution.UNIFORM.points2D(rand, size);
+        tree = new QuadTree<>(BOUNDS, maxNodeSize);
+        for (int i = 0; i < size; i++) {
+            tree.put(points[i], i);
+        }
+    }
+
+    private D2Point step(D2Point point) {
+        return new D2Point(
+                Math.min(1, Math.max(0, point.getX() + (rand.nextDouble() - 0.5) * step)),
+                Math.min(1, Math.max(0, point.getY() + (rand.nextDouble() - 0.5) * step)));
+    }
+
+    @Benchmark
+    public boolean move() {
+        final int index = rand.nextInt(size);
+        final D2Point next = step(points[index]);
+        final boolean moved = tree.move(points[index], next, index);
+        points[index] = next;
+        return moved;
+    }
+
+    @Benchmark
+    public boolean removePut() {
+        final int index = rand.nextInt(size);
+        final D2Point next = step(points[index]);
+        final boolean removed = !tree.remove(points[index], index).isEmpty();
+        tree.put(next, index);
+        points[index] = next;
+        return removed;
+    }
+}
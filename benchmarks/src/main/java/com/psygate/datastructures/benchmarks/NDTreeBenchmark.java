@@ -0,0 +1,178 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.generalized.DNBoundingBox;
+import com.psygate.datastructures.spatial.generalized.DNPoint;
+import com.psygate.datastructures.spatial.generalized.IDBoundingBox;
+import com.psygate.datastructures.spatial.generalized.IDPoint;
+import com.psygate.datastructures.spatial.trees.recursive.NDTree;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Window and nearest neighbour queries on the n-dimensional tree compared with
+ * a scan over all keys, for uniformly spread points. Windows are sized to hold
+ * about {@link #HITS} points regardless of the dimensions. Keys and windows
+ * are either the flat DNPoint and DNBoundingBox or the generic implementations
+ * built by IDPoint.build and IDBoundingBox.build.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NDTreeBenchmark {
+
+    private static final int HITS = 100;
+    private static final int NEIGHBOURS = 10;
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"2", "3", "4", "6", "8"})
+    private int dimensions;
+
+    @Param({"16"})
+    private int maxNodeSize;
+
+    @Param({"true", "false"})
+    private boolean flat;
+
+    private IDPoint[] points;
+    private IDPoint[] queries;
+    private IDBoundingBox[] windows;
+    private NDTree<IDPoint, Integer> tree;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random(9327490235L);
+        points = new IDPoint[size];
+        tree = new NDTree<>(box(new double[dimensions], filled(1)), maxNodeSize);
+        for (int i = 0; i < size; i++) {
+            points[i] = point(rand);
+            tree.put(points[i], i);
+        }
+
+        final double side = Math.pow((double) HITS / size, 1.0 / dimensions);
+        queries = new IDPoint[1024];
+        windows = new IDBoundingBox[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = point(rand);
+            final double[] lower = new double[dimensions];
+            final double[] upper = new double[dimensions];
+            for (int j = 0; j < dimensions; j++) {
+                lower[j] = queries[i].get(j) * (1 - side);
+                upper[j] = lower[j] + side;
+            }
+            windows[i] = box(lower, upper);
+        }
+    }
+
+    private double[] filled(double value) {
+        final double[] values = new double[dimensions];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    private IDPoint point(Random rand) {
+        final double[] values = new double[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            values[i] = rand.nextDouble();
+        }
+
+        return flat ? new DNPoint(values) : IDPoint.build(values);
+    }
+
+    private IDBoundingBox box(double[] lower, double[] upper) {
+        if (flat) {
+            return new DNBoundingBox(lower, upper);
+        }
+
+        final IDPoint[] lowers = new IDPoint[lower.length];
+        final IDPoint[] uppers = new IDPoint[upper.length];
+        Arrays.fill(lowers, IDPoint.build(lower));
+        Arrays.fill(uppers, IDPoint.build(upper));
+        return IDBoundingBox.build(lowers, uppers);
+    }
+
+    private int nextIndex() {
+        final int index = next;
+        next = (next + 1) & (queries.length - 1);
+        return index;
+    }
+
+    @Benchmark
+    public long windowQuery() {
+        return tree.withinWindow(windows[nextIndex()]).count();
+    }
+
+    @Benchmark
+    public long windowScan() {
+        final IDBoundingBox window = windows[nextIndex()];
+        long count = 0;
+        for (IDPoint point : points) {
+            if (window.contains(point)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Benchmark
+    public int nearest() {
+        return tree.nearest(queries[nextIndex()], NEIGHBOURS).size();
+    }
+
+    @Benchmark
+    public double nearestScan() {
+        final IDPoint query = queries[nextIndex()];
+        final PriorityQueue<Double> best = new PriorityQueue<>(NEIGHBOURS + 1, Collections.reverseOrder());
+        for (IDPoint point : points) {
+            final double distance = point.distSqr(query);
+            if (best.size() < NEIGHBOURS) {
+                best.add(distance);
+            } else if (distance < best.peek()) {
+                best.poll();
+                best.add(distance);
+            }
+        }
+
+        return best.peek();
+    }
+}
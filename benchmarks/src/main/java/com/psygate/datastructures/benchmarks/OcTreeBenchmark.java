@@ -0,0 +1,174 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D3BoundingBox;
+import com.psygate.datastructures.spatial.D3Point;
+import com.psygate.datastructures.spatial.ID3BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.ImmutableOcTree;
+import com.psygate.datastructures.spatial.trees.recursive.OcTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert, bulk load, window query, lookup, removal and full scan throughput
+ * of the oc tree over several point distributions and node sizes. Removal
+ * benchmarks put the removed entry back, so the tree keeps its size.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OcTreeBenchmark {
+
+    private static final ID3BoundingBox BOUNDS = new D3BoundingBox(0, 0, 0, 1, 1, 1);
+    private static final double WINDOW = 0.025;
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"4", "16", "64"})
+    private int maxNodeSize;
+
+    @Param({"UNIFORM", "CLUSTERED", "DEGENERATE"})
+    private Distribution distribution;
+
+    private D3Point[] points;
+    private List<Pair<D3Point, Integer>> entries;
+    private ID3BoundingBox[] windows;
+    private OcTree<D3Point, Integer> tree;
+    private int window = 0;
+    private int next = 0;
+    private long visited = 0;
+    private final BiConsumer<D3Point, Integer> visitor = (key, value) -> visited++;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random(9327490235L);
+        points = distribution.points3D(rand, size);
+
+        entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Pair<>(points[i], i));
+        }
+
+        windows = new ID3BoundingBox[1024];
+        for (int i = 0; i < windows.length; i++) {
+            final D3Point center = points[rand.nextInt(size)];
+            windows[i] = new D3BoundingBox(
+                    Math.max(0, center.getX() - WINDOW), Math.max(0, center.getY() - WINDOW), Math.max(0, center.getZ() - WINDOW),
+                    Math.min(1, center.getX() + WINDOW), Math.min(1, center.getY() + WINDOW), Math.min(1, center.getZ() + WINDOW));
+        }
+
+        tree = insert();
+    }
+
+    private int nextIndex() {
+        final int index = next;
+        next = (next + 1) % size;
+        return index;
+    }
+
+    @Benchmark
+    public OcTree<D3Point, Integer> insert() {
+        final OcTree<D3Point, Integer> fresh = new OcTree<>(BOUNDS, maxNodeSize);
+        for (int i = 0; i < points.length; i++) {
+            fresh.put(points[i], i);
+        }
+
+        return fresh;
+    }
+
+    @Benchmark
+    public ImmutableOcTree<D3Point, Integer> bulkLoad() {
+        return new ImmutableOcTree<>(entries, BOUNDS, maxNodeSize);
+    }
+
+    @Benchmark
+    public long windowQuery() {
+        final ID3BoundingBox box = windows[window++ & (windows.length - 1)];
+        return tree.selectiveEntryStream((b) -> b.intersects(box))
+                .filter((en) -> box.contains(en.getKey()))
+                .count();
+    }
+
+    @Benchmark
+    public long windowVisit() {
+        final ID3BoundingBox box = windows[window++ & (windows.length - 1)];
+        final long before = visited;
+        tree.forEachInWindow(box.getLower().getX(), box.getLower().getY(), box.getLower().getZ(),
+                box.getUpper().getX(), box.getUpper().getY(), box.getUpper().getZ(), visitor);
+        return visited - before;
+    }
+
+    @Benchmark
+    public boolean containsKey() {
+        return tree.containsKey(points[nextIndex()]);
+    }
+
+    @Benchmark
+    public int remove() {
+        final int index = nextIndex();
+        final int removed = tree.remove(points[index], index).size();
+        tree.put(points[index], index);
+        return removed;
+    }
+
+    @Benchmark
+    public int removeValue() {
+        final int index = nextIndex();
+        final D3Point point = points[index];
+        final int removed = tree.removeValue(index, (b) -> b.contains(point)).size();
+        tree.put(point, index);
+        return removed;
+    }
+
+    @Benchmark
+    public long scan() {
+        return tree.entryStream()
+                .filter((en) -> en.getKey().getX() < 0.5)
+                .count();
+    }
+
+    @Benchmark
+    public long parallelScan() {
+        return tree.parallelEntryStream()
+                .filter((en) -> en.getKey().getX() < 0.5)
+                .count();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.PackedPointQuadTree;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert and window query throughput of the packed point quad tree, for
+ * comparison with {@link QuadTreeBenchmark}.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackedPointQuadTreeBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"16"})
+    private int maxNodeSize;
+
+    private D2Point[] points;
+    private ID2BoundingBox[] windows;
+    private PackedPointQuadTree<Integer> tree;
+    private int window = 0;
+    private long hits = 0;
+    private final PackedPointQuadTree.PointConsumer<Integer> counter = (x, y, v) -> hits++;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random(9327490235L);
+        points = new D2Point[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = new D2Point(rand.nextDouble(), rand.nextDouble());
+        }
+
+        windows = new ID2BoundingBox[1024];
+        for (int i = 0; i < windows.length; i++) {
+            final double x = rand.nextDouble() * 0.95;
+            final double y = rand.nextDouble() * 0.95;
+            windows[i] = new D2BoundingBox(x, y, x + 0.05, y + 0.05);
+        }
+
+        tree = insert();
+    }
+
+    @Benchmark
+    public PackedPointQuadTree<Integer> insert() {
+        final PackedPointQuadTree<Integer> fresh = new PackedPointQuadTree<>(BOUNDS, maxNodeSize);
+        for (int i = 0; i < points.length; i++) {
+            fresh.put(points[i].getX(), points[i].getY(), i);
+        }
+
+        return fresh;
+    }
+
+    @Benchmark
+    public long windowQuery() {
+        final ID2BoundingBox box = windows[window++ & (windows.length - 1)];
+        hits = 0;
+        tree.forEachInWindow(box.getLower().getX(), box.getLower().getY(),
+                box.getUpper().getX(), box.getUpper().getY(), counter);
+        return hits;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.ImmutableQuadTree;
+import com.psygate.datastructures.spatial.trees.recursive.PersistentQuadTree;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one tick that moves a batch of entries and then takes a snapshot,
+ * for the persistent quad tree and for a quad tree copied into an immutable
+ * quad tree.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistentQuadTreeBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"16"})
+    private int maxNodeSize;
+
+    @Param({"100"})
+    private int updates;
+
+    private D2Point[] points;
+    private QuadTree<D2Point, Integer> tree;
+    private PersistentQuadTree<D2Point, Integer> persistent;
+    private Random rand;
+
+    @Setup
+    public void setUp() {
+        rand = new Random(9327490235L);
+        points = new D2Point[size];
+        tree = new QuadTree<>(BOUNDS, maxNodeSize);
+        persistent = new PersistentQuadTree<>(BOUNDS, maxNodeSize);
+        for (int i = 0; i < size; i++) {
+            points[i] = new D2Point(rand.nextDouble(), rand.nextDouble());
+            tree.put(points[i], i);
+            persistent = persistent.put(points[i], i);
+        }
+    }
+
+    @Benchmark
+    public ImmutableQuadTree<D2Point, Integer> copySnapshot() {
+        for (int i = 0; i < updates; i++) {
+            final int index = rand.nextInt(size);
+            tree.remove(points[index], index);
+            points[index] = new D2Point(rand.nextDouble(), rand.nextDouble());
+            tree.put(points[index], index);
+        }
+
+        return new ImmutableQuadTree<>(tree, maxNodeSize);
+    }
+
+    @Benchmark
+    public PersistentQuadTree<D2Point, Integer> persistentSnapshot() {
+        for (int i = 0; i < updates; i++) {
+            final int index = rand.nextInt(size);
+            persistent = persistent.remove(points[index], index);
+            points[index] = new D2Point(rand.nextDouble(), rand.nextDouble());
+            persistent = persistent.put(points[index], index);
+        }
+
+        return persistent;
+    }
+}
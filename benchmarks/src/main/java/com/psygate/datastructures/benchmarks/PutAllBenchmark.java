@@ -0,0 +1,103 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Batched putAll of the quad tree compared with inserting the same batch one
+ * entry at a time, into a tree that already holds as many entries as the
+ * batch.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PutAllBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    @Param({"16"})
+    private int maxNodeSize;
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    private Distribution distribution;
+
+    private List<Pair<D2Point, Integer>> base;
+    private List<Pair<D2Point, Integer>> batch;
+    private QuadTree<D2Point, Integer> tree;
+
+    @Setup
+    public void setUp() {
+        final D2Point[] points = distribution.points2D(new Random(9327490235L), size * 2);
+        base = new ArrayList<>(size);
+        batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            base.add(new Pair<>(points[i], i));
+            batch.add(new Pair<>(points[size + i], size + i));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void populate() {
+        tree = new QuadTree<>(BOUNDS, maxNodeSize);
+        tree.putAll(base);
+    }
+
+    @Benchmark
+    public QuadTree<D2Point, Integer> putAll() {
+        tree.putAll(batch);
+        return tree;
+    }
+
+    @Benchmark
+    public QuadTree<D2Point, Integer> putEach() {
+        for (Pair<D2Point, Integer> entry : batch) {
+            tree.put(entry);
+        }
+        return tree;
+    }
+}
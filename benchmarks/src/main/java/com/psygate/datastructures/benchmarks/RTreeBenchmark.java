@@ -0,0 +1,130 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import com.psygate.datastructures.spatial.trees.recursive.RTree;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert and window query throughput of the R tree on overlapping rectangles
+ * of mixed size. The quad* benchmarks run the same workload on a quad tree.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RTreeBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"16"})
+    private int maxNodeSize;
+
+    private ID2BoundingBox[] boxes;
+    private ID2BoundingBox[] windows;
+    private RTree<ID2BoundingBox, Integer> tree;
+    private QuadTree<ID2BoundingBox, Integer> quad;
+    private int window = 0;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random(9327490235L);
+        boxes = new ID2BoundingBox[size];
+        for (int i = 0; i < size; i++) {
+            final double extent = rand.nextInt(10) == 0 ? 0.1 : 0.001;
+            final double x = rand.nextDouble() * (1 - extent);
+            final double y = rand.nextDouble() * (1 - extent);
+            boxes[i] = new D2BoundingBox(x, y, x + rand.nextDouble() * extent, y + rand.nextDouble() * extent);
+        }
+
+        windows = new ID2BoundingBox[1024];
+        for (int i = 0; i < windows.length; i++) {
+            final double x = rand.nextDouble() * 0.99;
+            final double y = rand.nextDouble() * 0.99;
+            windows[i] = new D2BoundingBox(x, y, x + 0.01, y + 0.01);
+        }
+
+        tree = insert();
+        quad = quadInsert();
+    }
+
+    private static Predicate<ID2BoundingBox> overlapping(ID2BoundingBox box) {
+        return (b) -> b.getLower().getX() <= box.getUpper().getX() && box.getLower().getX() <= b.getUpper().getX()
+                && b.getLower().getY() <= box.getUpper().getY() && box.getLower().getY() <= b.getUpper().getY();
+    }
+
+    @Benchmark
+    public RTree<ID2BoundingBox, Integer> insert() {
+        final RTree<ID2BoundingBox, Integer> fresh = new RTree<>(maxNodeSize);
+        for (int i = 0; i < boxes.length; i++) {
+            fresh.put(boxes[i], i);
+        }
+
+        return fresh;
+    }
+
+    @Benchmark
+    public QuadTree<ID2BoundingBox, Integer> quadInsert() {
+        final QuadTree<ID2BoundingBox, Integer> fresh = new QuadTree<>(BOUNDS, maxNodeSize);
+        for (int i = 0; i < boxes.length; i++) {
+            fresh.put(boxes[i], i);
+        }
+
+        return fresh;
+    }
+
+    @Benchmark
+    public long windowQuery() {
+        final Predicate<ID2BoundingBox> overlap = overlapping(windows[window++ & (windows.length - 1)]);
+        return tree.selectiveEntryStream(overlap)
+                .filter((en) -> overlap.test(en.getKey()))
+                .count();
+    }
+
+    @Benchmark
+    public long quadWindowQuery() {
+        final Predicate<ID2BoundingBox> overlap = overlapping(windows[window++ & (windows.length - 1)]);
+        return quad.selectiveEntryStream(overlap)
+                .filter((en) -> overlap.test(en.getKey()))
+                .count();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Point;
+import com.psygate.datastructures.spatial.trees.recursive.ImmutableQuadTree;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTreeSerializer;
+import com.psygate.datastructures.util.Codec;
+import com.psygate.datastructures.util.Pair;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Warm start cost of an immutable quad tree: reading the serialized tree
+ * compared with bulk loading and inserting the same entries.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+
+    @Param({"1000000"})
+    private int size;
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    private Distribution distribution;
+
+    private List<Pair<D2Point, Integer>> entries;
+    private ImmutableQuadTree<D2Point, Integer> tree;
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws IOException {
+        final D2Point[] points = distribution.points2D(new Random(9327490235L), size);
+        entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Pair<>(points[i], i));
+        }
+
+        tree = bulkLoad();
+        data = write();
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(size * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            QuadTreeSerializer.write(tree, out, QuadTreeSerializer.POINT, Codec.INTEGER);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public ImmutableQuadTree<ID2Point, Integer> read() throws IOException {
+        return QuadTreeSerializer.read(new DataInputStream(new ByteArrayInputStream(data)),
+                QuadTreeSerializer.POINT, Codec.INTEGER);
+    }
+
+    @Benchmark
+    public ImmutableQuadTree<D2Point, Integer> bulkLoad() {
+        return new ImmutableQuadTree<>(entries, BOUNDS, 16);
+    }
+
+    @Benchmark
+    public QuadTree<D2Point, Integer> insert() {
+        final QuadTree<D2Point, Integer> fresh = new QuadTree<>(BOUNDS, 16);
+        for (Pair<D2Point, Integer> entry : entries) {
+            fresh.put(entry.getKey(), entry.getValue());
+        }
+
+        return fresh;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.benchmarks;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A frame worth of window queries, answered in one traversal compared with
+ * one traversal per window. Tiled windows cover a viewport in a grid, the way
+ * a renderer queries its tiles, scattered windows are spread over the tree.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowBatchBenchmark {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+    private static final int TILES = 16;
+    private static final double VIEWPORT = 0.2;
+
+    public enum Layout {
+        TILED, SCATTERED
+    }
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    private Distribution distribution;
+
+    @Param({"TILED", "SCATTERED"})
+    private Layout layout;
+
+    private QuadTree<D2Point, Integer> tree;
+    private List<ID2BoundingBox> windows;
+    private long hits = 0;
+
+    @Setup
+    public void setUp() {
+        final Random rand = new Random(9327490235L);
+        final D2Point[] points = distribution.points2D(rand, size);
+        tree = new QuadTree<>(BOUNDS, 16);
+        for (int i = 0; i < size; i++) {
+            tree.put(points[i], i);
+        }
+
+        windows = new ArrayList<>(TILES * TILES);
+        final double tile = VIEWPORT / TILES;
+        final D2Point center = points[rand.nextInt(size)];
+        final double vx = Math.max(0, Math.min(1 - VIEWPORT, center.getX() - VIEWPORT / 2));
+        final double vy = Math.max(0, Math.min(1 - VIEWPORT, center.getY() - VIEWPORT / 2));
+        for (int x = 0; x < TILES; x++) {
+            for (int y = 0; y < TILES; y++) {
+                final double lx = layout == Layout.TILED ? vx + x * tile : rand.nextDouble() * (1 - tile);
+                final double ly = layout == Layout.TILED ? vy + y * tile : rand.nextDouble() * (1 - tile);
+                windows.add(new D2BoundingBox(lx, ly, lx + tile, ly + tile));
+            }
+        }
+    }
+
+    @Benchmark
+    public long batched() {
+        hits = 0;
+        tree.forEachInWindows(windows, (en, i) -> hits++);
+        return hits;
+    }
+
+    @Benchmark
+    public long independent() {
+        long count = 0;
+        for (ID2BoundingBox window : windows) {
+            count += tree.selectiveEntryStream(window::intersects)
+                    .filter((en) -> window.contains(en.getKey()))
+                    .count();
+        }
+        return count;
+    }
+}
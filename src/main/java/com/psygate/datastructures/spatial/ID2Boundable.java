@@ -57,4 +57,21 @@ public interface ID2Boundable {
      * @return New bouding box enveloping this object.
      */
     ID2BoundingBox merge(ID2BoundingBox box);
+
+    /**
+     * Squared distance between the provided point and the closest point of
+     * this object. If the point lays inside this object, the distance is 0.
+     *
+     * @param point Point to measure the distance to.
+     * @return Squared euclidian distance between the point and this object.
+     */
+    double distSqr(ID2Point point);
+
+    /**
+     * Center of this object along the provided axis.
+     *
+     * @param axis Axis on which to measure.
+     * @return Coordinate of the center of this object on the axis.
+     */
+    double center(Axis2D axis);
 }
@@ -110,6 +110,14 @@ public interface ID2BoundingBox extends ID2Boundable {
         return other.isInside(this);
     }
 
+    @Override
+    default double distSqr(ID2Point point) {
+        final double xdist = Math.max(0, Math.max(getLower().getX() - point.getX(), point.getX() - getUpper().getX()));
+        final double ydist = Math.max(0, Math.max(getLower().getY() - point.getY(), point.getY() - getUpper().getY()));
+
+        return xdist * xdist + ydist * ydist;
+    }
+
     /**
      * Checks if two bounding boxes represent the same space. They are the same
      * if both lower and upper points are the same.
@@ -198,6 +206,11 @@ public interface ID2BoundingBox extends ID2Boundable {
         };
     }
 
+    @Override
+    default double center(Axis2D axis) {
+        return (getLower().get(axis) + getUpper().get(axis)) / 2;
+    }
+
     @Override
     default boolean leftOf(double median, Axis2D axis) {
         return getLower().leftOf(median, axis) && getUpper().leftOf(median, axis);
@@ -45,6 +45,7 @@ public interface ID2Point extends ID2Boundable {
      * <a href="https://en.wikipedia.org/wiki/Euclidean_distance">Squared
      * euclidian distance</a> between this and the other point.
      */
+    @Override
     default double distSqr(ID2Point other) {
         final double xdist = (getX() - other.getX());
         final double ydist = (getY() - other.getY());
@@ -84,6 +85,11 @@ public interface ID2Point extends ID2Boundable {
         }
     }
 
+    @Override
+    default double center(Axis2D axis) {
+        return get(axis);
+    }
+
     @Override
     default boolean leftOf(double median, Axis2D axis) {
         return get(axis) <= median;
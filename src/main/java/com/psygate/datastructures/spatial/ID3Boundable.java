@@ -57,4 +57,13 @@ public interface ID3Boundable {
      * @return New bouding box enveloping this object.
      */
     ID3BoundingBox merge(ID3BoundingBox box);
+
+    /**
+     * Squared distance between the provided point and the closest point of
+     * this object. If the point lays inside this object, the distance is 0.
+     *
+     * @param point Point to measure the distance to.
+     * @return Squared euclidian distance between the point and this object.
+     */
+    double distSqr(ID3Point point);
 }
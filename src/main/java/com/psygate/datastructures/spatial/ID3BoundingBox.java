@@ -128,6 +128,15 @@ public interface ID3BoundingBox extends ID3Boundable {
         return other.isInside(this);
     }
 
+    @Override
+    default double distSqr(ID3Point point) {
+        final double xdist = Math.max(0, Math.max(getLower().getX() - point.getX(), point.getX() - getUpper().getX()));
+        final double ydist = Math.max(0, Math.max(getLower().getY() - point.getY(), point.getY() - getUpper().getY()));
+        final double zdist = Math.max(0, Math.max(getLower().getZ() - point.getZ(), point.getZ() - getUpper().getZ()));
+
+        return xdist * xdist + ydist * ydist + zdist * zdist;
+    }
+
     /**
      * Checks if two bounding boxes represent the same space. They are the same
      * if both lower and upper points are the same.
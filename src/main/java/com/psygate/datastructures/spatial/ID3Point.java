@@ -51,6 +51,7 @@ public interface ID3Point extends ID3Boundable {
      * <a href="https://en.wikipedia.org/wiki/Euclidean_distance">Squared
      * euclidian distance</a> between this and the other point.
      */
+    @Override
     default double distSqr(ID3Point other) {
         final double xdist = (getX() - other.getX());
         final double ydist = (getY() - other.getY());
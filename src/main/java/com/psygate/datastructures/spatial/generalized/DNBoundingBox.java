@@ -0,0 +1,302 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.generalized;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Implementation of the IDBoundingBox interface, storing the lower and the
+ * upper corner as flat arrays. Every axis shares the same corner points, so
+ * getLower(i) and getUpper(i) do not create objects. Intersection,
+ * containment and distance checks against other flat boxes and points read
+ * the arrays directly and create no objects.
+ *
+ * @see IDBoundingBox
+ * @author psygate (https://github.com/psygate)
+ */
+public final class DNBoundingBox implements IDBoundingBox {
+
+    private final DNPoint lower, upper, center;
+    private final double[] lows, highs;
+
+    /**
+     *
+     * @param lower Lower corner of the new bounding box.
+     * @param upper Upper corner of the new bounding box.
+     * @throws IllegalArgumentException If the corners have different
+     * dimensions.
+     */
+    public DNBoundingBox(DNPoint lower, DNPoint upper) {
+        if (lower.getDimensions() != upper.getDimensions()) {
+            throw new IllegalArgumentException("Dimension mismatch.");
+        }
+
+        this.lower = lower;
+        this.upper = upper;
+        this.lows = lower.coordinates();
+        this.highs = upper.coordinates();
+        final double[] centers = new double[lows.length];
+        for (int i = 0; i < centers.length; i++) {
+            centers[i] = (lows[i] + highs[i]) / 2;
+        }
+        this.center = new DNPoint(centers);
+    }
+
+    /**
+     *
+     * @param lower Lower coordinates of the new bounding box, one per axis.
+     * @param upper Upper coordinates of the new bounding box, one per axis.
+     */
+    public DNBoundingBox(double[] lower, double[] upper) {
+        this(new DNPoint(lower), new DNPoint(upper));
+    }
+
+    /**
+     *
+     * @param lower Lower corner of the new bounding box.
+     * @param upper Upper corner of the new bounding box.
+     */
+    public DNBoundingBox(IDPoint lower, IDPoint upper) {
+        this(new DNPoint(lower), new DNPoint(upper));
+    }
+
+    /**
+     *
+     * @param box Box to copy so that this bounding box equals box.
+     */
+    public DNBoundingBox(IDBoundingBox box) {
+        this(corner(box, true), corner(box, false));
+    }
+
+    private static DNPoint corner(IDBoundingBox box, boolean lower) {
+        final double[] coordinates = new double[box.getDimensions()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = lower ? box.getLower(i).get(i) : box.getUpper(i).get(i);
+        }
+
+        return new DNPoint(coordinates);
+    }
+
+    @Override
+    public int getDimensions() {
+        return lows.length;
+    }
+
+    @Override
+    public DNPoint getLower(int axisindex) {
+        return lower;
+    }
+
+    @Override
+    public DNPoint getUpper(int axisindex) {
+        return upper;
+    }
+
+    /**
+     *
+     * @return A new array holding the lower corner once per axis.
+     */
+    @Override
+    public IDPoint[] getLower() {
+        final IDPoint[] lowers = new IDPoint[lows.length];
+        Arrays.fill(lowers, lower);
+        return lowers;
+    }
+
+    /**
+     *
+     * @return A new array holding the upper corner once per axis.
+     */
+    @Override
+    public IDPoint[] getUpper() {
+        final IDPoint[] uppers = new IDPoint[highs.length];
+        Arrays.fill(uppers, upper);
+        return uppers;
+    }
+
+    @Override
+    public double length(int axisindex) {
+        return highs[axisindex] - lows[axisindex];
+    }
+
+    @Override
+    public double getCenter(int axisindex) {
+        return center.get(axisindex);
+    }
+
+    @Override
+    public DNPoint getCenter() {
+        return center;
+    }
+
+    @Override
+    public boolean intersects(IDBoundingBox other) {
+        checkDimensions(other);
+        if (other instanceof DNBoundingBox) {
+            final DNBoundingBox box = (DNBoundingBox) other;
+            for (int i = 0; i < lows.length; i++) {
+                if (lows[i] > box.highs[i] || box.lows[i] > highs[i]) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = 0; i < lows.length; i++) {
+                if (lows[i] > other.getUpper(i).get(i) || other.getLower(i).get(i) > highs[i]) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean isInside(IDBoundingBox other) {
+        checkDimensions(other);
+        if (other instanceof DNBoundingBox) {
+            final DNBoundingBox box = (DNBoundingBox) other;
+            for (int i = 0; i < lows.length; i++) {
+                if (lows[i] < box.lows[i] || highs[i] > box.highs[i]) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = 0; i < lows.length; i++) {
+                if (lows[i] < other.getLower(i).get(i) || highs[i] > other.getUpper(i).get(i)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     *
+     * @param coordinates Coordinates of a point.
+     * @return True if the point is inside this box, bounds inclusive.
+     */
+    boolean containsPoint(double[] coordinates) {
+        if (coordinates.length != lows.length) {
+            throw new IllegalArgumentException("Dimension mismatch.");
+        }
+
+        for (int i = 0; i < lows.length; i++) {
+            if (coordinates[i] < lows[i] || coordinates[i] > highs[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     *
+     * @param point Point to measure the distance to.
+     * @return Squared minimal distance between this box and the point, 0 if
+     * the point is inside the box.
+     */
+    public double distSqr(IDPoint point) {
+        if (point.getDimensions() != lows.length) {
+            throw new IllegalArgumentException("Dimension mismatch.");
+        }
+
+        double sum = 0;
+        for (int i = 0; i < lows.length; i++) {
+            final double coordinate = point.get(i);
+            final double dist;
+            if (coordinate < lows[i]) {
+                dist = lows[i] - coordinate;
+            } else if (coordinate > highs[i]) {
+                dist = coordinate - highs[i];
+            } else {
+                continue;
+            }
+            sum += dist * dist;
+        }
+
+        return sum;
+    }
+
+    @Override
+    public DNBoundingBox merge(IDBoundingBox other) {
+        checkDimensions(other);
+        final double[] mergedLows = new double[lows.length];
+        final double[] mergedHighs = new double[highs.length];
+        for (int i = 0; i < lows.length; i++) {
+            mergedLows[i] = Math.min(lows[i], other.getLower(i).get(i));
+            mergedHighs[i] = Math.max(highs[i], other.getUpper(i).get(i));
+        }
+
+        return new DNBoundingBox(mergedLows, mergedHighs);
+    }
+
+    @Override
+    public boolean same(IDBoundingBox other) {
+        checkDimensions(other);
+        for (int i = 0; i < lows.length; i++) {
+            if (lows[i] != other.getLower(i).get(i) || highs[i] != other.getUpper(i).get(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void checkDimensions(IDBoundingBox other) {
+        if (other.getDimensions() != lows.length) {
+            throw new IllegalArgumentException("Dimension mismatch.");
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 3;
+        hash = 61 * hash + Objects.hashCode(this.lower);
+        hash = 61 * hash + Objects.hashCode(this.upper);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final DNBoundingBox other = (DNBoundingBox) obj;
+        if (!Objects.equals(this.lower, other.lower)) {
+            return false;
+        }
+        if (!Objects.equals(this.upper, other.upper)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "DNBoundingBox{" + "lower=" + lower + ", upper=" + upper + '}';
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.generalized;
+
+import java.util.Arrays;
+
+/**
+ * Implementation of the IDPoint interface, storing the coordinates in a flat
+ * array. Coordinate access and the distance and containment checks against
+ * other flat points and boxes read the arrays directly and create no objects.
+ *
+ * @see IDPoint
+ * @author psygate (https://github.com/psygate)
+ */
+public final class DNPoint implements IDPoint {
+
+    private final double[] coordinates;
+
+    /**
+     *
+     * @param coordinates Coordinates of the new point, one per axis. The array
+     * is copied.
+     */
+    public DNPoint(final double... coordinates) {
+        this.coordinates = coordinates.clone();
+    }
+
+    /**
+     *
+     * @param point Point to copy.
+     */
+    public DNPoint(final IDPoint point) {
+        this.coordinates = copy(point);
+    }
+
+    private static double[] copy(IDPoint point) {
+        final double[] coordinates = new double[point.getDimensions()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = point.get(i);
+        }
+
+        return coordinates;
+    }
+
+    /**
+     *
+     * @return The coordinates of this point, not copied.
+     */
+    double[] coordinates() {
+        return coordinates;
+    }
+
+    @Override
+    public int getDimensions() {
+        return coordinates.length;
+    }
+
+    @Override
+    public double get(int axisindex) {
+        return coordinates[axisindex];
+    }
+
+    /**
+     *
+     * @return A copy of the coordinates.
+     */
+    @Override
+    public double[] get() {
+        return coordinates.clone();
+    }
+
+    @Override
+    public double distSqr(IDPoint other) {
+        if (other.getDimensions() != coordinates.length) {
+            throw new IllegalArgumentException("Dimension mismatch.");
+        }
+
+        double sum = 0;
+        if (other instanceof DNPoint) {
+            final double[] others = ((DNPoint) other).coordinates;
+            for (int i = 0; i < coordinates.length; i++) {
+                final double dist = coordinates[i] - others[i];
+                sum += dist * dist;
+            }
+        } else {
+            for (int i = 0; i < coordinates.length; i++) {
+                final double dist = coordinates[i] - other.get(i);
+                sum += dist * dist;
+            }
+        }
+
+        return sum;
+    }
+
+    @Override
+    public boolean isInside(IDBoundingBox box) {
+        if (box instanceof DNBoundingBox) {
+            return ((DNBoundingBox) box).containsPoint(coordinates);
+        } else {
+            return IDPoint.super.isInside(box);
+        }
+    }
+
+    @Override
+    public boolean same(IDPoint point) {
+        if (point.getDimensions() != coordinates.length) {
+            throw new IllegalArgumentException("Dimension mismatch.");
+        }
+
+        for (int i = 0; i < coordinates.length; i++) {
+            if (coordinates[i] != point.get(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return 59 * 5 + Arrays.hashCode(coordinates);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final DNPoint other = (DNPoint) obj;
+        return Arrays.equals(this.coordinates, other.coordinates);
+    }
+
+    @Override
+    public String toString() {
+        return "DNPoint{" + Arrays.toString(coordinates) + '}';
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Interface for bounded spatial trees that can answer distance based queries.
+ * Distances are measured as squared euclidian distances between the query
+ * point and the closest point of a key.
+ *
+ * @author psygate (https://github.com/psygate)
+ *
+ * @param <K> Key type for the spatial tree.
+ * @param <V> Value type for the spatial tree.
+ * @param <Q> Query type for the spatial tree.
+ * @param <L> Bound type for the spatial tree.
+ * @param <P> Point type used to query the spatial tree.
+ */
+public interface MetricSpatialTree<K, V, Q, L, P> extends BoundedSpatialTree<K, V, Q, L> {
+
+    /**
+     * Searches the k nearest entries to the provided point.
+     *
+     * @param point Point to search the nearest entries for.
+     * @param k Maximum number of entries to return.
+     * @return A list containing at most k entries, ordered by ascending
+     * distance of their keys to the point.
+     * @throws IllegalArgumentException if k is negative.
+     */
+    public List<Map.Entry<K, V>> nearest(P point, int k);
+
+    /**
+     *
+     * @param point Point to search the nearest keys for.
+     * @param k Maximum number of keys to return.
+     * @return A list containing at most k keys, ordered by ascending distance
+     * to the point.
+     */
+    default List<K> nearestKeys(P point, int k) {
+        return nearest(point, k).stream().map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
+    /**
+     *
+     * @param point Point to search the nearest values for.
+     * @param k Maximum number of values to return.
+     * @return A list containing at most k values, ordered by ascending
+     * distance of their keys to the point.
+     */
+    default List<V> nearestValues(P point, int k) {
+        return nearest(point, k).stream().map(Map.Entry::getValue).collect(Collectors.toList());
+    }
+
+    /**
+     * Lazily streams all entries whose keys are within the provided distance
+     * of the point. Subtrees whose bounds are farther away than the distance
+     * are not traversed.
+     *
+     * @param point Point to measure the distance to.
+     * @param distance Maximum distance between the point and a key.
+     * @return A stream of all entries whose keys are at most distance away
+     * from the point.
+     * @throws IllegalArgumentException if the distance is negative.
+     */
+    public Stream<Map.Entry<K, V>> withinDistance(P point, double distance);
+
+    /**
+     *
+     * @param point Point to measure the distance to.
+     * @param distance Maximum distance between the point and a key.
+     * @return A stream of all keys that are at most distance away from the
+     * point.
+     */
+    default Stream<K> keysWithinDistance(P point, double distance) {
+        return withinDistance(point, distance).map(Map.Entry::getKey);
+    }
+
+    /**
+     *
+     * @param point Point to measure the distance to.
+     * @param distance Maximum distance between the point and a key.
+     * @return A stream of all values whose keys are at most distance away from
+     * the point.
+     */
+    default Stream<V> valuesWithinDistance(P point, double distance) {
+        return withinDistance(point, distance).map(Map.Entry::getValue);
+    }
+}
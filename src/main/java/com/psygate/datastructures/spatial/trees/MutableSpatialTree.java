@@ -101,6 +101,27 @@ public interface MutableSpatialTree<K, V, Q> extends SpatialTree<K, V, Q> {
      */
     public Collection<V> remove(K key, V value);
 
+    /**
+     * Moves every pair with the old key and the value to the new key. The
+     * default implementation removes the pairs and inserts them again,
+     * implementations may update the pairs in place.
+     *
+     * @param oldKey Current key of the value.
+     * @param newKey New key of the value.
+     * @param value Value to move.
+     * @return True if at least one pair was moved.
+     * @throws IllegalArgumentException If the new key is outside of the tree.
+     */
+    default boolean move(K oldKey, K newKey, V value) {
+        if (!envelopes(newKey)) {
+            throw new IllegalArgumentException("Key outside tree: " + newKey);
+        }
+
+        final Collection<V> removed = remove(oldKey, value);
+        removed.forEach((v) -> put(newKey, v));
+        return !removed.isEmpty();
+    }
+
     /**
      *
      * @param value Value to remove.
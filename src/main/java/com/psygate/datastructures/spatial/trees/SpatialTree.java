@@ -117,6 +117,28 @@ public interface SpatialTree<K, V, Q> {
      */
     public Stream<Map.Entry<K, V>> selectiveEntryStream(Predicate<Q> predicate);
 
+    /**
+     * Parallel variant of entryStream. Implementations should provide a
+     * spliterator that splits by subtree for this to scale.
+     *
+     * @return A parallel stream providing all entries contained in the tree.
+     */
+    default Stream<Map.Entry<K, V>> parallelEntryStream() {
+        return entryStream().parallel();
+    }
+
+    /**
+     * Parallel variant of selectiveEntryStream.
+     *
+     * @param predicate A predicate to use to discard candidate nodes before
+     * checking the subtree.
+     * @return A parallel stream of entries that are only contained in nodes
+     * where predicate.test(node.getBounds()) is true.
+     */
+    default Stream<Map.Entry<K, V>> parallelSelectiveEntryStream(Predicate<Q> predicate) {
+        return selectiveEntryStream(predicate).parallel();
+    }
+
     /**
      *
      * @return An iterator iterating over all keys of the tree. The iterator can
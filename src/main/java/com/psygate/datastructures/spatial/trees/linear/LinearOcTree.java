@@ -0,0 +1,389 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.linear;
+
+import com.psygate.datastructures.spatial.D3BoundingBox;
+import com.psygate.datastructures.spatial.D3Point;
+import com.psygate.datastructures.spatial.ID3BoundingBox;
+import com.psygate.datastructures.spatial.ID3Point;
+import com.psygate.datastructures.spatial.trees.BoundedSpatialTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Immutable linear oc tree. Every point is encoded as a Morton code
+ * relative to the bounds of the tree, the entries are stored sorted by code in
+ * flat primitive arrays. Every cell of the implicit oc tree covers one
+ * contiguous range of the arrays, queries decompose their window into such
+ * ranges with binary searches and scan the ranges sequentially.
+ *
+ * Keys are not retained, entries handed out by the streams carry a new
+ * D3Point built from the stored coordinates.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <V> Value type.
+ */
+public class LinearOcTree<V> implements BoundedSpatialTree<ID3Point, V, ID3BoundingBox, ID3BoundingBox> {
+
+    /**
+     * Ranges up to this size are scanned instead of being subdivided further.
+     */
+    private static final int LEAF_SIZE = 16;
+    private static final int CHILDREN = 8;
+
+    private final D3BoundingBox bounds;
+    private final double minX, minY, minZ;
+    private final double width, height, depth;
+    // Cell bounds recomputed from cell coordinates round differently than
+    // Morton.quantize, they are widened by this much before predicates see
+    // them.
+    private final double slackX, slackY, slackZ;
+    private final long[] codes;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+    private final Object[] values;
+
+    /**
+     *
+     * @param values Entries of the new tree.
+     * @param bounds Bounds of the new tree.
+     * @throws IllegalArgumentException If a key is outside of the bounds.
+     */
+    public LinearOcTree(Collection<? extends Map.Entry<? extends ID3Point, V>> values, ID3BoundingBox bounds) {
+        this.bounds = new D3BoundingBox(bounds);
+        this.minX = bounds.getLower().getX();
+        this.minY = bounds.getLower().getY();
+        this.minZ = bounds.getLower().getZ();
+        this.width = bounds.getUpper().getX() - minX;
+        this.height = bounds.getUpper().getY() - minY;
+        this.depth = bounds.getUpper().getZ() - minZ;
+        this.slackX = slack(minX, bounds.getUpper().getX());
+        this.slackY = slack(minY, bounds.getUpper().getY());
+        this.slackZ = slack(minZ, bounds.getUpper().getZ());
+
+        final int size = values.size();
+        final long[] unsorted = new long[size];
+        final double[] xIn = new double[size];
+        final double[] yIn = new double[size];
+        final double[] zIn = new double[size];
+        final Object[] valueIn = new Object[size];
+        int index = 0;
+        for (Map.Entry<? extends ID3Point, V> entry : values) {
+            final ID3Point key = Objects.requireNonNull(entry.getKey());
+            if (!this.bounds.contains(key)) {
+                throw new IllegalArgumentException("Key outside bounds: " + this.bounds + " - " + key);
+            }
+            xIn[index] = key.getX();
+            yIn[index] = key.getY();
+            zIn[index] = key.getZ();
+            valueIn[index] = entry.getValue();
+            unsorted[index] = code(xIn[index], yIn[index], zIn[index]);
+            index++;
+        }
+
+        final int[] order = Morton.sort(unsorted);
+        this.codes = unsorted;
+        this.xs = new double[size];
+        this.ys = new double[size];
+        this.zs = new double[size];
+        this.values = new Object[size];
+        for (int i = 0; i < size; i++) {
+            this.xs[i] = xIn[order[i]];
+            this.ys[i] = yIn[order[i]];
+            this.zs[i] = zIn[order[i]];
+            this.values[i] = valueIn[order[i]];
+        }
+    }
+
+    /**
+     *
+     * @param values Entries of the new tree.
+     * @param bounds Bounds of the new tree.
+     */
+    public LinearOcTree(Map<? extends ID3Point, V> values, ID3BoundingBox bounds) {
+        this(values.entrySet(), bounds);
+    }
+
+    /**
+     *
+     * @param tree Tree to copy the entries and bounds from.
+     */
+    public LinearOcTree(BoundedSpatialTree<? extends ID3Point, V, ?, ID3BoundingBox> tree) {
+        this(tree.entries(), tree.getBounds());
+    }
+
+    /**
+     * Callback receiving the coordinates and the value of an entry.
+     *
+     * @param <V> Value type.
+     */
+    @FunctionalInterface
+    public interface PointConsumer<V> {
+
+        /**
+         *
+         * @param x X coordinate of the entry.
+         * @param y Y coordinate of the entry.
+         * @param z Z coordinate of the entry.
+         * @param value Value of the entry.
+         */
+        void accept(double x, double y, double z, V value);
+    }
+
+    private long code(double x, double y, double z) {
+        return Morton.encode(
+                Morton.quantize(x, minX, width, Morton.BITS_3D),
+                Morton.quantize(y, minY, height, Morton.BITS_3D),
+                Morton.quantize(z, minZ, depth, Morton.BITS_3D));
+    }
+
+    @Override
+    public ID3BoundingBox getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public boolean envelopes(ID3Point key) {
+        return bounds.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return codes.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    private Map.Entry<ID3Point, V> entryAt(int index) {
+        return new Pair<>(new D3Point(xs[index], ys[index], zs[index]), valueAt(index));
+    }
+
+    /**
+     *
+     * @param key Key to search for.
+     * @param value Value the entry has to hold, ignored if anyValue is set.
+     * @param anyValue True if any value matches.
+     * @return True if an entry with the coordinates of the key and a matching
+     * value exists.
+     */
+    private boolean find(ID3Point key, V value, boolean anyValue) {
+        if (!bounds.contains(Objects.requireNonNull(key))) {
+            return false;
+        }
+
+        final long code = code(key.getX(), key.getY(), key.getZ());
+        for (int i = Morton.lowerBound(codes, 0, codes.length, code); i < codes.length && codes[i] == code; i++) {
+            if (xs[i] == key.getX() && ys[i] == key.getY() && zs[i] == key.getZ()
+                    && (anyValue || Objects.equals(values[i], value))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean containsKey(ID3Point key) {
+        return find(key, null, true);
+    }
+
+    @Override
+    public boolean contains(ID3Point key, V value) {
+        return find(key, value, false);
+    }
+
+    @Override
+    public boolean containsValue(V value, Predicate<ID3BoundingBox> pred) {
+        return selectiveValueStream(pred).anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        for (Object candidate : values) {
+            if (Objects.equals(candidate, value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public Stream<Map.Entry<ID3Point, V>> entryStream() {
+        return IntStream.range(0, codes.length).mapToObj(this::entryAt);
+    }
+
+    /**
+     * The predicate is tested against the cells of the implicit oc tree,
+     * the entries of every range that satisfies it are streamed.
+     */
+    @Override
+    public Stream<Map.Entry<ID3Point, V>> selectiveEntryStream(Predicate<ID3BoundingBox> predicate) {
+        final List<int[]> ranges = new ArrayList<>();
+        collect(predicate, 0, 0, 0, 0, 0, codes.length, ranges);
+        return ranges.stream().flatMap((r) -> IntStream.range(r[0], r[1]).mapToObj(this::entryAt));
+    }
+
+    private void collect(Predicate<ID3BoundingBox> predicate, int level, long ix, long iy, long iz, int from, int to, List<int[]> ranges) {
+        if (from == to) {
+            return;
+        }
+
+        final double scale = 1.0 / (1L << level);
+        final ID3BoundingBox cell = new D3BoundingBox(
+                minX + width * ix * scale - slackX, minY + height * iy * scale - slackY, minZ + depth * iz * scale - slackZ,
+                minX + width * (ix + 1) * scale + slackX, minY + height * (iy + 1) * scale + slackY, minZ + depth * (iz + 1) * scale + slackZ);
+        if (!predicate.test(cell)) {
+            return;
+        }
+
+        if (to - from <= LEAF_SIZE || level == Morton.BITS_3D) {
+            ranges.add(new int[]{from, to});
+            return;
+        }
+
+        final int shift = Morton.BITS_3D - level - 1;
+        int start = from;
+        for (int child = 0; child < CHILDREN; child++) {
+            final long cx = ix * 2 + (child & 1);
+            final long cy = iy * 2 + ((child >> 1) & 1);
+            final long cz = iz * 2 + ((child >> 2) & 1);
+            final int end = child == CHILDREN - 1 ? to
+                    : Morton.lowerBound(codes, start, to, childStart(child + 1, ix, iy, iz, shift));
+            collect(predicate, level + 1, cx, cy, cz, start, end, ranges);
+            start = end;
+        }
+    }
+
+    /**
+     *
+     * @return Distance that covers the rounding error of cell bounds between
+     * the provided bounds.
+     */
+    private static double slack(double lower, double upper) {
+        return 4 * Math.ulp(Math.max(Math.abs(lower), Math.abs(upper)));
+    }
+
+    /**
+     *
+     * @return First code of the child cell of the cell at the provided
+     * coordinates.
+     */
+    private static long childStart(int child, long ix, long iy, long iz, int shift) {
+        return Morton.encode((ix * 2 + (child & 1)) << shift, (iy * 2 + ((child >> 1) & 1)) << shift, (iz * 2 + ((child >> 2) & 1)) << shift);
+    }
+
+    /**
+     * Calls the consumer for every entry inside the window, bounds inclusive.
+     * The window is decomposed into ranges of Morton codes, the ranges are
+     * scanned over the coordinate arrays without creating objects per entry.
+     * Cells are pruned by comparing quantized window corners against cell
+     * indices, the same way the entries were quantized, coordinates are
+     * checked exactly.
+     *
+     * @param minX Lower x coordinate of the window.
+     * @param minY Lower y coordinate of the window.
+     * @param minZ Lower z coordinate of the window.
+     * @param maxX Upper x coordinate of the window.
+     * @param maxY Upper y coordinate of the window.
+     * @param maxZ Upper z coordinate of the window.
+     * @param consumer Consumer receiving the entries inside the window.
+     */
+    public void forEachInWindow(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, PointConsumer<? super V> consumer) {
+        Objects.requireNonNull(consumer);
+        window(minX, minY, minZ, maxX, maxY, maxZ,
+                Morton.quantize(minX, this.minX, width, Morton.BITS_3D), Morton.quantize(minY, this.minY, height, Morton.BITS_3D),
+                Morton.quantize(minZ, this.minZ, depth, Morton.BITS_3D), Morton.quantize(maxX, this.minX, width, Morton.BITS_3D),
+                Morton.quantize(maxY, this.minY, height, Morton.BITS_3D), Morton.quantize(maxZ, this.minZ, depth, Morton.BITS_3D),
+                0, 0, 0, 0, 0, codes.length, consumer);
+    }
+
+    /**
+     *
+     * @param window Window to search, bounds inclusive.
+     * @return A list of all values with coordinates inside the window.
+     */
+    public List<V> valuesInWindow(ID3BoundingBox window) {
+        final List<V> found = new ArrayList<>();
+        forEachInWindow(window.getLower().getX(), window.getLower().getY(), window.getLower().getZ(),
+                window.getUpper().getX(), window.getUpper().getY(), window.getUpper().getZ(),
+                (x, y, z, v) -> found.add(v));
+        return found;
+    }
+
+    /**
+     * Quantization is monotonic, so an entry inside the window has a cell
+     * index between the quantized corners. Only cells strictly between them
+     * are guaranteed to hold entries inside the window.
+     */
+    private void window(double wx0, double wy0, double wz0, double wx1, double wy1, double wz1,
+            long qx0, long qy0, long qz0, long qx1, long qy1, long qz1,
+            int level, long ix, long iy, long iz, int from, int to, PointConsumer<? super V> consumer) {
+        if (from == to) {
+            return;
+        }
+
+        final int bits = Morton.BITS_3D - level;
+        final long x0 = ix << bits;
+        final long x1 = ((ix + 1) << bits) - 1;
+        final long y0 = iy << bits;
+        final long y1 = ((iy + 1) << bits) - 1;
+        final long z0 = iz << bits;
+        final long z1 = ((iz + 1) << bits) - 1;
+        if (x1 < qx0 || qx1 < x0 || y1 < qy0 || qy1 < y0 || z1 < qz0 || qz1 < z0) {
+            return;
+        }
+
+        final boolean inside = qx0 < x0 && x1 < qx1 && qy0 < y0 && y1 < qy1 && qz0 < z0 && z1 < qz1;
+        if (inside || to - from <= LEAF_SIZE || level == Morton.BITS_3D) {
+            for (int i = from; i < to; i++) {
+                final double x = xs[i];
+                final double y = ys[i];
+                final double z = zs[i];
+                if (wx0 <= x && x <= wx1 && wy0 <= y && y <= wy1 && wz0 <= z && z <= wz1) {
+                    consumer.accept(x, y, z, valueAt(i));
+                }
+            }
+            return;
+        }
+
+        final int shift = Morton.BITS_3D - level - 1;
+        int start = from;
+        for (int child = 0; child < CHILDREN; child++) {
+            final long cx = ix * 2 + (child & 1);
+            final long cy = iy * 2 + ((child >> 1) & 1);
+            final long cz = iz * 2 + ((child >> 2) & 1);
+            final int end = child == CHILDREN - 1 ? to
+                    : Morton.lowerBound(codes, start, to, childStart(child + 1, ix, iy, iz, shift));
+            window(wx0, wy0, wz0, wx1, wy1, wz1, qx0, qy0, qz0, qx1, qy1, qz1, level + 1, cx, cy, cz, start, end, consumer);
+            start = end;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.linear;
+
+import java.util.Arrays;
+
+/**
+ * Morton code (Z-order) helpers. A Morton code interleaves the bits of the
+ * quantized coordinates, so sorting by code visits the cells of an implicit
+ * quad or oc tree in depth first order, and every cell covers one contiguous
+ * range of codes.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+final class Morton {
+
+    /**
+     * Bits per coordinate in two dimensions, the codes use 62 bits.
+     */
+    static final int BITS_2D = 31;
+    /**
+     * Bits per coordinate in three dimensions, the codes use 63 bits.
+     */
+    static final int BITS_3D = 21;
+
+    private Morton() {
+    }
+
+    /**
+     * Quantizes a coordinate relative to the bounds of a tree.
+     *
+     * @param value Coordinate to quantize.
+     * @param min Lower bound of the axis.
+     * @param extent Length of the axis.
+     * @param bits Number of bits of the result.
+     * @return Cell index of the coordinate at the finest level.
+     */
+    static long quantize(double value, double min, double extent, int bits) {
+        final long cells = 1L << bits;
+        final long cell = extent > 0 ? (long) ((value - min) / extent * cells) : 0;
+        return Math.max(0, Math.min(cells - 1, cell));
+    }
+
+    /**
+     * Spreads the lower 31 bits of the value to the even bits of the result.
+     */
+    static long spread2(long value) {
+        long x = value & 0x7fffffffL;
+        x = (x | (x << 16)) & 0x0000ffff0000ffffL;
+        x = (x | (x << 8)) & 0x00ff00ff00ff00ffL;
+        x = (x | (x << 4)) & 0x0f0f0f0f0f0f0f0fL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+    /**
+     * Spreads the lower 21 bits of the value to every third bit of the result.
+     */
+    static long spread3(long value) {
+        long x = value & 0x1fffffL;
+        x = (x | (x << 32)) & 0x001f00000000ffffL;
+        x = (x | (x << 16)) & 0x001f0000ff0000ffL;
+        x = (x | (x << 8)) & 0x100f00f00f00f00fL;
+        x = (x | (x << 4)) & 0x10c30c30c30c30c3L;
+        x = (x | (x << 2)) & 0x1249249249249249L;
+        return x;
+    }
+
+    static long encode(long x, long y) {
+        return spread2(x) | (spread2(y) << 1);
+    }
+
+    static long encode(long x, long y, long z) {
+        return spread3(x) | (spread3(y) << 1) | (spread3(z) << 2);
+    }
+
+    /**
+     * Sorts the codes ascending and returns the permutation applied to them.
+     * Least significant digit radix sort, codes must not be negative.
+     *
+     * @param codes Codes to sort, sorted in place.
+     * @return order[i] is the original index of the code now at index i.
+     */
+    static int[] sort(long[] codes) {
+        final int size = codes.length;
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        long[] keys = codes.clone();
+        long[] nextKeys = new long[size];
+        int[] nextOrder = new int[size];
+        final int[] counts = new int[257];
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[(int) ((keys[i] >>> shift) & 0xff) + 1]++;
+            }
+            if (counts[1] == size) {
+                continue;
+            }
+            for (int i = 1; i < counts.length; i++) {
+                counts[i] += counts[i - 1];
+            }
+            for (int i = 0; i < size; i++) {
+                final int slot = counts[(int) ((keys[i] >>> shift) & 0xff)]++;
+                nextKeys[slot] = keys[i];
+                nextOrder[slot] = order[i];
+            }
+
+            final long[] swapKeys = keys;
+            keys = nextKeys;
+            nextKeys = swapKeys;
+            final int[] swapOrder = order;
+            order = nextOrder;
+            nextOrder = swapOrder;
+        }
+
+        System.arraycopy(keys, 0, codes, 0, size);
+        return order;
+    }
+
+    /**
+     *
+     * @param codes Sorted codes.
+     * @param from First index of the range to search, inclusive.
+     * @param to Last index of the range to search, exclusive.
+     * @param code Code to search for.
+     * @return Index of the first code in the range that is not smaller than
+     * the code.
+     */
+    static int lowerBound(long[] codes, int from, int to, long code) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (codes[mid] < code) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+}
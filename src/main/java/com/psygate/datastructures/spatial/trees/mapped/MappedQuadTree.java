@@ -0,0 +1,732 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.mapped;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Point;
+import com.psygate.datastructures.spatial.trees.BoundedSpatialTree;
+import com.psygate.datastructures.util.Codec;
+import com.psygate.datastructures.util.Pair;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read-only point quad tree navigated directly in a memory mapped file. The
+ * file holds a flattened node layout, so opening a tree maps the file and
+ * reads nothing else. Queries only touch the pages of the nodes and entries
+ * they visit, the page cache is shared by every process mapping the same file.
+ *
+ * File layout, all sections are written in big endian byte order:
+ * <ul>
+ * <li>Header: magic, version, entry count, node count, tree bounds and the
+ * offsets of the following sections.</li>
+ * <li>Nodes in pre-order. A node holds its bounds, the indices of its four
+ * children (-1 for empty slots) and the range of entries of its subtree.
+ * Only leaves hold entries, so the entries of every subtree are
+ * contiguous.</li>
+ * <li>Entry coordinates as pairs of doubles.</li>
+ * <li>Offsets of the encoded values, one more than there are entries.</li>
+ * <li>Values encoded by the codec.</li>
+ * </ul>
+ *
+ * A file is limited to a single mapping of 2GB. Keys are not retained,
+ * entries handed out by the streams carry a new D2Point built from the stored
+ * coordinates. Values are decoded each time they are handed out. All reads are
+ * absolute, the tree can be queried from several threads.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <V> Value type.
+ */
+public final class MappedQuadTree<V> implements BoundedSpatialTree<ID2Point, V, ID2BoundingBox, ID2BoundingBox> {
+
+    static final int MAGIC = 0x50534d51;
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 64;
+    private static final int NODE_BYTES = 56;
+    private static final int COORD_BYTES = 16;
+    private static final int CHILDREN = 4;
+    private static final int EAST = 1;
+    private static final int SOUTH = 2;
+    private static final int NONE = -1;
+
+    private final ByteBuffer buffer;
+    private final Codec<? extends V> codec;
+    private final D2BoundingBox bounds;
+    private final int size;
+    private final int nodeCount;
+    private final int nodes;
+    private final int coords;
+    private final int offsets;
+    private final int values;
+
+    private MappedQuadTree(ByteBuffer buffer, Codec<? extends V> codec) throws IOException {
+        this.buffer = buffer;
+        this.codec = codec;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a mapped quad tree.");
+        }
+
+        final int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported version: " + version);
+        }
+
+        this.size = buffer.getInt(8);
+        this.nodeCount = buffer.getInt(12);
+        this.bounds = new D2BoundingBox(buffer.getDouble(16), buffer.getDouble(24),
+                buffer.getDouble(32), buffer.getDouble(40));
+        this.nodes = buffer.getInt(48);
+        this.coords = buffer.getInt(52);
+        this.offsets = buffer.getInt(56);
+        this.values = buffer.getInt(60);
+
+        if (size < 0 || nodeCount < 1
+                || nodes != HEADER_BYTES
+                || coords != nodes + (long) nodeCount * NODE_BYTES
+                || offsets != coords + (long) size * COORD_BYTES
+                || values != offsets + (size + 1L) * 4
+                || values > buffer.capacity()
+                || values + (long) buffer.getInt(offsets + size * 4) != buffer.capacity()) {
+            throw new IOException("Corrupt header.");
+        }
+    }
+
+    /**
+     * Maps the file. The file is not read beyond its header, the channel is
+     * closed once the mapping is established.
+     *
+     * @param <V> Value type.
+     * @param file File written by {@link #write}.
+     * @param codec Codec used to decode the values, has to match the codec the
+     * file was written with.
+     * @return Tree backed by the mapped file.
+     * @throws IOException If the file cannot be mapped or is not a mapped quad
+     * tree.
+     */
+    public static <V> MappedQuadTree<V> open(Path file, Codec<? extends V> codec) throws IOException {
+        Objects.requireNonNull(codec);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + channel.size());
+            }
+
+            return new MappedQuadTree<>(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), codec);
+        }
+    }
+
+    /**
+     * Writes the entries and bounds of the tree to the file.
+     *
+     * @param <V> Value type.
+     * @param tree Tree to write.
+     * @param maxNodeSize Maximum number of entries in a leaf.
+     * @param codec Codec used to encode the values.
+     * @param file File to write, replaced if it exists.
+     * @throws IOException If writing fails or the file would exceed 2GB.
+     * @see #write(Collection, ID2BoundingBox, int, Codec, Path)
+     */
+    public static <V> void write(BoundedSpatialTree<? extends ID2Point, V, ?, ID2BoundingBox> tree, int maxNodeSize,
+            Codec<? super V> codec, Path file) throws IOException {
+        write(tree.entries(), tree.getBounds(), maxNodeSize, codec, file);
+    }
+
+    /**
+     * Builds the node layout for the entries and writes it to the file.
+     *
+     * @param <V> Value type.
+     * @param entries Entries to write.
+     * @param bounds Bounds of the tree.
+     * @param maxNodeSize Maximum number of entries in a leaf.
+     * @param codec Codec used to encode the values.
+     * @param file File to write, replaced if it exists.
+     * @throws IOException If writing fails or the file would exceed 2GB.
+     * @throws IllegalArgumentException If a key is outside the bounds or the
+     * node size is not positive.
+     */
+    public static <V> void write(Collection<? extends Map.Entry<? extends ID2Point, V>> entries, ID2BoundingBox bounds,
+            int maxNodeSize, Codec<? super V> codec, Path file) throws IOException {
+        if (maxNodeSize <= 0) {
+            throw new IllegalArgumentException("Node size must be positive: " + maxNodeSize);
+        }
+        Objects.requireNonNull(codec);
+
+        final int size = entries.size();
+        final double[] xs = new double[size];
+        final double[] ys = new double[size];
+        final Object[] vals = new Object[size];
+        int index = 0;
+        for (Map.Entry<? extends ID2Point, V> entry : entries) {
+            final ID2Point key = Objects.requireNonNull(entry.getKey());
+            if (!bounds.contains(key)) {
+                throw new IllegalArgumentException("Key outside bounds: " + bounds + " - " + key);
+            }
+            xs[index] = key.getX();
+            ys[index] = key.getY();
+            vals[index] = entry.getValue();
+            index++;
+        }
+
+        final Builder builder = new Builder(xs, ys, maxNodeSize);
+        builder.build(bounds.getLower().getX(), bounds.getLower().getY(),
+                bounds.getUpper().getX(), bounds.getUpper().getY(), 0, size);
+
+        // The fixed size sections are checked before the buffers for them are
+        // allocated, their sizes overflow int long before the 2GB limit.
+        final int nodeCount = builder.records.size();
+        final long nodes = HEADER_BYTES;
+        final long coords = nodes + (long) nodeCount * NODE_BYTES;
+        final long offsets = coords + (long) size * COORD_BYTES;
+        final long values = offsets + (size + 1L) * 4;
+        if (values > Integer.MAX_VALUE) {
+            throw new IOException("Tree too large for a single mapping: " + values);
+        }
+
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        final DataOutputStream valueOut = new DataOutputStream(encoded);
+        final ByteBuffer valueOffsets = ByteBuffer.allocate((int) (values - offsets));
+        final ByteBuffer coordinates = ByteBuffer.allocate((int) (offsets - coords));
+        for (int i = 0; i < size; i++) {
+            final int entry = builder.order[i];
+            coordinates.putDouble(xs[entry]).putDouble(ys[entry]);
+            valueOffsets.putInt(valueOut.size());
+            @SuppressWarnings("unchecked")
+            final V value = (V) vals[entry];
+            codec.write(valueOut, value);
+        }
+        valueOut.flush();
+        valueOffsets.putInt(valueOut.size());
+
+        if (values + encoded.size() > Integer.MAX_VALUE) {
+            throw new IOException("Tree too large for a single mapping: " + (values + encoded.size()));
+        }
+
+        final ByteBuffer head = ByteBuffer.allocate((int) coords);
+        head.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(nodeCount)
+                .putDouble(bounds.getLower().getX()).putDouble(bounds.getLower().getY())
+                .putDouble(bounds.getUpper().getX()).putDouble(bounds.getUpper().getY())
+                .putInt((int) nodes).putInt((int) coords).putInt((int) offsets).putInt((int) values);
+        for (Record record : builder.records) {
+            head.putDouble(record.lx).putDouble(record.ly).putDouble(record.ux).putDouble(record.uy);
+            for (int child : record.children) {
+                head.putInt(child);
+            }
+            head.putInt(record.from).putInt(record.to);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, (ByteBuffer) head.flip());
+            writeFully(channel, (ByteBuffer) coordinates.flip());
+            writeFully(channel, (ByteBuffer) valueOffsets.flip());
+            writeFully(channel, ByteBuffer.wrap(encoded.toByteArray()));
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    /**
+     * The split point of a node, used when building and when descending.
+     */
+    private static double center(double lower, double upper) {
+        return lower + (upper - lower) / 2;
+    }
+
+    /**
+     * Callback receiving the coordinates and the value of an entry.
+     *
+     * @param <V> Value type.
+     */
+    @FunctionalInterface
+    public interface PointConsumer<V> {
+
+        /**
+         *
+         * @param x X coordinate of the entry.
+         * @param y Y coordinate of the entry.
+         * @param value Value of the entry.
+         */
+        void accept(double x, double y, V value);
+    }
+
+    @Override
+    public ID2BoundingBox getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public boolean envelopes(ID2Point key) {
+        return bounds.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @return Number of nodes in the file.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private int node(int index) {
+        return nodes + index * NODE_BYTES;
+    }
+
+    private int child(int node, int slot) {
+        return buffer.getInt(node + 32 + slot * 4);
+    }
+
+    private int from(int node) {
+        return buffer.getInt(node + 48);
+    }
+
+    private int to(int node) {
+        return buffer.getInt(node + 52);
+    }
+
+    private boolean isLeaf(int node) {
+        for (int slot = 0; slot < CHILDREN; slot++) {
+            if (child(node, slot) != NONE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private ID2BoundingBox boundsOf(int node) {
+        return new D2BoundingBox(buffer.getDouble(node), buffer.getDouble(node + 8),
+                buffer.getDouble(node + 16), buffer.getDouble(node + 24));
+    }
+
+    private double x(int entry) {
+        return buffer.getDouble(coords + entry * COORD_BYTES);
+    }
+
+    private double y(int entry) {
+        return buffer.getDouble(coords + entry * COORD_BYTES + 8);
+    }
+
+    private Map.Entry<ID2Point, V> entryAt(ValueReader reader, int entry) {
+        return new Pair<>(new D2Point(x(entry), y(entry)), reader.read(entry));
+    }
+
+    /**
+     *
+     * @return The leaf that would hold the point, or -1 if no such leaf
+     * exists.
+     */
+    private int leafOf(double x, double y) {
+        if (!(bounds.getLower().getX() <= x && x <= bounds.getUpper().getX()
+                && bounds.getLower().getY() <= y && y <= bounds.getUpper().getY())) {
+            return NONE;
+        }
+
+        int node = node(0);
+        while (!isLeaf(node)) {
+            final double cx = center(buffer.getDouble(node), buffer.getDouble(node + 16));
+            final double cy = center(buffer.getDouble(node + 8), buffer.getDouble(node + 24));
+            final int next = child(node, (x <= cx ? 0 : EAST) | (y <= cy ? 0 : SOUTH));
+            if (next == NONE) {
+                return NONE;
+            }
+            node = node(next);
+        }
+
+        return node;
+    }
+
+    private boolean find(ID2Point key, V value, boolean anyValue) {
+        final double x = key.getX();
+        final double y = key.getY();
+        final int leaf = leafOf(x, y);
+        if (leaf != NONE) {
+            final ValueReader reader = new ValueReader();
+            for (int i = from(leaf); i < to(leaf); i++) {
+                if (x(i) == x && y(i) == y && (anyValue || Objects.equals(reader.read(i), value))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean containsKey(ID2Point key) {
+        return find(Objects.requireNonNull(key), null, true);
+    }
+
+    @Override
+    public boolean contains(ID2Point key, V value) {
+        return find(Objects.requireNonNull(key), value, false);
+    }
+
+    @Override
+    public boolean containsValue(V value, Predicate<ID2BoundingBox> pred) {
+        return selectiveValueStream(pred).anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return valueStream().anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public Stream<Map.Entry<ID2Point, V>> entryStream() {
+        return StreamSupport.stream(new RangeSpliterator<>(new int[]{0, size}, this::entryAt), false);
+    }
+
+    @Override
+    public Stream<V> valueStream() {
+        return StreamSupport.stream(new RangeSpliterator<>(new int[]{0, size}, ValueReader::read), false);
+    }
+
+    /**
+     * The predicate is tested against the bounds of the nodes, the entries of
+     * every leaf that satisfies it are streamed.
+     */
+    @Override
+    public Stream<Map.Entry<ID2Point, V>> selectiveEntryStream(Predicate<ID2BoundingBox> predicate) {
+        Objects.requireNonNull(predicate);
+        final List<int[]> ranges = new ArrayList<>();
+        collect(node(0), predicate, ranges);
+        final int[] flat = new int[ranges.size() * 2];
+        for (int i = 0; i < ranges.size(); i++) {
+            flat[i * 2] = ranges.get(i)[0];
+            flat[i * 2 + 1] = ranges.get(i)[1];
+        }
+
+        return StreamSupport.stream(new RangeSpliterator<>(flat, this::entryAt), false);
+    }
+
+    private void collect(int node, Predicate<ID2BoundingBox> predicate, List<int[]> ranges) {
+        if (from(node) == to(node) || !predicate.test(boundsOf(node))) {
+            return;
+        }
+
+        if (isLeaf(node)) {
+            ranges.add(new int[]{from(node), to(node)});
+        } else {
+            for (int slot = 0; slot < CHILDREN; slot++) {
+                final int child = child(node, slot);
+                if (child != NONE) {
+                    collect(node(child), predicate, ranges);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls the consumer for every entry inside the window, bounds inclusive.
+     * Nodes fully inside the window are scanned without descending further.
+     *
+     * @param minX Lower x coordinate of the window.
+     * @param minY Lower y coordinate of the window.
+     * @param maxX Upper x coordinate of the window.
+     * @param maxY Upper y coordinate of the window.
+     * @param consumer Consumer receiving the entries inside the window.
+     */
+    public void forEachInWindow(double minX, double minY, double maxX, double maxY, PointConsumer<? super V> consumer) {
+        Objects.requireNonNull(consumer);
+        window(node(0), minX, minY, maxX, maxY, consumer, new ValueReader());
+    }
+
+    /**
+     *
+     * @param window Window to search, bounds inclusive.
+     * @return A list of all values with coordinates inside the window.
+     */
+    public List<V> valuesInWindow(ID2BoundingBox window) {
+        final List<V> found = new ArrayList<>();
+        forEachInWindow(window.getLower().getX(), window.getLower().getY(),
+                window.getUpper().getX(), window.getUpper().getY(),
+                (x, y, v) -> found.add(v));
+        return found;
+    }
+
+    private void window(int node, double wx0, double wy0, double wx1, double wy1, PointConsumer<? super V> consumer, ValueReader reader) {
+        final int from = from(node);
+        final int to = to(node);
+        final double x0 = buffer.getDouble(node);
+        final double y0 = buffer.getDouble(node + 8);
+        final double x1 = buffer.getDouble(node + 16);
+        final double y1 = buffer.getDouble(node + 24);
+        if (from == to || x1 < wx0 || wx1 < x0 || y1 < wy0 || wy1 < y0) {
+            return;
+        }
+
+        if ((wx0 <= x0 && x1 <= wx1 && wy0 <= y0 && y1 <= wy1) || isLeaf(node)) {
+            for (int i = from; i < to; i++) {
+                final double x = x(i);
+                final double y = y(i);
+                if (wx0 <= x && x <= wx1 && wy0 <= y && y <= wy1) {
+                    consumer.accept(x, y, reader.read(i));
+                }
+            }
+        } else {
+            for (int slot = 0; slot < CHILDREN; slot++) {
+                final int child = child(node, slot);
+                if (child != NONE) {
+                    window(node(child), wx0, wy0, wx1, wy1, consumer, reader);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes values through a private view of the buffer, so a query creates
+     * one reader instead of one stream per value.
+     */
+    private final class ValueReader {
+
+        private final ByteBuffer view = buffer.duplicate();
+        private final DataInputStream in = new DataInputStream(new ByteBufferInputStream(view));
+
+        V read(int entry) {
+            view.limit(values + buffer.getInt(offsets + entry * 4 + 4));
+            view.position(values + buffer.getInt(offsets + entry * 4));
+            try {
+                return codec.read(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads an element of a stream from an entry.
+     */
+    private interface EntryReader<V, T> {
+
+        T read(MappedQuadTree<V>.ValueReader reader, int entry);
+    }
+
+    /**
+     * Spliterator over entry ranges, given as flattened [from, to) pairs. Every
+     * split creates its own reader on first use, so a sequential stream
+     * decodes all values through one reader and no reader is shared between
+     * threads.
+     */
+    private final class RangeSpliterator<T> implements Spliterator<T> {
+
+        private final int[] ranges;
+        private final EntryReader<V, T> mapper;
+        private int next, end, pos, to;
+        private ValueReader reader;
+
+        RangeSpliterator(int[] ranges, EntryReader<V, T> mapper) {
+            this(ranges, 0, ranges.length / 2, mapper);
+        }
+
+        private RangeSpliterator(int[] ranges, int next, int end, EntryReader<V, T> mapper) {
+            this.ranges = ranges;
+            this.next = next;
+            this.end = end;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            while (pos == to) {
+                if (next == end) {
+                    return false;
+                }
+                load();
+            }
+
+            if (reader == null) {
+                reader = new ValueReader();
+            }
+            action.accept(mapper.read(reader, pos++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (pos == to && next < end) {
+                load();
+            }
+
+            if (next < end) {
+                final int mid = (next + end) >>> 1;
+                final RangeSpliterator<T> prefix = new RangeSpliterator<>(ranges, next, mid, mapper);
+                prefix.pos = pos;
+                prefix.to = to;
+                pos = to;
+                next = mid;
+                return prefix;
+            } else if (to - pos > 1) {
+                final int mid = (pos + to) >>> 1;
+                final Spliterator<T> prefix = new RangeSpliterator<>(new int[]{pos, mid}, mapper);
+                pos = mid;
+                return prefix;
+            } else {
+                return null;
+            }
+        }
+
+        private void load() {
+            pos = ranges[next * 2];
+            to = ranges[next * 2 + 1];
+            next++;
+        }
+
+        @Override
+        public long estimateSize() {
+            long count = to - pos;
+            for (int i = next; i < end; i++) {
+                count += ranges[i * 2 + 1] - ranges[i * 2];
+            }
+            return count;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE;
+        }
+    }
+
+    /**
+     * Node of the layout under construction.
+     */
+    private static final class Record {
+
+        private final double lx, ly, ux, uy;
+        private final int[] children = {NONE, NONE, NONE, NONE};
+        private final int from, to;
+
+        Record(double lx, double ly, double ux, double uy, int from, int to) {
+            this.lx = lx;
+            this.ly = ly;
+            this.ux = ux;
+            this.uy = uy;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Partitions the entries by quadrant, recording the nodes in pre-order.
+     */
+    private static final class Builder {
+
+        private final double[] xs;
+        private final double[] ys;
+        private final int maxNodeSize;
+        private final int[] order;
+        private final int[] scratch;
+        private final List<Record> records = new ArrayList<>();
+
+        Builder(double[] xs, double[] ys, int maxNodeSize) {
+            this.xs = xs;
+            this.ys = ys;
+            this.maxNodeSize = maxNodeSize;
+            this.order = IntStream.range(0, xs.length).toArray();
+            this.scratch = new int[xs.length];
+        }
+
+        /**
+         *
+         * @return Index of the new node.
+         */
+        int build(double lx, double ly, double ux, double uy, int from, int to) {
+            final int index = records.size();
+            final Record record = new Record(lx, ly, ux, uy, from, to);
+            records.add(record);
+
+            final double cx = center(lx, ux);
+            final double cy = center(ly, uy);
+            if (to - from <= maxNodeSize || !(lx < cx && cx < ux && ly < cy && cy < uy) || allEqual(from, to)) {
+                return index;
+            }
+
+            final int[] counts = new int[CHILDREN + 1];
+            for (int i = from; i < to; i++) {
+                counts[slot(order[i], cx, cy) + 1]++;
+            }
+            for (int slot = 0; slot < CHILDREN; slot++) {
+                counts[slot + 1] += counts[slot];
+            }
+            final int[] next = counts.clone();
+            for (int i = from; i < to; i++) {
+                scratch[from + next[slot(order[i], cx, cy)]++] = order[i];
+            }
+            System.arraycopy(scratch, from, order, from, to - from);
+
+            for (int slot = 0; slot < CHILDREN; slot++) {
+                final int start = from + counts[slot];
+                final int end = from + counts[slot + 1];
+                if (start < end) {
+                    final boolean east = (slot & EAST) != 0;
+                    final boolean south = (slot & SOUTH) != 0;
+                    record.children[slot] = build(
+                            east ? cx : lx, south ? cy : ly,
+                            east ? ux : cx, south ? uy : cy,
+                            start, end);
+                }
+            }
+
+            return index;
+        }
+
+        private int slot(int entry, double cx, double cy) {
+            return (xs[entry] <= cx ? 0 : EAST) | (ys[entry] <= cy ? 0 : SOUTH);
+        }
+
+        private boolean allEqual(int from, int to) {
+            final int first = order[from];
+            for (int i = from + 1; i < to; i++) {
+                if (xs[order[i]] != xs[first] || ys[order[i]] != ys[first]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
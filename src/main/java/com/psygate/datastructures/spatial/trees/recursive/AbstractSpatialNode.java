@@ -19,25 +19,37 @@
 package com.psygate.datastructures.spatial.trees.recursive;
 
 import com.psygate.datastructures.util.Pair;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+
 /**
- * An abstract node that can hold values.
+ * An abstract node that can hold values. Children are kept in a fixed size
+ * array, indexed by the ordinal of the subdivision they represent.
  *
  * @author psygate (https://github.com/psygate)
  */
-abstract class AbstractSpatialNode<K, V, Q extends AbstractSpatialNode, T> {
+abstract class AbstractSpatialNode<K, V, Q extends AbstractSpatialNode, T extends Enum<T>> {
 
     private final List<Pair<K, V>> values;
-    private final Map<T, Q> children;
+    private final Q[] children;
     private final int maxNodeSize;
+    private int childCount = 0;
+    private int subtreeCount = 0;
     private boolean split = false;
 
-    public AbstractSpatialNode(List<Pair<K, V>> values, int maxNodeSize) {
+    /**
+     *
+     * @param values Backing list for the values of this node.
+     * @param maxNodeSize Maximum node size before the node is split.
+     * @param slots Number of child slots, usually the number of constants of
+     * the subdivision type.
+     */
+    @SuppressWarnings("unchecked")
+    public AbstractSpatialNode(List<Pair<K, V>> values, int maxNodeSize, int slots) {
         this.values = values;
-        this.children = new HashMap<>();
+        this.children = (Q[]) new AbstractSpatialNode[slots];
         this.maxNodeSize = maxNodeSize;
     }
 
@@ -59,11 +71,21 @@ abstract class AbstractSpatialNode<K, V, Q extends AbstractSpatialNode, T> {
     void add(Pair<K, V> value) {
         values.add(value);
 
-        if (size() > maxNodeSize && !isSplit()) {
+        if (size() > maxNodeSize && !isSplit() && canSplit()) {
             split();
         }
     }
 
+    /**
+     * A node whose bounds can no longer be subdivided must not be split, equal
+     * keys would otherwise create an endless chain of nodes.
+     *
+     * @return True if the node can be split.
+     */
+    boolean canSplit() {
+        return true;
+    }
+
     /**
      * Splits the node into sub nodes and moves all value pairs that are
      * contained within a sub node to the corresponding sub node.
@@ -93,7 +115,7 @@ abstract class AbstractSpatialNode<K, V, Q extends AbstractSpatialNode, T> {
      * @return True if this node has children.
      */
     boolean hasChildren() {
-        return !children.isEmpty();
+        return childCount != 0;
     }
 
     /**
@@ -101,7 +123,9 @@ abstract class AbstractSpatialNode<K, V, Q extends AbstractSpatialNode, T> {
      */
     void clear() {
         values.clear();
-        children.clear();
+        Arrays.fill(children, null);
+        childCount = 0;
+        subtreeCount = 0;
     }
 
     boolean isSplit() {
@@ -113,25 +137,59 @@ abstract class AbstractSpatialNode<K, V, Q extends AbstractSpatialNode, T> {
     }
 
     /**
-     * All getChildren() of this node. Modifying this list may lead to undefined
-     * behaviour.
+     * All children of this node. The returned list is a copy, modifying it does
+     * not alter this node.
+     *
+     * @return All children of this node.
+     */
+    List<Q> getChildren() {
+        List<Q> list = new ArrayList<>(childCount);
+        for (Q child : children) {
+            if (child != null) {
+                list.add(child);
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     *
+     * @return Number of child slots of this node.
+     */
+    int getChildSlots() {
+        return children.length;
+    }
+
+    /**
      *
-     * @return All getChildren() of this node.
+     * @param slot Index of the child slot.
+     * @return The child in the slot or null, if the slot is empty.
      */
-    Map<T, Q> getChildren() {
-        return children;
+    Q getChild(int slot) {
+        return children[slot];
+    }
+
+    void setChild(int slot, Q child) {
+        if (children[slot] == null && child != null) {
+            childCount++;
+        } else if (children[slot] != null && child == null) {
+            childCount--;
+        }
+
+        children[slot] = child;
     }
 
     void setChild(T id, Q child) {
-        children.put(id, child);
+        setChild(id.ordinal(), child);
     }
 
     Q getChild(T id) {
-        return children.get(id);
+        return children[id.ordinal()];
     }
 
     boolean hasChild(T id) {
-        return children.containsKey(id);
+        return children[id.ordinal()] != null;
     }
 
     void clearValues() {
@@ -153,7 +211,76 @@ abstract class AbstractSpatialNode<K, V, Q extends AbstractSpatialNode, T> {
      * @return
      */
     int subtreeValueCount() {
-        return size() + getChildren().values().stream().mapToInt(AbstractSpatialNode::subtreeValueCount).sum();
+        int count = size();
+        for (Q child : children) {
+            if (child != null) {
+                count += child.subtreeValueCount();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Number of values in the subtree, maintained by the nodes when values are
+     * added or removed. Equal to subtreeValueCount(), without visiting the
+     * subtree.
+     *
+     * @return Number of values in this node and all of its descendants.
+     */
+    int subtreeCount() {
+        return subtreeCount;
+    }
+
+    /**
+     * Adjusts the maintained value count of this subtree. Nodes have to call
+     * this whenever values enter or leave the subtree.
+     *
+     * @param delta Number of values added, negative if values were removed.
+     */
+    void addSubtreeCount(int delta) {
+        subtreeCount += delta;
+        assert subtreeCount >= 0;
+    }
+
+    /**
+     * Drops empty children after a removal and merges the whole subtree back
+     * into this node, once it holds no more than mergeThreshold values. A
+     * threshold below the maximum node size keeps alternating inserts and
+     * removes from splitting and merging the same node over and over.
+     *
+     * @param mergeThreshold Subtree size at or below which the subtree is
+     * merged into this node.
+     */
+    @SuppressWarnings("unchecked")
+    void merge(int mergeThreshold) {
+        final boolean collapse = isSplit() && subtreeCount <= mergeThreshold;
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] == null) {
+                continue;
+            }
+
+            if (collapse) {
+                children[i].collectValues(values);
+                setChild(i, null);
+            } else if (children[i].subtreeCount() == 0) {
+                setChild(i, null);
+            }
+        }
+
+        if (collapse) {
+            setSplit(false);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void collectValues(List<Pair<K, V>> target) {
+        target.addAll(values);
+        for (Q child : children) {
+            if (child != null) {
+                child.collectValues(target);
+            }
+        }
     }
 
     /**
@@ -162,7 +289,14 @@ abstract class AbstractSpatialNode<K, V, Q extends AbstractSpatialNode, T> {
      * @return Count of nodes in the subtree.
      */
     int subtreeSize() {
-        return 1 + getChildren().values().stream().mapToInt(AbstractSpatialNode::subtreeSize).sum();
+        int count = 1;
+        for (Q child : children) {
+            if (child != null) {
+                count += child.subtreeSize();
+            }
+        }
+
+        return count;
     }
 
     /**
@@ -171,6 +305,16 @@ abstract class AbstractSpatialNode<K, V, Q extends AbstractSpatialNode, T> {
      * @return True if the subtree starting at this node contains no values.
      */
     boolean isSubtreeEmpty() {
-        return isEmpty() && getChildren().values().stream().allMatch(AbstractSpatialNode::isSubtreeEmpty);
+        if (!isEmpty()) {
+            return false;
+        }
+
+        for (Q child : children) {
+            if (child != null && !child.isSubtreeEmpty()) {
+                return false;
+            }
+        }
+
+        return true;
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.util.Pair;
+import com.psygate.datastructures.spatial.Axis2D;
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Quad tree node for the concurrent quad tree. The values of a node are an
+ * immutable array, replaced on every modification while holding the lock of
+ * the node, so readers only read the current array and never block. Children
+ * are published lock-free with compare-and-set.
+ *
+ * A split only marks the node as split, values already stored stay in the
+ * node, new values are routed to the children. This way a split never moves
+ * values that a concurrent reader could miss.
+ *
+ * @see ConcurrentQuadTree
+ * @author psygate (https://github.com/psygate)
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+final class ConcurrentQuadNode<K extends ID2Boundable, V> {
+
+    private static final int EAST = 1;
+    private static final int SOUTH = 2;
+    private static final Pair<?, ?>[] EMPTY = new Pair<?, ?>[0];
+
+    private final ID2BoundingBox box;
+    private final int maxNodeSize;
+    private final AtomicReferenceArray<ConcurrentQuadNode<K, V>> children = new AtomicReferenceArray<>(4);
+    private volatile Pair<K, V>[] values;
+    private volatile boolean split = false;
+
+    @SuppressWarnings("unchecked")
+    ConcurrentQuadNode(ID2BoundingBox box, int maxNodeSize) {
+        this.box = box;
+        this.maxNodeSize = maxNodeSize;
+        this.values = (Pair<K, V>[]) EMPTY;
+    }
+
+    /**
+     * Bounds of the node.
+     *
+     * @return Bounds of the node.
+     */
+    ID2BoundingBox getBounds() {
+        return box;
+    }
+
+    /**
+     *
+     * @return Current values of this node. The array must not be modified.
+     */
+    Pair<K, V>[] getValues() {
+        return values;
+    }
+
+    boolean isSplit() {
+        return split;
+    }
+
+    /**
+     *
+     * @param slot Child slot.
+     * @return The child in the slot or null, if the slot is empty.
+     */
+    ConcurrentQuadNode<K, V> getChild(int slot) {
+        return children.get(slot);
+    }
+
+    /**
+     * Inserts the pair into the subtree. Only the node that finally stores
+     * the pair is locked.
+     *
+     * @param pair Pair to insert.
+     */
+    void add(Pair<K, V> pair) {
+        assert box.contains(pair.getKey()) : "Not contained: " + box + " - " + pair.getKey();
+        ConcurrentQuadNode<K, V> node = this;
+
+        while (true) {
+            final int index = node.childIndex(pair.getKey());
+            if (node.split && index >= 0) {
+                node = node.child(index);
+                continue;
+            }
+
+            synchronized (node) {
+                if (node.split && index >= 0) {
+                    continue;
+                }
+
+                final Pair<K, V>[] current = node.values;
+                final Pair<K, V>[] next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = pair;
+                node.values = next;
+                if (!node.split && next.length > maxNodeSize && node.canSplit()) {
+                    node.split = true;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * A node whose bounds can no longer be halved is never split, otherwise
+     * equal keys would create an endless chain of nodes.
+     */
+    private boolean canSplit() {
+        final double cx = box.getCenterX();
+        final double cy = box.getCenterY();
+        return box.getLower().getX() < cx && cx < box.getUpper().getX()
+                && box.getLower().getY() < cy && cy < box.getUpper().getY();
+    }
+
+    private ConcurrentQuadNode<K, V> child(int index) {
+        ConcurrentQuadNode<K, V> child = children.get(index);
+        if (child == null) {
+            final ConcurrentQuadNode<K, V> created = new ConcurrentQuadNode<>(childBounds(index), maxNodeSize);
+            if (children.compareAndSet(index, null, created)) {
+                child = created;
+            } else {
+                child = children.get(index);
+            }
+        }
+
+        return child;
+    }
+
+    /**
+     *
+     * @param key Key to locate.
+     * @return Child slot of the quadrant containing the key, or -1 if the key
+     * crosses a split line of this node.
+     */
+    int childIndex(K key) {
+        final int x = half(key, box.getCenterX(), Axis2D.X);
+        final int y = half(key, box.getCenterY(), Axis2D.Y);
+        return x < 0 || y < 0 ? -1 : x * EAST | y * SOUTH;
+    }
+
+    private static int half(ID2Boundable key, double center, Axis2D axis) {
+        if (key.leftOf(center, axis)) {
+            return 0;
+        } else if (key.rightOf(center, axis)) {
+            return 1;
+        } else {
+            return -1;
+        }
+    }
+
+    private ID2BoundingBox childBounds(int index) {
+        final double cx = box.getCenterX();
+        final double cy = box.getCenterY();
+        final boolean east = (index & EAST) != 0;
+        final boolean south = (index & SOUTH) != 0;
+
+        return new D2BoundingBox(
+                east ? cx : box.getLower().getX(),
+                south ? cy : box.getLower().getY(),
+                east ? box.getUpper().getX() : cx,
+                south ? box.getUpper().getY() : cy
+        );
+    }
+
+    /**
+     * Removes all pairs of this node that satisfy the filter. The node is only
+     * locked if it holds a matching pair.
+     *
+     * @param filter Filter selecting the pairs to remove.
+     * @param removed List to add the removed pairs to.
+     */
+    @SuppressWarnings("unchecked")
+    void removeIf(Predicate<Pair<K, V>> filter, List<Pair<K, V>> removed) {
+        if (Arrays.stream(values).noneMatch(filter)) {
+            return;
+        }
+
+        synchronized (this) {
+            final Pair<K, V>[] current = values;
+            final Pair<K, V>[] next = (Pair<K, V>[]) new Pair<?, ?>[current.length];
+            int count = 0;
+            for (Pair<K, V> pair : current) {
+                if (filter.test(pair)) {
+                    removed.add(pair);
+                } else {
+                    next[count++] = pair;
+                }
+            }
+            values = Arrays.copyOf(next, count);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.BoundedSpatialTree;
+import com.psygate.datastructures.spatial.trees.MutableSpatialTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Thread safe quad tree. Inserts and removes only lock the nodes whose values
+ * they change, children are published lock-free. Readers never block, streams
+ * are weakly consistent: they never throw a ConcurrentModificationException
+ * and see every entry that was present for the whole traversal, entries added
+ * or removed during the traversal may or may not be seen.
+ *
+ * {@link #size()} and {@link #clear()} are not atomic with respect to
+ * concurrent modifications.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public class ConcurrentQuadTree<K extends ID2Boundable, V> implements MutableSpatialTree<K, V, ID2BoundingBox>, BoundedSpatialTree<K, V, ID2BoundingBox, ID2BoundingBox> {
+
+    private final ID2BoundingBox bounds;
+    private final int maxNodeSize;
+    private final LongAdder size = new LongAdder();
+    private volatile ConcurrentQuadNode<K, V> root;
+
+    /**
+     *
+     * @param bounds Bounds of the new quad tree.
+     * @param maxNodeSize Maximum node size.
+     */
+    public ConcurrentQuadTree(ID2BoundingBox bounds, int maxNodeSize) {
+        if (maxNodeSize <= 0) {
+            throw new IllegalArgumentException("Node size must be positive: " + maxNodeSize);
+        }
+        this.bounds = new D2BoundingBox(bounds);
+        this.maxNodeSize = maxNodeSize;
+        this.root = new ConcurrentQuadNode<>(this.bounds, maxNodeSize);
+    }
+
+    /**
+     *
+     * @param tree Tree to copy the entries from.
+     * @param maxNodeSize Maximum node size.
+     */
+    public ConcurrentQuadTree(BoundedSpatialTree<K, V, ID2BoundingBox, ID2BoundingBox> tree, int maxNodeSize) {
+        this(tree.getBounds(), maxNodeSize);
+        tree.entryStream().forEach(this::put);
+    }
+
+    @Override
+    public ID2BoundingBox getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public boolean envelopes(K key) {
+        return bounds.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size.sum()));
+    }
+
+    public int getMaxNodeSize() {
+        return maxNodeSize;
+    }
+
+    @Override
+    public void put(Pair<K, V> pair) {
+        Objects.requireNonNull(pair.getKey());
+        if (!envelopes(pair.getKey())) {
+            throw new IllegalArgumentException("Key outside bounds: " + bounds + " - " + pair.getKey());
+        }
+        root.add(pair);
+        size.increment();
+    }
+
+    @Override
+    public Collection<V> remove(K key) {
+        return removeAt(key, (p) -> Objects.equals(p.getKey(), key));
+    }
+
+    @Override
+    public Collection<V> remove(K key, V value) {
+        return removeAt(key, (p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value));
+    }
+
+    /**
+     * Removes matching pairs from all nodes on the path of the key. Only nodes
+     * that hold a matching pair are locked.
+     */
+    private Collection<V> removeAt(K key, Predicate<Pair<K, V>> filter) {
+        Objects.requireNonNull(key);
+        final List<Pair<K, V>> removed = new LinkedList<>();
+        if (envelopes(key)) {
+            ConcurrentQuadNode<K, V> node = root;
+            while (node != null) {
+                node.removeIf(filter, removed);
+                final int index = node.childIndex(key);
+                node = index < 0 ? null : node.getChild(index);
+            }
+        }
+
+        return collect(removed);
+    }
+
+    @Override
+    public Collection<V> removeValue(V value, Predicate<ID2BoundingBox> hint) {
+        final List<Pair<K, V>> removed = new LinkedList<>();
+        final Predicate<Pair<K, V>> filter = (p) -> Objects.equals(p.getValue(), value);
+        nodeStream(hint).forEach((n) -> n.removeIf(filter, removed));
+
+        return collect(removed);
+    }
+
+    private Collection<V> collect(List<Pair<K, V>> removed) {
+        final List<V> values = new LinkedList<>();
+        for (Pair<K, V> pair : removed) {
+            values.add(pair.getValue());
+        }
+        size.add(-values.size());
+
+        return values;
+    }
+
+    /**
+     * Replaces the root with an empty node. Entries inserted concurrently may
+     * end up in the discarded root.
+     */
+    @Override
+    public void clear() {
+        root = new ConcurrentQuadNode<>(bounds, maxNodeSize);
+        size.reset();
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return pathStream(key).anyMatch((p) -> Objects.equals(p.getKey(), key));
+    }
+
+    @Override
+    public boolean contains(K key, V value) {
+        return pathStream(key).anyMatch((p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value));
+    }
+
+    /**
+     *
+     * @param key Key to locate.
+     * @return Stream of all pairs stored on the path of the key.
+     */
+    private Stream<Pair<K, V>> pathStream(K key) {
+        Objects.requireNonNull(key);
+        if (!envelopes(key)) {
+            return Stream.empty();
+        }
+
+        final Stream.Builder<Pair<K, V>[]> path = Stream.builder();
+        ConcurrentQuadNode<K, V> node = root;
+        while (node != null) {
+            path.add(node.getValues());
+            final int index = node.childIndex(key);
+            node = index < 0 ? null : node.getChild(index);
+        }
+
+        return path.build().flatMap(Arrays::stream);
+    }
+
+    @Override
+    public boolean containsValue(V value, Predicate<ID2BoundingBox> pred) {
+        return selectiveValueStream(pred).anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return valueStream().anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> selectiveEntryStream(Predicate<ID2BoundingBox> predicate) {
+        return nodeStream(predicate).flatMap((n) -> Arrays.<Map.Entry<K, V>>stream(n.getValues()));
+    }
+
+    private Stream<ConcurrentQuadNode<K, V>> nodeStream(Predicate<ID2BoundingBox> predicate) {
+        final ConcurrentQuadNode<K, V> start = root;
+        if (!predicate.test(start.getBounds())) {
+            return Stream.empty();
+        }
+
+        return StreamSupport.stream(new NodeSpliterator(start, predicate), false);
+    }
+
+    /**
+     * Weakly consistent spliterator over all nodes that satisfy the predicate.
+     */
+    private final class NodeSpliterator implements Spliterator<ConcurrentQuadNode<K, V>> {
+
+        private final Deque<ConcurrentQuadNode<K, V>> stack;
+        private final Predicate<ID2BoundingBox> predicate;
+
+        NodeSpliterator(ConcurrentQuadNode<K, V> node, Predicate<ID2BoundingBox> predicate) {
+            this(new ArrayDeque<>(), predicate);
+            stack.add(node);
+        }
+
+        private NodeSpliterator(Deque<ConcurrentQuadNode<K, V>> stack, Predicate<ID2BoundingBox> predicate) {
+            this.stack = stack;
+            this.predicate = Objects.requireNonNull(predicate);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ConcurrentQuadNode<K, V>> action) {
+            if (stack.isEmpty()) {
+                return false;
+            }
+
+            final ConcurrentQuadNode<K, V> selected = stack.poll();
+            for (int i = 0; i < 4; i++) {
+                final ConcurrentQuadNode<K, V> child = selected.getChild(i);
+                if (child != null && predicate.test(child.getBounds())) {
+                    stack.add(child);
+                }
+            }
+            action.accept(selected);
+            return true;
+        }
+
+        @Override
+        public Spliterator<ConcurrentQuadNode<K, V>> trySplit() {
+            if (stack.size() < 2) {
+                return null;
+            }
+
+            final Deque<ConcurrentQuadNode<K, V>> half = new ArrayDeque<>();
+            for (int i = stack.size() / 2; i > 0; i--) {
+                half.add(stack.pollLast());
+            }
+
+            return new NodeSpliterator(half, predicate);
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.CONCURRENT;
+        }
+    }
+}
@@ -20,20 +20,27 @@ package com.psygate.datastructures.spatial.trees.recursive;
 
 import com.psygate.datastructures.util.Pair;
 import com.psygate.datastructures.spatial.D3BoundingBox;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Queue;
 import java.util.Spliterator;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import com.psygate.datastructures.spatial.trees.BoundedSpatialTree;
+import com.psygate.datastructures.spatial.trees.MetricSpatialTree;
 import com.psygate.datastructures.spatial.ID3BoundingBox;
 import com.psygate.datastructures.spatial.ID3Boundable;
+import com.psygate.datastructures.spatial.ID3Point;
 
 /**
  * Immutable quad tree implementation. This tree cannot be modified after
@@ -43,9 +50,15 @@ import com.psygate.datastructures.spatial.ID3Boundable;
  * @param <K> Key type.
  * @param <V> Value type.
  */
-public class ImmutableOcTree<K extends ID3Boundable, V> implements BoundedSpatialTree<K, V, ID3BoundingBox, ID3BoundingBox> {
+public class ImmutableOcTree<K extends ID3Boundable, V> implements MetricSpatialTree<K, V, ID3BoundingBox, ID3BoundingBox, ID3Point> {
+
+    /**
+     * Estimated size of a D3BoundingBox with its three D3Point corners and center.
+     */
+    private static final int BOUNDS_BYTES = 144;
 
     private final OcNode<K, V> root;
+    private volatile QueryListener queryListener = null;
     int size = 0;
 
     /**
@@ -57,6 +70,15 @@ public class ImmutableOcTree<K extends ID3Boundable, V> implements BoundedSpatia
         this.root = new OcNode<>(new D3BoundingBox(bounds), maxNodeSize);
     }
 
+    /**
+     *
+     * @param root Fully built root node, the tree takes ownership of it.
+     */
+    ImmutableOcTree(OcNode<K, V> root) {
+        this.root = root;
+        this.size = root.subtreeCount();
+    }
+
     /**
      *
      * @param tree SpatialTree to copy.
@@ -87,17 +109,36 @@ public class ImmutableOcTree<K extends ID3Boundable, V> implements BoundedSpatia
     }
 
     /**
+     * Bulk loads the values, partitioning them by child slot level by level
+     * instead of inserting and splitting them one by one.
      *
      * @param values Values to insert upon construction.
      * @param bounds Bounds of the new tree.
      * @param maxNodeSize Maximum node size of the new tree.
+     * @throws IllegalArgumentException If a key is outside the bounds.
      */
     ImmutableOcTree(Stream<? extends Map.Entry<K, V>> values, ID3BoundingBox bounds, int maxNodeSize) {
-        this.root = new OcNode<>(new D3BoundingBox(bounds), maxNodeSize);
-        values.forEach((en) -> {
-            root.add(new Pair<>(en));
-            size++;
-        });
+        this(values, new OcNode<>(new D3BoundingBox(bounds), maxNodeSize));
+    }
+
+    /**
+     * Bulk loads the values into an empty root node.
+     *
+     * @param values Values to insert upon construction.
+     * @param root Empty root node, the tree takes ownership of it.
+     * @throws IllegalArgumentException If a key is outside the bounds.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ImmutableOcTree(Stream<? extends Map.Entry<K, V>> values, OcNode<K, V> root) {
+        this.root = root;
+        final Pair<K, V>[] pairs = values.map((en) -> new Pair<K, V>(en)).toArray(Pair[]::new);
+        for (Pair<K, V> pair : pairs) {
+            if (!root.getBounds().contains(pair.getKey())) {
+                throw new IllegalArgumentException("Key outside bounds: " + root.getBounds() + " - " + pair.getKey());
+            }
+        }
+        root.load(pairs, 0, pairs.length, new Pair[pairs.length], new byte[pairs.length]);
+        size = pairs.length;
     }
 
     @Override
@@ -115,11 +156,65 @@ public class ImmutableOcTree<K extends ID3Boundable, V> implements BoundedSpatia
         return size;
     }
 
+    @Override
+    public Stream<Map.Entry<K, V>> entryStream() {
+        return StreamSupport.stream(getEntrySpliterator((b) -> true, true), false);
+    }
+
     @Override
     public Stream<Map.Entry<K, V>> selectiveEntryStream(Predicate<ID3BoundingBox> predicate) {
-        return selectiveNodeStream(root, predicate)
-                .filter((n) -> !n.isEmpty())
-                .flatMap((n) -> n.getValues().stream());
+        final QueryListener listener = queryListener;
+        if (listener == null) {
+            return entries(predicate);
+        }
+
+        final QueryCounters counters = new QueryCounters(QueryCounters.Query.ENTRY_STREAM, listener);
+        counters.nodesVisited++;
+        return QuerySpliterator.stream(getEntrySpliterator(counters.count(predicate), false), counters, true);
+    }
+
+    /**
+     *
+     * @param predicate Predicate the bounds of a node have to satisfy for its
+     * subtree to be traversed.
+     * @return Stream over the entries of all nodes that satisfy the predicate,
+     * never instrumented.
+     */
+    private Stream<Map.Entry<K, V>> entries(Predicate<ID3BoundingBox> predicate) {
+        return StreamSupport.stream(getEntrySpliterator(predicate, false), false);
+    }
+
+    /**
+     * Installs a listener receiving the counters of every selective entry
+     * stream, withinDistance and forEachInWindow query. Without a listener
+     * the queries collect no counters. Instrumented streams do not split, so
+     * parallel streams run sequentially, and report their counters once they
+     * are exhausted or closed.
+     *
+     * @param listener Listener to install, null to remove the current one.
+     */
+    public void setQueryListener(QueryListener listener) {
+        this.queryListener = listener;
+    }
+
+    /**
+     *
+     * @return The installed query listener, or null.
+     */
+    public QueryListener getQueryListener() {
+        return queryListener;
+    }
+
+    /**
+     *
+     * @param predicate Predicate the bounds of a node have to satisfy for its
+     * subtree to be traversed.
+     * @param exact True if the predicate accepts all nodes.
+     * @return Spliterator over the entries of all nodes that satisfy the
+     * predicate, splitting by subtree.
+     */
+    Spliterator<Map.Entry<K, V>> getEntrySpliterator(Predicate<ID3BoundingBox> predicate, boolean exact) {
+        return new SubtreeSpliterator<>(root, OcNode::getBounds, predicate, exact);
     }
 
     /**
@@ -136,7 +231,7 @@ public class ImmutableOcTree<K extends ID3Boundable, V> implements BoundedSpatia
      * Predicate.test(node.getBounds()) == true.
      */
     Stream<OcNode<K, V>> selectiveNodeStream(OcNode<K, V> node, Predicate<ID3BoundingBox> pred) {
-        return StreamSupport.stream(new NodeSpliterator(root, pred), false);
+        return StreamSupport.stream(getSpliterator(node, pred), false);
     }
 
     /**
@@ -169,6 +264,17 @@ public class ImmutableOcTree<K extends ID3Boundable, V> implements BoundedSpatia
         return root.getMaxNodeSize();
     }
 
+    /**
+     * Walks the tree once and collects its shape: depth, nodes and entries
+     * per level, empty nodes, entries stuck in split nodes and an estimate of
+     * the retained bytes.
+     *
+     * @return Snapshot of the shape of this tree.
+     */
+    public TreeStats stats() {
+        return new TreeStats(root, BOUNDS_BYTES);
+    }
+
     /**
      *
      * @return Root node if this tree. Cannot be null.
@@ -179,19 +285,19 @@ public class ImmutableOcTree<K extends ID3Boundable, V> implements BoundedSpatia
 
     @Override
     public boolean containsKey(K key) {
-        return selectiveKeyStream((ID3BoundingBox b) -> b.contains(key))
-                .anyMatch((k) -> Objects.equals(k, key));
+        return entries((ID3BoundingBox b) -> b.contains(key))
+                .anyMatch((en) -> Objects.equals(en.getKey(), key));
     }
 
     @Override
     public boolean contains(K key, V value) {
-        return selectiveEntryStream((ID3BoundingBox b) -> b.contains(key))
+        return entries((ID3BoundingBox b) -> b.contains(key))
                 .anyMatch((en) -> Objects.equals(en.getKey(), key) && Objects.equals(en.getValue(), value));
     }
 
     @Override
     public boolean containsValue(V value, Predicate<ID3BoundingBox> pred) {
-        return selectiveEntryStream(pred)
+        return entries(pred)
                 .map(Map.Entry::getValue)
                 .anyMatch((v) -> Objects.equals(v, value));
     }
@@ -203,11 +309,281 @@ public class ImmutableOcTree<K extends ID3Boundable, V> implements BoundedSpatia
     }
 
     /**
-     * Spliterator iterating over all nodes of the tree.
+     * Answers several window queries in one traversal. Every node is visited
+     * at most once and only tested against the windows that intersect its
+     * parent. Subtrees fully inside a window are reported to that window
+     * without testing their keys. The tree must not be modified from within
+     * the consumer.
+     *
+     * @param windows Windows to query.
+     * @param consumer Receives every entry whose key is inside a window,
+     * together with the index of the window. An entry inside several windows
+     * is reported once for every window.
+     */
+    public void forEachInWindows(List<? extends ID3BoundingBox> windows, ObjIntConsumer<? super Map.Entry<K, V>> consumer) {
+        Objects.requireNonNull(consumer);
+        final WindowBatch batch = new WindowBatch(windows.toArray(new ID3BoundingBox[windows.size()]), consumer);
+        int count = 0;
+        for (int i = 0; i < batch.windows.length; i++) {
+            if (batch.windows[i].intersects(root.getBounds())) {
+                batch.active[count++] = i;
+            }
+        }
+        if (count > 0) {
+            batch.visit(root, 0, count);
+        }
+    }
+
+    /**
+     *
+     * @param windows Windows to query.
+     * @return The entries whose keys are inside each window, in the order of
+     * the windows.
+     * @see #forEachInWindows(List, ObjIntConsumer)
+     */
+    public List<List<Map.Entry<K, V>>> entriesInWindows(List<? extends ID3BoundingBox> windows) {
+        final List<List<Map.Entry<K, V>>> result = new ArrayList<>(windows.size());
+        for (int i = 0; i < windows.size(); i++) {
+            result.add(new ArrayList<>());
+        }
+        forEachInWindows(windows, (en, i) -> result.get(i).add(en));
+        return result;
+    }
+
+    /**
+     * Visits every entry whose key is inside the window, bounds inclusive.
+     * The nodes are walked on the call stack and compared against the window
+     * coordinates directly, so unlike a selective entry stream the query
+     * creates no objects for point and bounding box keys. Subtrees fully
+     * inside the window are reported without testing their keys. The tree
+     * must not be modified from within the consumer.
+     *
+     * @param minX Lower x coordinate of the window.
+     * @param minY Lower y coordinate of the window.
+     * @param minZ Lower z coordinate of the window.
+     * @param maxX Upper x coordinate of the window.
+     * @param maxY Upper y coordinate of the window.
+     * @param maxZ Upper z coordinate of the window.
+     * @param consumer Receives the key and the value of every entry inside
+     * the window.
+     */
+    public void forEachInWindow(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, BiConsumer<? super K, ? super V> consumer) {
+        Objects.requireNonNull(consumer);
+        final QueryListener listener = queryListener;
+        if (listener == null) {
+            window(root, minX, minY, minZ, maxX, maxY, maxZ, consumer, null);
+        } else {
+            final QueryCounters counters = new QueryCounters(QueryCounters.Query.WINDOW, listener);
+            window(root, minX, minY, minZ, maxX, maxY, maxZ, (key, value) -> {
+                counters.entriesEmitted++;
+                consumer.accept(key, value);
+            }, counters);
+            counters.report();
+        }
+    }
+
+    /**
+     *
+     * @param counters Counters of an instrumented query, or null.
+     */
+    private void window(OcNode<K, V> node, double minX, double minY, double minZ, double maxX, double maxY, double maxZ, BiConsumer<? super K, ? super V> consumer, QueryCounters counters) {
+        final ID3Point lower = node.getBounds().getLower();
+        final ID3Point upper = node.getBounds().getUpper();
+        if (upper.getX() < minX || lower.getX() > maxX
+                || upper.getY() < minY || lower.getY() > maxY
+                || upper.getZ() < minZ || lower.getZ() > maxZ) {
+            if (counters != null) {
+                counters.nodesPruned++;
+            }
+            return;
+        } else if (minX <= lower.getX() && upper.getX() <= maxX
+                && minY <= lower.getY() && upper.getY() <= maxY
+                && minZ <= lower.getZ() && upper.getZ() <= maxZ) {
+            report(node, consumer, counters);
+            return;
+        }
+
+        final List<Pair<K, V>> values = node.getValues();
+        if (counters != null) {
+            counters.nodesVisited++;
+            counters.entriesTested += values.size();
+        }
+        for (int i = 0; i < values.size(); i++) {
+            final Pair<K, V> pair = values.get(i);
+            if (inside(pair.getKey(), minX, minY, minZ, maxX, maxY, maxZ)) {
+                consumer.accept(pair.getKey(), pair.getValue());
+            }
+        }
+        for (int slot = 0; slot < node.getChildSlots(); slot++) {
+            final OcNode<K, V> child = node.getChild(slot);
+            if (child != null) {
+                window(child, minX, minY, minZ, maxX, maxY, maxZ, consumer, counters);
+            }
+        }
+    }
+
+    private void report(OcNode<K, V> node, BiConsumer<? super K, ? super V> consumer, QueryCounters counters) {
+        if (counters != null) {
+            counters.nodesVisited++;
+        }
+        final List<Pair<K, V>> values = node.getValues();
+        for (int i = 0; i < values.size(); i++) {
+            consumer.accept(values.get(i).getKey(), values.get(i).getValue());
+        }
+        for (int slot = 0; slot < node.getChildSlots(); slot++) {
+            final OcNode<K, V> child = node.getChild(slot);
+            if (child != null) {
+                report(child, consumer, counters);
+            }
+        }
+    }
+
+    /**
+     *
+     * @return True if the key is inside the window. Keys other than points
+     * and bounding boxes are tested against a temporary window box.
+     */
+    private static boolean inside(ID3Boundable key, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        if (key instanceof ID3Point) {
+            final ID3Point point = (ID3Point) key;
+            return minX <= point.getX() && point.getX() <= maxX
+                && minY <= point.getY() && point.getY() <= maxY
+                && minZ <= point.getZ() && point.getZ() <= maxZ;
+        } else if (key instanceof ID3BoundingBox) {
+            final ID3Point lower = ((ID3BoundingBox) key).getLower();
+            final ID3Point upper = ((ID3BoundingBox) key).getUpper();
+            return minX <= lower.getX() && upper.getX() <= maxX
+                && minY <= lower.getY() && upper.getY() <= maxY
+                && minZ <= lower.getZ() && upper.getZ() <= maxZ;
+        } else {
+            return key.isInside(new D3BoundingBox(minX, minY, minZ, maxX, maxY, maxZ));
+        }
+    }
+
+    @Override
+    public List<Map.Entry<K, V>> nearest(ID3Point point, int k) {
+        Objects.requireNonNull(point);
+        return NearestNeighbourSearch.search(root, k,
+                (node) -> node.getBounds().distSqr(point),
+                (key) -> key.distSqr(point));
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> withinDistance(ID3Point point, double distance) {
+        Objects.requireNonNull(point);
+        if (distance < 0) {
+            throw new IllegalArgumentException("Negative distance: " + distance);
+        }
+
+        final double distSqr = distance * distance;
+        final Predicate<ID3BoundingBox> nodes = (ID3BoundingBox b) -> b.distSqr(point) <= distSqr;
+        final QueryListener listener = queryListener;
+        if (listener == null) {
+            return entries(nodes).filter((en) -> en.getKey().distSqr(point) <= distSqr);
+        }
+
+        final QueryCounters counters = new QueryCounters(QueryCounters.Query.WITHIN_DISTANCE, listener);
+        counters.nodesVisited++;
+        return QuerySpliterator.stream(getEntrySpliterator(counters.count(nodes), false), counters, false)
+                .filter((en) -> {
+                    if (en.getKey().distSqr(point) <= distSqr) {
+                        counters.entriesEmitted++;
+                        return true;
+                    }
+                    return false;
+                });
+    }
+
+    /**
+     * State of a batch of window queries. The windows that intersect a node
+     * are kept as a range of indices in a shared stack, the windows of a child
+     * are pushed on top of the range of its parent.
+     */
+    private final class WindowBatch {
+
+        private final ID3BoundingBox[] windows;
+        private final ObjIntConsumer<? super Map.Entry<K, V>> consumer;
+        private int[] active;
+
+        WindowBatch(ID3BoundingBox[] windows, ObjIntConsumer<? super Map.Entry<K, V>> consumer) {
+            this.windows = windows;
+            this.consumer = consumer;
+            this.active = new int[Math.max(16, windows.length * 2)];
+        }
+
+        /**
+         *
+         * @param node Node to visit.
+         * @param from Start of the windows intersecting the node, inclusive.
+         * @param to End of the windows intersecting the node, exclusive.
+         */
+        void visit(OcNode<K, V> node, int from, int to) {
+            int end = to;
+            for (int i = from; i < to; i++) {
+                final int window = active[i];
+                if (windows[window].contains(node.getBounds())) {
+                    report(node, window);
+                } else {
+                    push(end++, window);
+                }
+            }
+            if (end == to) {
+                return;
+            }
+
+            for (Pair<K, V> pair : node.getValues()) {
+                for (int i = to; i < end; i++) {
+                    if (windows[active[i]].contains(pair.getKey())) {
+                        consumer.accept(pair, active[i]);
+                    }
+                }
+            }
+
+            for (int slot = 0; slot < node.getChildSlots(); slot++) {
+                final OcNode<K, V> child = node.getChild(slot);
+                if (child == null) {
+                    continue;
+                }
+
+                int childEnd = end;
+                for (int i = to; i < end; i++) {
+                    if (windows[active[i]].intersects(child.getBounds())) {
+                        push(childEnd++, active[i]);
+                    }
+                }
+                if (childEnd > end) {
+                    visit(child, end, childEnd);
+                }
+            }
+        }
+
+        private void push(int index, int window) {
+            if (index == active.length) {
+                active = Arrays.copyOf(active, active.length * 2);
+            }
+            active[index] = window;
+        }
+
+        private void report(OcNode<K, V> node, int window) {
+            for (Pair<K, V> pair : node.getValues()) {
+                consumer.accept(pair, window);
+            }
+            for (int slot = 0; slot < node.getChildSlots(); slot++) {
+                final OcNode<K, V> child = node.getChild(slot);
+                if (child != null) {
+                    report(child, window);
+                }
+            }
+        }
+    }
+
+    /**
+     * Spliterator iterating over all nodes of the tree. Splitting hands off
+     * half of the pending subtrees.
      */
     final class NodeSpliterator implements Spliterator<OcNode<K, V>> {
 
-        private final Queue<OcNode<K, V>> stack = new LinkedList<>();
+        private final Deque<OcNode<K, V>> stack = new ArrayDeque<>();
         private final Predicate<ID3BoundingBox> predicate;
 
         protected NodeSpliterator() {
@@ -229,9 +605,12 @@ public class ImmutableOcTree<K extends ID3Boundable, V> implements BoundedSpatia
                 return false;
             } else {
                 OcNode<K, V> selected = stack.remove();
-                selected.getChildren().values().stream()
-                        .filter((cn) -> predicate.test(cn.getBounds()))
-                        .forEach((cn) -> stack.add(cn));
+                for (int i = 0; i < selected.getChildSlots(); i++) {
+                    OcNode<K, V> child = selected.getChild(i);
+                    if (child != null && predicate.test(child.getBounds())) {
+                        stack.add(child);
+                    }
+                }
                 action.accept(selected);
                 return true;
             }
@@ -239,16 +618,27 @@ public class ImmutableOcTree<K extends ID3Boundable, V> implements BoundedSpatia
 
         @Override
         public Spliterator<OcNode<K, V>> trySplit() {
-            if (!stack.isEmpty()) {
-                return new NodeSpliterator(stack.remove(), predicate);
-            } else {
+            if (stack.size() < 2) {
                 return null;
             }
+
+            final NodeSpliterator split = new NodeSpliterator(stack.removeFirst(), predicate);
+            for (int i = stack.size() / 2; i > 0; i--) {
+                split.stack.addLast(stack.removeFirst());
+            }
+            return split;
         }
 
+        /**
+         * Estimated by the number of values below the pending nodes.
+         */
         @Override
         public long estimateSize() {
-            return size / 4;
+            long count = 0;
+            for (OcNode<K, V> node : stack) {
+                count += node.subtreeCount();
+            }
+            return count;
         }
 
         @Override
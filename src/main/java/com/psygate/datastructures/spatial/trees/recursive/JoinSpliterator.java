@@ -0,0 +1,213 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Synchronized traversal of two trees of spatial nodes, producing every pair
+ * of entries whose keys match. Node pairs are expanded lazily, a pair of nodes
+ * whose bounds cannot contain matching keys is pruned with all of its
+ * descendants.
+ *
+ * For a pair of nodes (a, b), the values of a are matched against the subtree
+ * of b, the values of b against the strict descendants of a, and every pair of
+ * children is queued. Every pair of entries is therefore produced exactly
+ * once. Splitting hands off half of the queued node pairs.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <KA> Key type of the left tree.
+ * @param <VA> Value type of the left tree.
+ * @param <A> Node type of the left tree.
+ * @param <KB> Key type of the right tree.
+ * @param <VB> Value type of the right tree.
+ * @param <B> Node type of the right tree.
+ */
+final class JoinSpliterator<KA, VA, A extends AbstractSpatialNode<KA, VA, A, ?>, KB, VB, B extends AbstractSpatialNode<KB, VB, B, ?>>
+        implements Spliterator<Pair<Map.Entry<KA, VA>, Map.Entry<KB, VB>>> {
+
+    private final Deque<Pair<A, B>> tasks = new ArrayDeque<>();
+    private final Deque<Pair<Map.Entry<KA, VA>, Map.Entry<KB, VB>>> found = new ArrayDeque<>();
+    private final BiPredicate<? super A, ? super B> nodes;
+    private final Function<? super KA, ? extends Matcher<? super B, ? super KB>> leftKey;
+    private final Function<? super KB, ? extends Matcher<? super A, ? super KA>> rightKey;
+
+    /**
+     * Key matchers are created once per key and reused for every node and key
+     * it is compared against.
+     *
+     * @param nodes True if the subtrees of both nodes can hold matching keys.
+     * @param leftKey Matcher of right nodes and keys against a left key.
+     * @param rightKey Matcher of left nodes and keys against a right key.
+     */
+    JoinSpliterator(BiPredicate<? super A, ? super B> nodes,
+            Function<? super KA, ? extends Matcher<? super B, ? super KB>> leftKey,
+            Function<? super KB, ? extends Matcher<? super A, ? super KA>> rightKey) {
+        this.nodes = nodes;
+        this.leftKey = leftKey;
+        this.rightKey = rightKey;
+    }
+
+    /**
+     *
+     * @param left Root of the left tree.
+     * @param right Root of the right tree.
+     * @return This spliterator.
+     */
+    JoinSpliterator<KA, VA, A, KB, VB, B> start(A left, B right) {
+        if (nodes.test(left, right)) {
+            tasks.add(new Pair<>(left, right));
+        }
+
+        return this;
+    }
+
+    private void process(Pair<A, B> task) {
+        final A a = task.getKey();
+        final B b = task.getValue();
+
+        for (Pair<KA, VA> pair : a.getValues()) {
+            matchLeft(pair, leftKey.apply(pair.getKey()), b);
+        }
+
+        for (int slot = 0; slot < a.getChildSlots(); slot++) {
+            final A child = a.getChild(slot);
+            if (child == null) {
+                continue;
+            }
+
+            for (Pair<KB, VB> pair : b.getValues()) {
+                matchRight(child, rightKey.apply(pair.getKey()), pair);
+            }
+            for (int other = 0; other < b.getChildSlots(); other++) {
+                final B otherChild = b.getChild(other);
+                if (otherChild != null && nodes.test(child, otherChild)) {
+                    tasks.add(new Pair<>(child, otherChild));
+                }
+            }
+        }
+    }
+
+    private void matchLeft(Pair<KA, VA> left, Matcher<? super B, ? super KB> matcher, B node) {
+        if (!matcher.node(node)) {
+            return;
+        }
+
+        for (Pair<KB, VB> right : node.getValues()) {
+            if (matcher.key(right.getKey())) {
+                found.add(new Pair<>(left, right));
+            }
+        }
+        for (int slot = 0; slot < node.getChildSlots(); slot++) {
+            final B child = node.getChild(slot);
+            if (child != null) {
+                matchLeft(left, matcher, child);
+            }
+        }
+    }
+
+    private void matchRight(A node, Matcher<? super A, ? super KA> matcher, Pair<KB, VB> right) {
+        if (!matcher.node(node)) {
+            return;
+        }
+
+        for (Pair<KA, VA> left : node.getValues()) {
+            if (matcher.key(left.getKey())) {
+                found.add(new Pair<>(left, right));
+            }
+        }
+        for (int slot = 0; slot < node.getChildSlots(); slot++) {
+            final A child = node.getChild(slot);
+            if (child != null) {
+                matchRight(child, matcher, right);
+            }
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Pair<Map.Entry<KA, VA>, Map.Entry<KB, VB>>> action) {
+        while (found.isEmpty() && !tasks.isEmpty()) {
+            process(tasks.poll());
+        }
+
+        if (found.isEmpty()) {
+            return false;
+        }
+
+        action.accept(found.poll());
+        return true;
+    }
+
+    @Override
+    public Spliterator<Pair<Map.Entry<KA, VA>, Map.Entry<KB, VB>>> trySplit() {
+        if (tasks.size() == 1) {
+            process(tasks.poll());
+        }
+        if (tasks.size() < 2) {
+            return null;
+        }
+
+        final JoinSpliterator<KA, VA, A, KB, VB, B> split = new JoinSpliterator<KA, VA, A, KB, VB, B>(nodes, leftKey, rightKey);
+        for (int i = tasks.size() / 2; i > 0; i--) {
+            split.tasks.add(tasks.poll());
+        }
+        return split;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.NONNULL;
+    }
+
+    /**
+     * Matches the nodes and keys of one tree against a single key of the other
+     * tree.
+     *
+     * @param <N> Node type.
+     * @param <K> Key type.
+     */
+    interface Matcher<N, K> {
+
+        /**
+         *
+         * @param node Node to test.
+         * @return True if the subtree of the node can hold a matching key.
+         */
+        boolean node(N node);
+
+        /**
+         *
+         * @param key Key to test.
+         * @return True if the key matches.
+         */
+        boolean key(K key);
+    }
+}
@@ -20,86 +20,242 @@ package com.psygate.datastructures.spatial.trees.recursive;
 
 import com.psygate.datastructures.util.Pair;
 import com.psygate.datastructures.spatial.Axis2D;
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import com.psygate.datastructures.spatial.ID2Boundable;
 
 /**
+ * Node of a kd tree. A split node divides its bounds with a plane orthogonal to
+ * its split axis, positioned at the median of a sample of its keys. Keys
+ * crossing the plane stay in the split node.
  *
+ * @see KDTree
  * @author psygate (https://github.com/psygate)
  */
-public class KDNode<K extends ID2Boundable, V> extends AbstractSpatialNode<K, V, KDNode<K, V>, KDNode.Subdivision> {
+class KDNode<K extends ID2Boundable, V> extends AbstractSpatialNode<K, V, KDNode<K, V>, KDNode.Subdivision> {
 
     enum Subdivision {
         LEFT, RIGHT
     };
-    private final Axis2D splitplane;
-    private final double median;
 
-    KDNode(List<Pair<K, V>> values, int maxNodeSize) {
-        this(maxNodeSize, Axis2D.X, 0);
-        values.forEach((v) -> super.add(v));
+    /**
+     * Maximum number of keys sampled to estimate the median of a node.
+     */
+    private static final int SAMPLE_SIZE = 31;
+
+    private final ID2BoundingBox box;
+    private Axis2D splitplane;
+    private double median;
+    private int splitThreshold;
+
+    KDNode(ID2BoundingBox box, int maxNodeSize, Axis2D splitplane) {
+        super(new ArrayList<>(maxNodeSize), maxNodeSize, Subdivision.values().length);
+        this.box = box;
+        this.splitplane = splitplane;
+        this.splitThreshold = maxNodeSize;
     }
 
-    KDNode(int maxNodeSize) {
-        this(maxNodeSize, Axis2D.X, 0);
+    /**
+     * Bounds of the node.
+     *
+     * @return Bounds of the node.
+     */
+    ID2BoundingBox getBounds() {
+        return box;
     }
 
-    public KDNode(int maxNodeSize, Axis2D splitplane) {
-        this(maxNodeSize, splitplane, 0);
+    Axis2D getSplitplane() {
+        return splitplane;
     }
 
-    public KDNode(int maxNodeSize, Axis2D splitplane, double median) {
-        super(new ArrayList<>(maxNodeSize), maxNodeSize);
-        this.splitplane = splitplane;
-        this.median = median;
+    public double getMedian() {
+        return median;
     }
 
     @Override
     void add(Pair<K, V> value) {
+        assert box.contains(value.getKey()) : "Not contained: " + box + " - " + value.getKey();
+        addSubtreeCount(1);
         KDNode<K, V> child = getChild(value.getKey());
-        if (isSplit()) {
-            if (child == this) {
-                super.add(value);
-            } else {
-                child.add(value);
-            }
+        if (child != this) {
+            child.add(value);
         } else {
-            super.add(value);
+            getValues().add(value);
+            if (!isSplit() && size() > splitThreshold) {
+                split();
+            }
         }
     }
 
+    /**
+     * Returns the child that contains the key, or this node if the node is not
+     * split or the key crosses the split plane.
+     *
+     * @param key Key to query for child containment.
+     * @return The child containing the key or this node.
+     */
     KDNode<K, V> getChild(K key) {
         if (isSplit()) {
-            if (key.leftOf(median, splitplane)) {
-                if (!hasChild(Subdivision.LEFT)) {
-                    setChild(Subdivision.LEFT, new KDNode<>(getMaxNodeSize()));
-                }
-
-                return getChild(Subdivision.LEFT);
-            } else if (key.rightOf(median, splitplane)) {
-                if (!hasChild(Subdivision.RIGHT)) {
-                    setChild(Subdivision.RIGHT, new KDNode<>(getMaxNodeSize()));
+            final Subdivision side = side(key);
+            if (side != null) {
+                KDNode<K, V> child = getChild(side);
+                if (child == null) {
+                    child = new KDNode<>(childBounds(side), getMaxNodeSize(), next(splitplane));
+                    setChild(side, child);
                 }
 
-                return getChild(Subdivision.RIGHT);
+                return child;
             }
         }
 
         return this;
     }
 
-    public double getMedian() {
-        return median;
+    /**
+     *
+     * @param key Key to locate.
+     * @return Side of the split plane the key is on, or null if the key crosses
+     * the split plane.
+     */
+    Subdivision side(ID2Boundable key) {
+        if (key.leftOf(median, splitplane)) {
+            return Subdivision.LEFT;
+        } else if (key.rightOf(median, splitplane)) {
+            return Subdivision.RIGHT;
+        } else {
+            return null;
+        }
+    }
+
+    private ID2BoundingBox childBounds(Subdivision side) {
+        final boolean x = splitplane == Axis2D.X;
+        final boolean left = side == Subdivision.LEFT;
+
+        return new D2BoundingBox(
+                x && !left ? median : box.getLower().getX(),
+                !x && !left ? median : box.getLower().getY(),
+                x && left ? median : box.getUpper().getX(),
+                !x && left ? median : box.getUpper().getY()
+        );
     }
 
+    private static Axis2D next(Axis2D axis) {
+        return axis == Axis2D.X ? Axis2D.Y : Axis2D.X;
+    }
+
+    /**
+     * Splits the node at the sampled median of its keys. If neither axis
+     * separates the keys, the node stays a leaf and the next attempt is
+     * deferred until the node has grown to twice its size, so that clusters of
+     * equal keys do not trigger a split attempt on every insert.
+     */
     @Override
     void split() {
+        if (!choosePlane(splitplane) && !choosePlane(next(splitplane))) {
+            splitThreshold = Math.max(splitThreshold, size()) * 2;
+            return;
+        }
+
         setSplit(true);
         int size = getValues().size();
         List<Pair<K, V>> values = getValuesCopy();
         clearValues();
+        addSubtreeCount(-size);
         values.forEach((v) -> add(v));
         assert subtreeValueCount() == size;
     }
+
+    /**
+     * Samples the median of the keys on the provided axis and selects it as
+     * the split plane, if it puts keys on both sides.
+     *
+     * @param axis Axis to split on.
+     * @return True if the plane was selected.
+     */
+    private boolean choosePlane(Axis2D axis) {
+        final List<Pair<K, V>> values = getValues();
+        final int samples = Math.min(SAMPLE_SIZE, values.size());
+        final double[] centers = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            centers[i] = values.get((int) ((long) i * values.size() / samples)).getKey().center(axis);
+        }
+        Arrays.sort(centers);
+        final double candidate = centers[samples / 2];
+
+        boolean left = false;
+        boolean right = false;
+        for (Pair<K, V> pair : values) {
+            left |= pair.getKey().leftOf(candidate, axis);
+            right |= pair.getKey().rightOf(candidate, axis);
+            if (left && right) {
+                splitplane = axis;
+                median = candidate;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes all values in this subtree associated with the provided key.
+     *
+     * @param key Key to search for.
+     * @return A list containing all removed values.
+     */
+    List<Pair<K, V>> subtreeRemove(K key) {
+        return subtreeRemove(key, (p) -> Objects.equals(p.getKey(), key));
+    }
+
+    /**
+     * Removes all pairs of the provided key and value from the subtree.
+     *
+     * @param key Key to search for.
+     * @param value Value to search for.
+     * @return List of values that have been removed.
+     */
+    List<Pair<K, V>> subtreeRemove(K key, V value) {
+        return subtreeRemove(key, (p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value));
+    }
+
+    private List<Pair<K, V>> subtreeRemove(K key, Predicate<Pair<K, V>> filter) {
+        List<Pair<K, V>> vals = getValues().stream().filter(filter).collect(Collectors.toList());
+        getValues().removeAll(vals);
+        if (isSplit()) {
+            final Subdivision side = side(key);
+            if (side != null && hasChild(side)) {
+                vals.addAll(getChild(side).subtreeRemove(key, filter));
+            }
+        }
+        addSubtreeCount(-vals.size());
+
+        return vals;
+    }
+
+    /**
+     * Removes all values in this subtree that equal the provided value.
+     *
+     * @param value Value to search for.
+     * @param hint Predicate used to prematurely remove nodes that should not be
+     * searched for the value.
+     * @return A list containing all removed values.
+     */
+    Collection<Pair<K, V>> subtreeRemoveValue(V value, Predicate<ID2BoundingBox> hint) {
+        List<Pair<K, V>> vals = getValues().stream().filter((p) -> Objects.equals(p.getValue(), value)).collect(Collectors.toList());
+        getValues().removeAll(vals);
+        getChildren().stream()
+                .filter((cn) -> hint.test(cn.getBounds()))
+                .map((cn) -> cn.subtreeRemoveValue(value, hint))
+                .forEach((list) -> vals.addAll(list));
+        addSubtreeCount(-vals.size());
+
+        return vals;
+    }
 }
@@ -0,0 +1,284 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.util.Pair;
+import com.psygate.datastructures.spatial.Axis2D;
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Point;
+import com.psygate.datastructures.spatial.trees.BoundedSpatialTree;
+import com.psygate.datastructures.spatial.trees.MetricSpatialTree;
+import com.psygate.datastructures.spatial.trees.MutableSpatialTree;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * kd tree implementation. Nodes are split at the median of a sample of their
+ * keys, alternating between the x and y axis, so the tree adapts to the
+ * distribution of the keys instead of halving its bounds.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public class KDTree<K extends ID2Boundable, V> implements MutableSpatialTree<K, V, ID2BoundingBox>, MetricSpatialTree<K, V, ID2BoundingBox, ID2BoundingBox, ID2Point> {
+
+    private final KDNode<K, V> root;
+    private long modcnt = Long.MIN_VALUE;
+    private int size = 0;
+
+    /**
+     *
+     * @param bounds Bounds of the new kd tree.
+     * @param maxNodeSize Maximum node size.
+     */
+    public KDTree(ID2BoundingBox bounds, int maxNodeSize) {
+        this.root = new KDNode<>(new D2BoundingBox(bounds), maxNodeSize, Axis2D.X);
+    }
+
+    /**
+     *
+     * @param tree Tree to copy.
+     * @param maxNodeSize Maximum node size.
+     */
+    public KDTree(BoundedSpatialTree<K, V, ID2BoundingBox, ID2BoundingBox> tree, int maxNodeSize) {
+        this(tree.getBounds(), maxNodeSize);
+        tree.entryStream().forEach((en) -> put(en));
+    }
+
+    /**
+     *
+     * @param values Values to insert upon construction.
+     * @param bounds Bounds of the new kd tree.
+     * @param maxNodeSize Maximum node size.
+     */
+    public KDTree(Map<K, V> values, ID2BoundingBox bounds, int maxNodeSize) {
+        this(bounds, maxNodeSize);
+        putAll(values);
+    }
+
+    @Override
+    public ID2BoundingBox getBounds() {
+        return root.getBounds();
+    }
+
+    @Override
+    public boolean envelopes(K key) {
+        return root.getBounds().contains(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getMaxNodeSize() {
+        return root.getMaxNodeSize();
+    }
+
+    /**
+     *
+     * @return Root node if this tree. Cannot be null.
+     */
+    KDNode<K, V> getRoot() {
+        return root;
+    }
+
+    @Override
+    public void put(Pair<K, V> pair) {
+        if (!envelopes(pair.getKey())) {
+            throw new IllegalArgumentException("Key outside bounds: " + getBounds() + " - " + pair.getKey());
+        }
+        modcnt++;
+        root.add(pair);
+        size++;
+    }
+
+    @Override
+    public Collection<V> remove(K key) {
+        if (!root.getBounds().contains(Objects.requireNonNull(key))) {
+            return new LinkedList<>();
+        } else {
+            return removed(root.subtreeRemove(key));
+        }
+    }
+
+    @Override
+    public Collection<V> remove(K key, V value) {
+        if (!root.getBounds().contains(Objects.requireNonNull(key))) {
+            return new LinkedList<>();
+        } else {
+            return removed(root.subtreeRemove(key, value));
+        }
+    }
+
+    @Override
+    public Collection<V> removeValue(V value, Predicate<ID2BoundingBox> hint) {
+        return removed(root.subtreeRemoveValue(value, hint));
+    }
+
+    private Collection<V> removed(Collection<Pair<K, V>> pairs) {
+        if (!pairs.isEmpty()) {
+            modcnt++;
+            size -= pairs.size();
+        }
+
+        return pairs.stream().map(Pair::getValue).collect(Collectors.toList());
+    }
+
+    @Override
+    public void clear() {
+        modcnt++;
+        root.clear();
+        root.setSplit(false);
+        size = 0;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return pathStream(key).anyMatch((p) -> Objects.equals(p.getKey(), key));
+    }
+
+    @Override
+    public boolean contains(K key, V value) {
+        return pathStream(key).anyMatch((p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value));
+    }
+
+    /**
+     *
+     * @param key Key to locate.
+     * @return Stream of all pairs in the nodes on the path from the root to
+     * the deepest node the key can be stored in.
+     */
+    private Stream<Pair<K, V>> pathStream(K key) {
+        if (!root.getBounds().contains(Objects.requireNonNull(key))) {
+            return Stream.empty();
+        }
+
+        final List<KDNode<K, V>> path = new LinkedList<>();
+        KDNode<K, V> node = root;
+        while (node != null) {
+            path.add(node);
+            final KDNode.Subdivision side = node.isSplit() ? node.side(key) : null;
+            node = side == null ? null : node.getChild(side);
+        }
+
+        return path.stream().flatMap((n) -> n.getValues().stream());
+    }
+
+    @Override
+    public boolean containsValue(V value, Predicate<ID2BoundingBox> pred) {
+        return selectiveValueStream(pred).anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return valueStream().anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> selectiveEntryStream(Predicate<ID2BoundingBox> predicate) {
+        return StreamSupport.stream(new NodeSpliterator(root, predicate), false)
+                .filter((n) -> !n.isEmpty())
+                .flatMap((n) -> n.getValues().stream());
+    }
+
+    @Override
+    public List<Map.Entry<K, V>> nearest(ID2Point point, int k) {
+        Objects.requireNonNull(point);
+        return NearestNeighbourSearch.search(root, k,
+                (node) -> node.getBounds().distSqr(point),
+                (key) -> key.distSqr(point));
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> withinDistance(ID2Point point, double distance) {
+        Objects.requireNonNull(point);
+        if (distance < 0) {
+            throw new IllegalArgumentException("Negative distance: " + distance);
+        }
+
+        final double distSqr = distance * distance;
+        return selectiveEntryStream((ID2BoundingBox b) -> b.distSqr(point) <= distSqr)
+                .filter((en) -> en.getKey().distSqr(point) <= distSqr);
+    }
+
+    /**
+     * Spliterator iterating over all nodes of the tree that satisfy the
+     * predicate.
+     */
+    private final class NodeSpliterator implements Spliterator<KDNode<K, V>> {
+
+        private final long id = modcnt;
+        private final Queue<KDNode<K, V>> stack = new LinkedList<>();
+        private final Predicate<ID2BoundingBox> predicate;
+
+        NodeSpliterator(KDNode<K, V> node, Predicate<ID2BoundingBox> predicate) {
+            this.predicate = Objects.requireNonNull(predicate);
+            stack.add(node);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super KDNode<K, V>> action) {
+            if (id != modcnt) {
+                throw new ConcurrentModificationException();
+            } else if (stack.isEmpty()) {
+                return false;
+            } else {
+                KDNode<K, V> selected = stack.remove();
+                for (int i = 0; i < selected.getChildSlots(); i++) {
+                    KDNode<K, V> child = selected.getChild(i);
+                    if (child != null && predicate.test(child.getBounds())) {
+                        stack.add(child);
+                    }
+                }
+                action.accept(selected);
+                return true;
+            }
+        }
+
+        @Override
+        public Spliterator<KDNode<K, V>> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.Axis3D;
+import com.psygate.datastructures.spatial.D3BoundingBox;
+import com.psygate.datastructures.spatial.ID3Boundable;
+import com.psygate.datastructures.spatial.ID3BoundingBox;
+import com.psygate.datastructures.spatial.ID3Point;
+
+/**
+ * Oc tree node of a loose oc tree. The octants still halve the tight bounds
+ * of the node, but the bounds of a child are its octant enlarged by the
+ * looseness factor around the octant centre, clipped to the bounds of this
+ * node. Keys are routed by their centre and descend as long as they fit into
+ * the enlarged child bounds, so small keys on a split plane sink to a depth
+ * matching their size instead of staying in this node.
+ *
+ * getBounds() returns the enlarged bounds, every key in the subtree is inside
+ * them, so queries prune with them like with regular nodes.
+ *
+ * @see OcTree
+ * @author psygate (https://github.com/psygate)
+ */
+final class LooseOcNode<K extends ID3Boundable, V> extends OcNode<K, V> {
+
+    private final ID3BoundingBox tight;
+    private final double looseness;
+    // Tight centre, half the tight octant lengths and the enlarged bounds,
+    // cached as childIndex runs for every level of every insert and lookup.
+    private final double cx, cy, cz;
+    private final double qx, qy, qz;
+    private final double lx, ly, lz, ux, uy, uz;
+
+    /**
+     *
+     * @param tight Tight bounds of the node, halved by the octants.
+     * @param box Enlarged bounds of the node, containing the tight bounds.
+     * @param maxNodeSize Maximum node size.
+     * @param looseness Factor the octants of children are enlarged by, at
+     * least 1.
+     */
+    LooseOcNode(ID3BoundingBox tight, ID3BoundingBox box, int maxNodeSize, double looseness) {
+        super(box, maxNodeSize);
+        assert looseness >= 1 && box.contains(tight);
+        this.tight = tight;
+        this.looseness = looseness;
+        this.cx = tight.getCenterX();
+        this.cy = tight.getCenterY();
+        this.cz = tight.getCenterZ();
+        this.qx = (tight.getUpper().getX() - tight.getLower().getX()) / 4;
+        this.qy = (tight.getUpper().getY() - tight.getLower().getY()) / 4;
+        this.qz = (tight.getUpper().getZ() - tight.getLower().getZ()) / 4;
+        this.lx = box.getLower().getX();
+        this.ly = box.getLower().getY();
+        this.lz = box.getLower().getZ();
+        this.ux = box.getUpper().getX();
+        this.uy = box.getUpper().getY();
+        this.uz = box.getUpper().getZ();
+    }
+
+    double getLooseness() {
+        return looseness;
+    }
+
+    ID3BoundingBox getTightBounds() {
+        return tight;
+    }
+
+    @Override
+    boolean canSplit() {
+        return tight.getLower().getX() < cx && cx < tight.getUpper().getX()
+                && tight.getLower().getY() < cy && cy < tight.getUpper().getY()
+                && tight.getLower().getZ() < cz && cz < tight.getUpper().getZ();
+    }
+
+    /**
+     * Selects the octant of the centre of the key, if the key fits into the
+     * enlarged bounds of that child.
+     *
+     * @param key Key to locate.
+     * @return Child slot of the octant the key fits into, or -1 if the key is
+     * too large for the child of its centre.
+     */
+    @Override
+    int childIndex(K key) {
+        final double klx, kly, klz, kux, kuy, kuz;
+        if (key instanceof ID3BoundingBox) {
+            final ID3BoundingBox keybox = (ID3BoundingBox) key;
+            klx = keybox.getLower().getX();
+            kly = keybox.getLower().getY();
+            klz = keybox.getLower().getZ();
+            kux = keybox.getUpper().getX();
+            kuy = keybox.getUpper().getY();
+            kuz = keybox.getUpper().getZ();
+        } else if (key instanceof ID3Point) {
+            klx = kux = ((ID3Point) key).getX();
+            kly = kuy = ((ID3Point) key).getY();
+            klz = kuz = ((ID3Point) key).getZ();
+        } else {
+            return tightIndex(key);
+        }
+
+        final boolean east = (klx + kux) / 2 > cx;
+        final boolean south = (kly + kuy) / 2 > cy;
+        final boolean down = (klz + kuz) / 2 > cz;
+        final double ccx = east ? cx + qx : cx - qx;
+        final double ccy = south ? cy + qy : cy - qy;
+        final double ccz = down ? cz + qz : cz - qz;
+        final double hx = qx * looseness;
+        final double hy = qy * looseness;
+        final double hz = qz * looseness;
+        if (klx < Math.max(ccx - hx, lx) || kux > Math.min(ccx + hx, ux)
+                || kly < Math.max(ccy - hy, ly) || kuy > Math.min(ccy + hy, uy)
+                || klz < Math.max(ccz - hz, lz) || kuz > Math.min(ccz + hz, uz)) {
+            return -1;
+        }
+
+        return (east ? EAST : 0) | (south ? SOUTH : 0) | (down ? DOWN : 0);
+    }
+
+    /**
+     * Keys other than points and bounding boxes only descend into the tight
+     * octant they are fully inside of.
+     */
+    private int tightIndex(K key) {
+        final int x = key.leftOf(cx, Axis3D.X) ? 0 : key.rightOf(cx, Axis3D.X) ? 1 : -1;
+        final int y = key.leftOf(cy, Axis3D.Y) ? 0 : key.rightOf(cy, Axis3D.Y) ? 1 : -1;
+        final int z = key.leftOf(cz, Axis3D.Z) ? 0 : key.rightOf(cz, Axis3D.Z) ? 1 : -1;
+        return x < 0 || y < 0 || z < 0 ? -1 : x * EAST | y * SOUTH | z * DOWN;
+    }
+
+    /**
+     *
+     * @param index Child slot of the octant.
+     * @return Enlarged bounds of the octant, clipped to the bounds of this
+     * node.
+     */
+    @Override
+    ID3BoundingBox childBounds(int index) {
+        final double ccx = (index & EAST) != 0 ? cx + qx : cx - qx;
+        final double ccy = (index & SOUTH) != 0 ? cy + qy : cy - qy;
+        final double ccz = (index & DOWN) != 0 ? cz + qz : cz - qz;
+        final double hx = qx * looseness;
+        final double hy = qy * looseness;
+        final double hz = qz * looseness;
+
+        return new D3BoundingBox(
+                Math.max(ccx - hx, lx),
+                Math.max(ccy - hy, ly),
+                Math.max(ccz - hz, lz),
+                Math.min(ccx + hx, ux),
+                Math.min(ccy + hy, uy),
+                Math.min(ccz + hz, uz)
+        );
+    }
+
+    /**
+     *
+     * @param index Child slot of the octant.
+     * @return Tight bounds of the octant.
+     */
+    private ID3BoundingBox octant(int index) {
+        final boolean east = (index & EAST) != 0;
+        final boolean south = (index & SOUTH) != 0;
+        final boolean down = (index & DOWN) != 0;
+
+        return new D3BoundingBox(
+                east ? cx : tight.getLower().getX(),
+                south ? cy : tight.getLower().getY(),
+                down ? cz : tight.getLower().getZ(),
+                east ? tight.getUpper().getX() : cx,
+                south ? tight.getUpper().getY() : cy,
+                down ? tight.getUpper().getZ() : cz
+        );
+    }
+
+    @Override
+    OcNode<K, V> newChild(int index) {
+        return new LooseOcNode<>(octant(index), childBounds(index), getMaxNodeSize(), looseness);
+    }
+
+    @Override
+    OcNode<K, V> emptyCopy() {
+        return new LooseOcNode<>(tight, getBounds(), getMaxNodeSize(), looseness);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.Axis2D;
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Point;
+
+/**
+ * Quad tree node of a loose quad tree. The quadrants still halve the tight
+ * bounds of the node, but the bounds of a child are its quadrant enlarged by
+ * the looseness factor around the quadrant centre, clipped to the bounds of
+ * this node. Keys are routed by their centre and descend as long as they fit
+ * into the enlarged child bounds, so small keys on a split line sink to a
+ * depth matching their size instead of staying in this node.
+ *
+ * getBounds() returns the enlarged bounds, every key in the subtree is inside
+ * them, so queries prune with them like with regular nodes.
+ *
+ * @see QuadTree
+ * @author psygate (https://github.com/psygate)
+ */
+final class LooseQuadNode<K extends ID2Boundable, V> extends QuadNode<K, V> {
+
+    private final ID2BoundingBox tight;
+    private final double looseness;
+    // Tight centre, half the tight quadrant lengths and the enlarged bounds,
+    // cached as childIndex runs for every level of every insert and lookup.
+    private final double cx, cy;
+    private final double qx, qy;
+    private final double lx, ly, ux, uy;
+
+    /**
+     *
+     * @param tight Tight bounds of the node, halved by the quadrants.
+     * @param box Enlarged bounds of the node, containing the tight bounds.
+     * @param maxNodeSize Maximum node size.
+     * @param looseness Factor the quadrants of children are enlarged by, at
+     * least 1.
+     */
+    LooseQuadNode(ID2BoundingBox tight, ID2BoundingBox box, int maxNodeSize, double looseness) {
+        super(box, maxNodeSize);
+        assert looseness >= 1 && box.contains(tight);
+        this.tight = tight;
+        this.looseness = looseness;
+        this.cx = tight.getCenterX();
+        this.cy = tight.getCenterY();
+        this.qx = (tight.getUpper().getX() - tight.getLower().getX()) / 4;
+        this.qy = (tight.getUpper().getY() - tight.getLower().getY()) / 4;
+        this.lx = box.getLower().getX();
+        this.ly = box.getLower().getY();
+        this.ux = box.getUpper().getX();
+        this.uy = box.getUpper().getY();
+    }
+
+    double getLooseness() {
+        return looseness;
+    }
+
+    ID2BoundingBox getTightBounds() {
+        return tight;
+    }
+
+    @Override
+    boolean canSplit() {
+        return tight.getLower().getX() < cx && cx < tight.getUpper().getX()
+                && tight.getLower().getY() < cy && cy < tight.getUpper().getY();
+    }
+
+    /**
+     * Selects the quadrant of the centre of the key, if the key fits into the
+     * enlarged bounds of that child.
+     *
+     * @param key Key to locate.
+     * @return Child slot of the quadrant the key fits into, or -1 if the key
+     * is too large for the child of its centre.
+     */
+    @Override
+    int childIndex(K key) {
+        final double klx, kly, kux, kuy;
+        if (key instanceof ID2BoundingBox) {
+            final ID2BoundingBox keybox = (ID2BoundingBox) key;
+            klx = keybox.getLower().getX();
+            kly = keybox.getLower().getY();
+            kux = keybox.getUpper().getX();
+            kuy = keybox.getUpper().getY();
+        } else if (key instanceof ID2Point) {
+            klx = kux = ((ID2Point) key).getX();
+            kly = kuy = ((ID2Point) key).getY();
+        } else {
+            return tightIndex(key);
+        }
+
+        final boolean east = (klx + kux) / 2 > cx;
+        final boolean south = (kly + kuy) / 2 > cy;
+        final double ccx = east ? cx + qx : cx - qx;
+        final double ccy = south ? cy + qy : cy - qy;
+        final double hx = qx * looseness;
+        final double hy = qy * looseness;
+        if (klx < Math.max(ccx - hx, lx) || kux > Math.min(ccx + hx, ux)
+                || kly < Math.max(ccy - hy, ly) || kuy > Math.min(ccy + hy, uy)) {
+            return -1;
+        }
+
+        return (east ? EAST : 0) | (south ? SOUTH : 0);
+    }
+
+    /**
+     * Keys other than points and bounding boxes only descend into the tight
+     * quadrant they are fully inside of.
+     */
+    private int tightIndex(K key) {
+        final int x = key.leftOf(cx, Axis2D.X) ? 0 : key.rightOf(cx, Axis2D.X) ? 1 : -1;
+        final int y = key.leftOf(cy, Axis2D.Y) ? 0 : key.rightOf(cy, Axis2D.Y) ? 1 : -1;
+        return x < 0 || y < 0 ? -1 : x * EAST | y * SOUTH;
+    }
+
+    /**
+     *
+     * @param index Child slot of the quadrant.
+     * @return Enlarged bounds of the quadrant, clipped to the bounds of this
+     * node.
+     */
+    @Override
+    ID2BoundingBox childBounds(int index) {
+        final double ccx = (index & EAST) != 0 ? cx + qx : cx - qx;
+        final double ccy = (index & SOUTH) != 0 ? cy + qy : cy - qy;
+        final double hx = qx * looseness;
+        final double hy = qy * looseness;
+
+        return new D2BoundingBox(
+                Math.max(ccx - hx, lx),
+                Math.max(ccy - hy, ly),
+                Math.min(ccx + hx, ux),
+                Math.min(ccy + hy, uy)
+        );
+    }
+
+    /**
+     *
+     * @param index Child slot of the quadrant.
+     * @return Tight bounds of the quadrant.
+     */
+    private ID2BoundingBox quadrant(int index) {
+        final boolean east = (index & EAST) != 0;
+        final boolean south = (index & SOUTH) != 0;
+
+        return new D2BoundingBox(
+                east ? cx : tight.getLower().getX(),
+                south ? cy : tight.getLower().getY(),
+                east ? tight.getUpper().getX() : cx,
+                south ? tight.getUpper().getY() : cy
+        );
+    }
+
+    @Override
+    QuadNode<K, V> newChild(int index) {
+        return new LooseQuadNode<>(quadrant(index), childBounds(index), getMaxNodeSize(), looseness);
+    }
+
+    @Override
+    QuadNode<K, V> emptyCopy() {
+        return new LooseQuadNode<>(tight, getBounds(), getMaxNodeSize(), looseness);
+    }
+}
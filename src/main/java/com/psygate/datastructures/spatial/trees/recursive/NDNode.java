@@ -0,0 +1,212 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.generalized.DNBoundingBox;
+import com.psygate.datastructures.spatial.generalized.IDBoundingBox;
+import com.psygate.datastructures.spatial.generalized.IDBoundingBoxContainable;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Node of an n-dimensional tree. A split node halves its bounds on one axis,
+ * the axis advancing with every level, so every node has two children no
+ * matter how many dimensions the tree has. Keys that are not inside either
+ * half stay in the split node.
+ *
+ * @see NDTree
+ * @author psygate (https://github.com/psygate)
+ */
+class NDNode<K extends IDBoundingBoxContainable, V> extends AbstractSpatialNode<K, V, NDNode<K, V>, NDNode.Subdivision> {
+
+    enum Subdivision {
+        LOWER, UPPER
+    };
+
+    private final DNBoundingBox box;
+    private final int axis;
+    private DNBoundingBox lowerBounds;
+    private DNBoundingBox upperBounds;
+
+    NDNode(DNBoundingBox box, int maxNodeSize, int axis) {
+        super(new ArrayList<>(maxNodeSize), maxNodeSize, Subdivision.values().length);
+        this.box = box;
+        this.axis = axis;
+    }
+
+    /**
+     * Bounds of the node.
+     *
+     * @return Bounds of the node.
+     */
+    DNBoundingBox getBounds() {
+        return box;
+    }
+
+    int getAxis() {
+        return axis;
+    }
+
+    @Override
+    void add(Pair<K, V> newpair) {
+        assert box.contains(newpair.getKey()) : "Not contained: " + newpair.getKey();
+        addSubtreeCount(1);
+        NDNode<K, V> child = getChild(newpair.getKey());
+
+        if (child == this) {
+            super.add(newpair);
+        } else {
+            child.add(newpair);
+        }
+    }
+
+    @Override
+    boolean canSplit() {
+        final double lower = box.getLower(axis).get(axis);
+        final double upper = box.getUpper(axis).get(axis);
+        final double center = box.getCenter(axis);
+        return lower < center && center < upper;
+    }
+
+    @Override
+    void split() {
+        lowerBounds = childBounds(Subdivision.LOWER);
+        upperBounds = childBounds(Subdivision.UPPER);
+        setSplit(true);
+        int size = getValues().size();
+        List<Pair<K, V>> values = getValuesCopy();
+        clearValues();
+        addSubtreeCount(-size);
+        values.forEach((v) -> add(v));
+        assert subtreeValueCount() == size;
+    }
+
+    /**
+     * Returns the child that contains the key, or this node if the node is not
+     * split or the key is in neither half.
+     *
+     * @param key Key to query for child containment.
+     * @return The child containing the key or this node.
+     */
+    NDNode<K, V> getChild(K key) {
+        if (isSplit()) {
+            final Subdivision side = side(key);
+            if (side != null) {
+                NDNode<K, V> child = getChild(side);
+                if (child == null) {
+                    child = new NDNode<>(side == Subdivision.LOWER ? lowerBounds : upperBounds,
+                            getMaxNodeSize(), (axis + 1) % box.getDimensions());
+                    setChild(side, child);
+                }
+
+                return child;
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     *
+     * @param key Key to locate.
+     * @return Half of the node the key is inside of, or null if the key is in
+     * neither half. A key on the split plane belongs to the lower half.
+     */
+    Subdivision side(IDBoundingBoxContainable key) {
+        if (key.isInside(lowerBounds)) {
+            return Subdivision.LOWER;
+        } else if (key.isInside(upperBounds)) {
+            return Subdivision.UPPER;
+        } else {
+            return null;
+        }
+    }
+
+    private DNBoundingBox childBounds(Subdivision side) {
+        final double[] lower = box.getLower(axis).get();
+        final double[] upper = box.getUpper(axis).get();
+        if (side == Subdivision.LOWER) {
+            upper[axis] = box.getCenter(axis);
+        } else {
+            lower[axis] = box.getCenter(axis);
+        }
+
+        return new DNBoundingBox(lower, upper);
+    }
+
+    /**
+     * Removes all values in this subtree associated with the provided key.
+     *
+     * @param key Key to search for.
+     * @return A list containing all removed values.
+     */
+    List<Pair<K, V>> subtreeRemove(K key) {
+        return subtreeRemove(key, (p) -> Objects.equals(p.getKey(), key));
+    }
+
+    /**
+     * Removes all pairs of the provided key and value from the subtree.
+     *
+     * @param key Key to search for.
+     * @param value Value to search for.
+     * @return List of values that have been removed.
+     */
+    List<Pair<K, V>> subtreeRemove(K key, V value) {
+        return subtreeRemove(key, (p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value));
+    }
+
+    private List<Pair<K, V>> subtreeRemove(K key, Predicate<Pair<K, V>> filter) {
+        List<Pair<K, V>> vals = getValues().stream().filter(filter).collect(Collectors.toList());
+        getValues().removeAll(vals);
+        if (isSplit()) {
+            final Subdivision side = side(key);
+            if (side != null && hasChild(side)) {
+                vals.addAll(getChild(side).subtreeRemove(key, filter));
+            }
+        }
+        addSubtreeCount(-vals.size());
+
+        return vals;
+    }
+
+    /**
+     * Removes all values in this subtree that equal the provided value.
+     *
+     * @param value Value to search for.
+     * @param hint Predicate used to prematurely remove nodes that should not be
+     * searched for the value.
+     * @return A list containing all removed values.
+     */
+    Collection<Pair<K, V>> subtreeRemoveValue(V value, Predicate<IDBoundingBox> hint) {
+        List<Pair<K, V>> vals = getValues().stream().filter((p) -> Objects.equals(p.getValue(), value)).collect(Collectors.toList());
+        getValues().removeAll(vals);
+        getChildren().stream()
+                .filter((cn) -> hint.test(cn.getBounds()))
+                .map((cn) -> cn.subtreeRemoveValue(value, hint))
+                .forEach((list) -> vals.addAll(list));
+        addSubtreeCount(-vals.size());
+
+        return vals;
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.generalized.DNBoundingBox;
+import com.psygate.datastructures.spatial.generalized.IDBoundingBox;
+import com.psygate.datastructures.spatial.generalized.IDBoundingBoxContainable;
+import com.psygate.datastructures.spatial.generalized.IDPoint;
+import com.psygate.datastructures.spatial.trees.BoundedSpatialTree;
+import com.psygate.datastructures.spatial.trees.MetricSpatialTree;
+import com.psygate.datastructures.spatial.trees.MutableSpatialTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spatial tree for keys with any number of dimensions. Instead of dividing a
+ * node into 2^d children, which leaves most of the children of a high
+ * dimensional node empty, every split halves a node on a single axis and the
+ * axis advances with every level, like a kd tree splitting at the center of
+ * its bounds. A key stays in the deepest node whose bounds it is inside of.
+ *
+ * Keys must be points or bounding boxes to be searched with nearest neighbour
+ * and distance queries.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public class NDTree<K extends IDBoundingBoxContainable, V> implements MutableSpatialTree<K, V, IDBoundingBox>, MetricSpatialTree<K, V, IDBoundingBox, IDBoundingBox, IDPoint> {
+
+    private final NDNode<K, V> root;
+    private long modcnt = Long.MIN_VALUE;
+    private int size = 0;
+
+    /**
+     *
+     * @param bounds Bounds of the new tree. The tree has as many dimensions as
+     * the bounds.
+     * @param maxNodeSize Maximum node size.
+     */
+    public NDTree(IDBoundingBox bounds, int maxNodeSize) {
+        this.root = new NDNode<>(new DNBoundingBox(bounds), maxNodeSize, 0);
+    }
+
+    /**
+     *
+     * @param tree Tree to copy.
+     * @param maxNodeSize Maximum node size.
+     */
+    public NDTree(BoundedSpatialTree<K, V, IDBoundingBox, IDBoundingBox> tree, int maxNodeSize) {
+        this(tree.getBounds(), maxNodeSize);
+        tree.entryStream().forEach((en) -> put(en));
+    }
+
+    /**
+     *
+     * @param values Values to insert upon construction.
+     * @param bounds Bounds of the new tree.
+     * @param maxNodeSize Maximum node size.
+     */
+    public NDTree(Map<K, V> values, IDBoundingBox bounds, int maxNodeSize) {
+        this(bounds, maxNodeSize);
+        putAll(values);
+    }
+
+    @Override
+    public IDBoundingBox getBounds() {
+        return root.getBounds();
+    }
+
+    /**
+     *
+     * @return Number of dimensions of the tree.
+     */
+    public int getDimensions() {
+        return root.getBounds().getDimensions();
+    }
+
+    /**
+     *
+     * @throws IllegalArgumentException If the key has a different number of
+     * dimensions than the tree.
+     */
+    @Override
+    public boolean envelopes(K key) {
+        return root.getBounds().contains(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getMaxNodeSize() {
+        return root.getMaxNodeSize();
+    }
+
+    /**
+     *
+     * @return Root node if this tree. Cannot be null.
+     */
+    NDNode<K, V> getRoot() {
+        return root;
+    }
+
+    @Override
+    public void put(Pair<K, V> pair) {
+        if (!envelopes(pair.getKey())) {
+            throw new IllegalArgumentException("Key outside bounds: " + pair.getKey());
+        }
+        modcnt++;
+        root.add(pair);
+        size++;
+    }
+
+    @Override
+    public Collection<V> remove(K key) {
+        if (!root.getBounds().contains(Objects.requireNonNull(key))) {
+            return new LinkedList<>();
+        } else {
+            return removed(root.subtreeRemove(key));
+        }
+    }
+
+    @Override
+    public Collection<V> remove(K key, V value) {
+        if (!root.getBounds().contains(Objects.requireNonNull(key))) {
+            return new LinkedList<>();
+        } else {
+            return removed(root.subtreeRemove(key, value));
+        }
+    }
+
+    @Override
+    public Collection<V> removeValue(V value, Predicate<IDBoundingBox> hint) {
+        return removed(root.subtreeRemoveValue(value, hint));
+    }
+
+    private Collection<V> removed(Collection<Pair<K, V>> pairs) {
+        if (!pairs.isEmpty()) {
+            modcnt++;
+            size -= pairs.size();
+        }
+
+        return pairs.stream().map(Pair::getValue).collect(Collectors.toList());
+    }
+
+    @Override
+    public void clear() {
+        modcnt++;
+        root.clear();
+        root.setSplit(false);
+        size = 0;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return pathStream(key).anyMatch((p) -> Objects.equals(p.getKey(), key));
+    }
+
+    @Override
+    public boolean contains(K key, V value) {
+        return pathStream(key).anyMatch((p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value));
+    }
+
+    /**
+     *
+     * @param key Key to locate.
+     * @return Stream of all pairs in the nodes on the path from the root to
+     * the deepest node the key can be stored in.
+     */
+    private Stream<Pair<K, V>> pathStream(K key) {
+        if (!root.getBounds().contains(Objects.requireNonNull(key))) {
+            return Stream.empty();
+        }
+
+        final List<NDNode<K, V>> path = new LinkedList<>();
+        NDNode<K, V> node = root;
+        while (node != null) {
+            path.add(node);
+            final NDNode.Subdivision side = node.isSplit() ? node.side(key) : null;
+            node = side == null ? null : node.getChild(side);
+        }
+
+        return path.stream().flatMap((n) -> n.getValues().stream());
+    }
+
+    @Override
+    public boolean containsValue(V value, Predicate<IDBoundingBox> pred) {
+        return selectiveValueStream(pred).anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return valueStream().anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> selectiveEntryStream(Predicate<IDBoundingBox> predicate) {
+        return StreamSupport.stream(new NodeSpliterator(root, predicate), false)
+                .filter((n) -> !n.isEmpty())
+                .flatMap((n) -> n.getValues().stream());
+    }
+
+    /**
+     * Lazily streams all entries whose keys are inside the window, bounds
+     * inclusive. Subtrees not intersecting the window are not traversed.
+     *
+     * @param window Window to search.
+     * @return A stream of all entries whose keys are inside the window.
+     * @throws IllegalArgumentException If the window has a different number
+     * of dimensions than the tree.
+     */
+    public Stream<Map.Entry<K, V>> withinWindow(IDBoundingBox window) {
+        if (window.getDimensions() != getDimensions()) {
+            throw new IllegalArgumentException("Dimension mismatch.");
+        }
+
+        return selectiveEntryStream(window::intersects)
+                .filter((en) -> window.contains(en.getKey()));
+    }
+
+    /**
+     *
+     * @throws IllegalArgumentException If k is negative, the point has a
+     * different number of dimensions than the tree, or a key is neither a
+     * point nor a bounding box.
+     */
+    @Override
+    public List<Map.Entry<K, V>> nearest(IDPoint point, int k) {
+        checkDimensions(point);
+        return NearestNeighbourSearch.search(root, k,
+                (node) -> node.getBounds().distSqr(point),
+                (key) -> distSqr(key, point));
+    }
+
+    /**
+     *
+     * @throws IllegalArgumentException If the distance is negative, the point
+     * has a different number of dimensions than the tree, or a key is neither
+     * a point nor a bounding box.
+     */
+    @Override
+    public Stream<Map.Entry<K, V>> withinDistance(IDPoint point, double distance) {
+        checkDimensions(point);
+        if (distance < 0) {
+            throw new IllegalArgumentException("Negative distance: " + distance);
+        }
+
+        final double distSqr = distance * distance;
+        return selectiveEntryStream((IDBoundingBox b) -> distSqr(b, point) <= distSqr)
+                .filter((en) -> distSqr(en.getKey(), point) <= distSqr);
+    }
+
+    private void checkDimensions(IDPoint point) {
+        if (Objects.requireNonNull(point).getDimensions() != getDimensions()) {
+            throw new IllegalArgumentException("Dimension mismatch.");
+        }
+    }
+
+    /**
+     *
+     * @return Squared minimal distance between the key and the point.
+     * @throws IllegalArgumentException If the key is neither a point nor a
+     * bounding box.
+     */
+    private static double distSqr(IDBoundingBoxContainable key, IDPoint point) {
+        if (key instanceof IDPoint) {
+            return ((IDPoint) key).distSqr(point);
+        } else if (key instanceof IDBoundingBox) {
+            return distSqr((IDBoundingBox) key, point);
+        } else {
+            throw new IllegalArgumentException("Unsupported key type: " + key.getClass());
+        }
+    }
+
+    /**
+     *
+     * @return Squared minimal distance between the box and the point, 0 if the
+     * point is inside the box.
+     */
+    private static double distSqr(IDBoundingBox box, IDPoint point) {
+        if (box instanceof DNBoundingBox) {
+            return ((DNBoundingBox) box).distSqr(point);
+        }
+
+        double sum = 0;
+        for (int i = 0; i < box.getDimensions(); i++) {
+            final double coordinate = point.get(i);
+            final double dist = Math.max(0, Math.max(
+                    box.getLower(i).get(i) - coordinate,
+                    coordinate - box.getUpper(i).get(i)));
+            sum += dist * dist;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Spliterator iterating over all nodes of the tree that satisfy the
+     * predicate.
+     */
+    private final class NodeSpliterator implements Spliterator<NDNode<K, V>> {
+
+        private final long id = modcnt;
+        private final Queue<NDNode<K, V>> stack = new LinkedList<>();
+        private final Predicate<IDBoundingBox> predicate;
+
+        NodeSpliterator(NDNode<K, V> node, Predicate<IDBoundingBox> predicate) {
+            this.predicate = Objects.requireNonNull(predicate);
+            stack.add(node);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super NDNode<K, V>> action) {
+            if (id != modcnt) {
+                throw new ConcurrentModificationException();
+            } else if (stack.isEmpty()) {
+                return false;
+            } else {
+                NDNode<K, V> selected = stack.remove();
+                for (int i = 0; i < selected.getChildSlots(); i++) {
+                    NDNode<K, V> child = selected.getChild(i);
+                    if (child != null && predicate.test(child.getBounds())) {
+                        stack.add(child);
+                    }
+                }
+                action.accept(selected);
+                return true;
+            }
+        }
+
+        @Override
+        public Spliterator<NDNode<K, V>> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+    }
+}
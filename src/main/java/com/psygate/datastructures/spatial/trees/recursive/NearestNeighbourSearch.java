@@ -0,0 +1,123 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Best-first k nearest neighbour search over a tree of spatial nodes. Nodes are
+ * visited in order of their minimal distance to the query point, subtrees that
+ * cannot contain an entry closer than the current k-th candidate are pruned.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+final class NearestNeighbourSearch {
+
+    private NearestNeighbourSearch() {
+    }
+
+    /**
+     *
+     * @param <K> Key type.
+     * @param <V> Value type.
+     * @param <N> Node type.
+     * @param root Root node to start the search at.
+     * @param k Maximum number of entries to find.
+     * @param nodeDistance Squared minimal distance from the query point to the
+     * bounds of a node.
+     * @param keyDistance Squared distance from the query point to a key.
+     * @return A list containing at most k entries, ordered by ascending
+     * distance.
+     */
+    static <K, V, N extends AbstractSpatialNode<K, V, N, ?>> List<Map.Entry<K, V>> search(N root, int k,
+            ToDoubleFunction<? super N> nodeDistance, ToDoubleFunction<? super K> keyDistance) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Negative neighbour count: " + k);
+        } else if (k == 0) {
+            return Collections.emptyList();
+        }
+
+        final PriorityQueue<Candidate<N>> nodes = new PriorityQueue<>();
+        final PriorityQueue<Candidate<Pair<K, V>>> best = new PriorityQueue<>(k + 1, Collections.reverseOrder());
+        nodes.add(new Candidate<>(root, nodeDistance.applyAsDouble(root)));
+
+        while (!nodes.isEmpty()) {
+            final Candidate<N> next = nodes.poll();
+            if (best.size() == k && next.distance > best.peek().distance) {
+                break;
+            }
+
+            for (Pair<K, V> pair : next.item.getValues()) {
+                final double distance = keyDistance.applyAsDouble(pair.getKey());
+                if (best.size() < k) {
+                    best.add(new Candidate<>(pair, distance));
+                } else if (distance < best.peek().distance) {
+                    best.poll();
+                    best.add(new Candidate<>(pair, distance));
+                }
+            }
+
+            for (int i = 0; i < next.item.getChildSlots(); i++) {
+                final N child = next.item.getChild(i);
+                if (child == null) {
+                    continue;
+                }
+
+                final double distance = nodeDistance.applyAsDouble(child);
+                if (best.size() < k || distance < best.peek().distance) {
+                    nodes.add(new Candidate<>(child, distance));
+                }
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Map.Entry<K, V>[] result = new Map.Entry[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll().item;
+        }
+
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    /**
+     * Item associated with its squared distance to the query point.
+     */
+    private static final class Candidate<T> implements Comparable<Candidate<T>> {
+
+        private final T item;
+        private final double distance;
+
+        Candidate(T item, double distance) {
+            this.item = item;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Candidate<T> o) {
+            return Double.compare(distance, o.distance);
+        }
+    }
+}
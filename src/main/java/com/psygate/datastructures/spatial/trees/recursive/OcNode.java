@@ -22,65 +22,45 @@ import com.psygate.datastructures.util.Pair;
 import com.psygate.datastructures.spatial.trees.recursive.OcNode.Quadrant;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.ListIterator;
 import java.util.Objects;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import com.psygate.datastructures.spatial.Axis3D;
+import com.psygate.datastructures.spatial.D3BoundingBox;
 import com.psygate.datastructures.spatial.ID3BoundingBox;
 import com.psygate.datastructures.spatial.ID3Boundable;
 
 /**
- * Default implementation of a simple quad tree node.
+ * Default implementation of a simple oc tree node.
  *
- * @see ImmutableQuadTree
- * @see QuadTree
+ * @see ImmutableOcTree
+ * @see OcTree
  * @author psygate (https://github.com/psygate)
  */
 class OcNode<K extends ID3Boundable, V> extends AbstractSpatialNode<K, V, OcNode<K, V>, Quadrant> {
 
+    /**
+     * Octants of a node. The ordinal of an octant is its child slot, bit 0
+     * selects the upper x half (E), bit 1 selects the upper y half (S), bit 2
+     * selects the upper z half (D).
+     */
     enum Quadrant {
         UNW, UNE, USW, USE,
         DNW, DNE, DSW, DSE
     };
 
+    private static final int OCTANTS = Quadrant.values().length;
+    static final int EAST = 1;
+    static final int SOUTH = 2;
+    static final int DOWN = 4;
+
     private final ID3BoundingBox box;
-    private final Map<ID3BoundingBox, Quadrant> subboxes = new HashMap<>();
-//    private final ArrayList<QuadNode<K, V>> getChildren() = new ArrayList<>(4);
-//    private boolean isSplit = false;
 
     OcNode(ID3BoundingBox box, int maxNodeSize) {
-        super(new ArrayList<>(maxNodeSize), maxNodeSize);
+        super(new ArrayList<>(maxNodeSize), maxNodeSize, OCTANTS);
         this.box = box;
-        //Split into up and down.
-        ID3BoundingBox[] split = box.splitMidY();
-
-        ID3BoundingBox[] uxsplit = split[0].splitMidX();
-        ID3BoundingBox[] uyupsplit = uxsplit[0].splitMidY();
-        ID3BoundingBox[] uydownsplit = uxsplit[1].splitMidY();
-        ID3BoundingBox unw = uyupsplit[0];
-        ID3BoundingBox usw = uyupsplit[1];
-        ID3BoundingBox une = uydownsplit[0];
-        ID3BoundingBox use = uydownsplit[1];
-
-        ID3BoundingBox[] dxsplit = split[0].splitMidX();
-        ID3BoundingBox[] dyupsplit = dxsplit[0].splitMidY();
-        ID3BoundingBox[] dydownsplit = dxsplit[1].splitMidY();
-        ID3BoundingBox dnw = dyupsplit[0];
-        ID3BoundingBox dsw = dyupsplit[1];
-        ID3BoundingBox dne = dydownsplit[0];
-        ID3BoundingBox dse = dydownsplit[1];
-
-        subboxes.put(unw, Quadrant.UNW);
-        subboxes.put(usw, Quadrant.USW);
-        subboxes.put(une, Quadrant.UNE);
-        subboxes.put(use, Quadrant.USE);
-
-        subboxes.put(dnw, Quadrant.DNW);
-        subboxes.put(dsw, Quadrant.DSW);
-        subboxes.put(dne, Quadrant.DNE);
-        subboxes.put(dse, Quadrant.DSE);
     }
 
     OcNode(ID3BoundingBox box, int maxNodeSize, Collection<Pair<K, V>> values) {
@@ -91,6 +71,7 @@ class OcNode<K extends ID3Boundable, V> extends AbstractSpatialNode<K, V, OcNode
     @Override
     void add(Pair<K, V> newpair) {
         assert box.contains(newpair.getKey()) : "Not contained: " + box + " - " + newpair.getKey();
+        addSubtreeCount(1);
         OcNode<K, V> child = getChild(newpair.getKey());
 
         if (child == this) {
@@ -109,12 +90,20 @@ class OcNode<K extends ID3Boundable, V> extends AbstractSpatialNode<K, V, OcNode
         return box;
     }
 
+    @Override
+    boolean canSplit() {
+        return box.getLower().getX() < box.getCenterX() && box.getCenterX() < box.getUpper().getX()
+                && box.getLower().getY() < box.getCenterY() && box.getCenterY() < box.getUpper().getY()
+                && box.getLower().getZ() < box.getCenterZ() && box.getCenterZ() < box.getUpper().getZ();
+    }
+
     @Override
     void split() {
         setSplit(true);
         int size = getValues().size();
         List<Pair<K, V>> values = getValuesCopy();
         clearValues();
+        addSubtreeCount(-size);
         values.forEach((v) -> add(v));
         assert subtreeValueCount() == size;
 //        }
@@ -132,35 +121,226 @@ class OcNode<K extends ID3Boundable, V> extends AbstractSpatialNode<K, V, OcNode
         assert box.contains(key);
 
         if (isSplit()) {
-            for (Map.Entry<ID3BoundingBox, Quadrant> entry : subboxes.entrySet()) {
-                if (entry.getKey().contains(key)) {
-                    if (!hasChild(entry.getValue())) {
-                        setChild(entry.getValue(), new OcNode<>(entry.getKey(), getMaxNodeSize()));
-                    }
-
-                    return getChild(entry.getValue());
+            final int index = childIndex(key);
+            if (index >= 0) {
+                OcNode<K, V> child = getChild(index);
+                if (child == null) {
+                    child = newChild(index);
+                    setChild(index, child);
                 }
+
+                return child;
             }
         }
 
         return this;
     }
 
+    /**
+     * Selects the octant of the key by comparing it against the center of this
+     * node.
+     *
+     * @param key Key to locate.
+     * @return Child slot of the octant containing the key, or -1 if the key
+     * crosses a split plane of this node.
+     */
+    int childIndex(K key) {
+        final int x = half(key, box.getCenterX(), Axis3D.X);
+        if (x < 0) {
+            return -1;
+        }
+
+        final int y = half(key, box.getCenterY(), Axis3D.Y);
+        if (y < 0) {
+            return -1;
+        }
+
+        final int z = half(key, box.getCenterZ(), Axis3D.Z);
+        if (z < 0) {
+            return -1;
+        }
+
+        return x * EAST | y * SOUTH | z * DOWN;
+    }
+
+    private static int half(ID3Boundable key, double center, Axis3D axis) {
+        if (key.leftOf(center, axis)) {
+            return 0;
+        } else if (key.rightOf(center, axis)) {
+            return 1;
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     *
+     * @param index Child slot of the octant.
+     * @return Bounds of the octant.
+     */
+    ID3BoundingBox childBounds(int index) {
+        final double cx = box.getCenterX();
+        final double cy = box.getCenterY();
+        final double cz = box.getCenterZ();
+        final boolean east = (index & EAST) != 0;
+        final boolean south = (index & SOUTH) != 0;
+        final boolean down = (index & DOWN) != 0;
+
+        return new D3BoundingBox(
+                east ? cx : box.getLower().getX(),
+                south ? cy : box.getLower().getY(),
+                down ? cz : box.getLower().getZ(),
+                east ? box.getUpper().getX() : cx,
+                south ? box.getUpper().getY() : cy,
+                down ? box.getUpper().getZ() : cz
+        );
+    }
+
+    /**
+     *
+     * @param index Child slot of the octant.
+     * @return New empty child node for the octant.
+     */
+    OcNode<K, V> newChild(int index) {
+        return new OcNode<>(childBounds(index), getMaxNodeSize());
+    }
+
+    /**
+     *
+     * @return New empty node with the bounds and the configuration of this
+     * node.
+     */
+    OcNode<K, V> emptyCopy() {
+        return new OcNode<>(box, getMaxNodeSize());
+    }
+
+    /**
+     * Loads the pairs into this empty node in one pass per level, instead of
+     * adding them one by one. The range is partitioned by child slot the same
+     * way add routes a pair, straddling pairs stay in this node and every
+     * non-empty slot is loaded recursively. The resulting tree has the same
+     * shape as if the pairs had been added one by one.
+     *
+     * @param pairs Pairs to load, reordered by this method.
+     * @param from First index of the range, inclusive.
+     * @param to Last index of the range, exclusive.
+     * @param scratch Scratch array of at least the length of pairs.
+     * @param slots Scratch array of at least the length of pairs.
+     */
+    void load(Pair<K, V>[] pairs, int from, int to, Pair<K, V>[] scratch, byte[] slots) {
+        assert isEmpty() && !hasChildren();
+        addSubtreeCount(to - from);
+        if (to - from <= getMaxNodeSize() || !canSplit()) {
+            for (int i = from; i < to; i++) {
+                getValues().add(pairs[i]);
+            }
+            return;
+        }
+
+        setSplit(true);
+        final int[] next = partition(pairs, from, to, scratch, slots);
+        for (int slot = 0; slot < OCTANTS; slot++) {
+            if (next[slot + 1] > next[slot]) {
+                final OcNode<K, V> child = newChild(slot);
+                setChild(slot, child);
+                child.load(pairs, next[slot], next[slot + 1], scratch, slots);
+            }
+        }
+    }
+
+    /**
+     * Adds the pairs to this subtree in one pass per level. The range is
+     * partitioned by child slot and every child receives its whole slice at
+     * once, a node is split at most once per batch. Empty children are bulk
+     * loaded. The resulting tree has the same shape as if the pairs had been
+     * added one by one.
+     *
+     * @param pairs Pairs to add, reordered by this method.
+     * @param from First index of the range, inclusive.
+     * @param to Last index of the range, exclusive.
+     * @param scratch Scratch array of at least the length of pairs.
+     * @param slots Scratch array of at least the length of pairs.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void addAll(Pair<K, V>[] pairs, int from, int to, Pair<K, V>[] scratch, byte[] slots) {
+        if (from == to) {
+            return;
+        }
+
+        if (!isSplit()) {
+            if (size() + to - from <= getMaxNodeSize() || !canSplit()) {
+                addSubtreeCount(to - from);
+                for (int i = from; i < to; i++) {
+                    getValues().add(pairs[i]);
+                }
+            } else {
+                final int size = size();
+                final Pair<K, V>[] combined = getValues().toArray(new Pair[size + to - from]);
+                System.arraycopy(pairs, from, combined, size, to - from);
+                clearValues();
+                addSubtreeCount(-size);
+                load(combined, 0, combined.length, new Pair[combined.length], new byte[combined.length]);
+            }
+            return;
+        }
+
+        addSubtreeCount(to - from);
+        final int[] next = partition(pairs, from, to, scratch, slots);
+        for (int slot = 0; slot < OCTANTS; slot++) {
+            if (next[slot + 1] > next[slot]) {
+                OcNode<K, V> child = getChild(slot);
+                if (child == null) {
+                    child = newChild(slot);
+                    setChild(slot, child);
+                    child.load(pairs, next[slot], next[slot + 1], scratch, slots);
+                } else {
+                    child.addAll(pairs, next[slot], next[slot + 1], scratch, slots);
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders the range by child slot and adds the pairs that straddle a split
+     * line to this node.
+     *
+     * @return Boundaries of the slices, the slice of a child slot starts at
+     * its index and ends at the following index.
+     */
+    private int[] partition(Pair<K, V>[] pairs, int from, int to, Pair<K, V>[] scratch, byte[] slots) {
+        final int[] counts = new int[OCTANTS + 1];
+        for (int i = from; i < to; i++) {
+            slots[i] = (byte) (childIndex(pairs[i].getKey()) + 1);
+            counts[slots[i]]++;
+        }
+
+        final int[] next = new int[OCTANTS + 1];
+        next[0] = from;
+        for (int i = 1; i < next.length; i++) {
+            next[i] = next[i - 1] + counts[i - 1];
+        }
+        for (int i = from; i < to; i++) {
+            scratch[next[slots[i]]++] = pairs[i];
+        }
+        System.arraycopy(scratch, from, pairs, from, to - from);
+
+        for (int i = from; i < next[0]; i++) {
+            getValues().add(pairs[i]);
+        }
+
+        return next;
+    }
+
     /**
      * Removes all values in this subtree associated with the provided key.
      *
      * @param key Key to search for.
+     * @param mergeThreshold Subtree size at or below which a subtree is merged
+     * back into its root.
      * @return A list containing all removed values.
      */
-    List<Pair<K, V>> subtreeRemove(K key) {
-        List<Pair<K, V>> vals = getValues().stream().filter((p) -> Objects.equals(p.getKey(), key)).collect(Collectors.toList());
-        getValues().removeAll(vals);
-        getChildren().values().stream()
-                .filter((cn) -> cn.getBounds().contains(key))
-                .map((cn) -> cn.subtreeRemove(key))
-                .forEach((list) -> vals.addAll(list));
-
-        return vals;
+    List<Pair<K, V>> subtreeRemove(K key, int mergeThreshold) {
+        return subtreeRemove((p) -> Objects.equals(p.getKey(), key), (b) -> b.contains(key), mergeThreshold);
     }
 
     /**
@@ -168,21 +348,13 @@ class OcNode<K extends ID3Boundable, V> extends AbstractSpatialNode<K, V, OcNode
      *
      * @param key Key to search for.
      * @param value Value to search for.
+     * @param mergeThreshold Subtree size at or below which a subtree is merged
+     * back into its root.
      * @return List of values that have been removed.
      */
-    List<Pair<K, V>> subtreeRemove(K key, V value) {
-        List<Pair<K, V>> vals = getValues().stream()
-                .filter((p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value))
-                .collect(Collectors.toList());
-
-        getValues().removeAll(vals);
-
-        getChildren().values().stream()
-                .filter((cn) -> cn.getBounds().contains(key))
-                .map((cn) -> cn.subtreeRemove(key, value))
-                .forEach((list) -> vals.addAll(list));
-
-        return vals;
+    List<Pair<K, V>> subtreeRemove(K key, V value, int mergeThreshold) {
+        return subtreeRemove((p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value),
+                (b) -> b.contains(key), mergeThreshold);
     }
 
     /**
@@ -191,19 +363,106 @@ class OcNode<K extends ID3Boundable, V> extends AbstractSpatialNode<K, V, OcNode
      * @param value Value to search for.
      * @param hint Predicate used to prematurely remove nodes that should not be
      * searched for the value.
+     * @param mergeThreshold Subtree size at or below which a subtree is merged
+     * back into its root.
      * @return A list containing all removed values.
      */
-    Collection<Pair<K, V>> subtreeRemoveValue(V value, Predicate<ID3BoundingBox> hint) {
-        List<Pair<K, V>> vals = getValues().stream().filter((p) -> Objects.equals(p.getValue(), value)).collect(Collectors.toList());
+    Collection<Pair<K, V>> subtreeRemoveValue(V value, Predicate<ID3BoundingBox> hint, int mergeThreshold) {
+        return subtreeRemove((p) -> Objects.equals(p.getValue(), value), hint, mergeThreshold);
+    }
+
+    /**
+     * Removes all pairs satisfying the filter from the nodes selected by the
+     * hint, then merges underfull subtrees on the way back up.
+     */
+    private List<Pair<K, V>> subtreeRemove(Predicate<Pair<K, V>> filter, Predicate<ID3BoundingBox> hint, int mergeThreshold) {
+        List<Pair<K, V>> vals = getValues().stream().filter(filter).collect(Collectors.toList());
         getValues().removeAll(vals);
-        getChildren().values().stream()
-                .filter((cn) -> hint.test(cn.getBounds()))
-                .map((cn) -> cn.subtreeRemoveValue(value, hint))
-                .forEach((list) -> vals.addAll(list));
+        for (int i = 0; i < OCTANTS; i++) {
+            final OcNode<K, V> child = getChild(i);
+            if (child != null && hint.test(child.getBounds())) {
+                vals.addAll(child.subtreeRemove(filter, hint, mergeThreshold));
+            }
+        }
+        addSubtreeCount(-vals.size());
+        if (!vals.isEmpty()) {
+            merge(mergeThreshold);
+        }
 
         return vals;
     }
 
+    /**
+     * Moves all pairs with the old key and the value to the new key. The pairs
+     * are searched on the path of the old key, the new pairs are inserted
+     * starting at the deepest node on that path that the new key is routed
+     * through, so short moves never go back to the root. A pair that stays in
+     * its node is replaced in place.
+     *
+     * @param oldKey Current key of the pairs.
+     * @param newKey New key of the pairs, has to be contained in this node.
+     * @param value Value of the pairs.
+     * @param mergeThreshold Subtree size at or below which a subtree is merged
+     * back into its root.
+     * @return True if a pair was moved.
+     */
+    boolean move(K oldKey, K newKey, V value, int mergeThreshold) {
+        final List<OcNode<K, V>> path = new ArrayList<>();
+        OcNode<K, V> node = this;
+        while (node != null) {
+            path.add(node);
+            final int slot = node.isSplit() ? node.childIndex(oldKey) : -1;
+            node = slot < 0 ? null : node.getChild(slot);
+        }
+
+        final int depth = path.size() - 1;
+        int common = 0;
+        while (common < depth && path.get(common).childIndex(newKey) == path.get(common).childIndex(oldKey)) {
+            common++;
+        }
+
+        boolean found = false;
+        int top = common;
+        final int[] removed = new int[path.size()];
+        final List<Pair<K, V>> moved = new ArrayList<>();
+        for (int i = 0; i <= depth; i++) {
+            final OcNode<K, V> holder = path.get(i);
+            final boolean inPlace = i <= common && (!holder.isSplit() || holder.childIndex(newKey) < 0);
+            for (ListIterator<Pair<K, V>> it = holder.getValues().listIterator(); it.hasNext();) {
+                final Pair<K, V> pair = it.next();
+                if (!Objects.equals(pair.getKey(), oldKey) || !Objects.equals(pair.getValue(), value)) {
+                    continue;
+                }
+
+                found = true;
+                if (inPlace) {
+                    it.set(new Pair<>(newKey, pair.getValue()));
+                } else {
+                    it.remove();
+                    removed[i]++;
+                    moved.add(new Pair<>(newKey, pair.getValue()));
+                    top = Math.min(top, i);
+                }
+            }
+        }
+
+        if (moved.isEmpty()) {
+            return found;
+        }
+
+        int pending = 0;
+        for (int i = depth; i >= top; i--) {
+            pending += removed[i];
+            path.get(i).addSubtreeCount(-pending);
+        }
+        for (int i = depth; i >= top; i--) {
+            path.get(i).merge(mergeThreshold);
+        }
+        moved.forEach(path.get(top)::add);
+
+        return true;
+    }
+
     /**
      * True if this nodes integrity (all conditions that are required for a
      * quadnode) are true.
@@ -213,14 +472,12 @@ class OcNode<K extends ID3Boundable, V> extends AbstractSpatialNode<K, V, OcNode
      */
     boolean checkIntegrity() {
         assert getMaxNodeSize() >= 1;
-        assert subboxes != null;
-        assert subboxes.size() == 8;
-        assert subboxes.keySet().stream().noneMatch((b) -> b == null);
+        assert getChildSlots() == 8;
 //        assert values.size() <= parent.getMaxNodeSize();
         assert getValues().stream().noneMatch((p) -> p == null);
         assert getValues().stream().allMatch((p) -> box.contains(p.getKey()));
 
-        assert getChildren().values().stream().distinct().count() == getChildren().values().stream().filter((n) -> n != null).count();
+        assert getChildren().stream().allMatch((n) -> box.contains(n.getBounds()));
         return true;
     }
 
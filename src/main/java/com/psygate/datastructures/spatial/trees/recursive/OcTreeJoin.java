@@ -0,0 +1,200 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.ID3Boundable;
+import com.psygate.datastructures.spatial.ID3BoundingBox;
+import com.psygate.datastructures.spatial.ID3Point;
+import com.psygate.datastructures.spatial.trees.BoundedSpatialTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spatial join of two trees with three dimensional node bounds. Keys are
+ * compared by their extent, a point or a bounding box.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public final class OcTreeJoin {
+
+    private OcTreeJoin() {
+    }
+
+    /**
+     * Streams all pairs of entries whose keys are at most the distance apart.
+     * A distance of 0 yields the pairs whose keys intersect, bounds inclusive.
+     * If both trees are oc trees, they are traversed in lockstep and the
+     * pairs are produced lazily while the traversal advances. Otherwise every
+     * entry of the left tree is queried against the right tree. The trees
+     * must not be modified while the stream is consumed.
+     *
+     * @param <K1> Key type of the left tree.
+     * @param <V1> Value type of the left tree.
+     * @param <K2> Key type of the right tree.
+     * @param <V2> Value type of the right tree.
+     * @param left Left tree, providing the first entry of every pair.
+     * @param right Right tree, providing the second entry of every pair.
+     * @param distance Maximum distance between two keys.
+     * @param parallel True if the returned stream should be parallel.
+     * @return Stream of all matching pairs, in no particular order.
+     * @throws IllegalArgumentException If the distance is negative.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K1 extends ID3Boundable, V1, K2 extends ID3Boundable, V2> Stream<Pair<Map.Entry<K1, V1>, Map.Entry<K2, V2>>> join(
+            BoundedSpatialTree<K1, V1, ID3BoundingBox, ?> left, BoundedSpatialTree<K2, V2, ID3BoundingBox, ?> right,
+            double distance, boolean parallel) {
+        Objects.requireNonNull(left);
+        Objects.requireNonNull(right);
+        if (distance < 0) {
+            throw new IllegalArgumentException("Negative distance: " + distance);
+        }
+
+        final double distSqr = distance * distance;
+        if (left instanceof ImmutableOcTree && right instanceof ImmutableOcTree) {
+            final OcNode<K1, V1> leftRoot = ((ImmutableOcTree<K1, V1>) left).getRoot();
+            final OcNode<K2, V2> rightRoot = ((ImmutableOcTree<K2, V2>) right).getRoot();
+            return StreamSupport.stream(new JoinSpliterator<K1, V1, OcNode<K1, V1>, K2, V2, OcNode<K2, V2>>(
+                    (a, b) -> within(a.getBounds(), b.getBounds(), distSqr),
+                    (key) -> matcher(key, distSqr),
+                    (key) -> matcher(key, distSqr)
+            ).start(leftRoot, rightRoot), parallel);
+        }
+
+        final Stream<Map.Entry<K1, V1>> entries = parallel ? left.parallelEntryStream() : left.entryStream();
+        return entries.flatMap((a) -> right.selectiveEntryStream((b) -> within(a.getKey(), b, distSqr))
+                .filter((b) -> within(a.getKey(), b.getKey(), distSqr))
+                .map((b) -> new Pair<>(a, b)));
+    }
+
+    /**
+     * Resolves the key type once, instead of for every node and key the key
+     * is compared against.
+     *
+     * @param key Key to match against.
+     * @param distSqr Maximum squared distance.
+     * @return Matcher of nodes and keys within the distance of the key.
+     */
+    private static JoinSpliterator.Matcher<OcNode<?, ?>, ID3Boundable> matcher(ID3Boundable key, double distSqr) {
+        if (key instanceof ID3Point) {
+            final ID3Point point = (ID3Point) key;
+            return new JoinSpliterator.Matcher<OcNode<?, ?>, ID3Boundable>() {
+                @Override
+                public boolean node(OcNode<?, ?> node) {
+                    return within(node.getBounds(), point, distSqr);
+                }
+
+                @Override
+                public boolean key(ID3Boundable other) {
+                    return other.distSqr(point) <= distSqr;
+                }
+            };
+        } else if (key instanceof ID3BoundingBox) {
+            final ID3BoundingBox box = (ID3BoundingBox) key;
+            return new JoinSpliterator.Matcher<OcNode<?, ?>, ID3Boundable>() {
+                @Override
+                public boolean node(OcNode<?, ?> node) {
+                    return within(node.getBounds(), box, distSqr);
+                }
+
+                @Override
+                public boolean key(ID3Boundable other) {
+                    if (other instanceof ID3Point) {
+                        return within(box, (ID3Point) other, distSqr);
+                    } else {
+                        return within(box, other, distSqr);
+                    }
+                }
+            };
+        } else {
+            throw new IllegalArgumentException("Unsupported key type: " + key.getClass());
+        }
+    }
+
+    /**
+     *
+     * @return True if the minimal squared distance between the extents of
+     * both keys is at most the given distance.
+     * @throws IllegalArgumentException If a key is neither a point nor a
+     * bounding box.
+     */
+    static boolean within(ID3Boundable a, ID3Boundable b, double distSqr) {
+        if (a instanceof ID3Point) {
+            return b.distSqr((ID3Point) a) <= distSqr;
+        } else if (b instanceof ID3Point) {
+            return a.distSqr((ID3Point) b) <= distSqr;
+        } else if (a instanceof ID3BoundingBox && b instanceof ID3BoundingBox) {
+            return within((ID3BoundingBox) a, (ID3BoundingBox) b, distSqr);
+        } else {
+            throw new IllegalArgumentException("Unsupported key type: " + a.getClass() + ", " + b.getClass());
+        }
+    }
+
+    /**
+     * Rejects on the first axis exceeding the distance.
+     */
+    private static boolean within(ID3BoundingBox box, ID3Point point, double distSqr) {
+        final double xgap = gap(box.getLower().getX(), box.getUpper().getX(), point.getX(), point.getX());
+        if (xgap * xgap > distSqr) {
+            return false;
+        }
+
+        final double ygap = gap(box.getLower().getY(), box.getUpper().getY(), point.getY(), point.getY());
+        if (xgap * xgap + ygap * ygap > distSqr) {
+            return false;
+        }
+
+        final double zgap = gap(box.getLower().getZ(), box.getUpper().getZ(), point.getZ(), point.getZ());
+        return xgap * xgap + ygap * ygap + zgap * zgap <= distSqr;
+    }
+
+    /**
+     * Rejects on the first axis exceeding the distance.
+     */
+    private static boolean within(ID3BoundingBox a, ID3BoundingBox b, double distSqr) {
+        final double xgap = gap(a.getLower().getX(), a.getUpper().getX(), b.getLower().getX(), b.getUpper().getX());
+        if (xgap * xgap > distSqr) {
+            return false;
+        }
+
+        final double ygap = gap(a.getLower().getY(), a.getUpper().getY(), b.getLower().getY(), b.getUpper().getY());
+        if (xgap * xgap + ygap * ygap > distSqr) {
+            return false;
+        }
+
+        final double zgap = gap(a.getLower().getZ(), a.getUpper().getZ(), b.getLower().getZ(), b.getUpper().getZ());
+        return xgap * xgap + ygap * ygap + zgap * zgap <= distSqr;
+    }
+
+    /**
+     *
+     * @return Distance between two intervals on one axis, 0 if they overlap.
+     */
+    private static double gap(double lowerA, double upperA, double lowerB, double upperB) {
+        if (lowerA > upperB) {
+            return lowerA - upperB;
+        } else if (lowerB > upperA) {
+            return lowerB - upperA;
+        } else {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D3BoundingBox;
+import com.psygate.datastructures.spatial.D3Point;
+import com.psygate.datastructures.spatial.ID3Boundable;
+import com.psygate.datastructures.spatial.ID3BoundingBox;
+import com.psygate.datastructures.spatial.ID3Point;
+import com.psygate.datastructures.util.Codec;
+import com.psygate.datastructures.util.Pair;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Binary format for immutable oc trees. The node structure is written
+ * alongside the entries, so reading a tree restores the nodes directly instead
+ * of adding and splitting every entry again.
+ *
+ * The format consists of a header (magic, version, bounds, maximum node size,
+ * entry count) followed by the nodes in pre-order. Every node is written as
+ * its split flag, a bit mask of the occupied child slots, its entry count and
+ * its entries, followed by its children in slot order. Child bounds are not
+ * written, they are derived from the parent bounds the same way the nodes
+ * derive them.
+ *
+ * Streams should be buffered, the format issues many small writes and reads.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public final class OcTreeSerializer {
+
+    static final int MAGIC = 0x50534f54;
+    static final short VERSION = 1;
+
+    /**
+     * Codec for point keys, reads D3Point instances.
+     */
+    public static final Codec<ID3Point> POINT = new Codec<ID3Point>() {
+        @Override
+        public void write(DataOutput out, ID3Point value) throws IOException {
+            out.writeDouble(value.getX());
+            out.writeDouble(value.getY());
+            out.writeDouble(value.getZ());
+        }
+
+        @Override
+        public ID3Point read(DataInput in) throws IOException {
+            return new D3Point(in.readDouble(), in.readDouble(), in.readDouble());
+        }
+    };
+
+    /**
+     * Codec for bounding box keys, reads D3BoundingBox instances.
+     */
+    public static final Codec<ID3BoundingBox> BOUNDING_BOX = new Codec<ID3BoundingBox>() {
+        @Override
+        public void write(DataOutput out, ID3BoundingBox value) throws IOException {
+            writeBox(out, value);
+        }
+
+        @Override
+        public ID3BoundingBox read(DataInput in) throws IOException {
+            return readBox(in);
+        }
+    };
+
+    private OcTreeSerializer() {
+    }
+
+    /**
+     * Writes the tree to the output.
+     *
+     * @param <K> Key type.
+     * @param <V> Value type.
+     * @param tree Tree to write.
+     * @param out Output to write to.
+     * @param keyCodec Codec used to write the keys.
+     * @param valueCodec Codec used to write the values.
+     * @throws IOException If writing fails.
+     * @throws IllegalArgumentException If the tree is a loose tree, the format
+     * only describes regular child bounds.
+     */
+    public static <K extends ID3Boundable, V> void write(ImmutableOcTree<K, V> tree, DataOutput out,
+            Codec<? super K> keyCodec, Codec<? super V> valueCodec) throws IOException {
+        Objects.requireNonNull(keyCodec);
+        Objects.requireNonNull(valueCodec);
+        if (tree.getRoot() instanceof LooseOcNode) {
+            throw new IllegalArgumentException("Loose trees cannot be serialized.");
+        }
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        writeBox(out, tree.getBounds());
+        out.writeInt(tree.getMaxNodeSize());
+        out.writeInt(tree.size());
+        writeNode(tree.getRoot(), out, keyCodec, valueCodec);
+    }
+
+    private static <K extends ID3Boundable, V> void writeNode(OcNode<K, V> node, DataOutput out,
+            Codec<? super K> keyCodec, Codec<? super V> valueCodec) throws IOException {
+        int mask = 0;
+        for (int i = 0; i < node.getChildSlots(); i++) {
+            if (node.getChild(i) != null) {
+                mask |= 1 << i;
+            }
+        }
+
+        out.writeBoolean(node.isSplit());
+        out.writeByte(mask);
+        out.writeInt(node.size());
+        for (Pair<K, V> pair : node.getValues()) {
+            keyCodec.write(out, pair.getKey());
+            valueCodec.write(out, pair.getValue());
+        }
+
+        for (int i = 0; i < node.getChildSlots(); i++) {
+            final OcNode<K, V> child = node.getChild(i);
+            if (child != null) {
+                writeNode(child, out, keyCodec, valueCodec);
+            }
+        }
+    }
+
+    /**
+     * Reads a tree written by {@link #write}. The codecs have to match the
+     * codecs the tree was written with.
+     *
+     * @param <K> Key type.
+     * @param <V> Value type.
+     * @param in Input to read from.
+     * @param keyCodec Codec used to read the keys.
+     * @param valueCodec Codec used to read the values.
+     * @return The restored tree.
+     * @throws IOException If reading fails, the format or version is not
+     * supported or the input is inconsistent.
+     */
+    public static <K extends ID3Boundable, V> ImmutableOcTree<K, V> read(DataInput in,
+            Codec<? extends K> keyCodec, Codec<? extends V> valueCodec) throws IOException {
+        Objects.requireNonNull(keyCodec);
+        Objects.requireNonNull(valueCodec);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an oc tree.");
+        }
+
+        final short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version: " + version);
+        }
+
+        final D3BoundingBox bounds = readBox(in);
+        final int maxNodeSize = in.readInt();
+        final int size = in.readInt();
+        if (maxNodeSize <= 0 || size < 0) {
+            throw new IOException("Corrupt header: " + maxNodeSize + ", " + size);
+        }
+
+        final OcNode<K, V> root = new OcNode<>(bounds, maxNodeSize);
+        readNode(root, in, keyCodec, valueCodec);
+        if (root.subtreeCount() != size) {
+            throw new IOException("Entry count mismatch: " + root.subtreeCount() + " != " + size);
+        }
+
+        return new ImmutableOcTree<>(root);
+    }
+
+    private static <K extends ID3Boundable, V> void readNode(OcNode<K, V> node, DataInput in,
+            Codec<? extends K> keyCodec, Codec<? extends V> valueCodec) throws IOException {
+        node.setSplit(in.readBoolean());
+        final int mask = in.readUnsignedByte();
+        final int count = in.readInt();
+        if (count < 0 || (!node.isSplit() && mask != 0)) {
+            throw new IOException("Corrupt node: " + node.getBounds());
+        }
+
+        final List<Pair<K, V>> values = node.getValues();
+        for (int i = 0; i < count; i++) {
+            final K key = keyCodec.read(in);
+            if (!node.getBounds().contains(key)) {
+                throw new IOException("Key outside node: " + node.getBounds() + " - " + key);
+            }
+            values.add(new Pair<>(key, valueCodec.read(in)));
+        }
+        node.addSubtreeCount(count);
+
+        for (int i = 0; i < node.getChildSlots(); i++) {
+            if ((mask & (1 << i)) != 0) {
+                final OcNode<K, V> child = new OcNode<>(node.childBounds(i), node.getMaxNodeSize());
+                readNode(child, in, keyCodec, valueCodec);
+                node.setChild(i, child);
+                node.addSubtreeCount(child.subtreeCount());
+            }
+        }
+    }
+
+    private static void writeBox(DataOutput out, ID3BoundingBox box) throws IOException {
+        out.writeDouble(box.getLower().getX());
+        out.writeDouble(box.getLower().getY());
+        out.writeDouble(box.getLower().getZ());
+        out.writeDouble(box.getUpper().getX());
+        out.writeDouble(box.getUpper().getY());
+        out.writeDouble(box.getUpper().getZ());
+    }
+
+    private static D3BoundingBox readBox(DataInput in) throws IOException {
+        return new D3BoundingBox(in.readDouble(), in.readDouble(), in.readDouble(),
+                in.readDouble(), in.readDouble(), in.readDouble());
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D3BoundingBox;
+import com.psygate.datastructures.spatial.ID3BoundingBox;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Oc tree node storing point coordinates in parallel primitive arrays. Only
+ * leaves hold entries, since a point always fits into exactly one octant.
+ *
+ * @see PackedPointOcTree
+ * @author psygate (https://github.com/psygate)
+ * @param <V> Value type.
+ */
+final class PackedOcNode<V> {
+
+    private static final int EAST = 1;
+    private static final int SOUTH = 2;
+    private static final int DOWN = 4;
+
+    private final D3BoundingBox box;
+    private final double lx, ly, lz, ux, uy, uz, cx, cy, cz;
+    private final int maxNodeSize;
+    private double[] xs;
+    private double[] ys;
+    private double[] zs;
+    private Object[] values;
+    private int size = 0;
+    private PackedOcNode<V>[] children;
+
+    PackedOcNode(D3BoundingBox box, int maxNodeSize) {
+        this.box = box;
+        this.lx = box.getLower().getX();
+        this.ly = box.getLower().getY();
+        this.lz = box.getLower().getZ();
+        this.ux = box.getUpper().getX();
+        this.uy = box.getUpper().getY();
+        this.uz = box.getUpper().getZ();
+        this.cx = box.getCenterX();
+        this.cy = box.getCenterY();
+        this.cz = box.getCenterZ();
+        this.maxNodeSize = maxNodeSize;
+        this.xs = new double[maxNodeSize];
+        this.ys = new double[maxNodeSize];
+        this.zs = new double[maxNodeSize];
+        this.values = new Object[maxNodeSize];
+    }
+
+    /**
+     * Bounds of the node.
+     *
+     * @return Bounds of the node.
+     */
+    ID3BoundingBox getBounds() {
+        return box;
+    }
+
+    boolean contains(double x, double y, double z) {
+        return lx <= x && x <= ux && ly <= y && y <= uy && lz <= z && z <= uz;
+    }
+
+    boolean intersects(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        return lx <= maxX && minX <= ux && ly <= maxY && minY <= uy && lz <= maxZ && minZ <= uz;
+    }
+
+    boolean isLeaf() {
+        return children == null;
+    }
+
+    /**
+     *
+     * @return Number of entries in this node, not including children.
+     */
+    int size() {
+        return size;
+    }
+
+    double getX(int index) {
+        return xs[index];
+    }
+
+    double getY(int index) {
+        return ys[index];
+    }
+
+    double getZ(int index) {
+        return zs[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    V getValue(int index) {
+        return (V) values[index];
+    }
+
+    /**
+     *
+     * @param slot Child slot.
+     * @return Child in the slot or null, if the slot is empty or this node is a
+     * leaf.
+     */
+    PackedOcNode<V> getChild(int slot) {
+        return children == null ? null : children[slot];
+    }
+
+    /**
+     * Inserts a point into the subtree. The point must be contained in the
+     * bounds of this node.
+     *
+     * @param x X coordinate of the point.
+     * @param y Y coordinate of the point.
+     * @param z Z coordinate of the point.
+     * @param value Value associated with the point.
+     */
+    void add(double x, double y, double z, V value) {
+        assert contains(x, y, z) : "Not contained: " + box + " - " + x + ", " + y + ", " + z;
+        PackedOcNode<V> node = this;
+
+        while (!node.isLeaf()) {
+            node = node.child(node.childIndex(x, y, z));
+        }
+
+        node.append(x, y, z, value);
+    }
+
+    private void append(double x, double y, double z, V value) {
+        if (size == xs.length) {
+            if (canSplit()) {
+                split();
+                add(x, y, z, value);
+                return;
+            }
+
+            final int capacity = xs.length * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            zs = Arrays.copyOf(zs, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        xs[size] = x;
+        ys[size] = y;
+        zs[size] = z;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * A node can be split, if its bounds can still be halved and not all of
+     * its points are the same, otherwise splitting would recurse without ever
+     * distributing the points.
+     */
+    private boolean canSplit() {
+        if (!(lx < cx && cx < ux && ly < cy && cy < uy && lz < cz && cz < uz)) {
+            return false;
+        }
+
+        for (int i = 1; i < size; i++) {
+            if (xs[i] != xs[0] || ys[i] != ys[0] || zs[i] != zs[0]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void split() {
+        children = new PackedOcNode[8];
+        for (int i = 0; i < size; i++) {
+            child(childIndex(xs[i], ys[i], zs[i])).append(xs[i], ys[i], zs[i], (V) values[i]);
+        }
+
+        size = 0;
+        xs = null;
+        ys = null;
+        zs = null;
+        values = null;
+    }
+
+    private int childIndex(double x, double y, double z) {
+        return (x <= cx ? 0 : EAST) | (y <= cy ? 0 : SOUTH) | (z <= cz ? 0 : DOWN);
+    }
+
+    private PackedOcNode<V> child(int index) {
+        if (children[index] == null) {
+            final boolean east = (index & EAST) != 0;
+            final boolean south = (index & SOUTH) != 0;
+            final boolean down = (index & DOWN) != 0;
+            children[index] = new PackedOcNode<>(new D3BoundingBox(
+                    east ? cx : lx,
+                    south ? cy : ly,
+                    down ? cz : lz,
+                    east ? ux : cx,
+                    south ? uy : cy,
+                    down ? uz : cz
+            ), maxNodeSize);
+        }
+
+        return children[index];
+    }
+
+    /**
+     *
+     * @param x X coordinate of the point.
+     * @param y Y coordinate of the point.
+     * @param z Z coordinate of the point.
+     * @return The leaf that would hold the point.
+     */
+    PackedOcNode<V> getLeaf(double x, double y, double z) {
+        PackedOcNode<V> node = this;
+
+        while (!node.isLeaf()) {
+            final PackedOcNode<V> next = node.children[node.childIndex(x, y, z)];
+            if (next == null) {
+                return null;
+            }
+
+            node = next;
+        }
+
+        return node;
+    }
+
+    /**
+     * Discards all entries and children of this node.
+     */
+    void clear() {
+        children = null;
+        xs = new double[maxNodeSize];
+        ys = new double[maxNodeSize];
+        zs = new double[maxNodeSize];
+        values = new Object[maxNodeSize];
+        size = 0;
+    }
+
+    /**
+     * Removes all entries at the provided coordinates from this leaf, if they
+     * satisfy the predicate.
+     *
+     * @param x X coordinate of the point.
+     * @param y Y coordinate of the point.
+     * @param z Z coordinate of the point.
+     * @param filter Predicate the value has to satisfy to be removed.
+     * @param removed List to add the removed values to.
+     */
+    @SuppressWarnings("unchecked")
+    void removeAt(double x, double y, double z, Predicate<V> filter, List<V> removed) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (xs[i] == x && ys[i] == y && zs[i] == z && filter.test((V) values[i])) {
+                removed.add((V) values[i]);
+                removeIndex(i);
+            }
+        }
+    }
+
+    /**
+     * Removes all values in this subtree that equal the provided value.
+     *
+     * @param value Value to search for.
+     * @param hint Predicate used to prematurely remove nodes that should not be
+     * searched for the value.
+     * @param removed List to add the removed values to.
+     */
+    @SuppressWarnings("unchecked")
+    void subtreeRemoveValue(V value, Predicate<ID3BoundingBox> hint, List<V> removed) {
+        if (isLeaf()) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (Objects.equals(values[i], value)) {
+                    removed.add((V) values[i]);
+                    removeIndex(i);
+                }
+            }
+        } else {
+            for (PackedOcNode<V> child : children) {
+                if (child != null && hint.test(child.getBounds())) {
+                    child.subtreeRemoveValue(value, hint, removed);
+                }
+            }
+        }
+    }
+
+    private void removeIndex(int index) {
+        final int last = size - 1;
+        xs[index] = xs[last];
+        ys[index] = ys[last];
+        zs[index] = zs[last];
+        values[index] = values[last];
+        values[last] = null;
+        size--;
+    }
+
+    /**
+     * Calls the consumer for every point in this subtree that is inside the
+     * window.
+     */
+    @SuppressWarnings("unchecked")
+    void forEachInWindow(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, PackedPointOcTree.PointConsumer<? super V> consumer) {
+        if (isLeaf()) {
+            final double[] xs = this.xs;
+            final double[] ys = this.ys;
+            final double[] zs = this.zs;
+            for (int i = 0; i < size; i++) {
+                final double x = xs[i];
+                final double y = ys[i];
+                final double z = zs[i];
+                if (minX <= x && x <= maxX && minY <= y && y <= maxY && minZ <= z && z <= maxZ) {
+                    consumer.accept(x, y, z, (V) values[i]);
+                }
+            }
+        } else {
+            for (PackedOcNode<V> child : children) {
+                if (child != null && child.intersects(minX, minY, minZ, maxX, maxY, maxZ)) {
+                    child.forEachInWindow(minX, minY, minZ, maxX, maxY, maxZ, consumer);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Point;
+import com.psygate.datastructures.spatial.trees.BoundedSpatialTree;
+import com.psygate.datastructures.spatial.trees.MutableSpatialTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Point quad tree storing the coordinates of its entries in parallel primitive
+ * arrays inside the leaves. Keys are not retained, entries handed out by the
+ * streams carry a new D2Point built from the stored coordinates. Window scans
+ * through {@link #forEachInWindow} run over the coordinate arrays directly and
+ * do not allocate per entry.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <V> Value type.
+ */
+public class PackedPointQuadTree<V> implements MutableSpatialTree<ID2Point, V, ID2BoundingBox>, BoundedSpatialTree<ID2Point, V, ID2BoundingBox, ID2BoundingBox> {
+
+    private final PackedQuadNode<V> root;
+    private final int maxNodeSize;
+    private int size = 0;
+    private long modcnt = Long.MIN_VALUE;
+
+    /**
+     *
+     * @param bounds Bounds of the new quad tree.
+     * @param maxNodeSize Maximum node size.
+     */
+    public PackedPointQuadTree(ID2BoundingBox bounds, int maxNodeSize) {
+        if (maxNodeSize <= 0) {
+            throw new IllegalArgumentException("Node size must be positive: " + maxNodeSize);
+        }
+        this.maxNodeSize = maxNodeSize;
+        this.root = new PackedQuadNode<>(new D2BoundingBox(bounds), maxNodeSize);
+    }
+
+    /**
+     * Callback receiving the coordinates and the value of an entry.
+     *
+     * @param <V> Value type.
+     */
+    @FunctionalInterface
+    public interface PointConsumer<V> {
+
+        /**
+         *
+         * @param x X coordinate of the entry.
+         * @param y Y coordinate of the entry.
+         * @param value Value of the entry.
+         */
+        void accept(double x, double y, V value);
+    }
+
+    @Override
+    public ID2BoundingBox getBounds() {
+        return root.getBounds();
+    }
+
+    @Override
+    public boolean envelopes(ID2Point key) {
+        return root.contains(key.getX(), key.getY());
+    }
+
+    /**
+     *
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @return True if the point is inside the tree and could be inserted.
+     */
+    public boolean envelopes(double x, double y) {
+        return root.contains(x, y);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int getMaxNodeSize() {
+        return maxNodeSize;
+    }
+
+    @Override
+    public void put(Pair<ID2Point, V> pair) {
+        put(pair.getKey().getX(), pair.getKey().getY(), pair.getValue());
+    }
+
+    /**
+     *
+     * @param x X coordinate of the key.
+     * @param y Y coordinate of the key.
+     * @param value Value to insert associated with the coordinates.
+     */
+    public void put(double x, double y, V value) {
+        if (!root.contains(x, y)) {
+            throw new IllegalArgumentException("Key outside bounds: " + getBounds() + " - " + x + ", " + y);
+        }
+        modcnt++;
+        root.add(x, y, value);
+        size++;
+    }
+
+    @Override
+    public Collection<V> remove(ID2Point key) {
+        return removeAt(key, (V v) -> true);
+    }
+
+    @Override
+    public Collection<V> remove(ID2Point key, V value) {
+        return removeAt(key, (V v) -> Objects.equals(v, value));
+    }
+
+    private Collection<V> removeAt(ID2Point key, Predicate<V> filter) {
+        final List<V> removed = new LinkedList<>();
+        final PackedQuadNode<V> leaf = leafOf(key);
+
+        if (leaf != null) {
+            leaf.removeAt(key.getX(), key.getY(), filter, removed);
+            if (!removed.isEmpty()) {
+                modcnt++;
+                size -= removed.size();
+            }
+        }
+
+        return removed;
+    }
+
+    @Override
+    public Collection<V> removeValue(V value, Predicate<ID2BoundingBox> hint) {
+        final List<V> removed = new LinkedList<>();
+        if (hint.test(root.getBounds())) {
+            root.subtreeRemoveValue(value, hint, removed);
+        }
+        if (!removed.isEmpty()) {
+            modcnt++;
+            size -= removed.size();
+        }
+
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        modcnt++;
+        root.clear();
+        size = 0;
+    }
+
+    @Override
+    public boolean containsKey(ID2Point key) {
+        final PackedQuadNode<V> leaf = leafOf(key);
+        if (leaf != null) {
+            for (int i = 0; i < leaf.size(); i++) {
+                if (leaf.getX(i) == key.getX() && leaf.getY(i) == key.getY()) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean contains(ID2Point key, V value) {
+        final PackedQuadNode<V> leaf = leafOf(key);
+        if (leaf != null) {
+            for (int i = 0; i < leaf.size(); i++) {
+                if (leaf.getX(i) == key.getX() && leaf.getY(i) == key.getY()
+                        && Objects.equals(leaf.getValue(i), value)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private PackedQuadNode<V> leafOf(ID2Point key) {
+        Objects.requireNonNull(key);
+        return root.contains(key.getX(), key.getY()) ? root.getLeaf(key.getX(), key.getY()) : null;
+    }
+
+    @Override
+    public boolean containsValue(V value, Predicate<ID2BoundingBox> pred) {
+        return selectiveValueStream(pred).anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return valueStream().anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public Stream<Map.Entry<ID2Point, V>> selectiveEntryStream(Predicate<ID2BoundingBox> predicate) {
+        return StreamSupport.stream(new NodeSpliterator(root, predicate), false)
+                .filter((n) -> n.isLeaf() && n.size() > 0)
+                .flatMap((n) -> IntStream.range(0, n.size())
+                        .mapToObj((i) -> new Pair<ID2Point, V>(new D2Point(n.getX(i), n.getY(i)), n.getValue(i))));
+    }
+
+    /**
+     * Calls the consumer for every entry inside the window, bounds inclusive.
+     * The coordinates are read from the leaf arrays, no objects are created
+     * per visited entry. The tree must not be modified from within the
+     * consumer.
+     *
+     * @param minX Lower x coordinate of the window.
+     * @param minY Lower y coordinate of the window.
+     * @param maxX Upper x coordinate of the window.
+     * @param maxY Upper y coordinate of the window.
+     * @param consumer Consumer receiving the entries inside the window.
+     */
+    public void forEachInWindow(double minX, double minY, double maxX, double maxY, PointConsumer<? super V> consumer) {
+        Objects.requireNonNull(consumer);
+        if (root.intersects(minX, minY, maxX, maxY)) {
+            final long id = modcnt;
+            root.forEachInWindow(minX, minY, maxX, maxY, consumer);
+            if (id != modcnt) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     *
+     * @param window Window to search, bounds inclusive.
+     * @return A list of all values with coordinates inside the window.
+     */
+    public List<V> valuesInWindow(ID2BoundingBox window) {
+        final List<V> values = new ArrayList<>();
+        forEachInWindow(window.getLower().getX(), window.getLower().getY(),
+                window.getUpper().getX(), window.getUpper().getY(),
+                (x, y, v) -> values.add(v));
+        return values;
+    }
+
+    /**
+     * Spliterator iterating over all nodes of the tree that satisfy the
+     * predicate.
+     */
+    private final class NodeSpliterator implements Spliterator<PackedQuadNode<V>> {
+
+        private final long id = modcnt;
+        private final Queue<PackedQuadNode<V>> stack = new LinkedList<>();
+        private final Predicate<ID2BoundingBox> predicate;
+
+        NodeSpliterator(PackedQuadNode<V> node, Predicate<ID2BoundingBox> predicate) {
+            this.predicate = Objects.requireNonNull(predicate);
+            stack.add(node);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super PackedQuadNode<V>> action) {
+            if (id != modcnt) {
+                throw new ConcurrentModificationException();
+            } else if (stack.isEmpty()) {
+                return false;
+            } else {
+                PackedQuadNode<V> selected = stack.remove();
+                for (int i = 0; i < 4; i++) {
+                    PackedQuadNode<V> child = selected.getChild(i);
+                    if (child != null && predicate.test(child.getBounds())) {
+                        stack.add(child);
+                    }
+                }
+                action.accept(selected);
+                return true;
+            }
+        }
+
+        @Override
+        public Spliterator<PackedQuadNode<V>> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.Axis2D;
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Immutable quad tree node. Every modification returns a new node that copies
+ * the path to the modified node and shares all untouched subtrees. Methods
+ * return this node, if nothing changed.
+ *
+ * Keys crossing a split line of a node are kept in the node, all other keys
+ * are kept in the leaves.
+ *
+ * @see PersistentQuadTree
+ * @author psygate (https://github.com/psygate)
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+final class PersistentQuadNode<K extends ID2Boundable, V> {
+
+    private static final int EAST = 1;
+    private static final int SOUTH = 2;
+    private static final Pair<?, ?>[] EMPTY = new Pair<?, ?>[0];
+
+    private final ID2BoundingBox box;
+    private final Pair<K, V>[] values;
+    private final PersistentQuadNode<K, V>[] children;
+    private final int count;
+
+    @SuppressWarnings("unchecked")
+    PersistentQuadNode(ID2BoundingBox box) {
+        this(box, (Pair<K, V>[]) EMPTY, null, 0);
+    }
+
+    private PersistentQuadNode(ID2BoundingBox box, Pair<K, V>[] values, PersistentQuadNode<K, V>[] children, int count) {
+        this.box = box;
+        this.values = values;
+        this.children = children;
+        this.count = count;
+    }
+
+    /**
+     * Bounds of the node.
+     *
+     * @return Bounds of the node.
+     */
+    ID2BoundingBox getBounds() {
+        return box;
+    }
+
+    /**
+     *
+     * @return Values of this node, not including children. The array must not
+     * be modified.
+     */
+    Pair<K, V>[] getValues() {
+        return values;
+    }
+
+    boolean isLeaf() {
+        return children == null;
+    }
+
+    /**
+     *
+     * @param slot Child slot.
+     * @return Child in the slot or null, if the slot is empty or this node is a
+     * leaf.
+     */
+    PersistentQuadNode<K, V> getChild(int slot) {
+        return children == null ? null : children[slot];
+    }
+
+    /**
+     *
+     * @return Number of values in this subtree.
+     */
+    int subtreeCount() {
+        return count;
+    }
+
+    /**
+     *
+     * @param pair Pair to insert.
+     * @param maxNodeSize Maximum node size.
+     * @return New subtree containing the pair.
+     */
+    PersistentQuadNode<K, V> add(Pair<K, V> pair, int maxNodeSize) {
+        assert box.contains(pair.getKey()) : "Not contained: " + box + " - " + pair.getKey();
+        final int index = childIndex(pair.getKey());
+
+        if (isLeaf()) {
+            final Pair<K, V>[] next = append(values, pair);
+            if (next.length > maxNodeSize && canSplit(next)) {
+                return split(next, maxNodeSize);
+            }
+            return new PersistentQuadNode<>(box, next, null, count + 1);
+        } else if (index < 0) {
+            return new PersistentQuadNode<>(box, append(values, pair), children, count + 1);
+        } else {
+            final PersistentQuadNode<K, V>[] next = children.clone();
+            next[index] = child(index).add(pair, maxNodeSize);
+            return new PersistentQuadNode<>(box, values, next, count + 1);
+        }
+    }
+
+    private static <K, V> Pair<K, V>[] append(Pair<K, V>[] values, Pair<K, V> pair) {
+        final Pair<K, V>[] next = Arrays.copyOf(values, values.length + 1);
+        next[values.length] = pair;
+        return next;
+    }
+
+    /**
+     * A node can be split, if its bounds can still be halved and not all of
+     * its keys are the same, otherwise splitting would recurse without ever
+     * distributing the keys.
+     */
+    private boolean canSplit(Pair<K, V>[] pairs) {
+        final double cx = box.getCenterX();
+        final double cy = box.getCenterY();
+        if (!(box.getLower().getX() < cx && cx < box.getUpper().getX()
+                && box.getLower().getY() < cy && cy < box.getUpper().getY())) {
+            return false;
+        }
+
+        for (int i = 1; i < pairs.length; i++) {
+            if (!Objects.equals(pairs[i].getKey(), pairs[0].getKey())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private PersistentQuadNode<K, V> split(Pair<K, V>[] pairs, int maxNodeSize) {
+        final List<Pair<K, V>> kept = new ArrayList<>();
+        final PersistentQuadNode<K, V>[] next = new PersistentQuadNode[4];
+        for (Pair<K, V> pair : pairs) {
+            final int index = childIndex(pair.getKey());
+            if (index < 0) {
+                kept.add(pair);
+            } else {
+                if (next[index] == null) {
+                    next[index] = new PersistentQuadNode<>(childBounds(index));
+                }
+                next[index] = next[index].add(pair, maxNodeSize);
+            }
+        }
+
+        return new PersistentQuadNode<>(box, kept.toArray((Pair<K, V>[]) EMPTY), next, pairs.length);
+    }
+
+    private PersistentQuadNode<K, V> child(int index) {
+        return children[index] == null ? new PersistentQuadNode<>(childBounds(index)) : children[index];
+    }
+
+    /**
+     *
+     * @param key Key to locate.
+     * @return Child slot of the quadrant containing the key, or -1 if the key
+     * crosses a split line of this node.
+     */
+    int childIndex(K key) {
+        final int x = half(key, box.getCenterX(), Axis2D.X);
+        final int y = half(key, box.getCenterY(), Axis2D.Y);
+        return x < 0 || y < 0 ? -1 : x * EAST | y * SOUTH;
+    }
+
+    private static int half(ID2Boundable key, double center, Axis2D axis) {
+        if (key.leftOf(center, axis)) {
+            return 0;
+        } else if (key.rightOf(center, axis)) {
+            return 1;
+        } else {
+            return -1;
+        }
+    }
+
+    private ID2BoundingBox childBounds(int index) {
+        final double cx = box.getCenterX();
+        final double cy = box.getCenterY();
+        final boolean east = (index & EAST) != 0;
+        final boolean south = (index & SOUTH) != 0;
+
+        return new D2BoundingBox(
+                east ? cx : box.getLower().getX(),
+                south ? cy : box.getLower().getY(),
+                east ? box.getUpper().getX() : cx,
+                south ? box.getUpper().getY() : cy
+        );
+    }
+
+    /**
+     * Removes the pairs satisfying the filter from all nodes on the path of
+     * the key.
+     *
+     * @param key Key whose path is searched.
+     * @param filter Filter selecting the pairs to remove.
+     * @param maxNodeSize Maximum node size.
+     * @param removed List to add the removed pairs to.
+     * @return New subtree without the pairs, or null if the subtree is empty.
+     */
+    PersistentQuadNode<K, V> remove(K key, Predicate<Pair<K, V>> filter, int maxNodeSize, List<Pair<K, V>> removed) {
+        final int before = removed.size();
+        final Pair<K, V>[] kept = filter(values, filter, removed);
+        PersistentQuadNode<K, V>[] next = children;
+
+        final int index = childIndex(key);
+        if (children != null && index >= 0 && children[index] != null) {
+            final PersistentQuadNode<K, V> child = children[index].remove(key, filter, maxNodeSize, removed);
+            if (child != children[index]) {
+                next = children.clone();
+                next[index] = child;
+            }
+        }
+
+        return rebuild(before, kept, next, maxNodeSize, removed);
+    }
+
+    /**
+     * Removes the pairs satisfying the filter from all nodes satisfying the
+     * hint.
+     *
+     * @param filter Filter selecting the pairs to remove.
+     * @param hint Predicate used to prematurely exclude nodes from the search.
+     * @param maxNodeSize Maximum node size.
+     * @param removed List to add the removed pairs to.
+     * @return New subtree without the pairs, or null if the subtree is empty.
+     */
+    PersistentQuadNode<K, V> removeIf(Predicate<Pair<K, V>> filter, Predicate<ID2BoundingBox> hint, int maxNodeSize, List<Pair<K, V>> removed) {
+        final int before = removed.size();
+        final Pair<K, V>[] kept = filter(values, filter, removed);
+        PersistentQuadNode<K, V>[] next = children;
+
+        if (children != null) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] != null && hint.test(children[i].getBounds())) {
+                    final PersistentQuadNode<K, V> child = children[i].removeIf(filter, hint, maxNodeSize, removed);
+                    if (child != children[i]) {
+                        if (next == children) {
+                            next = children.clone();
+                        }
+                        next[i] = child;
+                    }
+                }
+            }
+        }
+
+        return rebuild(before, kept, next, maxNodeSize, removed);
+    }
+
+    private static <K, V> Pair<K, V>[] filter(Pair<K, V>[] pairs, Predicate<Pair<K, V>> filter, List<Pair<K, V>> removed) {
+        final Pair<K, V>[] kept = Arrays.copyOf(pairs, pairs.length);
+        int size = 0;
+        for (Pair<K, V> pair : pairs) {
+            if (filter.test(pair)) {
+                removed.add(pair);
+            } else {
+                kept[size++] = pair;
+            }
+        }
+
+        return size == pairs.length ? pairs : Arrays.copyOf(kept, size);
+    }
+
+    /**
+     * Builds the node after a removal. Subtrees that shrank to half the node
+     * size are collapsed into a single leaf, the gap to the split threshold
+     * keeps alternating inserts and removes from splitting and collapsing the
+     * same node over and over.
+     */
+    @SuppressWarnings("unchecked")
+    private PersistentQuadNode<K, V> rebuild(int before, Pair<K, V>[] kept, PersistentQuadNode<K, V>[] next, int maxNodeSize, List<Pair<K, V>> removed) {
+        final int remaining = count - (removed.size() - before);
+        if (remaining == count) {
+            return this;
+        } else if (remaining == 0) {
+            return null;
+        } else if (next != null && remaining <= maxNodeSize / 2) {
+            final List<Pair<K, V>> all = new ArrayList<>(remaining);
+            all.addAll(Arrays.asList(kept));
+            for (PersistentQuadNode<K, V> child : next) {
+                if (child != null) {
+                    child.collect(all);
+                }
+            }
+            return new PersistentQuadNode<>(box, all.toArray((Pair<K, V>[]) EMPTY), null, remaining);
+        } else {
+            return new PersistentQuadNode<>(box, kept, next, remaining);
+        }
+    }
+
+    private void collect(List<Pair<K, V>> all) {
+        all.addAll(Arrays.asList(values));
+        if (children != null) {
+            for (PersistentQuadNode<K, V> child : children) {
+                if (child != null) {
+                    child.collect(all);
+                }
+            }
+        }
+    }
+}
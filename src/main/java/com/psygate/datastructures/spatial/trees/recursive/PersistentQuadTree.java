@@ -0,0 +1,337 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.BoundedSpatialTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Persistent quad tree. The tree itself is immutable, {@link #put} and
+ * {@link #remove} return a new tree that copies only the path to the modified
+ * node and shares all other nodes with this tree. Holding on to a tree is a
+ * snapshot in constant time, readers of a snapshot are never affected by
+ * later modifications.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public final class PersistentQuadTree<K extends ID2Boundable, V> implements BoundedSpatialTree<K, V, ID2BoundingBox, ID2BoundingBox> {
+
+    private final PersistentQuadNode<K, V> root;
+    private final int maxNodeSize;
+
+    /**
+     * Creates a new empty tree.
+     *
+     * @param bounds Bounds of the new quad tree.
+     * @param maxNodeSize Maximum node size.
+     */
+    public PersistentQuadTree(ID2BoundingBox bounds, int maxNodeSize) {
+        this(new PersistentQuadNode<>(new D2BoundingBox(bounds)), maxNodeSize);
+    }
+
+    /**
+     *
+     * @param tree Tree to copy the entries from.
+     * @param maxNodeSize Maximum node size.
+     */
+    public PersistentQuadTree(BoundedSpatialTree<K, V, ID2BoundingBox, ID2BoundingBox> tree, int maxNodeSize) {
+        this(new PersistentQuadTree<K, V>(tree.getBounds(), maxNodeSize).putAll(tree.entries()).root, maxNodeSize);
+    }
+
+    private PersistentQuadTree(PersistentQuadNode<K, V> root, int maxNodeSize) {
+        if (maxNodeSize <= 0) {
+            throw new IllegalArgumentException("Node size must be positive: " + maxNodeSize);
+        }
+        this.root = root;
+        this.maxNodeSize = maxNodeSize;
+    }
+
+    private PersistentQuadTree<K, V> with(PersistentQuadNode<K, V> node) {
+        if (node == root) {
+            return this;
+        } else if (node == null) {
+            return new PersistentQuadTree<>(new PersistentQuadNode<>(root.getBounds()), maxNodeSize);
+        } else {
+            return new PersistentQuadTree<>(node, maxNodeSize);
+        }
+    }
+
+    @Override
+    public ID2BoundingBox getBounds() {
+        return root.getBounds();
+    }
+
+    @Override
+    public boolean envelopes(K key) {
+        return root.getBounds().contains(key);
+    }
+
+    @Override
+    public int size() {
+        return root.subtreeCount();
+    }
+
+    public int getMaxNodeSize() {
+        return maxNodeSize;
+    }
+
+    /**
+     *
+     * @param pair Pair to insert.
+     * @return A new tree containing the pair.
+     */
+    public PersistentQuadTree<K, V> put(Pair<K, V> pair) {
+        Objects.requireNonNull(pair.getKey());
+        if (!envelopes(pair.getKey())) {
+            throw new IllegalArgumentException("Key outside bounds: " + getBounds() + " - " + pair.getKey());
+        }
+
+        return with(root.add(pair, maxNodeSize));
+    }
+
+    /**
+     *
+     * @param key Key to insert.
+     * @param value Value to insert associated with the key.
+     * @return A new tree containing the key value pair.
+     */
+    public PersistentQuadTree<K, V> put(K key, V value) {
+        return put(new Pair<>(key, value));
+    }
+
+    /**
+     *
+     * @param values Entries to insert.
+     * @return A new tree containing all entries.
+     */
+    public PersistentQuadTree<K, V> putAll(Collection<? extends Map.Entry<K, V>> values) {
+        PersistentQuadTree<K, V> tree = this;
+        for (Map.Entry<K, V> entry : values) {
+            tree = tree.put(entry.getKey(), entry.getValue());
+        }
+
+        return tree;
+    }
+
+    /**
+     *
+     * @param key Key to remove.
+     * @return A new tree without any value associated with the key, or this
+     * tree if the key is not present.
+     */
+    public PersistentQuadTree<K, V> remove(K key) {
+        return removeAt(key, (p) -> Objects.equals(p.getKey(), key));
+    }
+
+    /**
+     *
+     * @param key Key to remove.
+     * @param value Value to remove.
+     * @return A new tree without the key value pair, or this tree if the pair
+     * is not present.
+     */
+    public PersistentQuadTree<K, V> remove(K key, V value) {
+        return removeAt(key, (p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value));
+    }
+
+    private PersistentQuadTree<K, V> removeAt(K key, Predicate<Pair<K, V>> filter) {
+        Objects.requireNonNull(key);
+        if (!envelopes(key)) {
+            return this;
+        }
+
+        return with(root.remove(key, filter, maxNodeSize, new LinkedList<>()));
+    }
+
+    /**
+     *
+     * @param value Value to remove.
+     * @return A new tree without the value, or this tree if the value is not
+     * present.
+     */
+    public PersistentQuadTree<K, V> removeValue(V value) {
+        return removeValue(value, (b) -> true);
+    }
+
+    /**
+     *
+     * @param value Value to remove.
+     * @param hint Predicate used to prematurely exclude nodes from the search.
+     * @return A new tree without the value, or this tree if the value is not
+     * present.
+     */
+    public PersistentQuadTree<K, V> removeValue(V value, Predicate<ID2BoundingBox> hint) {
+        if (!hint.test(root.getBounds())) {
+            return this;
+        }
+
+        return with(root.removeIf((p) -> Objects.equals(p.getValue(), value), hint, maxNodeSize, new LinkedList<>()));
+    }
+
+    /**
+     *
+     * @return An empty tree with the same bounds.
+     */
+    public PersistentQuadTree<K, V> clear() {
+        return with(null);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return pathStream(key).anyMatch((p) -> Objects.equals(p.getKey(), key));
+    }
+
+    @Override
+    public boolean contains(K key, V value) {
+        return pathStream(key).anyMatch((p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value));
+    }
+
+    /**
+     *
+     * @param key Key to locate.
+     * @return Stream of all pairs stored on the path of the key.
+     */
+    private Stream<Pair<K, V>> pathStream(K key) {
+        Objects.requireNonNull(key);
+        if (!envelopes(key)) {
+            return Stream.empty();
+        }
+
+        final Stream.Builder<Pair<K, V>[]> path = Stream.builder();
+        PersistentQuadNode<K, V> node = root;
+        while (node != null) {
+            path.add(node.getValues());
+            final int index = node.childIndex(key);
+            node = index < 0 ? null : node.getChild(index);
+        }
+
+        return path.build().flatMap(Arrays::stream);
+    }
+
+    @Override
+    public boolean containsValue(V value, Predicate<ID2BoundingBox> pred) {
+        return selectiveValueStream(pred).anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return valueStream().anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> selectiveEntryStream(Predicate<ID2BoundingBox> predicate) {
+        if (!predicate.test(root.getBounds())) {
+            return Stream.empty();
+        }
+
+        return StreamSupport.stream(new NodeSpliterator(root, predicate), false)
+                .flatMap((n) -> Arrays.<Map.Entry<K, V>>stream(n.getValues()));
+    }
+
+    /**
+     * Spliterator over all nodes of the tree that satisfy the predicate. The
+     * nodes never change, so no modification checks are needed.
+     */
+    private final class NodeSpliterator implements Spliterator<PersistentQuadNode<K, V>> {
+
+        private final Deque<PersistentQuadNode<K, V>> stack;
+        private final Predicate<ID2BoundingBox> predicate;
+
+        NodeSpliterator(PersistentQuadNode<K, V> node, Predicate<ID2BoundingBox> predicate) {
+            this(new ArrayDeque<>(), predicate);
+            stack.add(node);
+        }
+
+        private NodeSpliterator(Deque<PersistentQuadNode<K, V>> stack, Predicate<ID2BoundingBox> predicate) {
+            this.stack = stack;
+            this.predicate = Objects.requireNonNull(predicate);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super PersistentQuadNode<K, V>> action) {
+            if (stack.isEmpty()) {
+                return false;
+            }
+
+            final PersistentQuadNode<K, V> selected = stack.poll();
+            for (int i = 0; i < 4; i++) {
+                final PersistentQuadNode<K, V> child = selected.getChild(i);
+                if (child != null && predicate.test(child.getBounds())) {
+                    stack.add(child);
+                }
+            }
+            action.accept(selected);
+            return true;
+        }
+
+        @Override
+        public Spliterator<PersistentQuadNode<K, V>> trySplit() {
+            if (stack.size() < 2) {
+                return null;
+            }
+
+            final Deque<PersistentQuadNode<K, V>> half = new ArrayDeque<>();
+            for (int i = stack.size() / 2; i > 0; i--) {
+                half.add(stack.pollLast());
+            }
+
+            return new NodeSpliterator(half, predicate);
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = 0;
+            for (PersistentQuadNode<K, V> node : stack) {
+                size += node.subtreeCount();
+            }
+
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+        }
+    }
+
+    /**
+     * Root node, exposed for tests that check structural sharing.
+     */
+    PersistentQuadNode<K, V> getRoot() {
+        return root;
+    }
+}
@@ -22,12 +22,13 @@ import com.psygate.datastructures.util.Pair;
 import com.psygate.datastructures.spatial.trees.recursive.QuadNode.Quadrant;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.ListIterator;
 import java.util.Objects;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import com.psygate.datastructures.spatial.Axis2D;
+import com.psygate.datastructures.spatial.D2BoundingBox;
 import com.psygate.datastructures.spatial.ID2BoundingBox;
 import com.psygate.datastructures.spatial.ID2Boundable;
 
@@ -40,30 +41,23 @@ import com.psygate.datastructures.spatial.ID2Boundable;
  */
 class QuadNode<K extends ID2Boundable, V> extends AbstractSpatialNode<K, V, QuadNode<K, V>, Quadrant> {
 
+    /**
+     * Quadrants of a node. The ordinal of a quadrant is its child slot, bit 0
+     * selects the upper x half (E), bit 1 selects the upper y half (S).
+     */
     enum Quadrant {
         NW, NE, SW, SE
     };
 
+    private static final int QUADRANTS = Quadrant.values().length;
+    static final int EAST = 1;
+    static final int SOUTH = 2;
+
     private final ID2BoundingBox box;
-    private final Map<ID2BoundingBox, Quadrant> subboxes = new HashMap<>();
-//    private final ArrayList<QuadNode<K, V>> getChildren() = new ArrayList<>(4);
-//    private boolean isSplit = false;
 
     QuadNode(ID2BoundingBox box, int maxNodeSize) {
-        super(new ArrayList<>(maxNodeSize), maxNodeSize);
+        super(new ArrayList<>(maxNodeSize), maxNodeSize, QUADRANTS);
         this.box = box;
-        ID2BoundingBox[] xsplit = box.splitMidX();
-        ID2BoundingBox[] yupsplit = xsplit[0].splitMidY();
-        ID2BoundingBox[] ydownsplit = xsplit[1].splitMidY();
-        ID2BoundingBox nw = yupsplit[0];
-        ID2BoundingBox sw = yupsplit[1];
-        ID2BoundingBox ne = ydownsplit[0];
-        ID2BoundingBox se = ydownsplit[1];
-
-        subboxes.put(nw, Quadrant.NW);
-        subboxes.put(sw, Quadrant.SW);
-        subboxes.put(ne, Quadrant.NE);
-        subboxes.put(se, Quadrant.SE);
     }
 
     QuadNode(ID2BoundingBox box, int maxNodeSize, Collection<Pair<K, V>> values) {
@@ -74,6 +68,7 @@ class QuadNode<K extends ID2Boundable, V> extends AbstractSpatialNode<K, V, Quad
     @Override
     void add(Pair<K, V> newpair) {
         assert box.contains(newpair.getKey()) : "Not contained: " + box + " - " + newpair.getKey();
+        addSubtreeCount(1);
         QuadNode<K, V> child = getChild(newpair.getKey());
 
         if (child == this) {
@@ -92,12 +87,19 @@ class QuadNode<K extends ID2Boundable, V> extends AbstractSpatialNode<K, V, Quad
         return box;
     }
 
+    @Override
+    boolean canSplit() {
+        return box.getLower().getX() < box.getCenterX() && box.getCenterX() < box.getUpper().getX()
+                && box.getLower().getY() < box.getCenterY() && box.getCenterY() < box.getUpper().getY();
+    }
+
     @Override
     void split() {
         setSplit(true);
         int size = getValues().size();
         List<Pair<K, V>> values = getValuesCopy();
         clearValues();
+        addSubtreeCount(-size);
         values.forEach((v) -> add(v));
         assert subtreeValueCount() == size;
 //        }
@@ -115,35 +117,217 @@ class QuadNode<K extends ID2Boundable, V> extends AbstractSpatialNode<K, V, Quad
         assert box.contains(key);
 
         if (isSplit()) {
-            for (Map.Entry<ID2BoundingBox, Quadrant> entry : subboxes.entrySet()) {
-                if (entry.getKey().contains(key)) {
-                    if (!hasChild(entry.getValue())) {
-                        setChild(entry.getValue(), new QuadNode<>(entry.getKey(), getMaxNodeSize()));
-                    }
-
-                    return getChild(entry.getValue());
+            final int index = childIndex(key);
+            if (index >= 0) {
+                QuadNode<K, V> child = getChild(index);
+                if (child == null) {
+                    child = newChild(index);
+                    setChild(index, child);
                 }
+
+                return child;
             }
         }
 
         return this;
     }
 
+    /**
+     * Selects the quadrant of the key by comparing it against the center of
+     * this node.
+     *
+     * @param key Key to locate.
+     * @return Child slot of the quadrant containing the key, or -1 if the key
+     * crosses a split line of this node.
+     */
+    int childIndex(K key) {
+        final int x = half(key, box.getCenterX(), Axis2D.X);
+        if (x < 0) {
+            return -1;
+        }
+
+        final int y = half(key, box.getCenterY(), Axis2D.Y);
+        if (y < 0) {
+            return -1;
+        }
+
+        return x * EAST | y * SOUTH;
+    }
+
+    private static int half(ID2Boundable key, double center, Axis2D axis) {
+        if (key.leftOf(center, axis)) {
+            return 0;
+        } else if (key.rightOf(center, axis)) {
+            return 1;
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     *
+     * @param index Child slot of the quadrant.
+     * @return Bounds of the quadrant.
+     */
+    ID2BoundingBox childBounds(int index) {
+        final double cx = box.getCenterX();
+        final double cy = box.getCenterY();
+        final boolean east = (index & EAST) != 0;
+        final boolean south = (index & SOUTH) != 0;
+
+        return new D2BoundingBox(
+                east ? cx : box.getLower().getX(),
+                south ? cy : box.getLower().getY(),
+                east ? box.getUpper().getX() : cx,
+                south ? box.getUpper().getY() : cy
+        );
+    }
+
+    /**
+     *
+     * @param index Child slot of the quadrant.
+     * @return New empty child node for the quadrant.
+     */
+    QuadNode<K, V> newChild(int index) {
+        return new QuadNode<>(childBounds(index), getMaxNodeSize());
+    }
+
+    /**
+     *
+     * @return New empty node with the bounds and the configuration of this
+     * node.
+     */
+    QuadNode<K, V> emptyCopy() {
+        return new QuadNode<>(box, getMaxNodeSize());
+    }
+
+    /**
+     * Loads the pairs into this empty node in one pass per level, instead of
+     * adding them one by one. The range is partitioned by child slot the same
+     * way add routes a pair, straddling pairs stay in this node and every
+     * non-empty slot is loaded recursively. The resulting tree has the same
+     * shape as if the pairs had been added one by one.
+     *
+     * @param pairs Pairs to load, reordered by this method.
+     * @param from First index of the range, inclusive.
+     * @param to Last index of the range, exclusive.
+     * @param scratch Scratch array of at least the length of pairs.
+     * @param slots Scratch array of at least the length of pairs.
+     */
+    void load(Pair<K, V>[] pairs, int from, int to, Pair<K, V>[] scratch, byte[] slots) {
+        assert isEmpty() && !hasChildren();
+        addSubtreeCount(to - from);
+        if (to - from <= getMaxNodeSize() || !canSplit()) {
+            for (int i = from; i < to; i++) {
+                getValues().add(pairs[i]);
+            }
+            return;
+        }
+
+        setSplit(true);
+        final int[] next = partition(pairs, from, to, scratch, slots);
+        for (int slot = 0; slot < QUADRANTS; slot++) {
+            if (next[slot + 1] > next[slot]) {
+                final QuadNode<K, V> child = newChild(slot);
+                setChild(slot, child);
+                child.load(pairs, next[slot], next[slot + 1], scratch, slots);
+            }
+        }
+    }
+
+    /**
+     * Adds the pairs to this subtree in one pass per level. The range is
+     * partitioned by child slot and every child receives its whole slice at
+     * once, a node is split at most once per batch. Empty children are bulk
+     * loaded. The resulting tree has the same shape as if the pairs had been
+     * added one by one.
+     *
+     * @param pairs Pairs to add, reordered by this method.
+     * @param from First index of the range, inclusive.
+     * @param to Last index of the range, exclusive.
+     * @param scratch Scratch array of at least the length of pairs.
+     * @param slots Scratch array of at least the length of pairs.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void addAll(Pair<K, V>[] pairs, int from, int to, Pair<K, V>[] scratch, byte[] slots) {
+        if (from == to) {
+            return;
+        }
+
+        if (!isSplit()) {
+            if (size() + to - from <= getMaxNodeSize() || !canSplit()) {
+                addSubtreeCount(to - from);
+                for (int i = from; i < to; i++) {
+                    getValues().add(pairs[i]);
+                }
+            } else {
+                final int size = size();
+                final Pair<K, V>[] combined = getValues().toArray(new Pair[size + to - from]);
+                System.arraycopy(pairs, from, combined, size, to - from);
+                clearValues();
+                addSubtreeCount(-size);
+                load(combined, 0, combined.length, new Pair[combined.length], new byte[combined.length]);
+            }
+            return;
+        }
+
+        addSubtreeCount(to - from);
+        final int[] next = partition(pairs, from, to, scratch, slots);
+        for (int slot = 0; slot < QUADRANTS; slot++) {
+            if (next[slot + 1] > next[slot]) {
+                QuadNode<K, V> child = getChild(slot);
+                if (child == null) {
+                    child = newChild(slot);
+                    setChild(slot, child);
+                    child.load(pairs, next[slot], next[slot + 1], scratch, slots);
+                } else {
+                    child.addAll(pairs, next[slot], next[slot + 1], scratch, slots);
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders the range by child slot and adds the pairs that straddle a split
+     * line to this node.
+     *
+     * @return Boundaries of the slices, the slice of a child slot starts at
+     * its index and ends at the following index.
+     */
+    private int[] partition(Pair<K, V>[] pairs, int from, int to, Pair<K, V>[] scratch, byte[] slots) {
+        final int[] counts = new int[QUADRANTS + 1];
+        for (int i = from; i < to; i++) {
+            slots[i] = (byte) (childIndex(pairs[i].getKey()) + 1);
+            counts[slots[i]]++;
+        }
+
+        final int[] next = new int[QUADRANTS + 1];
+        next[0] = from;
+        for (int i = 1; i < next.length; i++) {
+            next[i] = next[i - 1] + counts[i - 1];
+        }
+        for (int i = from; i < to; i++) {
+            scratch[next[slots[i]]++] = pairs[i];
+        }
+        System.arraycopy(scratch, from, pairs, from, to - from);
+
+        for (int i = from; i < next[0]; i++) {
+            getValues().add(pairs[i]);
+        }
+
+        return next;
+    }
+
     /**
      * Removes all values in this subtree associated with the provided key.
      *
      * @param key Key to search for.
+     * @param mergeThreshold Subtree size at or below which a subtree is merged
+     * back into its root.
      * @return A list containing all removed values.
      */
-    List<Pair<K, V>> subtreeRemove(K key) {
-        List<Pair<K, V>> vals = getValues().stream().filter((p) -> Objects.equals(p.getKey(), key)).collect(Collectors.toList());
-        getValues().removeAll(vals);
-        getChildren().values().stream()
-                .filter((cn) -> cn.getBounds().contains(key))
-                .map((cn) -> cn.subtreeRemove(key))
-                .forEach((list) -> vals.addAll(list));
-
-        return vals;
+    List<Pair<K, V>> subtreeRemove(K key, int mergeThreshold) {
+        return subtreeRemove((p) -> Objects.equals(p.getKey(), key), (b) -> b.contains(key), mergeThreshold);
     }
 
     /**
@@ -151,21 +335,13 @@ class QuadNode<K extends ID2Boundable, V> extends AbstractSpatialNode<K, V, Quad
      *
      * @param key Key to search for.
      * @param value Value to search for.
+     * @param mergeThreshold Subtree size at or below which a subtree is merged
+     * back into its root.
      * @return List of values that have been removed.
      */
-    List<Pair<K, V>> subtreeRemove(K key, V value) {
-        List<Pair<K, V>> vals = getValues().stream()
-                .filter((p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value))
-                .collect(Collectors.toList());
-
-        getValues().removeAll(vals);
-
-        getChildren().values().stream()
-                .filter((cn) -> cn.getBounds().contains(key))
-                .map((cn) -> cn.subtreeRemove(key, value))
-                .forEach((list) -> vals.addAll(list));
-
-        return vals;
+    List<Pair<K, V>> subtreeRemove(K key, V value, int mergeThreshold) {
+        return subtreeRemove((p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value),
+                (b) -> b.contains(key), mergeThreshold);
     }
 
     /**
@@ -174,19 +350,106 @@ class QuadNode<K extends ID2Boundable, V> extends AbstractSpatialNode<K, V, Quad
      * @param value Value to search for.
      * @param hint Predicate used to prematurely remove nodes that should not be
      * searched for the value.
+     * @param mergeThreshold Subtree size at or below which a subtree is merged
+     * back into its root.
      * @return A list containing all removed values.
      */
-    Collection<Pair<K, V>> subtreeRemoveValue(V value, Predicate<ID2BoundingBox> hint) {
-        List<Pair<K, V>> vals = getValues().stream().filter((p) -> Objects.equals(p.getValue(), value)).collect(Collectors.toList());
+    Collection<Pair<K, V>> subtreeRemoveValue(V value, Predicate<ID2BoundingBox> hint, int mergeThreshold) {
+        return subtreeRemove((p) -> Objects.equals(p.getValue(), value), hint, mergeThreshold);
+    }
+
+    /**
+     * Removes all pairs satisfying the filter from the nodes selected by the
+     * hint, then merges underfull subtrees on the way back up.
+     */
+    private List<Pair<K, V>> subtreeRemove(Predicate<Pair<K, V>> filter, Predicate<ID2BoundingBox> hint, int mergeThreshold) {
+        List<Pair<K, V>> vals = getValues().stream().filter(filter).collect(Collectors.toList());
         getValues().removeAll(vals);
-        getChildren().values().stream()
-                .filter((cn) -> hint.test(cn.getBounds()))
-                .map((cn) -> cn.subtreeRemoveValue(value, hint))
-                .forEach((list) -> vals.addAll(list));
+        for (int i = 0; i < QUADRANTS; i++) {
+            final QuadNode<K, V> child = getChild(i);
+            if (child != null && hint.test(child.getBounds())) {
+                vals.addAll(child.subtreeRemove(filter, hint, mergeThreshold));
+            }
+        }
+        addSubtreeCount(-vals.size());
+        if (!vals.isEmpty()) {
+            merge(mergeThreshold);
+        }
 
         return vals;
     }
 
+    /**
+     * Moves all pairs with the old key and the value to the new key. The pairs
+     * are searched on the path of the old key, the new pairs are inserted
+     * starting at the deepest node on that path that the new key is routed
+     * through, so short moves never go back to the root. A pair that stays in
+     * its node is replaced in place.
+     *
+     * @param oldKey Current key of the pairs.
+     * @param newKey New key of the pairs, has to be contained in this node.
+     * @param value Value of the pairs.
+     * @param mergeThreshold Subtree size at or below which a subtree is merged
+     * back into its root.
+     * @return True if a pair was moved.
+     */
+    boolean move(K oldKey, K newKey, V value, int mergeThreshold) {
+        final List<QuadNode<K, V>> path = new ArrayList<>();
+        QuadNode<K, V> node = this;
+        while (node != null) {
+            path.add(node);
+            final int slot = node.isSplit() ? node.childIndex(oldKey) : -1;
+            node = slot < 0 ? null : node.getChild(slot);
+        }
+
+        final int depth = path.size() - 1;
+        int common = 0;
+        while (common < depth && path.get(common).childIndex(newKey) == path.get(common).childIndex(oldKey)) {
+            common++;
+        }
+
+        boolean found = false;
+        int top = common;
+        final int[] removed = new int[path.size()];
+        final List<Pair<K, V>> moved = new ArrayList<>();
+        for (int i = 0; i <= depth; i++) {
+            final QuadNode<K, V> holder = path.get(i);
+            final boolean inPlace = i <= common && (!holder.isSplit() || holder.childIndex(newKey) < 0);
+            for (ListIterator<Pair<K, V>> it = holder.getValues().listIterator(); it.hasNext();) {
+                final Pair<K, V> pair = it.next();
+                if (!Objects.equals(pair.getKey(), oldKey) || !Objects.equals(pair.getValue(), value)) {
+                    continue;
+                }
+
+                found = true;
+                if (inPlace) {
+                    it.set(new Pair<>(newKey, pair.getValue()));
+                } else {
+                    it.remove();
+                    removed[i]++;
+                    moved.add(new Pair<>(newKey, pair.getValue()));
+                    top = Math.min(top, i);
+                }
+            }
+        }
+
+        if (moved.isEmpty()) {
+            return found;
+        }
+
+        int pending = 0;
+        for (int i = depth; i >= top; i--) {
+            pending += removed[i];
+            path.get(i).addSubtreeCount(-pending);
+        }
+        for (int i = depth; i >= top; i--) {
+            path.get(i).merge(mergeThreshold);
+        }
+        moved.forEach(path.get(top)::add);
+
+        return true;
+    }
+
     /**
      * True if this nodes integrity (all conditions that are required for a
      * quadnode) are true.
@@ -196,14 +459,12 @@ class QuadNode<K extends ID2Boundable, V> extends AbstractSpatialNode<K, V, Quad
      */
     boolean checkIntegrity() {
         assert getMaxNodeSize() >= 1;
-        assert subboxes != null;
-        assert subboxes.size() == 4;
-        assert subboxes.keySet().stream().noneMatch((b) -> b == null);
+        assert getChildSlots() == 4;
 //        assert values.size() <= parent.getMaxNodeSize();
         assert getValues().stream().noneMatch((p) -> p == null);
         assert getValues().stream().allMatch((p) -> box.contains(p.getKey()));
 
-        assert getChildren().values().stream().distinct().count() == getChildren().values().stream().filter((n) -> n != null).count();
+        assert getChildren().stream().allMatch((n) -> box.contains(n.getBounds()));
         return true;
     }
 
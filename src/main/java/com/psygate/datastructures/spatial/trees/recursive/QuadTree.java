@@ -23,14 +23,17 @@ import com.psygate.datastructures.spatial.trees.MutableSpatialTree;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.ConcurrentModificationException;
 import java.util.Objects;
 import java.util.Spliterator;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import com.psygate.datastructures.spatial.trees.BoundedSpatialTree;
+import com.psygate.datastructures.spatial.D2BoundingBox;
 import com.psygate.datastructures.spatial.ID2BoundingBox;
 import com.psygate.datastructures.spatial.ID2Boundable;
 
@@ -43,13 +46,15 @@ import com.psygate.datastructures.spatial.ID2Boundable;
 public class QuadTree<K extends ID2Boundable, V> extends ImmutableQuadTree<K, V> implements MutableSpatialTree<K, V, ID2BoundingBox> {
 
     private final AtomicLong modcnt = new AtomicLong(Long.MIN_VALUE);
+    private final int mergeThreshold;
 
     /**
      *
      * @param tree Tree to copy.
      */
     public QuadTree(QuadTree<K, V> tree) {
-        super(tree, tree.getMaxNodeSize());
+        super(tree.entryStream(), tree.getRoot().emptyCopy());
+        this.mergeThreshold = tree.getMergeThreshold();
     }
 
     /**
@@ -59,6 +64,7 @@ public class QuadTree<K extends ID2Boundable, V> extends ImmutableQuadTree<K, V>
      */
     public QuadTree(BoundedSpatialTree<K, V, ID2BoundingBox, ID2BoundingBox> tree, int maxNodeSize) {
         super(tree, maxNodeSize);
+        this.mergeThreshold = maxNodeSize / 2;
     }
 
     /**
@@ -67,7 +73,58 @@ public class QuadTree<K extends ID2Boundable, V> extends ImmutableQuadTree<K, V>
      * @param maxNodeSize Maximum node size.
      */
     public QuadTree(ID2BoundingBox bounds, int maxNodeSize) {
+        this(bounds, maxNodeSize, maxNodeSize / 2);
+    }
+
+    /**
+     *
+     * @param bounds Bounds of the new quad tree.
+     * @param maxNodeSize Maximum node size.
+     * @param mergeThreshold Subtree size at or below which a split node is
+     * merged back into a single node when values are removed. Must be between
+     * 0 and the maximum node size, 0 only drops empty nodes.
+     */
+    public QuadTree(ID2BoundingBox bounds, int maxNodeSize, int mergeThreshold) {
         super(bounds, maxNodeSize);
+        this.mergeThreshold = checkMergeThreshold(maxNodeSize, mergeThreshold);
+    }
+
+    /**
+     * Creates a loose quad tree. The bounds of every child are its quadrant
+     * enlarged by the looseness factor around the quadrant centre. Keys are
+     * routed by their centre and sink as deep as they fit into the enlarged
+     * bounds, so bounding box keys on split lines are spread over the tree by
+     * their size instead of piling up in the upper nodes. Queries prune with
+     * the enlarged bounds, which overlap between siblings.
+     *
+     * @param bounds Bounds of the new quad tree.
+     * @param maxNodeSize Maximum node size.
+     * @param mergeThreshold Subtree size at or below which a split node is
+     * merged back into a single node when values are removed. Must be between
+     * 0 and the maximum node size, 0 only drops empty nodes.
+     * @param looseness Factor the quadrants are enlarged by, at least 1. A
+     * factor of 2 lets a key descend to the depth at which the quadrants are
+     * at least as large as the key.
+     */
+    public QuadTree(ID2BoundingBox bounds, int maxNodeSize, int mergeThreshold, double looseness) {
+        super(new LooseQuadNode<>(new D2BoundingBox(bounds), new D2BoundingBox(bounds), maxNodeSize, checkLooseness(looseness)));
+        this.mergeThreshold = checkMergeThreshold(maxNodeSize, mergeThreshold);
+    }
+
+    private static int checkMergeThreshold(int maxNodeSize, int mergeThreshold) {
+        if (mergeThreshold < 0 || mergeThreshold > maxNodeSize) {
+            throw new IllegalArgumentException("Merge threshold must be between 0 and " + maxNodeSize + ": " + mergeThreshold);
+        }
+
+        return mergeThreshold;
+    }
+
+    private static double checkLooseness(double looseness) {
+        if (!(looseness >= 1) || Double.isInfinite(looseness)) {
+            throw new IllegalArgumentException("Looseness must be at least 1: " + looseness);
+        }
+
+        return looseness;
     }
 
     @Override
@@ -80,12 +137,37 @@ public class QuadTree<K extends ID2Boundable, V> extends ImmutableQuadTree<K, V>
         size++;
     }
 
+    /**
+     * Inserts the batch by partitioning it by child slot level by level,
+     * instead of descending from the root for every entry. Every node is split
+     * at most once per batch. No entry is inserted if a key is outside the
+     * bounds.
+     *
+     * @param values Values to insert as a key -&gt; value mapping.
+     * @throws IllegalArgumentException If a key is outside the bounds.
+     */
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void putAll(Collection<? extends Map.Entry<K, V>> values) {
+        final Pair<K, V>[] pairs = values.stream().map((en) -> new Pair<K, V>(en)).toArray(Pair[]::new);
+        for (Pair<K, V> pair : pairs) {
+            if (!envelopes(pair.getKey())) {
+                throw new IllegalArgumentException("Key outside bounds: " + getBounds() + " - " + pair.getKey());
+            }
+        }
+
+        modcnt.incrementAndGet();
+        getRoot().addAll(pairs, 0, pairs.length, new Pair[pairs.length], new byte[pairs.length]);
+        size += pairs.length;
+    }
+
     @Override
     public Collection<V> remove(K key) {
         if (!getRoot().getBounds().contains(Objects.requireNonNull(key))) {
             return new LinkedList<>();
         } else {
-            List<Pair<K, V>> list = getRoot().subtreeRemove(key);
+            modcnt.incrementAndGet();
+            List<Pair<K, V>> list = getRoot().subtreeRemove(key, mergeThreshold);
             size -= list.size();
             return list.stream().map((p) -> p.getValue()).collect(Collectors.toList());
         }
@@ -93,7 +175,8 @@ public class QuadTree<K extends ID2Boundable, V> extends ImmutableQuadTree<K, V>
 
     @Override
     public Collection<V> remove(K key, V value) {
-        Collection<V> col = getRoot().subtreeRemove(key, value).stream()
+        modcnt.incrementAndGet();
+        Collection<V> col = getRoot().subtreeRemove(key, value, mergeThreshold).stream()
                 .map(Pair::getValue)
                 .collect(Collectors.toList());
 
@@ -101,9 +184,33 @@ public class QuadTree<K extends ID2Boundable, V> extends ImmutableQuadTree<K, V>
         return col;
     }
 
+    /**
+     * Moves the pairs without walking the tree twice. The new pair is inserted
+     * starting at the deepest common node of the old and the new key, a pair
+     * that stays in its node is replaced in place.
+     */
+    @Override
+    public boolean move(K oldKey, K newKey, V value) {
+        if (!envelopes(newKey)) {
+            throw new IllegalArgumentException("Key outside bounds: " + getBounds() + " - " + newKey);
+        } else if (!envelopes(Objects.requireNonNull(oldKey))) {
+            return false;
+        } else if (oldKey.equals(newKey)) {
+            return contains(oldKey, value);
+        }
+
+        if (!getRoot().move(oldKey, newKey, value, mergeThreshold)) {
+            return false;
+        }
+
+        modcnt.incrementAndGet();
+        return true;
+    }
+
     @Override
     public Collection<V> removeValue(V value, Predicate<ID2BoundingBox> hint) {
-        Collection<V> col = getRoot().subtreeRemoveValue(value, hint).stream()
+        modcnt.incrementAndGet();
+        Collection<V> col = getRoot().subtreeRemoveValue(value, hint, mergeThreshold).stream()
                 .map(Pair::getValue)
                 .collect(Collectors.toList());
 
@@ -111,9 +218,25 @@ public class QuadTree<K extends ID2Boundable, V> extends ImmutableQuadTree<K, V>
         return col;
     }
 
+    /**
+     * Fails with a ConcurrentModificationException after the traversal, if
+     * the tree was modified from within the consumer.
+     */
+    @Override
+    public void forEachInWindow(double minX, double minY, double maxX, double maxY, BiConsumer<? super K, ? super V> consumer) {
+        final long id = modcnt.get();
+        super.forEachInWindow(minX, minY, maxX, maxY, consumer);
+        if (id != modcnt.get()) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
     @Override
     public void clear() {
+        modcnt.incrementAndGet();
         getRoot().clear();
+        getRoot().setSplit(false);
+        size = 0;
     }
 
     @Override
@@ -121,38 +244,66 @@ public class QuadTree<K extends ID2Boundable, V> extends ImmutableQuadTree<K, V>
         return size;
     }
 
+    /**
+     *
+     * @return Subtree size at or below which a split node is merged back into
+     * a single node.
+     */
+    public int getMergeThreshold() {
+        return mergeThreshold;
+    }
+
+    /**
+     *
+     * @return Factor the quadrants of child nodes are enlarged by, 1 if the
+     * tree is not loose.
+     */
+    public double getLooseness() {
+        return getRoot() instanceof LooseQuadNode ? ((LooseQuadNode<K, V>) getRoot()).getLooseness() : 1;
+    }
+
     @Override
     Spliterator<QuadNode<K, V>> getSpliterator(QuadNode<K, V> node, Predicate<ID2BoundingBox> pred) {
-        return new CheckedNodeSpliterator(node, pred); //To change body of generated methods, choose Tools | Templates.
+        return new CheckedSpliterator<>(super.getSpliterator(node, pred));
     }
 
-    final class CheckedNodeSpliterator implements Spliterator<QuadNode<K, V>> {
+    @Override
+    Spliterator<Map.Entry<K, V>> getEntrySpliterator(Predicate<ID2BoundingBox> predicate, boolean exact) {
+        return new CheckedSpliterator<>(super.getEntrySpliterator(predicate, exact));
+    }
 
-        private final long id = modcnt.get();
-        private final NodeSpliterator it;
+    /**
+     * Spliterator failing with a ConcurrentModificationException, if the tree
+     * was modified after the spliterator was created. Splits are checked as
+     * well.
+     */
+    final class CheckedSpliterator<T> implements Spliterator<T> {
 
-        protected CheckedNodeSpliterator() {
-            it = new NodeSpliterator();
-        }
+        private final long id = modcnt.get();
+        private final Spliterator<T> it;
 
-        protected CheckedNodeSpliterator(QuadNode<K, V> node) {
-            it = new NodeSpliterator(node, (ID2BoundingBox t) -> true);
+        CheckedSpliterator(Spliterator<T> it) {
+            this.it = it;
         }
 
-        protected CheckedNodeSpliterator(QuadNode<K, V> node, Predicate<ID2BoundingBox> predicate) {
-            it = new NodeSpliterator(node, predicate);
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            checkState();
+            return it.tryAdvance(action);
         }
 
         @Override
-        public boolean tryAdvance(Consumer<? super QuadNode<K, V>> action) {
+        public void forEachRemaining(Consumer<? super T> action) {
+            checkState();
+            it.forEachRemaining(action);
             checkState();
-            return it.tryAdvance(action);
         }
 
         @Override
-        public Spliterator<QuadNode<K, V>> trySplit() {
+        public Spliterator<T> trySplit() {
             checkState();
-            return it.trySplit();
+            final Spliterator<T> split = it.trySplit();
+            return split == null ? null : new CheckedSpliterator<>(split);
         }
 
         @Override
@@ -0,0 +1,190 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Point;
+import com.psygate.datastructures.spatial.trees.BoundedSpatialTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spatial join of two trees with two dimensional node bounds. Keys are
+ * compared by their extent, a point or a bounding box.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public final class QuadTreeJoin {
+
+    private QuadTreeJoin() {
+    }
+
+    /**
+     * Streams all pairs of entries whose keys are at most the distance apart.
+     * A distance of 0 yields the pairs whose keys intersect, bounds inclusive.
+     * If both trees are quad trees, they are traversed in lockstep and the
+     * pairs are produced lazily while the traversal advances. Otherwise every
+     * entry of the left tree is queried against the right tree. The trees
+     * must not be modified while the stream is consumed.
+     *
+     * @param <K1> Key type of the left tree.
+     * @param <V1> Value type of the left tree.
+     * @param <K2> Key type of the right tree.
+     * @param <V2> Value type of the right tree.
+     * @param left Left tree, providing the first entry of every pair.
+     * @param right Right tree, providing the second entry of every pair.
+     * @param distance Maximum distance between two keys.
+     * @param parallel True if the returned stream should be parallel.
+     * @return Stream of all matching pairs, in no particular order.
+     * @throws IllegalArgumentException If the distance is negative.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K1 extends ID2Boundable, V1, K2 extends ID2Boundable, V2> Stream<Pair<Map.Entry<K1, V1>, Map.Entry<K2, V2>>> join(
+            BoundedSpatialTree<K1, V1, ID2BoundingBox, ?> left, BoundedSpatialTree<K2, V2, ID2BoundingBox, ?> right,
+            double distance, boolean parallel) {
+        Objects.requireNonNull(left);
+        Objects.requireNonNull(right);
+        if (distance < 0) {
+            throw new IllegalArgumentException("Negative distance: " + distance);
+        }
+
+        final double distSqr = distance * distance;
+        if (left instanceof ImmutableQuadTree && right instanceof ImmutableQuadTree) {
+            final QuadNode<K1, V1> leftRoot = ((ImmutableQuadTree<K1, V1>) left).getRoot();
+            final QuadNode<K2, V2> rightRoot = ((ImmutableQuadTree<K2, V2>) right).getRoot();
+            return StreamSupport.stream(new JoinSpliterator<K1, V1, QuadNode<K1, V1>, K2, V2, QuadNode<K2, V2>>(
+                    (a, b) -> within(a.getBounds(), b.getBounds(), distSqr),
+                    (key) -> matcher(key, distSqr),
+                    (key) -> matcher(key, distSqr)
+            ).start(leftRoot, rightRoot), parallel);
+        }
+
+        final Stream<Map.Entry<K1, V1>> entries = parallel ? left.parallelEntryStream() : left.entryStream();
+        return entries.flatMap((a) -> right.selectiveEntryStream((b) -> within(a.getKey(), b, distSqr))
+                .filter((b) -> within(a.getKey(), b.getKey(), distSqr))
+                .map((b) -> new Pair<>(a, b)));
+    }
+
+    /**
+     * Resolves the key type once, instead of for every node and key the key
+     * is compared against.
+     *
+     * @param key Key to match against.
+     * @param distSqr Maximum squared distance.
+     * @return Matcher of nodes and keys within the distance of the key.
+     */
+    private static JoinSpliterator.Matcher<QuadNode<?, ?>, ID2Boundable> matcher(ID2Boundable key, double distSqr) {
+        if (key instanceof ID2Point) {
+            final ID2Point point = (ID2Point) key;
+            return new JoinSpliterator.Matcher<QuadNode<?, ?>, ID2Boundable>() {
+                @Override
+                public boolean node(QuadNode<?, ?> node) {
+                    return within(node.getBounds(), point, distSqr);
+                }
+
+                @Override
+                public boolean key(ID2Boundable other) {
+                    return other.distSqr(point) <= distSqr;
+                }
+            };
+        } else if (key instanceof ID2BoundingBox) {
+            final ID2BoundingBox box = (ID2BoundingBox) key;
+            return new JoinSpliterator.Matcher<QuadNode<?, ?>, ID2Boundable>() {
+                @Override
+                public boolean node(QuadNode<?, ?> node) {
+                    return within(node.getBounds(), box, distSqr);
+                }
+
+                @Override
+                public boolean key(ID2Boundable other) {
+                    if (other instanceof ID2Point) {
+                        return within(box, (ID2Point) other, distSqr);
+                    } else {
+                        return within(box, other, distSqr);
+                    }
+                }
+            };
+        } else {
+            throw new IllegalArgumentException("Unsupported key type: " + key.getClass());
+        }
+    }
+
+    /**
+     *
+     * @return True if the minimal squared distance between the extents of
+     * both keys is at most the given distance.
+     * @throws IllegalArgumentException If a key is neither a point nor a
+     * bounding box.
+     */
+    static boolean within(ID2Boundable a, ID2Boundable b, double distSqr) {
+        if (a instanceof ID2Point) {
+            return b.distSqr((ID2Point) a) <= distSqr;
+        } else if (b instanceof ID2Point) {
+            return a.distSqr((ID2Point) b) <= distSqr;
+        } else if (a instanceof ID2BoundingBox && b instanceof ID2BoundingBox) {
+            return within((ID2BoundingBox) a, (ID2BoundingBox) b, distSqr);
+        } else {
+            throw new IllegalArgumentException("Unsupported key type: " + a.getClass() + ", " + b.getClass());
+        }
+    }
+
+    /**
+     * Rejects on the first axis exceeding the distance.
+     */
+    private static boolean within(ID2BoundingBox box, ID2Point point, double distSqr) {
+        final double xgap = gap(box.getLower().getX(), box.getUpper().getX(), point.getX(), point.getX());
+        if (xgap * xgap > distSqr) {
+            return false;
+        }
+
+        final double ygap = gap(box.getLower().getY(), box.getUpper().getY(), point.getY(), point.getY());
+        return xgap * xgap + ygap * ygap <= distSqr;
+    }
+
+    /**
+     * Rejects on the first axis exceeding the distance.
+     */
+    private static boolean within(ID2BoundingBox a, ID2BoundingBox b, double distSqr) {
+        final double xgap = gap(a.getLower().getX(), a.getUpper().getX(), b.getLower().getX(), b.getUpper().getX());
+        if (xgap * xgap > distSqr) {
+            return false;
+        }
+
+        final double ygap = gap(a.getLower().getY(), a.getUpper().getY(), b.getLower().getY(), b.getUpper().getY());
+        return xgap * xgap + ygap * ygap <= distSqr;
+    }
+
+    /**
+     *
+     * @return Distance between two intervals on one axis, 0 if they overlap.
+     */
+    private static double gap(double lowerA, double upperA, double lowerB, double upperB) {
+        if (lowerA > upperB) {
+            return lowerA - upperB;
+        } else if (lowerB > upperA) {
+            return lowerB - upperA;
+        } else {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import java.util.function.Predicate;
+
+/**
+ * Work done by a single query on a tree: nodes visited and pruned, entries
+ * tested against the query and entries emitted to the caller. Counters are
+ * only collected while a QueryListener is installed on the tree.
+ *
+ * @see QueryListener
+ * @author psygate (https://github.com/psygate)
+ */
+public final class QueryCounters {
+
+    /**
+     * Kind of query the counters were collected for.
+     */
+    public enum Query {
+        /**
+         * Selective entry, key and value streams. Every entry of a visited
+         * node is tested and emitted, the predicate only sees nodes.
+         */
+        ENTRY_STREAM,
+        /**
+         * Entries within a distance of a point.
+         */
+        WITHIN_DISTANCE,
+        /**
+         * Entries inside a window, visited by forEachInWindow.
+         */
+        WINDOW
+    };
+
+    /**
+     * The counters collected per query.
+     */
+    public enum Counter {
+        NODES_VISITED, NODES_PRUNED, ENTRIES_TESTED, ENTRIES_EMITTED
+    };
+
+    private final Query query;
+    private final QueryListener listener;
+    private boolean reported = false;
+    long nodesVisited = 0;
+    long nodesPruned = 0;
+    long entriesTested = 0;
+    long entriesEmitted = 0;
+
+    QueryCounters(Query query, QueryListener listener) {
+        this.query = query;
+        this.listener = listener;
+    }
+
+    /**
+     *
+     * @param <T> Bounds type.
+     * @param predicate Predicate deciding whether a node is traversed.
+     * @return Predicate counting accepted nodes as visited and rejected nodes
+     * as pruned.
+     */
+    <T> Predicate<T> count(Predicate<T> predicate) {
+        return (bounds) -> {
+            if (predicate.test(bounds)) {
+                nodesVisited++;
+                return true;
+            } else {
+                nodesPruned++;
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Hands the counters to the listener, once.
+     */
+    void report() {
+        if (!reported) {
+            reported = true;
+            listener.queryCompleted(this);
+        }
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    /**
+     *
+     * @return Number of nodes whose entries were read or reported.
+     */
+    public long getNodesVisited() {
+        return nodesVisited;
+    }
+
+    /**
+     *
+     * @return Number of nodes skipped together with their subtree, because
+     * their bounds did not match the query.
+     */
+    public long getNodesPruned() {
+        return nodesPruned;
+    }
+
+    /**
+     *
+     * @return Number of entries whose keys were tested against the query.
+     */
+    public long getEntriesTested() {
+        return entriesTested;
+    }
+
+    /**
+     *
+     * @return Number of entries handed to the caller.
+     */
+    public long getEntriesEmitted() {
+        return entriesEmitted;
+    }
+
+    /**
+     *
+     * @param counter Counter to read.
+     * @return Value of the counter.
+     */
+    public long get(Counter counter) {
+        switch (counter) {
+            case NODES_VISITED:
+                return nodesVisited;
+            case NODES_PRUNED:
+                return nodesPruned;
+            case ENTRIES_TESTED:
+                return entriesTested;
+            case ENTRIES_EMITTED:
+                return entriesEmitted;
+            default:
+                throw new IllegalArgumentException("Unknown counter: " + counter);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCounters{" + "query=" + query + ", nodesVisited=" + nodesVisited
+                + ", nodesPruned=" + nodesPruned + ", entriesTested=" + entriesTested
+                + ", entriesEmitted=" + entriesEmitted + '}';
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Query listener aggregating the counters of all queries into histograms with
+ * power of two buckets. Bucket 0 counts queries with a counter value of 0,
+ * bucket i counts values from 2^(i-1) to 2^i - 1. Safe to use from multiple
+ * threads, meant to be read periodically by a metrics exporter.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public final class QueryHistogram implements QueryListener {
+
+    private static final int BUCKETS = Long.SIZE + 1;
+    private static final QueryCounters.Counter[] COUNTERS = QueryCounters.Counter.values();
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(COUNTERS.length * BUCKETS);
+    private final AtomicLongArray sums = new AtomicLongArray(COUNTERS.length);
+    private final AtomicLongArray maxima = new AtomicLongArray(COUNTERS.length);
+
+    @Override
+    public void queryCompleted(QueryCounters counters) {
+        queries.incrementAndGet();
+        for (QueryCounters.Counter counter : COUNTERS) {
+            final long value = counters.get(counter);
+            final int index = counter.ordinal();
+            buckets.incrementAndGet(index * BUCKETS + bucket(value));
+            sums.addAndGet(index, value);
+            long max = maxima.get(index);
+            while (value > max && !maxima.compareAndSet(index, max, value)) {
+                max = maxima.get(index);
+            }
+        }
+    }
+
+    private static int bucket(long value) {
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     *
+     * @return Number of queries recorded.
+     */
+    public long getCount() {
+        return queries.get();
+    }
+
+    /**
+     *
+     * @param counter Counter to read.
+     * @return Number of queries per bucket, 65 buckets.
+     */
+    public long[] getBuckets(QueryCounters.Counter counter) {
+        final long[] values = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            values[i] = buckets.get(counter.ordinal() * BUCKETS + i);
+        }
+
+        return values;
+    }
+
+    /**
+     *
+     * @param bucket Bucket index.
+     * @return Largest counter value counted in the bucket.
+     */
+    public static long getUpperBound(int bucket) {
+        return bucket >= Long.SIZE ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     *
+     * @param counter Counter to read.
+     * @return Sum of the counter over all queries.
+     */
+    public long getSum(QueryCounters.Counter counter) {
+        return sums.get(counter.ordinal());
+    }
+
+    /**
+     *
+     * @param counter Counter to read.
+     * @return Largest value of the counter in a single query.
+     */
+    public long getMax(QueryCounters.Counter counter) {
+        return maxima.get(counter.ordinal());
+    }
+
+    /**
+     *
+     * @param counter Counter to read.
+     * @return Mean value of the counter per query, 0 if no query was recorded.
+     */
+    public double getMean(QueryCounters.Counter counter) {
+        final long count = getCount();
+        return count == 0 ? 0 : (double) getSum(counter) / count;
+    }
+
+    /**
+     *
+     * @param counter Counter to read.
+     * @param quantile Quantile between 0 and 1.
+     * @return Upper bound of the bucket containing the quantile, 0 if no query
+     * was recorded.
+     */
+    public long getQuantile(QueryCounters.Counter counter, double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile out of range: " + quantile);
+        }
+
+        final long[] values = getBuckets(counter);
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        final long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < values.length; i++) {
+            seen += values[i];
+            if (seen >= rank && seen > 0) {
+                return getUpperBound(i);
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+/**
+ * Receives the counters of every query run on a tree the listener is
+ * installed on. Listeners are called on the thread that finished the query
+ * and have to be thread safe if the tree is queried concurrently.
+ *
+ * @see QueryCounters
+ * @see QueryHistogram
+ * @author psygate (https://github.com/psygate)
+ */
+@FunctionalInterface
+public interface QueryListener {
+
+    /**
+     *
+     * @param counters Counters of the finished query. They do not change
+     * after this call.
+     */
+    void queryCompleted(QueryCounters counters);
+}
@@ -0,0 +1,109 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spliterator counting the entries of an instrumented query and reporting the
+ * counters once the traversal is exhausted. Streams that are not traversed to
+ * the end report when they are closed. Instrumented queries do not split, so
+ * the counters are only ever updated by one thread.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <T> Element type.
+ */
+final class QuerySpliterator<T> implements Spliterator<T> {
+
+    private final Spliterator<T> it;
+    private final QueryCounters counters;
+    private final boolean emits;
+
+    /**
+     *
+     * @param it Spliterator over the entries of the visited nodes.
+     * @param counters Counters of the query.
+     * @param emits True if every entry is emitted, false if the caller
+     * counts emitted entries itself.
+     */
+    private QuerySpliterator(Spliterator<T> it, QueryCounters counters, boolean emits) {
+        this.it = it;
+        this.counters = counters;
+        this.emits = emits;
+    }
+
+    /**
+     *
+     * @param <T> Element type.
+     * @param it Spliterator over the entries of the visited nodes.
+     * @param counters Counters of the query, with the root counted as visited.
+     * @param emits True if every entry is emitted.
+     * @return Sequential stream reporting the counters when exhausted or
+     * closed.
+     */
+    static <T> Stream<T> stream(Spliterator<T> it, QueryCounters counters, boolean emits) {
+        return StreamSupport.stream(new QuerySpliterator<>(it, counters, emits), false)
+                .onClose(counters::report);
+    }
+
+    private void count() {
+        counters.entriesTested++;
+        if (emits) {
+            counters.entriesEmitted++;
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (it.tryAdvance(action)) {
+            count();
+            return true;
+        }
+
+        counters.report();
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        it.forEachRemaining((element) -> {
+            action.accept(element);
+            count();
+        });
+        counters.report();
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return it.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return it.characteristics();
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.util.Pair;
+import com.psygate.datastructures.spatial.Axis2D;
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Node of an R tree. Leaves hold the value pairs together with the bounding
+ * box of each key, inner nodes hold child nodes. Every node keeps the minimum
+ * bounding box of its contents.
+ *
+ * @see RTree
+ * @author psygate (https://github.com/psygate)
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+final class RNode<K extends ID2Boundable, V> {
+
+    private final boolean leaf;
+    private final List<Pair<K, V>> values;
+    private final List<ID2BoundingBox> boxes;
+    private final List<RNode<K, V>> children;
+    private ID2BoundingBox mbr;
+
+    RNode(boolean leaf, int maxNodeSize) {
+        this.leaf = leaf;
+        this.values = leaf ? new ArrayList<>(maxNodeSize + 1) : null;
+        this.boxes = new ArrayList<>(maxNodeSize + 1);
+        this.children = leaf ? null : new ArrayList<>(maxNodeSize + 1);
+    }
+
+    /**
+     * Minimum bounding box of a key.
+     *
+     * @param key Key to bound.
+     * @return Smallest box containing the key.
+     */
+    static ID2BoundingBox boundsOf(ID2Boundable key) {
+        final double x = key.center(Axis2D.X);
+        final double y = key.center(Axis2D.Y);
+        return key.merge(new D2BoundingBox(x, y, x, y));
+    }
+
+    static double area(ID2BoundingBox box) {
+        return box.getWidth() * box.getHeight();
+    }
+
+    /**
+     *
+     * @return Area of the smallest box containing both boxes.
+     */
+    static double mergedArea(ID2BoundingBox a, ID2BoundingBox b) {
+        return (Math.max(a.getUpper().getX(), b.getUpper().getX()) - Math.min(a.getLower().getX(), b.getLower().getX()))
+                * (Math.max(a.getUpper().getY(), b.getUpper().getY()) - Math.min(a.getLower().getY(), b.getLower().getY()));
+    }
+
+    boolean isLeaf() {
+        return leaf;
+    }
+
+    /**
+     *
+     * @return Minimum bounding box of the contents of this node, or null if
+     * the node is empty.
+     */
+    ID2BoundingBox getBounds() {
+        return mbr;
+    }
+
+    /**
+     *
+     * @return Number of entries of this node, either value pairs or children.
+     */
+    int size() {
+        return boxes.size();
+    }
+
+    /**
+     *
+     * @return Value pairs of this leaf.
+     */
+    List<Pair<K, V>> getValues() {
+        return values;
+    }
+
+    /**
+     *
+     * @param index Index of the entry.
+     * @return Bounding box of the key or the child at the index.
+     */
+    ID2BoundingBox getBox(int index) {
+        return boxes.get(index);
+    }
+
+    /**
+     *
+     * @return Children of this inner node.
+     */
+    List<RNode<K, V>> getChildren() {
+        return children;
+    }
+
+    void add(Pair<K, V> pair, ID2BoundingBox box) {
+        assert leaf;
+        values.add(pair);
+        boxes.add(box);
+        mbr = mbr == null ? box : mbr.merge(box);
+    }
+
+    void addChild(RNode<K, V> child) {
+        assert !leaf;
+        children.add(child);
+        boxes.add(child.mbr);
+        mbr = mbr == null ? child.mbr : mbr.merge(child.mbr);
+    }
+
+    void remove(int index) {
+        if (leaf) {
+            values.remove(index);
+        } else {
+            children.remove(index);
+        }
+        boxes.remove(index);
+    }
+
+    /**
+     * Recomputes the bounding box of this node, after an entry was removed or
+     * a child shrank or grew.
+     */
+    void recomputeBounds() {
+        if (!leaf) {
+            for (int i = 0; i < children.size(); i++) {
+                boxes.set(i, children.get(i).mbr);
+            }
+        }
+
+        if (boxes.isEmpty()) {
+            mbr = null;
+            return;
+        }
+
+        double lx = Double.POSITIVE_INFINITY;
+        double ly = Double.POSITIVE_INFINITY;
+        double ux = Double.NEGATIVE_INFINITY;
+        double uy = Double.NEGATIVE_INFINITY;
+        for (ID2BoundingBox box : boxes) {
+            lx = Math.min(lx, box.getLower().getX());
+            ly = Math.min(ly, box.getLower().getY());
+            ux = Math.max(ux, box.getUpper().getX());
+            uy = Math.max(uy, box.getUpper().getY());
+        }
+        mbr = new D2BoundingBox(lx, ly, ux, uy);
+    }
+
+    /**
+     * Selects the child whose bounding box needs the least enlargement to
+     * include the box, resolving ties by the smallest area.
+     *
+     * @param box Box to insert.
+     * @return Index of the selected child.
+     */
+    int chooseChild(ID2BoundingBox box) {
+        int best = -1;
+        double bestEnlargement = Double.POSITIVE_INFINITY;
+        double bestArea = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < boxes.size(); i++) {
+            final double area = area(boxes.get(i));
+            final double enlargement = mergedArea(boxes.get(i), box) - area;
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                best = i;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Quadratic split. The two entries that would waste the most area in a
+     * common node seed the groups, the remaining entries are assigned one by
+     * one, most decisive entry first, to the group whose bounding box grows
+     * the least. This node keeps the first group, the second group is moved
+     * into a new sibling.
+     *
+     * @param minNodeSize Minimum number of entries per group.
+     * @param maxNodeSize Maximum node size, used to size the sibling.
+     * @return The new sibling holding the second group.
+     */
+    RNode<K, V> split(int minNodeSize, int maxNodeSize) {
+        final int count = boxes.size();
+        final boolean[] assigned = new boolean[count];
+        final boolean[] second = new boolean[count];
+
+        int seedA = 0;
+        int seedB = 1;
+        double worst = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                final double waste = mergedArea(boxes.get(i), boxes.get(j)) - area(boxes.get(i)) - area(boxes.get(j));
+                if (waste > worst) {
+                    worst = waste;
+                    seedA = i;
+                    seedB = j;
+                }
+            }
+        }
+
+        assigned[seedA] = true;
+        assigned[seedB] = true;
+        second[seedB] = true;
+        ID2BoundingBox boundsA = boxes.get(seedA);
+        ID2BoundingBox boundsB = boxes.get(seedB);
+        int sizeA = 1;
+        int sizeB = 1;
+
+        for (int remaining = count - 2; remaining > 0; remaining--) {
+            final boolean toB;
+            int next = -1;
+            if (sizeA + remaining == minNodeSize) {
+                toB = false;
+            } else if (sizeB + remaining == minNodeSize) {
+                toB = true;
+            } else {
+                double preference = Double.NEGATIVE_INFINITY;
+                double growA = 0;
+                double growB = 0;
+                for (int i = 0; i < count; i++) {
+                    if (!assigned[i]) {
+                        final double a = mergedArea(boundsA, boxes.get(i)) - area(boundsA);
+                        final double b = mergedArea(boundsB, boxes.get(i)) - area(boundsB);
+                        if (Math.abs(a - b) > preference) {
+                            preference = Math.abs(a - b);
+                            next = i;
+                            growA = a;
+                            growB = b;
+                        }
+                    }
+                }
+
+                if (growA != growB) {
+                    toB = growB < growA;
+                } else if (area(boundsA) != area(boundsB)) {
+                    toB = area(boundsB) < area(boundsA);
+                } else {
+                    toB = sizeB < sizeA;
+                }
+            }
+
+            if (next < 0) {
+                for (int i = 0; i < count; i++) {
+                    if (!assigned[i]) {
+                        next = i;
+                        break;
+                    }
+                }
+            }
+
+            assigned[next] = true;
+            second[next] = toB;
+            if (toB) {
+                boundsB = boundsB.merge(boxes.get(next));
+                sizeB++;
+            } else {
+                boundsA = boundsA.merge(boxes.get(next));
+                sizeA++;
+            }
+        }
+
+        final RNode<K, V> sibling = new RNode<>(leaf, maxNodeSize);
+        for (int i = count - 1; i >= 0; i--) {
+            if (second[i]) {
+                if (leaf) {
+                    sibling.add(values.get(i), boxes.get(i));
+                } else {
+                    sibling.addChild(children.get(i));
+                }
+                remove(i);
+            }
+        }
+        recomputeBounds();
+
+        return sibling;
+    }
+
+    /**
+     * Adds all value pairs of this subtree to the provided list.
+     *
+     * @param pairs List to add the pairs to.
+     */
+    void collect(List<Pair<K, V>> pairs) {
+        if (leaf) {
+            pairs.addAll(values);
+        } else {
+            children.forEach((child) -> child.collect(pairs));
+        }
+    }
+
+    /**
+     *
+     * @return Height of this subtree, 1 for a leaf.
+     */
+    int height() {
+        return leaf ? 1 : children.get(0).height() + 1;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.util.Pair;
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.trees.MutableSpatialTree;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * R tree implementation with quadratic split. Unlike the quad tree, keys are
+ * never held back in inner nodes: every key is stored in a leaf and each node
+ * is bounded by the minimum bounding box of its contents, so large or
+ * overlapping boxes only affect the nodes they actually fall into. The tree is
+ * unbounded, any key can be inserted.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public class RTree<K extends ID2Boundable, V> implements MutableSpatialTree<K, V, ID2BoundingBox> {
+
+    private final int maxNodeSize;
+    private final int minNodeSize;
+    private RNode<K, V> root;
+    private long modcnt = Long.MIN_VALUE;
+    private int size = 0;
+
+    /**
+     * Creates a tree with a minimum node size of 40% of the maximum node size.
+     *
+     * @param maxNodeSize Maximum node size, at least 2.
+     */
+    public RTree(int maxNodeSize) {
+        this(maxNodeSize, Math.max(1, maxNodeSize * 2 / 5));
+    }
+
+    /**
+     *
+     * @param maxNodeSize Maximum node size, at least 2.
+     * @param minNodeSize Minimum node size, at least 1 and at most half of the
+     * maximum node size. Nodes falling below it on removal are dissolved and
+     * their entries reinserted.
+     */
+    public RTree(int maxNodeSize, int minNodeSize) {
+        if (maxNodeSize < 2) {
+            throw new IllegalArgumentException("Maximum node size must be at least 2: " + maxNodeSize);
+        }
+        if (minNodeSize < 1 || minNodeSize > maxNodeSize / 2) {
+            throw new IllegalArgumentException("Minimum node size must be in [1, " + maxNodeSize / 2 + "]: " + minNodeSize);
+        }
+        this.maxNodeSize = maxNodeSize;
+        this.minNodeSize = minNodeSize;
+        this.root = new RNode<>(true, maxNodeSize);
+    }
+
+    /**
+     *
+     * @param values Values to insert upon construction.
+     * @param maxNodeSize Maximum node size, at least 2.
+     */
+    public RTree(Map<K, V> values, int maxNodeSize) {
+        this(maxNodeSize);
+        putAll(values);
+    }
+
+    public int getMaxNodeSize() {
+        return maxNodeSize;
+    }
+
+    public int getMinNodeSize() {
+        return minNodeSize;
+    }
+
+    /**
+     *
+     * @return Root node if this tree. Cannot be null.
+     */
+    RNode<K, V> getRoot() {
+        return root;
+    }
+
+    /**
+     * An R tree grows to envelope every key inserted.
+     *
+     * @param key Key to check.
+     * @return Always true.
+     */
+    @Override
+    public boolean envelopes(K key) {
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void put(Pair<K, V> pair) {
+        Objects.requireNonNull(pair.getKey());
+        modcnt++;
+        insert(pair, RNode.boundsOf(pair.getKey()));
+        size++;
+    }
+
+    private void insert(Pair<K, V> pair, ID2BoundingBox box) {
+        final RNode<K, V> sibling = insert(root, pair, box);
+        if (sibling != null) {
+            final RNode<K, V> grown = new RNode<>(false, maxNodeSize);
+            grown.addChild(root);
+            grown.addChild(sibling);
+            root = grown;
+        }
+    }
+
+    /**
+     * Inserts the pair into the subtree.
+     *
+     * @return The new sibling of the node, if the node had to be split.
+     */
+    private RNode<K, V> insert(RNode<K, V> node, Pair<K, V> pair, ID2BoundingBox box) {
+        if (node.isLeaf()) {
+            node.add(pair, box);
+        } else {
+            final RNode<K, V> sibling = insert(node.getChildren().get(node.chooseChild(box)), pair, box);
+            if (sibling != null) {
+                node.addChild(sibling);
+            }
+            node.recomputeBounds();
+        }
+
+        if (node.size() > maxNodeSize) {
+            return node.split(minNodeSize, maxNodeSize);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Collection<V> remove(K key) {
+        final ID2BoundingBox box = RNode.boundsOf(Objects.requireNonNull(key));
+        return remove((b) -> b.contains(box), (p) -> Objects.equals(p.getKey(), key));
+    }
+
+    @Override
+    public Collection<V> remove(K key, V value) {
+        final ID2BoundingBox box = RNode.boundsOf(Objects.requireNonNull(key));
+        return remove((b) -> b.contains(box), (p) -> Objects.equals(p.getKey(), key) && Objects.equals(p.getValue(), value));
+    }
+
+    @Override
+    public Collection<V> removeValue(V value, Predicate<ID2BoundingBox> hint) {
+        return remove(hint, (p) -> Objects.equals(p.getValue(), value));
+    }
+
+    /**
+     * Removes all matching pairs. Nodes falling below the minimum node size
+     * are dissolved and their remaining pairs reinserted.
+     */
+    private Collection<V> remove(Predicate<ID2BoundingBox> descend, Predicate<Pair<K, V>> filter) {
+        final List<Pair<K, V>> removed = new ArrayList<>();
+        final List<Pair<K, V>> orphans = new ArrayList<>();
+        remove(root, descend, filter, removed, orphans);
+
+        if (removed.isEmpty()) {
+            assert orphans.isEmpty();
+            return new LinkedList<>();
+        }
+
+        modcnt++;
+        while (!root.isLeaf() && root.size() == 1) {
+            root = root.getChildren().get(0);
+        }
+        if (!root.isLeaf() && root.size() == 0) {
+            root = new RNode<>(true, maxNodeSize);
+        }
+        orphans.forEach((p) -> insert(p, RNode.boundsOf(p.getKey())));
+        size -= removed.size();
+
+        return removed.stream().map(Pair::getValue).collect(Collectors.toList());
+    }
+
+    private void remove(RNode<K, V> node, Predicate<ID2BoundingBox> descend, Predicate<Pair<K, V>> filter,
+            List<Pair<K, V>> removed, List<Pair<K, V>> orphans) {
+        final int before = removed.size();
+        if (node.isLeaf()) {
+            for (int i = node.size() - 1; i >= 0; i--) {
+                if (filter.test(node.getValues().get(i))) {
+                    removed.add(node.getValues().get(i));
+                    node.remove(i);
+                }
+            }
+        } else {
+            for (int i = node.size() - 1; i >= 0; i--) {
+                final RNode<K, V> child = node.getChildren().get(i);
+                if (descend.test(child.getBounds())) {
+                    remove(child, descend, filter, removed, orphans);
+                    if (child.size() < minNodeSize) {
+                        node.remove(i);
+                        child.collect(orphans);
+                    }
+                }
+            }
+        }
+
+        if (removed.size() != before) {
+            node.recomputeBounds();
+        }
+    }
+
+    @Override
+    public void clear() {
+        modcnt++;
+        root = new RNode<>(true, maxNodeSize);
+        size = 0;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        final ID2BoundingBox box = RNode.boundsOf(Objects.requireNonNull(key));
+        return selectiveKeyStream((b) -> b.contains(box))
+                .anyMatch((k) -> Objects.equals(k, key));
+    }
+
+    @Override
+    public boolean contains(K key, V value) {
+        final ID2BoundingBox box = RNode.boundsOf(Objects.requireNonNull(key));
+        return selectiveEntryStream((b) -> b.contains(box))
+                .anyMatch((en) -> Objects.equals(en.getKey(), key) && Objects.equals(en.getValue(), value));
+    }
+
+    @Override
+    public boolean containsValue(V value, Predicate<ID2BoundingBox> pred) {
+        return selectiveValueStream(pred).anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return valueStream().anyMatch((v) -> Objects.equals(v, value));
+    }
+
+    /**
+     * Streams the entries of all leaves whose path from the root satisfies
+     * the predicate. The predicate is tested against the minimum bounding box
+     * of each node below the root. Since these boxes can be degenerate, for
+     * example if all keys of a leaf are the same point, the predicate should
+     * treat touching boxes as overlapping.
+     *
+     * @param predicate Predicate to discard candidate nodes.
+     * @return Stream of the entries of all selected leaves.
+     */
+    @Override
+    public Stream<Map.Entry<K, V>> selectiveEntryStream(Predicate<ID2BoundingBox> predicate) {
+        return StreamSupport.stream(new NodeSpliterator(root, predicate), false)
+                .filter(RNode::isLeaf)
+                .flatMap((n) -> n.getValues().stream());
+    }
+
+    /**
+     *
+     * @return Number of levels of the tree, 1 if the root is a leaf.
+     */
+    int height() {
+        return root.height();
+    }
+
+    /**
+     * Spliterator iterating over all nodes of the tree that satisfy the
+     * predicate.
+     */
+    private final class NodeSpliterator implements Spliterator<RNode<K, V>> {
+
+        private final long id = modcnt;
+        private final Queue<RNode<K, V>> stack = new LinkedList<>();
+        private final Predicate<ID2BoundingBox> predicate;
+
+        NodeSpliterator(RNode<K, V> node, Predicate<ID2BoundingBox> predicate) {
+            this.predicate = Objects.requireNonNull(predicate);
+            stack.add(node);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super RNode<K, V>> action) {
+            if (id != modcnt) {
+                throw new ConcurrentModificationException();
+            } else if (stack.isEmpty()) {
+                return false;
+            } else {
+                RNode<K, V> selected = stack.remove();
+                if (!selected.isLeaf()) {
+                    for (RNode<K, V> child : selected.getChildren()) {
+                        if (predicate.test(child.getBounds())) {
+                            stack.add(child);
+                        }
+                    }
+                }
+                action.accept(selected);
+                return true;
+            }
+        }
+
+        @Override
+        public Spliterator<RNode<K, V>> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+    }
+}
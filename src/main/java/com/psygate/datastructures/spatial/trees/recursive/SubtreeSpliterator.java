@@ -0,0 +1,153 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Spliterator over the entries of the subtrees below a set of pending nodes.
+ * Splitting hands off half of the pending subtrees, weighted by their
+ * maintained value counts, so parallel streams divide the tree instead of
+ * peeling off single nodes. Without a filtering predicate the size is exact
+ * and the spliterator reports SIZED and SUBSIZED.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <K> Key type.
+ * @param <V> Value type.
+ * @param <N> Node type.
+ * @param <Q> Bounds type of the nodes.
+ */
+final class SubtreeSpliterator<K, V, N extends AbstractSpatialNode<K, V, N, ?>, Q> implements Spliterator<Map.Entry<K, V>> {
+
+    private final Deque<N> pending;
+    private final Function<? super N, ? extends Q> bounds;
+    private final Predicate<Q> predicate;
+    private final boolean exact;
+    private List<Pair<K, V>> current = Collections.emptyList();
+    private int index = 0;
+    private long pendingCount;
+
+    /**
+     *
+     * @param root Root of the subtree to traverse.
+     * @param bounds Function providing the bounds of a node.
+     * @param predicate Predicate the bounds of a child have to satisfy for the
+     * child to be traversed. The root is always traversed.
+     * @param exact True if the predicate accepts every node, which makes the
+     * size known in advance.
+     */
+    SubtreeSpliterator(N root, Function<? super N, ? extends Q> bounds, Predicate<Q> predicate, boolean exact) {
+        this(new ArrayDeque<>(), bounds, predicate, exact);
+        pending.add(Objects.requireNonNull(root));
+        pendingCount = root.subtreeCount();
+    }
+
+    private SubtreeSpliterator(Deque<N> pending, Function<? super N, ? extends Q> bounds, Predicate<Q> predicate, boolean exact) {
+        this.pending = pending;
+        this.bounds = bounds;
+        this.predicate = Objects.requireNonNull(predicate);
+        this.exact = exact;
+    }
+
+    /**
+     * Makes the values of the node current and queues its accepted children.
+     */
+    private void expand(N node) {
+        pendingCount -= node.subtreeCount();
+        for (int i = 0; i < node.getChildSlots(); i++) {
+            final N child = node.getChild(i);
+            if (child != null && child.subtreeCount() > 0 && predicate.test(bounds.apply(child))) {
+                pending.addLast(child);
+                pendingCount += child.subtreeCount();
+            }
+        }
+
+        current = node.getValues();
+        index = 0;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+        while (index >= current.size()) {
+            if (pending.isEmpty()) {
+                return false;
+            }
+            expand(pending.removeFirst());
+        }
+
+        action.accept(current.get(index++));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+        do {
+            while (index < current.size()) {
+                action.accept(current.get(index++));
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            expand(pending.removeFirst());
+        } while (true);
+    }
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> trySplit() {
+        while (pending.size() == 1 && index >= current.size()) {
+            expand(pending.removeFirst());
+        }
+        if (pending.isEmpty()) {
+            return null;
+        }
+
+        final Deque<N> prefix = new ArrayDeque<>();
+        long prefixCount = 0;
+        do {
+            final N node = pending.removeFirst();
+            prefix.addLast(node);
+            prefixCount += node.subtreeCount();
+        } while (pending.size() > 1 && prefixCount < (pendingCount - prefixCount));
+
+        pendingCount -= prefixCount;
+        final SubtreeSpliterator<K, V, N, Q> split = new SubtreeSpliterator<>(prefix, bounds, predicate, exact);
+        split.pendingCount = prefixCount;
+        return split;
+    }
+
+    @Override
+    public long estimateSize() {
+        return current.size() - index + pendingCount;
+    }
+
+    @Override
+    public int characteristics() {
+        return exact ? Spliterator.NONNULL | Spliterator.SIZED | Spliterator.SUBSIZED : Spliterator.NONNULL;
+    }
+}
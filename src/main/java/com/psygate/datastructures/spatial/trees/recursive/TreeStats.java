@@ -0,0 +1,234 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of the shape of a recursive spatial tree, gathered in a single walk
+ * over all nodes. The snapshot does not change when the tree is modified
+ * afterwards.
+ *
+ * Retained bytes are estimated for a 64 bit virtual machine with compressed
+ * references. They cover the nodes, their bounds, value lists, child arrays and
+ * entry pairs, but not the keys and values, which are owned by the caller.
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public final class TreeStats {
+
+    private static final int REFERENCE_BYTES = 4;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int NODE_BYTES = 40;
+    private static final int ARRAY_LIST_BYTES = 24;
+    private static final int PAIR_BYTES = 24;
+
+    private final int maxNodeSize;
+    private final int size;
+    private int nodeCount = 0;
+    private int leafCount = 0;
+    private int emptyNodeCount = 0;
+    private int emptyLeafCount = 0;
+    private int leafEntryCount = 0;
+    private int internalEntryCount = 0;
+    private int[] nodesPerLevel = new int[8];
+    private int[] entriesPerLevel = new int[8];
+    private int depth = 0;
+    private long estimatedBytes = 0;
+
+    /**
+     *
+     * @param root Root node of the tree.
+     * @param boundsBytes Estimated size of the bounds of a single node in
+     * bytes.
+     */
+    TreeStats(AbstractSpatialNode<?, ?, ?, ?> root, int boundsBytes) {
+        this.maxNodeSize = root.getMaxNodeSize();
+        visit(root, 0, boundsBytes);
+        this.nodesPerLevel = Arrays.copyOf(nodesPerLevel, depth);
+        this.entriesPerLevel = Arrays.copyOf(entriesPerLevel, depth);
+        this.size = Arrays.stream(entriesPerLevel).sum();
+    }
+
+    private void visit(AbstractSpatialNode<?, ?, ?, ?> node, int level, int boundsBytes) {
+        if (level == nodesPerLevel.length) {
+            nodesPerLevel = Arrays.copyOf(nodesPerLevel, level * 2);
+            entriesPerLevel = Arrays.copyOf(entriesPerLevel, level * 2);
+        }
+        depth = Math.max(depth, level + 1);
+
+        final int entries = node.size();
+        nodeCount++;
+        nodesPerLevel[level]++;
+        entriesPerLevel[level] += entries;
+        if (entries == 0) {
+            emptyNodeCount++;
+        }
+        if (node.isSplit()) {
+            internalEntryCount += entries;
+        }
+        if (!node.hasChildren()) {
+            leafCount++;
+            leafEntryCount += entries;
+            if (entries == 0) {
+                emptyLeafCount++;
+            }
+        }
+
+        final int capacity = Math.max(entries, maxNodeSize);
+        estimatedBytes += NODE_BYTES + boundsBytes + ARRAY_LIST_BYTES
+                + align(ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * capacity)
+                + align(ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * node.getChildSlots())
+                + (long) PAIR_BYTES * entries;
+
+        for (int i = 0; i < node.getChildSlots(); i++) {
+            final AbstractSpatialNode<?, ?, ?, ?> child = node.getChild(i);
+            if (child != null) {
+                visit(child, level + 1, boundsBytes);
+            }
+        }
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     *
+     * @return Maximum node size of the tree.
+     */
+    public int getMaxNodeSize() {
+        return maxNodeSize;
+    }
+
+    /**
+     *
+     * @return Number of entries in the tree.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     *
+     * @return Number of levels of the tree, 1 if the tree is only the root.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     *
+     * @return Number of nodes in the tree, including the root.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     *
+     * @return Number of nodes without children.
+     */
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     *
+     * @return Number of nodes holding no entries themselves, including split
+     * nodes whose entries were moved to their children.
+     */
+    public int getEmptyNodeCount() {
+        return emptyNodeCount;
+    }
+
+    /**
+     *
+     * @return Number of nodes without children that hold no entries.
+     */
+    public int getEmptyLeafCount() {
+        return emptyLeafCount;
+    }
+
+    /**
+     * Entries held by split nodes, because they straddle the split lines and
+     * fit into no child. Every query reaching such a node has to test them.
+     *
+     * @return Number of entries held by split nodes.
+     */
+    public int getInternalEntryCount() {
+        return internalEntryCount;
+    }
+
+    /**
+     *
+     * @return Number of nodes on each level, index 0 is the root level.
+     */
+    public int[] getNodesPerLevel() {
+        return nodesPerLevel.clone();
+    }
+
+    /**
+     *
+     * @return Number of entries held by the nodes on each level, index 0 is
+     * the root level.
+     */
+    public int[] getEntriesPerLevel() {
+        return entriesPerLevel.clone();
+    }
+
+    /**
+     *
+     * @return Average number of children of the nodes that have children, 0 if
+     * no node has children.
+     */
+    public double getAverageFanOut() {
+        final int inner = nodeCount - leafCount;
+        return inner == 0 ? 0 : (double) (nodeCount - 1) / inner;
+    }
+
+    /**
+     *
+     * @return Average fill of the leaves relative to the maximum node size.
+     */
+    public double getAverageLeafOccupancy() {
+        return (double) leafEntryCount / leafCount / maxNodeSize;
+    }
+
+    /**
+     *
+     * @return Estimated number of bytes retained by the tree structure,
+     * excluding keys and values.
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TreeStats{" + "size=" + size + ", maxNodeSize=" + maxNodeSize
+                + ", depth=" + depth + ", nodes=" + nodeCount
+                + ", leaves=" + leafCount + ", emptyNodes=" + emptyNodeCount
+                + ", emptyLeaves=" + emptyLeafCount
+                + ", internalEntries=" + internalEntryCount
+                + ", nodesPerLevel=" + Arrays.toString(nodesPerLevel)
+                + ", entriesPerLevel=" + Arrays.toString(entriesPerLevel)
+                + ", estimatedBytes=" + estimatedBytes + '}';
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary encoding of a single object, used to write keys and values of
+ * serialized trees. A codec has to read exactly the bytes it wrote.
+ *
+ * @author psygate (https://github.com/psygate)
+ * @param <T> Encoded type.
+ */
+public interface Codec<T> {
+
+    /**
+     * Codec for integers, null is not supported.
+     */
+    public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+        @Override
+        public void write(DataOutput out, Integer value) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    /**
+     * Codec for longs, null is not supported.
+     */
+    public static final Codec<Long> LONG = new Codec<Long>() {
+        @Override
+        public void write(DataOutput out, Long value) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public Long read(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    /**
+     * Codec for doubles, null is not supported.
+     */
+    public static final Codec<Double> DOUBLE = new Codec<Double>() {
+        @Override
+        public void write(DataOutput out, Double value) throws IOException {
+            out.writeDouble(value);
+        }
+
+        @Override
+        public Double read(DataInput in) throws IOException {
+            return in.readDouble();
+        }
+    };
+
+    /**
+     * Codec for strings in modified UTF-8, limited to 65535 encoded bytes.
+     * Null is not supported.
+     */
+    public static final Codec<String> STRING = new Codec<String>() {
+        @Override
+        public void write(DataOutput out, String value) throws IOException {
+            out.writeUTF(value);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    /**
+     *
+     * @param out Output to write to.
+     * @param value Object to encode.
+     * @throws IOException If writing fails.
+     */
+    void write(DataOutput out, T value) throws IOException;
+
+    /**
+     *
+     * @param in Input to read from.
+     * @return The decoded object.
+     * @throws IOException If reading fails or the input is malformed.
+     */
+    T read(DataInput in) throws IOException;
+}
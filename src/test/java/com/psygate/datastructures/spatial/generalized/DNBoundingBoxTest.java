@@ -0,0 +1,155 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.generalized;
+
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class DNBoundingBoxTest {
+
+    private final int batchsize = 500;
+
+    public DNBoundingBoxTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private DNBoundingBox random(Random rand, int dimensions) {
+        double[] lower = new double[dimensions];
+        double[] upper = new double[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            lower[i] = rand.nextDouble();
+            upper[i] = lower[i] + rand.nextDouble() * 0.5;
+        }
+
+        return new DNBoundingBox(lower, upper);
+    }
+
+    /**
+     * Test of getLower and getUpper method, of class DNBoundingBox.
+     */
+    @Test
+    public void testGetLowerUpper() {
+        DNBoundingBox box = new DNBoundingBox(new double[]{1, 2, 3}, new double[]{4, 5, 6});
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, box.getLower(i).get(i), 0);
+            assertEquals(i + 4, box.getUpper(i).get(i), 0);
+            assertEquals(3, box.length(i), 0);
+            assertEquals(i + 2.5, box.getCenter(i), 0);
+        }
+        assertEquals(3, box.getLower().length);
+        assertSame(box.getLower(0), box.getLower()[2]);
+        assertTrue(box.same(new DNBoundingBox(IDBoundingBox.build(box))));
+    }
+
+    /**
+     * Flat checks must agree with the default implementations.
+     */
+    @Test
+    public void testAgainstDefaults() {
+        Random rand = new Random(1);
+        for (int i = 0; i < batchsize; i++) {
+            DNBoundingBox a = random(rand, 4);
+            DNBoundingBox b = random(rand, 4);
+            IDBoundingBox builtB = IDBoundingBox.build(b);
+
+            assertEquals(IDBoundingBox.build(a).intersects(builtB), a.intersects(b));
+            assertEquals(a.intersects(b), a.intersects(builtB));
+            assertEquals(IDBoundingBox.build(a).isInside(builtB), a.isInside(b));
+            assertEquals(a.isInside(b), a.isInside(builtB));
+            assertEquals(a.isInside(b), b.contains(a));
+        }
+    }
+
+    /**
+     * Test of contains method with points, of class DNBoundingBox.
+     */
+    @Test
+    public void testContainsPoint() {
+        DNBoundingBox box = new DNBoundingBox(new double[]{0, 0, 0}, new double[]{100, 100, 100});
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(box.contains(new DNPoint(i + 0.5, i, 100 - i)));
+            assertTrue(box.contains(IDPoint.build(i + 0.5, i, 100 - i)));
+            assertFalse(box.contains(new DNPoint(i, 100 + i + 0.5, i)));
+            assertFalse(box.contains(IDPoint.build(i, i, 0 - i - 0.5)));
+        }
+    }
+
+    /**
+     * Test of distSqr method, of class DNBoundingBox.
+     */
+    @Test
+    public void testDistSqr() {
+        DNBoundingBox box = new DNBoundingBox(new double[]{0, 0, 0}, new double[]{1, 1, 1});
+
+        assertEquals(0, box.distSqr(new DNPoint(0.5, 0.5, 0.5)), 0);
+        assertEquals(0, box.distSqr(new DNPoint(1, 0, 1)), 0);
+        assertEquals(1, box.distSqr(new DNPoint(2, 0.5, 0.5)), 0);
+        assertEquals(3, box.distSqr(IDPoint.build(-1, 2, 2)), 0);
+    }
+
+    /**
+     * Test of merge method, of class DNBoundingBox.
+     */
+    @Test
+    public void testMerge() {
+        DNBoundingBox a = new DNBoundingBox(new double[]{0, 2, 0}, new double[]{1, 3, 1});
+        DNBoundingBox b = new DNBoundingBox(new double[]{-1, 0, 0.5}, new double[]{0.5, 1, 4});
+        DNBoundingBox merged = new DNBoundingBox(new double[]{-1, 0, 0}, new double[]{1, 3, 4});
+
+        assertEquals(merged, a.merge(b));
+        assertEquals(merged, a.merge(IDBoundingBox.build(b)));
+        assertTrue(a.isInside(merged));
+        assertTrue(b.isInside(merged));
+    }
+
+    /**
+     * Boxes of different dimensions cannot be compared.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDimensionMismatch() {
+        DNBoundingBox a = new DNBoundingBox(new double[]{0, 0}, new double[]{1, 1});
+        a.intersects(new DNBoundingBox(new double[]{0, 0, 0}, new double[]{1, 1, 1}));
+    }
+}
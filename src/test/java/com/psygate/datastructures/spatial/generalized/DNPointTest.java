@@ -0,0 +1,121 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.generalized;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class DNPointTest {
+
+    public DNPointTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of get method, of class DNPoint.
+     */
+    @Test
+    public void testGet() {
+        double[] coordinates = {1, 2, 3, 4};
+        DNPoint point = new DNPoint(coordinates);
+        coordinates[0] = 5;
+        point.get()[1] = 5;
+
+        assertEquals(4, point.getDimensions());
+        assertArrayEquals(new double[]{1, 2, 3, 4}, point.get(), 0);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 1, point.get(i), 0);
+        }
+    }
+
+    /**
+     * Test of distSqr method, of class DNPoint.
+     */
+    @Test
+    public void testDistSqr() {
+        DNPoint point = new DNPoint(0, 0, 0);
+
+        assertEquals(3, point.distSqr(new DNPoint(1, 1, 1)), 0);
+        assertEquals(14, point.distSqr(IDPoint.build(1, 2, 3)), 0);
+        assertEquals(IDPoint.build(0, 0, 0).distSqr(IDPoint.build(-1, 4, 2)), point.distSqr(new DNPoint(-1, 4, 2)), 0);
+    }
+
+    /**
+     * Points of different dimensions cannot be compared.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDistSqrDimensionMismatch() {
+        new DNPoint(0, 0).distSqr(new DNPoint(0, 0, 0));
+    }
+
+    /**
+     * Test of isInside method, of class DNPoint.
+     */
+    @Test
+    public void testIsInside() {
+        DNBoundingBox box = new DNBoundingBox(new double[]{0, 0, 0}, new double[]{1, 1, 1});
+        IDBoundingBox built = IDBoundingBox.build(box);
+
+        for (int i = 0; i < 10; i++) {
+            DNPoint inside = new DNPoint(i / 10.0, 1 - i / 10.0, 0.5);
+            DNPoint outside = new DNPoint(i / 10.0, 0.5, 1.5);
+            assertTrue(inside.isInside(box));
+            assertTrue(inside.isInside(built));
+            assertFalse(outside.isInside(box));
+            assertFalse(outside.isInside(built));
+        }
+    }
+
+    /**
+     * Test of same and equals method, of class DNPoint.
+     */
+    @Test
+    public void testSame() {
+        DNPoint point = new DNPoint(1, 2, 3);
+
+        assertTrue(point.same(IDPoint.build(1, 2, 3)));
+        assertFalse(point.same(IDPoint.build(1, 2, 4)));
+        assertEquals(point, new DNPoint(IDPoint.build(1, 2, 3)));
+        assertEquals(point.hashCode(), new DNPoint(1, 2, 3).hashCode());
+        assertNotEquals(point, new DNPoint(1, 2));
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.linear;
+
+import com.psygate.datastructures.spatial.D3BoundingBox;
+import com.psygate.datastructures.spatial.D3Point;
+import com.psygate.datastructures.spatial.ID3BoundingBox;
+import com.psygate.datastructures.spatial.ID3Point;
+import com.psygate.datastructures.spatial.trees.recursive.OcTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class LinearOcTreeTest {
+
+    private final int batchsize = 500;
+
+    public LinearOcTreeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private List<Pair<ID3Point, Integer>> entries(Random rand, int count) {
+        List<Pair<ID3Point, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(new Pair<>(new D3Point(rand.nextDouble(), rand.nextDouble(), rand.nextDouble()), i));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Morton codes have to interleave the coordinate bits, lowest bit from x.
+     */
+    @Test
+    public void testEncode() {
+        Random rand = new Random(1);
+        for (int n = 0; n < batchsize; n++) {
+            long x = rand.nextLong() & ((1L << Morton.BITS_3D) - 1);
+            long y = rand.nextLong() & ((1L << Morton.BITS_3D) - 1);
+            long z = rand.nextLong() & ((1L << Morton.BITS_3D) - 1);
+            long expected = 0;
+            for (int bit = 0; bit < Morton.BITS_3D; bit++) {
+                expected |= ((x >> bit) & 1) << (bit * 3 + 0);
+                expected |= ((y >> bit) & 1) << (bit * 3 + 1);
+                expected |= ((z >> bit) & 1) << (bit * 3 + 2);
+            }
+            assertEquals(expected, Morton.encode(x, y, z));
+        }
+    }
+
+    /**
+     * Test of containsKey and contains methods, of class LinearOcTree.
+     */
+    @Test
+    public void testContains() {
+        List<Pair<ID3Point, Integer>> entries = entries(new Random(2), batchsize);
+        LinearOcTree<Integer> tree = new LinearOcTree<>(entries, new D3BoundingBox(0, 0, 0, 1, 1, 1));
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.entryStream().count());
+        for (Pair<ID3Point, Integer> entry : entries) {
+            assertTrue(tree.containsKey(entry.getKey()));
+            assertTrue(tree.contains(entry.getKey(), entry.getValue()));
+            assertFalse(tree.contains(entry.getKey(), -1));
+            assertTrue(tree.containsValue(entry.getValue()));
+        }
+        assertFalse(tree.containsKey(new D3Point(0.5, 0.5, 0.5)));
+        assertFalse(tree.containsKey(new D3Point(2, 2, 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutside() {
+        new LinearOcTree<>(Collections.singletonList(new Pair<ID3Point, Integer>(new D3Point(1.5, 1.5, 1.5), 0)), new D3BoundingBox(0, 0, 0, 1, 1, 1));
+    }
+
+    /**
+     * Test of forEachInWindow method, of class LinearOcTree.
+     */
+    @Test
+    public void testForEachInWindow() {
+        Random rand = new Random(3);
+        List<Pair<ID3Point, Integer>> entries = entries(rand, batchsize);
+        LinearOcTree<Integer> tree = new LinearOcTree<>(entries, new D3BoundingBox(0, 0, 0, 1, 1, 1));
+
+        for (int i = 0; i < 50; i++) {
+            double lx = rand.nextDouble() * 0.8;
+            double ly = rand.nextDouble() * 0.8;
+            double lz = rand.nextDouble() * 0.8;
+            ID3BoundingBox window = new D3BoundingBox(lx, ly, lz, lx + 0.2, ly + 0.2, lz + 0.2);
+            Set<Integer> expected = new HashSet<>();
+            for (Pair<ID3Point, Integer> entry : entries) {
+                if (window.contains(entry.getKey())) {
+                    expected.add(entry.getValue());
+                }
+            }
+
+            Set<Integer> found = new HashSet<>();
+            tree.forEachInWindow(lx, ly, lz, lx + 0.2, ly + 0.2, lz + 0.2, (x, y, z, v) -> {
+                assertTrue(window.contains(ID3Point.build(x, y, z)));
+                assertTrue(found.add(v));
+            });
+            assertEquals(expected, found);
+            assertEquals(expected, new HashSet<>(tree.valuesInWindow(window)));
+        }
+    }
+
+    /**
+     * The selective stream has to return the same entries as the recursive
+     * tree for the same window.
+     */
+    @Test
+    public void testSelectiveEntryStream() {
+        Random rand = new Random(4);
+        List<Pair<ID3Point, Integer>> entries = entries(rand, batchsize * 4);
+        OcTree<ID3Point, Integer> recursive = new OcTree<>(new D3BoundingBox(0, 0, 0, 1, 1, 1), 8);
+        recursive.putAll(entries);
+        LinearOcTree<Integer> tree = new LinearOcTree<>(recursive);
+
+        for (int i = 0; i < 50; i++) {
+            double lx = rand.nextDouble() * 0.8;
+            double ly = rand.nextDouble() * 0.8;
+            double lz = rand.nextDouble() * 0.8;
+            ID3BoundingBox window = new D3BoundingBox(lx, ly, lz, lx + 0.2, ly + 0.2, lz + 0.2);
+            assertEquals(
+                    recursive.selectiveEntryStream(window::intersects)
+                    .filter((e) -> window.contains(e.getKey()))
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toSet()),
+                    tree.selectiveEntryStream(window::intersects)
+                    .filter((e) -> window.contains(e.getKey()))
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toSet()));
+        }
+    }
+
+    /**
+     * Points on and one ulp next to cell boundaries of bounds that are not a
+     * power of two have to be found, although the cell bounds computed from the cell coordinates
+     * round differently than the quantized point coordinates.
+     */
+    @Test
+    public void testCellBoundaries() {
+        final ID3BoundingBox bounds = new D3BoundingBox(0.24032967372687697, 0.3611615658125995, 0.3611615658125995,
+                3.0882944830506793, 1.1596748875107772, 1.1596748875107772);
+        final Random rand = new Random(5);
+        final List<Pair<ID3Point, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < batchsize * 4; i++) {
+            // Half of the points cluster around grid lines whose recomputed
+            // cell bounds round past points one ulp next to them.
+            final int gx = i % 2 == 0 ? rand.nextInt(4097) : 304 + rand.nextInt(33) - 16;
+            final int gy = i % 2 == 0 ? rand.nextInt(4097) : 2144 + rand.nextInt(33) - 16;
+            final int gz = i % 2 == 0 ? rand.nextInt(4097) : 2144 + rand.nextInt(33) - 16;
+            final double x = jitter(rand, bounds.getLower().getX() + bounds.getWidth() * gx / 4096);
+            final double y = jitter(rand, bounds.getLower().getY() + bounds.getHeight() * gy / 4096);
+            final double z = jitter(rand, bounds.getLower().getZ() + bounds.getDepth() * gz / 4096);
+            entries.add(new Pair<>(new D3Point(
+                    Math.max(bounds.getLower().getX(), Math.min(x, bounds.getUpper().getX())),
+                    Math.max(bounds.getLower().getY(), Math.min(y, bounds.getUpper().getY())),
+                    Math.max(bounds.getLower().getZ(), Math.min(z, bounds.getUpper().getZ()))), i));
+        }
+        final LinearOcTree<Integer> tree = new LinearOcTree<>(entries, bounds);
+
+        for (Pair<ID3Point, Integer> entry : entries) {
+            final ID3Point p = entry.getKey();
+            assertTrue(tree.containsKey(p));
+            assertTrue(tree.valuesInWindow(new D3BoundingBox(p, p)).contains(entry.getValue()));
+            assertTrue(tree.selectiveEntryStream((cell) -> cell.contains(p))
+                    .anyMatch((e) -> e.getValue().equals(entry.getValue())));
+        }
+    }
+
+    private static double jitter(Random rand, double value) {
+        switch (rand.nextInt(3)) {
+            case 0:
+                return Math.nextDown(value);
+            case 1:
+                return Math.nextUp(value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Equal points end up in one range that cannot be subdivided any further.
+     */
+    @Test
+    public void testDegeneratePoints() {
+        List<Pair<ID3Point, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            entries.add(new Pair<>(new D3Point(0.3, 0.3, 0.3), i));
+        }
+        LinearOcTree<Integer> tree = new LinearOcTree<>(entries, new D3BoundingBox(0, 0, 0, 1, 1, 1));
+
+        assertEquals(batchsize, tree.valuesInWindow(new D3BoundingBox(0.3, 0.3, 0.3, 0.3, 0.3, 0.3)).size());
+        assertEquals(batchsize, tree.selectiveEntryStream((b) -> true).count());
+        assertEquals(0, tree.valuesInWindow(new D3BoundingBox(0.4, 0.4, 0.4, 0.5, 0.5, 0.5)).size());
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.linear;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Point;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class LinearQuadTreeTest {
+
+    private final int batchsize = 500;
+
+    public LinearQuadTreeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private List<Pair<ID2Point, Integer>> entries(Random rand, int count) {
+        List<Pair<ID2Point, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(new Pair<>(new D2Point(rand.nextDouble(), rand.nextDouble()), i));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Morton codes have to interleave the coordinate bits, lowest bit from x.
+     */
+    @Test
+    public void testEncode() {
+        Random rand = new Random(1);
+        for (int n = 0; n < batchsize; n++) {
+            long x = rand.nextLong() & ((1L << Morton.BITS_2D) - 1);
+            long y = rand.nextLong() & ((1L << Morton.BITS_2D) - 1);
+            long expected = 0;
+            for (int bit = 0; bit < Morton.BITS_2D; bit++) {
+                expected |= ((x >> bit) & 1) << (bit * 2 + 0);
+                expected |= ((y >> bit) & 1) << (bit * 2 + 1);
+            }
+            assertEquals(expected, Morton.encode(x, y));
+        }
+    }
+
+    /**
+     * Test of containsKey and contains methods, of class LinearQuadTree.
+     */
+    @Test
+    public void testContains() {
+        List<Pair<ID2Point, Integer>> entries = entries(new Random(2), batchsize);
+        LinearQuadTree<Integer> tree = new LinearQuadTree<>(entries, new D2BoundingBox(0, 0, 1, 1));
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.entryStream().count());
+        for (Pair<ID2Point, Integer> entry : entries) {
+            assertTrue(tree.containsKey(entry.getKey()));
+            assertTrue(tree.contains(entry.getKey(), entry.getValue()));
+            assertFalse(tree.contains(entry.getKey(), -1));
+            assertTrue(tree.containsValue(entry.getValue()));
+        }
+        assertFalse(tree.containsKey(new D2Point(0.5, 0.5)));
+        assertFalse(tree.containsKey(new D2Point(2, 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutside() {
+        new LinearQuadTree<>(Collections.singletonList(new Pair<ID2Point, Integer>(new D2Point(1.5, 1.5), 0)), new D2BoundingBox(0, 0, 1, 1));
+    }
+
+    /**
+     * Test of forEachInWindow method, of class LinearQuadTree.
+     */
+    @Test
+    public void testForEachInWindow() {
+        Random rand = new Random(3);
+        List<Pair<ID2Point, Integer>> entries = entries(rand, batchsize);
+        LinearQuadTree<Integer> tree = new LinearQuadTree<>(entries, new D2BoundingBox(0, 0, 1, 1));
+
+        for (int i = 0; i < 50; i++) {
+            double lx = rand.nextDouble() * 0.8;
+            double ly = rand.nextDouble() * 0.8;
+            ID2BoundingBox window = new D2BoundingBox(lx, ly, lx + 0.2, ly + 0.2);
+            Set<Integer> expected = new HashSet<>();
+            for (Pair<ID2Point, Integer> entry : entries) {
+                if (window.contains(entry.getKey())) {
+                    expected.add(entry.getValue());
+                }
+            }
+
+            Set<Integer> found = new HashSet<>();
+            tree.forEachInWindow(lx, ly, lx + 0.2, ly + 0.2, (x, y, v) -> {
+                assertTrue(window.contains(ID2Point.build(x, y)));
+                assertTrue(found.add(v));
+            });
+            assertEquals(expected, found);
+            assertEquals(expected, new HashSet<>(tree.valuesInWindow(window)));
+        }
+    }
+
+    /**
+     * The selective stream has to return the same entries as the recursive
+     * tree for the same window.
+     */
+    @Test
+    public void testSelectiveEntryStream() {
+        Random rand = new Random(4);
+        List<Pair<ID2Point, Integer>> entries = entries(rand, batchsize * 4);
+        QuadTree<ID2Point, Integer> recursive = new QuadTree<>(new D2BoundingBox(0, 0, 1, 1), 8);
+        recursive.putAll(entries);
+        LinearQuadTree<Integer> tree = new LinearQuadTree<>(recursive);
+
+        for (int i = 0; i < 50; i++) {
+            double lx = rand.nextDouble() * 0.8;
+            double ly = rand.nextDouble() * 0.8;
+            ID2BoundingBox window = new D2BoundingBox(lx, ly, lx + 0.2, ly + 0.2);
+            assertEquals(
+                    recursive.selectiveEntryStream(window::intersects)
+                    .filter((e) -> window.contains(e.getKey()))
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toSet()),
+                    tree.selectiveEntryStream(window::intersects)
+                    .filter((e) -> window.contains(e.getKey()))
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toSet()));
+        }
+    }
+
+    /**
+     * Points on and one ulp next to cell boundaries of bounds that are not a
+     * power of two have to be found, although the cell bounds computed from the cell coordinates
+     * round differently than the quantized point coordinates.
+     */
+    @Test
+    public void testCellBoundaries() {
+        final ID2BoundingBox bounds = new D2BoundingBox(0.24032967372687697, 0.3611615658125995, 3.0882944830506793, 1.1596748875107772);
+        final D2Point missed = new D2Point(2.7559392147750987, 0.8352788505708925);
+        final Random rand = new Random(5);
+        final List<Pair<ID2Point, Integer>> entries = new ArrayList<>();
+        entries.add(new Pair<>(missed, -1));
+        for (int i = 0; i < batchsize * 4; i++) {
+            // Half of the points cluster around the missed point, so the
+            // window descends into small cells before scanning entries.
+            final int gx = i % 2 == 0 ? rand.nextInt(4097) : 3618 + rand.nextInt(33) - 16;
+            final int gy = i % 2 == 0 ? rand.nextInt(4097) : 2432 + rand.nextInt(33) - 16;
+            final double x = jitter(rand, bounds.getLower().getX() + bounds.getWidth() * gx / 4096);
+            final double y = jitter(rand, bounds.getLower().getY() + bounds.getHeight() * gy / 4096);
+            entries.add(new Pair<>(new D2Point(
+                    Math.max(bounds.getLower().getX(), Math.min(x, bounds.getUpper().getX())),
+                    Math.max(bounds.getLower().getY(), Math.min(y, bounds.getUpper().getY()))), i));
+        }
+        final LinearQuadTree<Integer> tree = new LinearQuadTree<>(entries, bounds);
+
+        for (Pair<ID2Point, Integer> entry : entries) {
+            final ID2Point p = entry.getKey();
+            assertTrue(tree.containsKey(p));
+            assertTrue(tree.valuesInWindow(new D2BoundingBox(p, p)).contains(entry.getValue()));
+            assertTrue(tree.selectiveEntryStream((cell) -> cell.contains(p))
+                    .anyMatch((e) -> e.getValue().equals(entry.getValue())));
+        }
+    }
+
+    private static double jitter(Random rand, double value) {
+        switch (rand.nextInt(3)) {
+            case 0:
+                return Math.nextDown(value);
+            case 1:
+                return Math.nextUp(value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Equal points end up in one range that cannot be subdivided any further.
+     */
+    @Test
+    public void testDegeneratePoints() {
+        List<Pair<ID2Point, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            entries.add(new Pair<>(new D2Point(0.3, 0.3), i));
+        }
+        LinearQuadTree<Integer> tree = new LinearQuadTree<>(entries, new D2BoundingBox(0, 0, 1, 1));
+
+        assertEquals(batchsize, tree.valuesInWindow(new D2BoundingBox(0.3, 0.3, 0.3, 0.3)).size());
+        assertEquals(batchsize, tree.selectiveEntryStream((b) -> true).count());
+        assertEquals(0, tree.valuesInWindow(new D2BoundingBox(0.4, 0.4, 0.5, 0.5)).size());
+    }
+}
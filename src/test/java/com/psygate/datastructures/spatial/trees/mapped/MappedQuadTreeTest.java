@@ -0,0 +1,244 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.mapped;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Point;
+import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
+import com.psygate.datastructures.util.Codec;
+import com.psygate.datastructures.util.Pair;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class MappedQuadTreeTest {
+
+    private static final ID2BoundingBox BOUNDS = new D2BoundingBox(0, 0, 1, 1);
+    private final int batchsize = 500;
+    private Path file;
+
+    public MappedQuadTreeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("mapped", ".qt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private List<Pair<ID2Point, String>> entries(Random rand, int count) {
+        final List<Pair<ID2Point, String>> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(new Pair<>(new D2Point(rand.nextDouble(), rand.nextDouble()), "v" + i));
+        }
+
+        return entries;
+    }
+
+    private MappedQuadTree<String> writeAndOpen(List<Pair<ID2Point, String>> entries, int maxNodeSize) throws IOException {
+        MappedQuadTree.write(entries, BOUNDS, maxNodeSize, Codec.STRING, file);
+        return MappedQuadTree.open(file, Codec.STRING);
+    }
+
+    /**
+     * Test of the entries and lookups of a written tree.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        final List<Pair<ID2Point, String>> entries = entries(new Random(1), batchsize * 4);
+        final MappedQuadTree<String> tree = writeAndOpen(entries, 8);
+
+        assertEquals(entries.size(), tree.size());
+        assertEquals(BOUNDS, tree.getBounds());
+        assertTrue(tree.getNodeCount() > 1);
+        assertEquals(new HashSet<>(entries), tree.entryStream().collect(Collectors.toSet()));
+        for (Pair<ID2Point, String> entry : entries) {
+            assertTrue(tree.containsKey(entry.getKey()));
+            assertTrue(tree.contains(entry.getKey(), entry.getValue()));
+            assertFalse(tree.contains(entry.getKey(), "missing"));
+        }
+        assertTrue(tree.containsValue("v0"));
+        assertFalse(tree.containsKey(new D2Point(0.5, 0.5)));
+        assertFalse(tree.containsKey(new D2Point(2, 2)));
+    }
+
+    /**
+     * Test of forEachInWindow and valuesInWindow against a brute force scan.
+     */
+    @Test
+    public void testForEachInWindow() throws IOException {
+        final Random rand = new Random(2);
+        final List<Pair<ID2Point, String>> entries = entries(rand, batchsize * 4);
+        final MappedQuadTree<String> tree = writeAndOpen(entries, 8);
+
+        for (int i = 0; i < 50; i++) {
+            final double x = rand.nextDouble() * 0.8;
+            final double y = rand.nextDouble() * 0.8;
+            final ID2BoundingBox window = new D2BoundingBox(x, y, x + 0.2, y + 0.2);
+            final Set<String> expected = entries.stream()
+                    .filter((en) -> window.contains(en.getKey()))
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toSet());
+
+            final Set<String> found = new HashSet<>();
+            tree.forEachInWindow(x, y, x + 0.2, y + 0.2, (px, py, v) -> {
+                assertTrue(window.contains(new D2Point(px, py)));
+                assertTrue(found.add(v));
+            });
+            assertEquals(expected, found);
+            assertEquals(expected, new HashSet<>(tree.valuesInWindow(window)));
+        }
+    }
+
+    /**
+     * The selective stream has to return the same entries as the recursive
+     * tree for the same window.
+     */
+    @Test
+    public void testSelectiveEntryStream() throws IOException {
+        final Random rand = new Random(3);
+        final List<Pair<ID2Point, String>> entries = entries(rand, batchsize * 4);
+        final QuadTree<ID2Point, String> recursive = new QuadTree<>(BOUNDS, 8);
+        recursive.putAll(entries);
+        MappedQuadTree.write(recursive, 8, Codec.STRING, file);
+        final MappedQuadTree<String> tree = MappedQuadTree.open(file, Codec.STRING);
+
+        for (int i = 0; i < 50; i++) {
+            final double x = rand.nextDouble() * 0.8;
+            final double y = rand.nextDouble() * 0.8;
+            final ID2BoundingBox window = new D2BoundingBox(x, y, x + 0.2, y + 0.2);
+            assertEquals(
+                    recursive.selectiveEntryStream(window::intersects)
+                    .filter((en) -> window.contains(en.getKey()))
+                    .collect(Collectors.toSet()),
+                    tree.selectiveEntryStream(window::intersects)
+                    .filter((en) -> window.contains(en.getKey()))
+                    .collect(Collectors.toSet()));
+        }
+    }
+
+    /**
+     * Parallel streams split the entry ranges, every split decodes through its
+     * own reader.
+     */
+    @Test
+    public void testParallelStreams() throws IOException {
+        final List<Pair<ID2Point, String>> entries = entries(new Random(4), batchsize * 4);
+        final MappedQuadTree<String> tree = writeAndOpen(entries, 8);
+        final ID2BoundingBox window = new D2BoundingBox(0.2, 0.2, 0.7, 0.7);
+
+        assertEquals(tree.entryStream().collect(Collectors.toList()),
+                tree.parallelEntryStream().collect(Collectors.toList()));
+        assertEquals(tree.valueStream().collect(Collectors.toList()),
+                tree.valueStream().parallel().collect(Collectors.toList()));
+        assertEquals(tree.selectiveEntryStream(window::intersects).collect(Collectors.toList()),
+                tree.parallelSelectiveEntryStream(window::intersects).collect(Collectors.toList()));
+        assertEquals(entries.size(), tree.parallelEntryStream().count());
+    }
+
+    /**
+     * Equal points cannot be distributed and have to stay in one leaf.
+     */
+    @Test
+    public void testDegeneratePoints() throws IOException {
+        final List<Pair<ID2Point, String>> entries = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            entries.add(new Pair<>(new D2Point(0.3, 0.3), "v" + i));
+        }
+        final MappedQuadTree<String> tree = writeAndOpen(entries, 4);
+
+        assertEquals(1, tree.getNodeCount());
+        assertEquals(batchsize, tree.valuesInWindow(new D2BoundingBox(0.3, 0.3, 0.3, 0.3)).size());
+        assertTrue(tree.contains(new D2Point(0.3, 0.3), "v" + (batchsize - 1)));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        final MappedQuadTree<String> tree = writeAndOpen(new ArrayList<>(), 4);
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.entryStream().count());
+        assertFalse(tree.containsKey(new D2Point(0.5, 0.5)));
+        assertTrue(tree.valuesInWindow(BOUNDS).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutside() throws IOException {
+        writeAndOpen(Collections.singletonList(new Pair<>(new D2Point(1.5, 0.5), "v")), 4);
+    }
+
+    @Test
+    public void testCorrupt() throws IOException {
+        MappedQuadTree.write(entries(new Random(4), batchsize), BOUNDS, 8, Codec.STRING, file);
+        final byte[] data = Files.readAllBytes(file);
+
+        final byte[] magic = data.clone();
+        magic[0]++;
+        assertFails(magic);
+
+        final byte[] version = data.clone();
+        version[7]++;
+        assertFails(version);
+
+        final byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        assertFails(truncated);
+    }
+
+    private void assertFails(byte[] data) throws IOException {
+        Files.write(file, data);
+        try {
+            MappedQuadTree.open(file, Codec.STRING);
+            fail("Corrupt file was opened.");
+        } catch (IOException e) {
+        }
+    }
+}
@@ -74,11 +74,11 @@ public class AOcNodeTest {
         assertTrue(node.isEmpty());
         assertEquals(0, node.size());
         assertTrue(node.hasChildren());
-        assertEquals(5, node.subtreeSize());
+        assertEquals(8, node.subtreeSize());
         node.add(new Pair<>(ID3Point.build(3, 3, 3), new Object()));
         assertTrue(node.isEmpty());
         assertEquals(0, node.size());
         assertTrue(node.hasChildren());
-        assertEquals(5, node.subtreeSize());
+        assertEquals(8, node.subtreeSize());
     }
 }
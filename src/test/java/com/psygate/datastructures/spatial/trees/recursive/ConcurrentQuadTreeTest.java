@@ -0,0 +1,332 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class ConcurrentQuadTreeTest {
+
+    private final int batchsize = 500;
+    private final int threads = 4;
+
+    public ConcurrentQuadTreeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private <K extends ID2Boundable> ConcurrentQuadTree<K, Integer> newTree() {
+        return new ConcurrentQuadTree<>(new D2BoundingBox(0, 0, 1, 1), 5);
+    }
+
+    private List<D2Point> points(Random rand, int count) {
+        List<D2Point> points = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            points.add(new D2Point(rand.nextDouble(), rand.nextDouble()));
+        }
+
+        return points;
+    }
+
+    /**
+     * Runs the task on several threads at once and rethrows the first failure.
+     */
+    private void runConcurrently(int count, ThreadTask task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int id = i;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run(id);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.peek());
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+
+        void run(int id) throws Exception;
+    }
+
+    /**
+     * Test of put method, of class ConcurrentQuadTree.
+     */
+    @Test
+    public void testPut() {
+        ConcurrentQuadTree<D2Point, Integer> tree = newTree();
+        List<D2Point> points = points(new Random(1), batchsize);
+        for (int i = 0; i < batchsize; i++) {
+            tree.put(points.get(i), i);
+        }
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.entryStream().count());
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.containsKey(points.get(i)));
+            assertTrue(tree.contains(points.get(i), i));
+            assertFalse(tree.contains(points.get(i), -1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutOutside() {
+        ConcurrentQuadTree<D2Point, Integer> tree = newTree();
+        tree.put(new D2Point(1.5, 0.5), 0);
+    }
+
+    /**
+     * Keys crossing the split lines stay in the inner nodes and must still be
+     * found and removed.
+     */
+    @Test
+    public void testBoundingBoxKeys() {
+        Random rand = new Random(2);
+        ConcurrentQuadTree<ID2BoundingBox, Integer> tree = newTree();
+        List<ID2BoundingBox> keys = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            double x = rand.nextDouble() * 0.9;
+            double y = rand.nextDouble() * 0.9;
+            ID2BoundingBox key = new D2BoundingBox(x, y, x + rand.nextDouble() * 0.1, y + rand.nextDouble() * 0.1);
+            keys.add(key);
+            tree.put(key, i);
+        }
+
+        assertEquals(batchsize, tree.entryStream().count());
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.contains(keys.get(i), i));
+        }
+
+        ID2BoundingBox window = new D2BoundingBox(0.2, 0.2, 0.6, 0.6);
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < batchsize; i++) {
+            if (window.intersects(keys.get(i))) {
+                expected.add(i);
+            }
+        }
+        assertEquals(expected, tree.selectiveEntryStream(window::intersects)
+                .filter((e) -> window.intersects(e.getKey()))
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toSet()));
+
+        for (int i = 0; i < batchsize; i++) {
+            assertEquals(1, tree.remove(keys.get(i), i).size());
+        }
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.entryStream().count());
+    }
+
+    /**
+     * Equal keys must not split the tree endlessly.
+     */
+    @Test
+    public void testDuplicateKeys() {
+        ConcurrentQuadTree<D2Point, Integer> tree = newTree();
+        D2Point point = new D2Point(0.25, 0.75);
+        for (int i = 0; i < batchsize; i++) {
+            tree.put(point, i);
+        }
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.remove(point).size());
+        assertTrue(tree.isEmpty());
+    }
+
+    /**
+     * Test of remove method, of class ConcurrentQuadTree.
+     */
+    @Test
+    public void testRemove() {
+        ConcurrentQuadTree<D2Point, Integer> tree = newTree();
+        List<D2Point> points = points(new Random(3), batchsize);
+        for (int i = 0; i < batchsize; i++) {
+            tree.put(points.get(i), i);
+        }
+
+        for (int i = 0; i < batchsize; i += 2) {
+            Collection<Integer> removed = tree.remove(points.get(i));
+            assertEquals(1, removed.size());
+            assertTrue(removed.contains(i));
+        }
+
+        assertEquals(batchsize / 2, tree.size());
+        for (int i = 0; i < batchsize; i++) {
+            assertEquals(i % 2 != 0, tree.containsKey(points.get(i)));
+        }
+    }
+
+    /**
+     * Test of removeValue method, of class ConcurrentQuadTree.
+     */
+    @Test
+    public void testRemoveValue() {
+        ConcurrentQuadTree<D2Point, Integer> tree = newTree();
+        List<D2Point> points = points(new Random(4), batchsize);
+        for (int i = 0; i < batchsize; i++) {
+            tree.put(points.get(i), i % 10);
+        }
+
+        assertEquals(batchsize / 10, tree.removeValue(3).size());
+        assertFalse(tree.containsValue(3));
+        assertEquals(batchsize - batchsize / 10, tree.size());
+    }
+
+    /**
+     * Test of clear method, of class ConcurrentQuadTree.
+     */
+    @Test
+    public void testClear() {
+        ConcurrentQuadTree<D2Point, Integer> tree = newTree();
+        List<D2Point> points = points(new Random(5), batchsize);
+        for (int i = 0; i < batchsize; i++) {
+            tree.put(points.get(i), i);
+        }
+
+        tree.clear();
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.entryStream().count());
+        tree.put(points.get(0), 0);
+        assertEquals(1, tree.entryStream().count());
+    }
+
+    /**
+     * Several threads inserting at once must not lose entries.
+     */
+    @Test
+    public void testConcurrentPut() throws InterruptedException {
+        ConcurrentQuadTree<D2Point, Integer> tree = newTree();
+        List<D2Point> points = points(new Random(6), batchsize * threads);
+
+        runConcurrently(threads, (id) -> {
+            for (int i = id; i < points.size(); i += threads) {
+                tree.put(points.get(i), i);
+            }
+        });
+
+        assertEquals(points.size(), tree.size());
+        assertEquals(points.size(), tree.entryStream().count());
+        for (int i = 0; i < points.size(); i++) {
+            assertTrue(tree.contains(points.get(i), i));
+        }
+    }
+
+    /**
+     * Writers insert and remove while readers stream the tree. Readers must
+     * never fail and always see the entries that are never removed.
+     */
+    @Test
+    public void testConcurrentReadWrite() throws InterruptedException {
+        ConcurrentQuadTree<D2Point, Integer> tree = newTree();
+        List<D2Point> stable = points(new Random(7), batchsize);
+        for (int i = 0; i < batchsize; i++) {
+            tree.put(stable.get(i), -i - 1);
+        }
+
+        List<D2Point> points = points(new Random(8), batchsize * threads);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch writers = new CountDownLatch(threads / 2);
+
+        runConcurrently(threads, (id) -> {
+            if (id % 2 == 0) {
+                try {
+                    for (int round = 0; round < 5; round++) {
+                        for (int i = id; i < points.size(); i += threads) {
+                            tree.put(points.get(i), i);
+                        }
+                        for (int i = id; i < points.size(); i += threads) {
+                            assertEquals(1, tree.remove(points.get(i), i).size());
+                        }
+                    }
+                } finally {
+                    writers.countDown();
+                    if (writers.getCount() == 0) {
+                        writing.set(false);
+                    }
+                }
+            } else {
+                do {
+                    Set<Integer> seen = tree.valueStream().collect(Collectors.toSet());
+                    for (int i = 0; i < batchsize; i++) {
+                        assertTrue(seen.contains(-i - 1));
+                    }
+                    assertTrue(tree.containsKey(stable.get(id)));
+                } while (writing.get());
+            }
+        });
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.entryStream().count());
+        for (int i = 0; i < points.size(); i++) {
+            assertFalse(tree.contains(points.get(i), i));
+        }
+    }
+}
@@ -519,6 +519,126 @@ public class DBBQuadTreeTest {
         assertTrue(toValues(baselist).stream().allMatch((key) -> tree.containsValue(key)));
     }
 
+    /**
+     * Test of the loose mode of class QuadTree.
+     */
+    @Test
+    public void testLoose() {
+        final QuadTree<ID2BoundingBox, D2Point> tight = newTree();
+        final QuadTree<ID2BoundingBox, D2Point> loose = new QuadTree<>(tight.getBounds(), 5, 2, 2);
+        assertEquals(1, tight.getLooseness(), 0);
+        assertEquals(2, loose.getLooseness(), 0);
+
+        final List<Pair<ID2BoundingBox, D2Point>> baselist = getSmallBoxes(batchsize * 4, tight.getBounds());
+        tight.putAll(baselist);
+        baselist.forEach(loose::put);
+        assertEquals(tight.size(), loose.size());
+        assertTrue(toKeys(baselist).stream().allMatch(loose::containsKey));
+        assertLooseNodes(loose.getRoot());
+
+        final TreeStats tightStats = tight.stats();
+        final TreeStats looseStats = loose.stats();
+        assertTrue(looseStats.getInternalEntryCount() < tightStats.getInternalEntryCount());
+        assertTrue(looseStats.getEntriesPerLevel()[0] < tightStats.getEntriesPerLevel()[0]);
+
+        for (Pair<ID2BoundingBox, D2Point> window : getSmallBoxes(batchsize / 10, tight.getBounds())) {
+            final ID2BoundingBox box = window.getKey();
+            final D2Point point = window.getValue();
+            assertEquals(windowKeys(tight, box), windowKeys(loose, box));
+            assertEquals(tight.withinDistance(point, 0.05).map(Map.Entry::getKey).collect(Collectors.toSet()),
+                    loose.withinDistance(point, 0.05).map(Map.Entry::getKey).collect(Collectors.toSet()));
+            assertEquals(distances(tight.nearest(point, 10), point), distances(loose.nearest(point, 10), point));
+        }
+
+        final QuadTree<ID2BoundingBox, D2Point> copy = new QuadTree<>(loose);
+        assertEquals(2, copy.getLooseness(), 0);
+        assertEquals(loose.size(), copy.size());
+        assertLooseNodes(copy.getRoot());
+
+        for (Pair<ID2BoundingBox, D2Point> pair : baselist.subList(0, batchsize * 2)) {
+            assertEquals(Collections.singletonList(pair.getValue()), new ArrayList<>(loose.remove(pair.getKey())));
+            assertFalse(loose.containsKey(pair.getKey()));
+        }
+        assertEquals(batchsize * 2, loose.size());
+        assertTrue(toKeys(baselist.subList(batchsize * 2, batchsize * 4)).stream().allMatch(loose::containsKey));
+        assertLooseNodes(loose.getRoot());
+
+        final ID2BoundingBox moved = new D2BoundingBox(0.5, 0.5, 0.501, 0.501);
+        final Pair<ID2BoundingBox, D2Point> last = baselist.get(baselist.size() - 1);
+        assertTrue(loose.move(last.getKey(), moved, last.getValue()));
+        assertTrue(loose.contains(moved, last.getValue()));
+        assertFalse(loose.containsKey(last.getKey()));
+        assertLooseNodes(loose.getRoot());
+    }
+
+    /**
+     * Test of the looseness validation of class QuadTree.
+     */
+    @Test
+    public void testLooseness() {
+        for (double looseness : new double[]{0, 0.5, Double.NaN, Double.POSITIVE_INFINITY}) {
+            try {
+                new QuadTree<>(new D2BoundingBox(0, 0, 1, 1), 5, 2, looseness);
+                fail("Accepted looseness " + looseness);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        final QuadTree<ID2BoundingBox, D2Point> tree = new QuadTree<>(new D2BoundingBox(0, 0, 1, 1), 5, 2, 1);
+        final List<Pair<ID2BoundingBox, D2Point>> baselist = getSmallBoxes(batchsize, tree.getBounds());
+        tree.putAll(baselist);
+        assertTrue(toKeys(baselist).stream().allMatch(tree::containsKey));
+        assertLooseNodes(tree.getRoot());
+    }
+
+    private void assertLooseNodes(QuadNode<ID2BoundingBox, D2Point> node) {
+        int count = node.size();
+        for (Pair<ID2BoundingBox, D2Point> pair : node.getValues()) {
+            assertTrue(node.getBounds().contains(pair.getKey()));
+            assertTrue(!node.isSplit() || node.childIndex(pair.getKey()) < 0);
+        }
+
+        for (int i = 0; i < node.getChildSlots(); i++) {
+            final QuadNode<ID2BoundingBox, D2Point> child = node.getChild(i);
+            if (child != null) {
+                assertTrue(node.getBounds().contains(child.getBounds()));
+                assertLooseNodes(child);
+                count += child.subtreeCount();
+            }
+        }
+        assertEquals(count, node.subtreeCount());
+    }
+
+    private Set<ID2BoundingBox> windowKeys(QuadTree<ID2BoundingBox, D2Point> tree, ID2BoundingBox window) {
+        final Set<ID2BoundingBox> keys = new HashSet<>();
+        tree.forEachInWindow(window.getLower().getX(), window.getLower().getY(), window.getUpper().getX(), window.getUpper().getY(),
+                (key, value) -> keys.add(key));
+        assertEquals(keys, tree.entriesInWindows(Collections.singletonList(window)).get(0).stream()
+                .map(Map.Entry::getKey).collect(Collectors.toSet()));
+        return keys;
+    }
+
+    private List<Double> distances(List<Map.Entry<ID2BoundingBox, D2Point>> entries, D2Point point) {
+        return entries.stream().map((e) -> e.getKey().distSqr(point)).collect(Collectors.toList());
+    }
+
+    List<Pair<ID2BoundingBox, D2Point>> getSmallBoxes(final int size, ID2BoundingBox box) {
+        ArrayList<Pair<ID2BoundingBox, D2Point>> list = new ArrayList<>(size);
+        while (list.size() < size) {
+            double side = rand.nextDouble() * 0.01;
+            double lx = box.getLower().getX() + rand.nextDouble() * (box.getWidth() - side);
+            double ly = box.getLower().getY() + rand.nextDouble() * (box.getHeight() - side);
+
+            D2BoundingBox bb = new D2BoundingBox(lx, ly, lx + side, ly + side);
+            if (boxes.add(bb)) {
+                list.add(new Pair<>(bb, getPoint(box)));
+            }
+        }
+
+        return Collections.unmodifiableList(list);
+    }
+
     private final Random rand = new Random(9327490235L);
     private final Set<ID2BoundingBox> boxes = new HashSet<>();
 
@@ -23,9 +23,13 @@ import com.psygate.datastructures.spatial.trees.recursive.OcTree;
 import com.psygate.datastructures.util.Pair;
 import com.psygate.datastructures.spatial.D3BoundingBox;
 import com.psygate.datastructures.spatial.D3Point;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -33,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.junit.After;
@@ -523,6 +528,662 @@ public class DPointOcTreeTest {
         assertTrue(toValues(baselist).stream().allMatch((key) -> tree.containsValue(key)));
     }
 
+    /**
+     * Test of nearest method, of class OcTree.
+     */
+    @Test
+    public void testNearest() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final List<Pair<ID3BoundingBox, D3Point>> baselist = getPoints(batchsize, tree.getBounds());
+        final D3Point point = new D3Point(0.3, 0.6, 0.1);
+        tree.putAll(baselist);
+
+        assertTrue(tree.nearest(point, 0).isEmpty());
+        assertEquals(baselist.size(), tree.nearest(point, batchsize * 2).size());
+
+        for (int k : new int[]{1, 16, 100}) {
+            List<Double> expected = baselist.stream()
+                    .map((p) -> p.getKey().distSqr(point))
+                    .sorted()
+                    .limit(k)
+                    .collect(Collectors.toList());
+            List<Double> found = tree.nearestKeys(point, k).stream()
+                    .map((key) -> key.distSqr(point))
+                    .collect(Collectors.toList());
+
+            assertEquals(expected, found);
+        }
+    }
+
+    /**
+     * Test of withinDistance method, of class OcTree.
+     */
+    @Test
+    public void testWithinDistance() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final List<Pair<ID3BoundingBox, D3Point>> baselist = getPoints(batchsize, tree.getBounds());
+        final D3Point point = new D3Point(0.3, 0.6, 0.1);
+        tree.putAll(baselist);
+
+        for (double distance : new double[]{0, 0.05, 0.2, 2}) {
+            Set<Map.Entry<ID3BoundingBox, D3Point>> expected = baselist.stream()
+                    .filter((p) -> p.getKey().distSqr(point) <= distance * distance)
+                    .collect(Collectors.toSet());
+            List<Map.Entry<ID3BoundingBox, D3Point>> found = tree.withinDistance(point, distance)
+                    .collect(Collectors.toList());
+
+            assertEquals(expected.size(), found.size());
+            assertTrue(expected.containsAll(found));
+        }
+    }
+
+    /**
+     * Bulk loading has to build the same tree as inserting one by one.
+     */
+    @Test
+    public void testBulkLoad() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final List<Pair<ID3BoundingBox, D3Point>> baselist = new ArrayList<>(getPoints(batchsize, tree.getBounds()));
+        for (int i = 0; i < batchsize * 4; i++) {
+            D3Point point = getPoint(tree.getBounds());
+            baselist.add(new Pair<>(new D3BoundingBox(point, point), point));
+        }
+        baselist.forEach(tree::put);
+        final ImmutableOcTree<ID3BoundingBox, D3Point> bulk = new ImmutableOcTree<>(baselist, tree.getBounds(), tree.getMaxNodeSize());
+
+        assertEquals(tree.size(), bulk.size());
+        assertSameShape(tree.getRoot(), bulk.getRoot());
+    }
+
+    private void assertSameShape(OcNode<ID3BoundingBox, D3Point> expected, OcNode<ID3BoundingBox, D3Point> actual) {
+        assertEquals(expected.getBounds(), actual.getBounds());
+        assertEquals(expected.isSplit(), actual.isSplit());
+        assertEquals(new HashSet<>(expected.getValues()), new HashSet<>(actual.getValues()));
+        for (int i = 0; i < expected.getChildSlots(); i++) {
+            assertEquals(expected.getChild(i) == null, actual.getChild(i) == null);
+            if (expected.getChild(i) != null) {
+                assertSameShape(expected.getChild(i), actual.getChild(i));
+            }
+        }
+    }
+
+    /**
+     * Batched inserts into a populated tree have to build the same tree as
+     * inserting one by one.
+     */
+    @Test
+    public void testPutAllBatched() {
+        final OcTree<ID3BoundingBox, D3Point> sequential = newTree();
+        final OcTree<ID3BoundingBox, D3Point> batched = newTree();
+        for (int batch = 0; batch < 4; batch++) {
+            final List<Pair<ID3BoundingBox, D3Point>> pairs = new ArrayList<>(getPoints(batchsize, sequential.getBounds()));
+            for (int i = 0; i < batchsize; i++) {
+                D3Point point = getPoint(sequential.getBounds());
+                pairs.add(new Pair<>(new D3BoundingBox(point, point), point));
+            }
+            pairs.forEach(sequential::put);
+            batched.putAll(pairs);
+
+            assertEquals(sequential.size(), batched.size());
+            assertEquals(sequential.size(), batched.getRoot().subtreeCount());
+            assertEquals(batched.getRoot().subtreeValueCount(), batched.getRoot().subtreeCount());
+            assertSameShape(sequential.getRoot(), batched.getRoot());
+        }
+    }
+
+    @Test
+    public void testPutAllOutside() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final D3Point point = getPoint(tree.getBounds());
+        final List<Pair<ID3BoundingBox, D3Point>> pairs = new ArrayList<>(getPoints(batchsize, tree.getBounds()));
+        pairs.add(new Pair<>(new D3BoundingBox(2, 2, 2, 3, 3, 3), point));
+        try {
+            tree.putAll(pairs);
+            fail("Key outside bounds was inserted.");
+        } catch (IllegalArgumentException e) {
+        }
+
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.entryStream().count());
+    }
+
+    /**
+     * A batch of window queries has to find the same entries as querying every
+     * window on its own.
+     */
+    @Test
+    public void testEntriesInWindows() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final List<Pair<ID3BoundingBox, D3Point>> baselist = new ArrayList<>(getPoints(batchsize * 4, tree.getBounds()));
+        tree.putAll(baselist);
+
+        final List<ID3BoundingBox> windows = new ArrayList<>();
+        for (int i = 0; i < batchsize / 10; i++) {
+            final double x = rand.nextDouble();
+            final double y = rand.nextDouble();
+            final double z = rand.nextDouble();
+            windows.add(new D3BoundingBox(x, y, z, x + rand.nextDouble() * 0.4, y + rand.nextDouble() * 0.4, z + rand.nextDouble() * 0.4));
+        }
+        windows.add(new D3BoundingBox(-1, -1, -1, 2, 2, 2));
+        windows.add(new D3BoundingBox(2, 2, 2, 3, 3, 3));
+        windows.add(windows.get(0));
+
+        final List<List<Map.Entry<ID3BoundingBox, D3Point>>> found = tree.entriesInWindows(windows);
+        assertEquals(windows.size(), found.size());
+        for (int i = 0; i < windows.size(); i++) {
+            final ID3BoundingBox window = windows.get(i);
+            final List<Map.Entry<ID3BoundingBox, D3Point>> expected = tree.selectiveEntryStream(window::intersects)
+                    .filter((en) -> window.contains(en.getKey()))
+                    .collect(Collectors.toList());
+            assertEquals(expected.size(), found.get(i).size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(found.get(i)));
+        }
+        assertEquals(tree.size(), found.get(windows.size() - 3).size());
+        assertTrue(found.get(windows.size() - 2).isEmpty());
+    }
+
+    @Test
+    public void testForEachInWindow() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final List<Pair<ID3BoundingBox, D3Point>> baselist = new ArrayList<>(getPoints(batchsize * 4, tree.getBounds()));
+        tree.putAll(baselist);
+
+        final List<ID3BoundingBox> windows = new ArrayList<>();
+        for (int i = 0; i < batchsize / 10; i++) {
+            final double x = rand.nextDouble();
+            final double y = rand.nextDouble();
+            final double z = rand.nextDouble();
+            windows.add(new D3BoundingBox(x, y, z, x + rand.nextDouble() * 0.4, y + rand.nextDouble() * 0.4, z + rand.nextDouble() * 0.4));
+        }
+        windows.add(new D3BoundingBox(-1, -1, -1, 2, 2, 2));
+        windows.add(new D3BoundingBox(2, 2, 2, 3, 3, 3));
+
+        for (ID3BoundingBox window : windows) {
+            final List<Map.Entry<ID3BoundingBox, D3Point>> found = new ArrayList<>();
+            tree.forEachInWindow(window.getLower().getX(), window.getLower().getY(), window.getLower().getZ(),
+                    window.getUpper().getX(), window.getUpper().getY(), window.getUpper().getZ(),
+                    (key, value) -> found.add(new Pair<>(key, value)));
+            final List<Map.Entry<ID3BoundingBox, D3Point>> expected = tree.selectiveEntryStream(window::intersects)
+                    .filter((en) -> window.contains(en.getKey()))
+                    .collect(Collectors.toList());
+            assertEquals(expected.size(), found.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(found));
+        }
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testForEachInWindowModified() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        tree.putAll(getPoints(batchsize, tree.getBounds()));
+        tree.forEachInWindow(-1, -1, -1, 2, 2, 2, (key, value) -> tree.remove(key, value));
+    }
+
+    /**
+     * Test of stats method, of class OcTree.
+     */
+    @Test
+    public void testStats() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        TreeStats stats = tree.stats();
+        assertEquals(0, stats.getSize());
+        assertEquals(1, stats.getDepth());
+        assertEquals(1, stats.getNodeCount());
+        assertEquals(1, stats.getEmptyLeafCount());
+
+        tree.putAll(getPoints(batchsize * 4, tree.getBounds()));
+        final long emptyBytes = stats.getEstimatedBytes();
+        stats = tree.stats();
+        assertEquals(tree.size(), stats.getSize());
+        assertEquals(tree.getMaxNodeSize(), stats.getMaxNodeSize());
+        assertEquals(tree.getRoot().subtreeSize(), stats.getNodeCount());
+        assertEquals(stats.getNodeCount(), Arrays.stream(stats.getNodesPerLevel()).sum());
+        assertEquals(stats.getSize(), Arrays.stream(stats.getEntriesPerLevel()).sum());
+        assertEquals(stats.getDepth(), stats.getNodesPerLevel().length);
+        assertEquals(1, stats.getNodesPerLevel()[0]);
+        assertEquals(tree.getRoot().size(), stats.getEntriesPerLevel()[0]);
+        assertTrue(stats.getLeafCount() < stats.getNodeCount());
+        assertTrue(stats.getAverageFanOut() >= 1);
+        assertTrue(stats.getEstimatedBytes() > emptyBytes);
+
+        int internal = 0;
+        final Deque<OcNode<ID3BoundingBox, D3Point>> stack = new ArrayDeque<>();
+        stack.push(tree.getRoot());
+        while (!stack.isEmpty()) {
+            final OcNode<ID3BoundingBox, D3Point> node = stack.pop();
+            if (node.isSplit()) {
+                internal += node.size();
+            }
+            node.getChildren().forEach(stack::push);
+        }
+        assertTrue(internal > 0);
+        assertEquals(internal, stats.getInternalEntryCount());
+
+        tree.clear();
+        assertEquals(0, tree.stats().getSize());
+        assertEquals(batchsize * 4, stats.getSize());
+    }
+
+    /**
+     * Test of setQueryListener method, of class OcTree.
+     */
+    @Test
+    public void testQueryListener() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        tree.putAll(getPoints(batchsize * 4, tree.getBounds()));
+        final List<QueryCounters> reports = new ArrayList<>();
+        tree.setQueryListener(reports::add);
+        final ID3BoundingBox window = new D3BoundingBox(0.2, 0.2, 0.2, 0.6, 0.6, 0.6);
+        final int nodes = tree.stats().getNodeCount();
+
+        final long count = tree.selectiveEntryStream(window::intersects).count();
+        assertEquals(1, reports.size());
+        QueryCounters counters = reports.get(0);
+        assertEquals(QueryCounters.Query.ENTRY_STREAM, counters.getQuery());
+        assertEquals(count, counters.getEntriesEmitted());
+        assertEquals(count, counters.getEntriesTested());
+        assertTrue(counters.getNodesVisited() > 1);
+        assertTrue(counters.getNodesPruned() > 0);
+        assertTrue(counters.getNodesVisited() + counters.getNodesPruned() <= nodes);
+
+        final long within = tree.withinDistance(new D3Point(0.5, 0.5, 0.5), 0.1).count();
+        counters = reports.get(1);
+        assertEquals(QueryCounters.Query.WITHIN_DISTANCE, counters.getQuery());
+        assertEquals(within, counters.getEntriesEmitted());
+        assertTrue(counters.getEntriesTested() >= within);
+
+        final List<ID3BoundingBox> found = new ArrayList<>();
+        tree.forEachInWindow(0.2, 0.2, 0.2, 0.6, 0.6, 0.6, (key, value) -> found.add(key));
+        counters = reports.get(2);
+        assertEquals(QueryCounters.Query.WINDOW, counters.getQuery());
+        assertEquals(found.size(), counters.getEntriesEmitted());
+        assertTrue(counters.getEntriesTested() <= tree.size());
+        assertTrue(counters.getNodesVisited() + counters.getNodesPruned() <= nodes);
+
+        try (Stream<Map.Entry<ID3BoundingBox, D3Point>> stream = tree.selectiveEntryStream(window::intersects)) {
+            assertTrue(stream.findFirst().isPresent());
+            assertEquals(3, reports.size());
+        }
+        assertEquals(4, reports.size());
+        assertEquals(1, reports.get(3).getEntriesEmitted());
+
+        assertEquals(count, tree.selectiveEntryStream(window::intersects).parallel().count());
+        assertEquals(count, reports.get(4).getEntriesEmitted());
+
+        assertTrue(tree.containsKey(found.get(0)));
+        assertEquals(5, reports.size());
+
+        final QueryHistogram histogram = new QueryHistogram();
+        tree.setQueryListener(histogram);
+        for (int i = 0; i < 10; i++) {
+            tree.selectiveEntryStream(window::intersects).count();
+        }
+        assertEquals(10, histogram.getCount());
+        assertEquals(count * 10, histogram.getSum(QueryCounters.Counter.ENTRIES_EMITTED));
+        assertEquals(count, histogram.getMax(QueryCounters.Counter.ENTRIES_EMITTED));
+        assertEquals(count, histogram.getMean(QueryCounters.Counter.ENTRIES_EMITTED), 0);
+        assertTrue(histogram.getQuantile(QueryCounters.Counter.ENTRIES_EMITTED, 0.5) >= count);
+        assertEquals(10, Arrays.stream(histogram.getBuckets(QueryCounters.Counter.NODES_VISITED)).sum());
+
+        tree.setQueryListener(null);
+        tree.selectiveEntryStream(window::intersects).count();
+        assertEquals(10, histogram.getCount());
+        assertEquals(5, reports.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBulkLoadOutside() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final D3Point point = getPoint(tree.getBounds());
+        final Pair<ID3BoundingBox, D3Point> outside = new Pair<>(new D3BoundingBox(2, 2, 2, 3, 3, 3), point);
+        new ImmutableOcTree<>(Collections.singletonList(outside), tree.getBounds(), tree.getMaxNodeSize());
+    }
+
+    /**
+     * Equal keys must neither split the tree endlessly nor when bulk loading.
+     */
+    @Test
+    public void testDegenerateKeys() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final D3Point point = new D3Point(0.25, 0.75, 0);
+        final List<Pair<ID3BoundingBox, D3Point>> pairs = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            pairs.add(new Pair<>(new D3BoundingBox(point, point), point));
+        }
+        tree.putAll(pairs);
+        final ImmutableOcTree<ID3BoundingBox, D3Point> bulk = new ImmutableOcTree<>(pairs, tree.getBounds(), tree.getMaxNodeSize());
+
+        assertEquals(batchsize, tree.entryStream().count());
+        assertEquals(batchsize, bulk.entryStream().count());
+        assertEquals(batchsize, tree.remove(new D3BoundingBox(point, point)).size());
+        assertTrue(tree.isEmpty());
+    }
+
+    /**
+     * Removing values has to drop empty nodes and merge underfull subtrees.
+     */
+    @Test
+    public void testMergeOnRemove() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final List<Pair<ID3BoundingBox, D3Point>> pairs = getPoints(batchsize, tree.getBounds());
+        tree.putAll(pairs);
+        final int nodes = tree.getRoot().subtreeSize();
+        assertTrue(tree.getRoot().isSplit());
+
+        for (int i = 0; i < batchsize; i++) {
+            if (i % 10 != 0) {
+                assertEquals(1, tree.remove(pairs.get(i).getKey(), pairs.get(i).getValue()).size());
+            }
+        }
+        assertTrue(tree.getRoot().subtreeSize() < nodes);
+        assertEquals(tree.getRoot().subtreeValueCount(), tree.getRoot().subtreeCount());
+        for (int i = 0; i < batchsize; i += 10) {
+            assertTrue(tree.contains(pairs.get(i).getKey(), pairs.get(i).getValue()));
+        }
+        assertEquals(batchsize / 10, tree.entryStream().count());
+
+        for (int i = 0; i < batchsize; i += 10) {
+            assertEquals(1, tree.removeValue(pairs.get(i).getValue()).size());
+        }
+        assertFalse(tree.getRoot().isSplit());
+        assertFalse(tree.getRoot().hasChildren());
+    }
+
+    /**
+     * A subtree is only merged once it shrinks to the merge threshold.
+     */
+    @Test
+    public void testMergeThreshold() {
+        final OcTree<ID3BoundingBox, D3Point> tree = new OcTree<>(new D3BoundingBox(0, 0, 0, 1, 1, 1), 4, 2);
+        final List<Pair<ID3BoundingBox, D3Point>> pairs = getPoints(5, tree.getBounds());
+        tree.putAll(pairs);
+        assertTrue(tree.getRoot().isSplit());
+
+        tree.remove(pairs.get(0).getKey(), pairs.get(0).getValue());
+        tree.remove(pairs.get(1).getKey(), pairs.get(1).getValue());
+        assertTrue(tree.getRoot().isSplit());
+        tree.remove(pairs.get(2).getKey(), pairs.get(2).getValue());
+        assertFalse(tree.getRoot().isSplit());
+        assertEquals(2, tree.getRoot().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMergeThreshold() {
+        new OcTree<ID3BoundingBox, D3Point>(new D3BoundingBox(0, 0, 0, 1, 1, 1), 4, 5);
+    }
+
+    /**
+     * Test of move method, of class OcTree. Every other pair moves only a tiny
+     * bit, the others move to a random position.
+     */
+    @Test
+    public void testMove() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final List<Pair<ID3BoundingBox, D3Point>> pairs = getPoints(batchsize, tree.getBounds());
+        final List<Pair<ID3BoundingBox, D3Point>> targets = getPoints(batchsize, tree.getBounds());
+        tree.putAll(pairs);
+
+        final List<ID3BoundingBox> moved = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            final ID3BoundingBox key = pairs.get(i).getKey();
+            moved.add(i % 2 == 0 ? new D3BoundingBox(key.getLower().getX() * 0.99, key.getLower().getY() * 0.99, key.getLower().getZ() * 0.99, key.getUpper().getX() * 0.99, key.getUpper().getY() * 0.99, key.getUpper().getZ() * 0.99) : targets.get(i).getKey());
+            assertTrue(tree.move(key, moved.get(i), pairs.get(i).getValue()));
+        }
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.entryStream().count());
+        assertEquals(tree.getRoot().subtreeValueCount(), tree.getRoot().subtreeCount());
+        assertRouted(tree.getRoot());
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.contains(moved.get(i), pairs.get(i).getValue()));
+            assertFalse(tree.contains(pairs.get(i).getKey(), pairs.get(i).getValue()));
+        }
+
+        assertFalse(tree.move(pairs.get(0).getKey(), moved.get(0), pairs.get(0).getValue()));
+
+        // Moving out of a subtree has to drop the emptied child like a
+        // removal does.
+        final OcTree<ID3BoundingBox, D3Point> small = new OcTree<>(new D3BoundingBox(0, 0, 0, 1, 1, 1), 4, 0);
+        final List<ID3BoundingBox> keys = new ArrayList<>();
+        final List<D3Point> values = new ArrayList<>();
+        for (int i = 0; i < batchsize * 4; i++) {
+            final D3Point point = getPoint(small.getBounds());
+            values.add(point);
+            keys.add(new D3BoundingBox(point, point));
+            small.put(keys.get(i), point);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            final D3Point point = getPoint(small.getBounds());
+            final ID3BoundingBox target = new D3BoundingBox(point, point);
+            assertTrue(small.move(keys.get(i), target, values.get(i)));
+            keys.set(i, target);
+            assertNoEmptyNodes(small.getRoot());
+        }
+        assertEquals(keys.size(), small.size());
+        assertRouted(small.getRoot());
+    }
+
+    private void assertNoEmptyNodes(OcNode<ID3BoundingBox, D3Point> node) {
+        for (OcNode<ID3BoundingBox, D3Point> child : node.getChildren()) {
+            assertTrue(child.subtreeCount() > 0);
+            assertNoEmptyNodes(child);
+        }
+    }
+
+    /**
+     * Values of split nodes have to cross a split line, all others have to be
+     * stored in the children.
+     */
+    private void assertRouted(OcNode<ID3BoundingBox, D3Point> node) {
+        for (Pair<ID3BoundingBox, D3Point> pair : node.getValues()) {
+            assertTrue(node.getBounds().contains(pair.getKey()));
+            assertTrue(!node.isSplit() || node.childIndex(pair.getKey()) < 0);
+        }
+        for (OcNode<ID3BoundingBox, D3Point> child : node.getChildren()) {
+            assertRouted(child);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMoveOutside() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final Pair<ID3BoundingBox, D3Point> pair = getPoints(1, tree.getBounds()).get(0);
+        tree.put(pair);
+        tree.move(pair.getKey(), new D3BoundingBox(2, 2, 2, 3, 3, 3), pair.getValue());
+    }
+
+    /**
+     * Test of move method, of class OcTree. All equal pairs are moved by one
+     * call, a move that finds nothing does not count as a modification.
+     */
+    @Test
+    public void testMoveDuplicates() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final List<Pair<ID3BoundingBox, D3Point>> pairs = getPoints(batchsize, tree.getBounds());
+        tree.putAll(pairs);
+        final Pair<ID3BoundingBox, D3Point> pair = pairs.get(0);
+        for (int i = 1; i < 10; i++) {
+            tree.put(pair);
+        }
+
+        final ID3BoundingBox target = getPoints(1, tree.getBounds()).get(0).getKey();
+        assertTrue(tree.move(pair.getKey(), target, pair.getValue()));
+        assertEquals(batchsize + 9, tree.size());
+        assertEquals(tree.getRoot().subtreeValueCount(), tree.getRoot().subtreeCount());
+        assertRouted(tree.getRoot());
+        assertFalse(tree.contains(pair.getKey(), pair.getValue()));
+        assertEquals(10, tree.entryStream().filter((en) -> en.getKey().equals(target) && en.getValue().equals(pair.getValue())).count());
+
+        tree.forEachInWindow(-1, -1, -1, 2, 2, 2, (key, value) -> tree.move(pair.getKey(), target, value));
+    }
+
+    /**
+     * Test of parallelEntryStream method, of class OcTree.
+     */
+    @Test
+    public void testParallelEntryStream() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final List<Pair<ID3BoundingBox, D3Point>> baselist = new ArrayList<>();
+        for (int i = 0; i < batchsize * 20; i++) {
+            D3Point point = getPoint(tree.getBounds());
+            baselist.add(new Pair<>(new D3BoundingBox(point, point), point));
+        }
+        tree.putAll(baselist);
+        tree.remove(baselist.get(0).getKey());
+
+        assertEquals(tree.size(), tree.getRoot().subtreeCount());
+        assertEquals(tree.getRoot().subtreeValueCount(), tree.getRoot().subtreeCount());
+
+        Spliterator<Map.Entry<ID3BoundingBox, D3Point>> it = tree.getEntrySpliterator((b) -> true, true);
+        assertTrue(it.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+        assertEquals(tree.size(), it.getExactSizeIfKnown());
+        Spliterator<Map.Entry<ID3BoundingBox, D3Point>> split = it.trySplit();
+        assertNotNull(split);
+        assertTrue(split.estimateSize() > 0 && it.estimateSize() > 0);
+        assertEquals(tree.size(), split.estimateSize() + it.estimateSize());
+
+        List<Map.Entry<ID3BoundingBox, D3Point>> entries = tree.parallelEntryStream().collect(Collectors.toList());
+        assertEquals(tree.size(), entries.size());
+        assertEquals(new HashSet<>(baselist.subList(1, baselist.size())), new HashSet<>(entries));
+
+        final ID3BoundingBox box = getPoints(1, tree.getBounds()).get(0).getKey();
+        assertEquals(tree.selectiveEntryStream((b) -> b.intersects(box)).filter((en) -> box.contains(en.getKey())).count(),
+                tree.parallelSelectiveEntryStream((b) -> b.intersects(box)).filter((en) -> box.contains(en.getKey())).count());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testConcurrentModification() {
+        final OcTree<ID3BoundingBox, D3Point> tree = newTree();
+        final List<Pair<ID3BoundingBox, D3Point>> baselist = getPoints(batchsize, tree.getBounds());
+        tree.putAll(baselist);
+        Iterator<Map.Entry<ID3BoundingBox, D3Point>> it = tree.entryIterator();
+        it.next();
+        tree.remove(baselist.get(0).getKey());
+        while (it.hasNext()) {
+            it.next();
+        }
+    }
+
+    /**
+     * Test of the loose mode of class OcTree.
+     */
+    @Test
+    public void testLoose() {
+        final OcTree<ID3BoundingBox, D3Point> tight = newTree();
+        final OcTree<ID3BoundingBox, D3Point> loose = new OcTree<>(tight.getBounds(), 5, 2, 2);
+        assertEquals(1, tight.getLooseness(), 0);
+        assertEquals(2, loose.getLooseness(), 0);
+
+        final List<Pair<ID3BoundingBox, D3Point>> baselist = getSmallBoxes(batchsize * 4, tight.getBounds());
+        tight.putAll(baselist);
+        baselist.forEach(loose::put);
+        assertEquals(tight.size(), loose.size());
+        assertTrue(toKeys(baselist).stream().allMatch(loose::containsKey));
+        assertLooseNodes(loose.getRoot());
+
+        final TreeStats tightStats = tight.stats();
+        final TreeStats looseStats = loose.stats();
+        assertTrue(looseStats.getInternalEntryCount() < tightStats.getInternalEntryCount());
+        assertTrue(looseStats.getEntriesPerLevel()[0] < tightStats.getEntriesPerLevel()[0]);
+
+        for (Pair<ID3BoundingBox, D3Point> window : getSmallBoxes(batchsize / 10, tight.getBounds())) {
+            final ID3BoundingBox box = window.getKey();
+            final D3Point point = window.getValue();
+            assertEquals(windowKeys(tight, box), windowKeys(loose, box));
+            assertEquals(tight.withinDistance(point, 0.1).map(Map.Entry::getKey).collect(Collectors.toSet()),
+                    loose.withinDistance(point, 0.1).map(Map.Entry::getKey).collect(Collectors.toSet()));
+            assertEquals(distances(tight.nearest(point, 10), point), distances(loose.nearest(point, 10), point));
+        }
+
+        final OcTree<ID3BoundingBox, D3Point> copy = new OcTree<>(loose);
+        assertEquals(2, copy.getLooseness(), 0);
+        assertEquals(loose.size(), copy.size());
+        assertLooseNodes(copy.getRoot());
+
+        for (Pair<ID3BoundingBox, D3Point> pair : baselist.subList(0, batchsize * 2)) {
+            assertEquals(Collections.singletonList(pair.getValue()), new ArrayList<>(loose.remove(pair.getKey())));
+            assertFalse(loose.containsKey(pair.getKey()));
+        }
+        assertEquals(batchsize * 2, loose.size());
+        assertTrue(toKeys(baselist.subList(batchsize * 2, batchsize * 4)).stream().allMatch(loose::containsKey));
+        assertLooseNodes(loose.getRoot());
+
+        final ID3BoundingBox moved = new D3BoundingBox(0.5, 0.5, 0.5, 0.501, 0.501, 0.501);
+        final Pair<ID3BoundingBox, D3Point> last = baselist.get(baselist.size() - 1);
+        assertTrue(loose.move(last.getKey(), moved, last.getValue()));
+        assertTrue(loose.contains(moved, last.getValue()));
+        assertFalse(loose.containsKey(last.getKey()));
+        assertLooseNodes(loose.getRoot());
+    }
+
+    /**
+     * Test of the looseness validation of class OcTree.
+     */
+    @Test
+    public void testLooseness() {
+        for (double looseness : new double[]{0, 0.5, Double.NaN, Double.POSITIVE_INFINITY}) {
+            try {
+                new OcTree<>(new D3BoundingBox(0, 0, 0, 1, 1, 1), 5, 2, looseness);
+                fail("Accepted looseness " + looseness);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        final OcTree<ID3BoundingBox, D3Point> tree = new OcTree<>(new D3BoundingBox(0, 0, 0, 1, 1, 1), 5, 2, 1);
+        final List<Pair<ID3BoundingBox, D3Point>> baselist = getSmallBoxes(batchsize, tree.getBounds());
+        tree.putAll(baselist);
+        assertTrue(toKeys(baselist).stream().allMatch(tree::containsKey));
+        assertLooseNodes(tree.getRoot());
+    }
+
+    private void assertLooseNodes(OcNode<ID3BoundingBox, D3Point> node) {
+        int count = node.size();
+        for (Pair<ID3BoundingBox, D3Point> pair : node.getValues()) {
+            assertTrue(node.getBounds().contains(pair.getKey()));
+            assertTrue(!node.isSplit() || node.childIndex(pair.getKey()) < 0);
+        }
+
+        for (int i = 0; i < node.getChildSlots(); i++) {
+            final OcNode<ID3BoundingBox, D3Point> child = node.getChild(i);
+            if (child != null) {
+                assertTrue(node.getBounds().contains(child.getBounds()));
+                assertLooseNodes(child);
+                count += child.subtreeCount();
+            }
+        }
+        assertEquals(count, node.subtreeCount());
+    }
+
+    private Set<ID3BoundingBox> windowKeys(OcTree<ID3BoundingBox, D3Point> tree, ID3BoundingBox window) {
+        final Set<ID3BoundingBox> keys = new HashSet<>();
+        tree.forEachInWindow(window.getLower().getX(), window.getLower().getY(), window.getLower().getZ(),
+                window.getUpper().getX(), window.getUpper().getY(), window.getUpper().getZ(), (key, value) -> keys.add(key));
+        assertEquals(keys, tree.entriesInWindows(Collections.singletonList(window)).get(0).stream()
+                .map(Map.Entry::getKey).collect(Collectors.toSet()));
+        return keys;
+    }
+
+    private List<Double> distances(List<Map.Entry<ID3BoundingBox, D3Point>> entries, D3Point point) {
+        return entries.stream().map((e) -> e.getKey().distSqr(point)).collect(Collectors.toList());
+    }
+
+    List<Pair<ID3BoundingBox, D3Point>> getSmallBoxes(final int size, ID3BoundingBox box) {
+        ArrayList<Pair<ID3BoundingBox, D3Point>> list = new ArrayList<>(size);
+        while (list.size() < size) {
+            final double side = rand.nextDouble() * 0.02;
+            final double lx = box.getLower().getX() + rand.nextDouble() * (box.getWidth() - side);
+            final double ly = box.getLower().getY() + rand.nextDouble() * (box.getHeight() - side);
+            final double lz = box.getLower().getZ() + rand.nextDouble() * (box.getDepth() - side);
+
+            D3BoundingBox bb = new D3BoundingBox(lx, ly, lz, lx + side, ly + side, lz + side);
+            if (points.add(bb)) {
+                list.add(new Pair<>(bb, getPoint(box)));
+            }
+        }
+
+        return Collections.unmodifiableList(list);
+    }
+
     private final Random rand = new Random(9327490235L);
     private final Set<ID3BoundingBox> points = new HashSet<>();
 
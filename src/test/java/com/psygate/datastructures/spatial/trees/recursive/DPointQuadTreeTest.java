@@ -23,9 +23,13 @@ import com.psygate.datastructures.spatial.trees.recursive.QuadTree;
 import com.psygate.datastructures.util.Pair;
 import com.psygate.datastructures.spatial.D2BoundingBox;
 import com.psygate.datastructures.spatial.D2Point;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -33,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.junit.After;
@@ -520,6 +525,539 @@ public class DPointQuadTreeTest {
         assertTrue(toValues(baselist).stream().allMatch((key) -> tree.containsValue(key)));
     }
 
+    /**
+     * Test of nearest method, of class QuadTree.
+     */
+    @Test
+    public void testNearest() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final List<Pair<ID2BoundingBox, D2Point>> baselist = getPoints(batchsize, tree.getBounds());
+        final D2Point point = new D2Point(0.3, 0.6);
+        tree.putAll(baselist);
+
+        assertTrue(tree.nearest(point, 0).isEmpty());
+        assertEquals(baselist.size(), tree.nearest(point, batchsize * 2).size());
+
+        for (int k : new int[]{1, 16, 100}) {
+            List<Double> expected = baselist.stream()
+                    .map((p) -> p.getKey().distSqr(point))
+                    .sorted()
+                    .limit(k)
+                    .collect(Collectors.toList());
+            List<Double> found = tree.nearestKeys(point, k).stream()
+                    .map((key) -> key.distSqr(point))
+                    .collect(Collectors.toList());
+
+            assertEquals(expected, found);
+        }
+    }
+
+    /**
+     * Test of withinDistance method, of class QuadTree.
+     */
+    @Test
+    public void testWithinDistance() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final List<Pair<ID2BoundingBox, D2Point>> baselist = getPoints(batchsize, tree.getBounds());
+        final D2Point point = new D2Point(0.3, 0.6);
+        tree.putAll(baselist);
+
+        for (double distance : new double[]{0, 0.05, 0.2, 2}) {
+            Set<Map.Entry<ID2BoundingBox, D2Point>> expected = baselist.stream()
+                    .filter((p) -> p.getKey().distSqr(point) <= distance * distance)
+                    .collect(Collectors.toSet());
+            List<Map.Entry<ID2BoundingBox, D2Point>> found = tree.withinDistance(point, distance)
+                    .collect(Collectors.toList());
+
+            assertEquals(expected.size(), found.size());
+            assertTrue(expected.containsAll(found));
+        }
+    }
+
+    /**
+     * Bulk loading has to build the same tree as inserting one by one.
+     */
+    @Test
+    public void testBulkLoad() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final List<Pair<ID2BoundingBox, D2Point>> baselist = new ArrayList<>(getPoints(batchsize, tree.getBounds()));
+        for (int i = 0; i < batchsize * 4; i++) {
+            D2Point point = getPoint(tree.getBounds());
+            baselist.add(new Pair<>(new D2BoundingBox(point, point), point));
+        }
+        baselist.forEach(tree::put);
+        final ImmutableQuadTree<ID2BoundingBox, D2Point> bulk = new ImmutableQuadTree<>(baselist, tree.getBounds(), tree.getMaxNodeSize());
+
+        assertEquals(tree.size(), bulk.size());
+        assertSameShape(tree.getRoot(), bulk.getRoot());
+    }
+
+    private void assertSameShape(QuadNode<ID2BoundingBox, D2Point> expected, QuadNode<ID2BoundingBox, D2Point> actual) {
+        assertEquals(expected.getBounds(), actual.getBounds());
+        assertEquals(expected.isSplit(), actual.isSplit());
+        assertEquals(new HashSet<>(expected.getValues()), new HashSet<>(actual.getValues()));
+        for (int i = 0; i < expected.getChildSlots(); i++) {
+            assertEquals(expected.getChild(i) == null, actual.getChild(i) == null);
+            if (expected.getChild(i) != null) {
+                assertSameShape(expected.getChild(i), actual.getChild(i));
+            }
+        }
+    }
+
+    /**
+     * Batched inserts into a populated tree have to build the same tree as
+     * inserting one by one.
+     */
+    @Test
+    public void testPutAllBatched() {
+        final QuadTree<ID2BoundingBox, D2Point> sequential = newTree();
+        final QuadTree<ID2BoundingBox, D2Point> batched = newTree();
+        for (int batch = 0; batch < 4; batch++) {
+            final List<Pair<ID2BoundingBox, D2Point>> pairs = new ArrayList<>(getPoints(batchsize, sequential.getBounds()));
+            for (int i = 0; i < batchsize; i++) {
+                D2Point point = getPoint(sequential.getBounds());
+                pairs.add(new Pair<>(new D2BoundingBox(point, point), point));
+            }
+            pairs.forEach(sequential::put);
+            batched.putAll(pairs);
+
+            assertEquals(sequential.size(), batched.size());
+            assertEquals(sequential.size(), batched.getRoot().subtreeCount());
+            assertEquals(batched.getRoot().subtreeValueCount(), batched.getRoot().subtreeCount());
+            assertSameShape(sequential.getRoot(), batched.getRoot());
+        }
+    }
+
+    @Test
+    public void testPutAllOutside() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final D2Point point = getPoint(tree.getBounds());
+        final List<Pair<ID2BoundingBox, D2Point>> pairs = new ArrayList<>(getPoints(batchsize, tree.getBounds()));
+        pairs.add(new Pair<>(new D2BoundingBox(2, 2, 3, 3), point));
+        try {
+            tree.putAll(pairs);
+            fail("Key outside bounds was inserted.");
+        } catch (IllegalArgumentException e) {
+        }
+
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.entryStream().count());
+    }
+
+    /**
+     * A batch of window queries has to find the same entries as querying every
+     * window on its own.
+     */
+    @Test
+    public void testEntriesInWindows() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final List<Pair<ID2BoundingBox, D2Point>> baselist = new ArrayList<>(getPoints(batchsize * 4, tree.getBounds()));
+        tree.putAll(baselist);
+
+        final List<ID2BoundingBox> windows = new ArrayList<>();
+        for (int i = 0; i < batchsize / 10; i++) {
+            final double x = rand.nextDouble();
+            final double y = rand.nextDouble();
+            windows.add(new D2BoundingBox(x, y, x + rand.nextDouble() * 0.3, y + rand.nextDouble() * 0.3));
+        }
+        windows.add(new D2BoundingBox(-1, -1, 2, 2));
+        windows.add(new D2BoundingBox(2, 2, 3, 3));
+        windows.add(windows.get(0));
+
+        final List<List<Map.Entry<ID2BoundingBox, D2Point>>> found = tree.entriesInWindows(windows);
+        assertEquals(windows.size(), found.size());
+        for (int i = 0; i < windows.size(); i++) {
+            final ID2BoundingBox window = windows.get(i);
+            final List<Map.Entry<ID2BoundingBox, D2Point>> expected = tree.selectiveEntryStream(window::intersects)
+                    .filter((en) -> window.contains(en.getKey()))
+                    .collect(Collectors.toList());
+            assertEquals(expected.size(), found.get(i).size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(found.get(i)));
+        }
+        assertEquals(tree.size(), found.get(windows.size() - 3).size());
+        assertTrue(found.get(windows.size() - 2).isEmpty());
+    }
+
+    @Test
+    public void testForEachInWindow() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final List<Pair<ID2BoundingBox, D2Point>> baselist = new ArrayList<>(getPoints(batchsize * 4, tree.getBounds()));
+        tree.putAll(baselist);
+
+        final List<ID2BoundingBox> windows = new ArrayList<>();
+        for (int i = 0; i < batchsize / 10; i++) {
+            final double x = rand.nextDouble();
+            final double y = rand.nextDouble();
+            windows.add(new D2BoundingBox(x, y, x + rand.nextDouble() * 0.3, y + rand.nextDouble() * 0.3));
+        }
+        windows.add(new D2BoundingBox(-1, -1, 2, 2));
+        windows.add(new D2BoundingBox(2, 2, 3, 3));
+
+        for (ID2BoundingBox window : windows) {
+            final List<Map.Entry<ID2BoundingBox, D2Point>> found = new ArrayList<>();
+            tree.forEachInWindow(window.getLower().getX(), window.getLower().getY(),
+                    window.getUpper().getX(), window.getUpper().getY(),
+                    (key, value) -> found.add(new Pair<>(key, value)));
+            final List<Map.Entry<ID2BoundingBox, D2Point>> expected = tree.selectiveEntryStream(window::intersects)
+                    .filter((en) -> window.contains(en.getKey()))
+                    .collect(Collectors.toList());
+            assertEquals(expected.size(), found.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(found));
+        }
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testForEachInWindowModified() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        tree.putAll(getPoints(batchsize, tree.getBounds()));
+        tree.forEachInWindow(-1, -1, 2, 2, (key, value) -> tree.remove(key, value));
+    }
+
+    /**
+     * Test of stats method, of class QuadTree.
+     */
+    @Test
+    public void testStats() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        TreeStats stats = tree.stats();
+        assertEquals(0, stats.getSize());
+        assertEquals(1, stats.getDepth());
+        assertEquals(1, stats.getNodeCount());
+        assertEquals(1, stats.getEmptyLeafCount());
+
+        tree.putAll(getPoints(batchsize * 4, tree.getBounds()));
+        final long emptyBytes = stats.getEstimatedBytes();
+        stats = tree.stats();
+        assertEquals(tree.size(), stats.getSize());
+        assertEquals(tree.getMaxNodeSize(), stats.getMaxNodeSize());
+        assertEquals(tree.getRoot().subtreeSize(), stats.getNodeCount());
+        assertEquals(stats.getNodeCount(), Arrays.stream(stats.getNodesPerLevel()).sum());
+        assertEquals(stats.getSize(), Arrays.stream(stats.getEntriesPerLevel()).sum());
+        assertEquals(stats.getDepth(), stats.getNodesPerLevel().length);
+        assertEquals(1, stats.getNodesPerLevel()[0]);
+        assertEquals(tree.getRoot().size(), stats.getEntriesPerLevel()[0]);
+        assertTrue(stats.getLeafCount() < stats.getNodeCount());
+        assertTrue(stats.getAverageFanOut() >= 1);
+        assertTrue(stats.getEstimatedBytes() > emptyBytes);
+
+        int internal = 0;
+        final Deque<QuadNode<ID2BoundingBox, D2Point>> stack = new ArrayDeque<>();
+        stack.push(tree.getRoot());
+        while (!stack.isEmpty()) {
+            final QuadNode<ID2BoundingBox, D2Point> node = stack.pop();
+            if (node.isSplit()) {
+                internal += node.size();
+            }
+            node.getChildren().forEach(stack::push);
+        }
+        assertTrue(internal > 0);
+        assertEquals(internal, stats.getInternalEntryCount());
+
+        tree.clear();
+        assertEquals(0, tree.stats().getSize());
+        assertEquals(batchsize * 4, stats.getSize());
+    }
+
+    /**
+     * Test of setQueryListener method, of class QuadTree.
+     */
+    @Test
+    public void testQueryListener() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        tree.putAll(getPoints(batchsize * 4, tree.getBounds()));
+        final List<QueryCounters> reports = new ArrayList<>();
+        tree.setQueryListener(reports::add);
+        final ID2BoundingBox window = new D2BoundingBox(0.2, 0.2, 0.6, 0.6);
+        final int nodes = tree.stats().getNodeCount();
+
+        final long count = tree.selectiveEntryStream(window::intersects).count();
+        assertEquals(1, reports.size());
+        QueryCounters counters = reports.get(0);
+        assertEquals(QueryCounters.Query.ENTRY_STREAM, counters.getQuery());
+        assertEquals(count, counters.getEntriesEmitted());
+        assertEquals(count, counters.getEntriesTested());
+        assertTrue(counters.getNodesVisited() > 1);
+        assertTrue(counters.getNodesPruned() > 0);
+        assertTrue(counters.getNodesVisited() + counters.getNodesPruned() <= nodes);
+
+        final long within = tree.withinDistance(new D2Point(0.5, 0.5), 0.1).count();
+        counters = reports.get(1);
+        assertEquals(QueryCounters.Query.WITHIN_DISTANCE, counters.getQuery());
+        assertEquals(within, counters.getEntriesEmitted());
+        assertTrue(counters.getEntriesTested() >= within);
+
+        final List<ID2BoundingBox> found = new ArrayList<>();
+        tree.forEachInWindow(0.2, 0.2, 0.6, 0.6, (key, value) -> found.add(key));
+        counters = reports.get(2);
+        assertEquals(QueryCounters.Query.WINDOW, counters.getQuery());
+        assertEquals(found.size(), counters.getEntriesEmitted());
+        assertTrue(counters.getEntriesTested() <= tree.size());
+        assertTrue(counters.getNodesVisited() + counters.getNodesPruned() <= nodes);
+
+        try (Stream<Map.Entry<ID2BoundingBox, D2Point>> stream = tree.selectiveEntryStream(window::intersects)) {
+            assertTrue(stream.findFirst().isPresent());
+            assertEquals(3, reports.size());
+        }
+        assertEquals(4, reports.size());
+        assertEquals(1, reports.get(3).getEntriesEmitted());
+
+        assertEquals(count, tree.selectiveEntryStream(window::intersects).parallel().count());
+        assertEquals(count, reports.get(4).getEntriesEmitted());
+
+        assertTrue(tree.containsKey(found.get(0)));
+        assertEquals(5, reports.size());
+
+        final QueryHistogram histogram = new QueryHistogram();
+        tree.setQueryListener(histogram);
+        for (int i = 0; i < 10; i++) {
+            tree.selectiveEntryStream(window::intersects).count();
+        }
+        assertEquals(10, histogram.getCount());
+        assertEquals(count * 10, histogram.getSum(QueryCounters.Counter.ENTRIES_EMITTED));
+        assertEquals(count, histogram.getMax(QueryCounters.Counter.ENTRIES_EMITTED));
+        assertEquals(count, histogram.getMean(QueryCounters.Counter.ENTRIES_EMITTED), 0);
+        assertTrue(histogram.getQuantile(QueryCounters.Counter.ENTRIES_EMITTED, 0.5) >= count);
+        assertEquals(10, Arrays.stream(histogram.getBuckets(QueryCounters.Counter.NODES_VISITED)).sum());
+
+        tree.setQueryListener(null);
+        tree.selectiveEntryStream(window::intersects).count();
+        assertEquals(10, histogram.getCount());
+        assertEquals(5, reports.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBulkLoadOutside() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final D2Point point = getPoint(tree.getBounds());
+        final Pair<ID2BoundingBox, D2Point> outside = new Pair<>(new D2BoundingBox(2, 2, 3, 3), point);
+        new ImmutableQuadTree<>(Collections.singletonList(outside), tree.getBounds(), tree.getMaxNodeSize());
+    }
+
+    /**
+     * Equal keys must neither split the tree endlessly nor when bulk loading.
+     */
+    @Test
+    public void testDegenerateKeys() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final D2Point point = new D2Point(0.25, 0.75);
+        final List<Pair<ID2BoundingBox, D2Point>> pairs = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            pairs.add(new Pair<>(new D2BoundingBox(point, point), point));
+        }
+        tree.putAll(pairs);
+        final ImmutableQuadTree<ID2BoundingBox, D2Point> bulk = new ImmutableQuadTree<>(pairs, tree.getBounds(), tree.getMaxNodeSize());
+
+        assertEquals(batchsize, tree.entryStream().count());
+        assertEquals(batchsize, bulk.entryStream().count());
+        assertEquals(batchsize, tree.remove(new D2BoundingBox(point, point)).size());
+        assertTrue(tree.isEmpty());
+    }
+
+    /**
+     * Removing values has to drop empty nodes and merge underfull subtrees.
+     */
+    @Test
+    public void testMergeOnRemove() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final List<Pair<ID2BoundingBox, D2Point>> pairs = getPoints(batchsize, tree.getBounds());
+        tree.putAll(pairs);
+        final int nodes = tree.getRoot().subtreeSize();
+        assertTrue(tree.getRoot().isSplit());
+
+        for (int i = 0; i < batchsize; i++) {
+            if (i % 10 != 0) {
+                assertEquals(1, tree.remove(pairs.get(i).getKey(), pairs.get(i).getValue()).size());
+            }
+        }
+        assertTrue(tree.getRoot().subtreeSize() < nodes);
+        assertEquals(tree.getRoot().subtreeValueCount(), tree.getRoot().subtreeCount());
+        for (int i = 0; i < batchsize; i += 10) {
+            assertTrue(tree.contains(pairs.get(i).getKey(), pairs.get(i).getValue()));
+        }
+        assertEquals(batchsize / 10, tree.entryStream().count());
+
+        for (int i = 0; i < batchsize; i += 10) {
+            assertEquals(1, tree.removeValue(pairs.get(i).getValue()).size());
+        }
+        assertFalse(tree.getRoot().isSplit());
+        assertFalse(tree.getRoot().hasChildren());
+    }
+
+    /**
+     * A subtree is only merged once it shrinks to the merge threshold.
+     */
+    @Test
+    public void testMergeThreshold() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = new QuadTree<>(new D2BoundingBox(0, 0, 1, 1), 4, 2);
+        final List<Pair<ID2BoundingBox, D2Point>> pairs = getPoints(5, tree.getBounds());
+        tree.putAll(pairs);
+        assertTrue(tree.getRoot().isSplit());
+
+        tree.remove(pairs.get(0).getKey(), pairs.get(0).getValue());
+        tree.remove(pairs.get(1).getKey(), pairs.get(1).getValue());
+        assertTrue(tree.getRoot().isSplit());
+        tree.remove(pairs.get(2).getKey(), pairs.get(2).getValue());
+        assertFalse(tree.getRoot().isSplit());
+        assertEquals(2, tree.getRoot().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMergeThreshold() {
+        new QuadTree<ID2BoundingBox, D2Point>(new D2BoundingBox(0, 0, 1, 1), 4, 5);
+    }
+
+    /**
+     * Test of move method, of class QuadTree. Every other pair moves only a tiny
+     * bit, the others move to a random position.
+     */
+    @Test
+    public void testMove() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final List<Pair<ID2BoundingBox, D2Point>> pairs = getPoints(batchsize, tree.getBounds());
+        final List<Pair<ID2BoundingBox, D2Point>> targets = getPoints(batchsize, tree.getBounds());
+        tree.putAll(pairs);
+
+        final List<ID2BoundingBox> moved = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            final ID2BoundingBox key = pairs.get(i).getKey();
+            moved.add(i % 2 == 0 ? new D2BoundingBox(key.getLower().getX() * 0.99, key.getLower().getY() * 0.99, key.getUpper().getX() * 0.99, key.getUpper().getY() * 0.99) : targets.get(i).getKey());
+            assertTrue(tree.move(key, moved.get(i), pairs.get(i).getValue()));
+        }
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.entryStream().count());
+        assertEquals(tree.getRoot().subtreeValueCount(), tree.getRoot().subtreeCount());
+        assertRouted(tree.getRoot());
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.contains(moved.get(i), pairs.get(i).getValue()));
+            assertFalse(tree.contains(pairs.get(i).getKey(), pairs.get(i).getValue()));
+        }
+
+        assertFalse(tree.move(pairs.get(0).getKey(), moved.get(0), pairs.get(0).getValue()));
+
+        // Moving out of a subtree has to drop the emptied child like a
+        // removal does.
+        final QuadTree<ID2BoundingBox, D2Point> small = new QuadTree<>(new D2BoundingBox(0, 0, 1, 1), 4, 0);
+        final List<ID2BoundingBox> keys = new ArrayList<>();
+        final List<D2Point> values = new ArrayList<>();
+        for (int i = 0; i < batchsize * 4; i++) {
+            final D2Point point = getPoint(small.getBounds());
+            values.add(point);
+            keys.add(new D2BoundingBox(point, point));
+            small.put(keys.get(i), point);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            final D2Point point = getPoint(small.getBounds());
+            final ID2BoundingBox target = new D2BoundingBox(point, point);
+            assertTrue(small.move(keys.get(i), target, values.get(i)));
+            keys.set(i, target);
+            assertNoEmptyNodes(small.getRoot());
+        }
+        assertEquals(keys.size(), small.size());
+        assertRouted(small.getRoot());
+    }
+
+    private void assertNoEmptyNodes(QuadNode<ID2BoundingBox, D2Point> node) {
+        for (QuadNode<ID2BoundingBox, D2Point> child : node.getChildren()) {
+            assertTrue(child.subtreeCount() > 0);
+            assertNoEmptyNodes(child);
+        }
+    }
+
+    /**
+     * Values of split nodes have to cross a split line, all others have to be
+     * stored in the children.
+     */
+    private void assertRouted(QuadNode<ID2BoundingBox, D2Point> node) {
+        for (Pair<ID2BoundingBox, D2Point> pair : node.getValues()) {
+            assertTrue(node.getBounds().contains(pair.getKey()));
+            assertTrue(!node.isSplit() || node.childIndex(pair.getKey()) < 0);
+        }
+        for (QuadNode<ID2BoundingBox, D2Point> child : node.getChildren()) {
+            assertRouted(child);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMoveOutside() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final Pair<ID2BoundingBox, D2Point> pair = getPoints(1, tree.getBounds()).get(0);
+        tree.put(pair);
+        tree.move(pair.getKey(), new D2BoundingBox(2, 2, 3, 3), pair.getValue());
+    }
+
+    /**
+     * Test of move method, of class QuadTree. All equal pairs are moved by one
+     * call, a move that finds nothing does not count as a modification.
+     */
+    @Test
+    public void testMoveDuplicates() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final List<Pair<ID2BoundingBox, D2Point>> pairs = getPoints(batchsize, tree.getBounds());
+        tree.putAll(pairs);
+        final Pair<ID2BoundingBox, D2Point> pair = pairs.get(0);
+        for (int i = 1; i < 10; i++) {
+            tree.put(pair);
+        }
+
+        final ID2BoundingBox target = getPoints(1, tree.getBounds()).get(0).getKey();
+        assertTrue(tree.move(pair.getKey(), target, pair.getValue()));
+        assertEquals(batchsize + 9, tree.size());
+        assertEquals(tree.getRoot().subtreeValueCount(), tree.getRoot().subtreeCount());
+        assertRouted(tree.getRoot());
+        assertFalse(tree.contains(pair.getKey(), pair.getValue()));
+        assertEquals(10, tree.entryStream().filter((en) -> en.getKey().equals(target) && en.getValue().equals(pair.getValue())).count());
+
+        tree.forEachInWindow(-1, -1, 2, 2, (key, value) -> tree.move(pair.getKey(), target, value));
+    }
+
+    /**
+     * Test of parallelEntryStream method, of class QuadTree.
+     */
+    @Test
+    public void testParallelEntryStream() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final List<Pair<ID2BoundingBox, D2Point>> baselist = new ArrayList<>();
+        for (int i = 0; i < batchsize * 20; i++) {
+            D2Point point = getPoint(tree.getBounds());
+            baselist.add(new Pair<>(new D2BoundingBox(point, point), point));
+        }
+        tree.putAll(baselist);
+        tree.remove(baselist.get(0).getKey());
+
+        assertEquals(tree.size(), tree.getRoot().subtreeCount());
+        assertEquals(tree.getRoot().subtreeValueCount(), tree.getRoot().subtreeCount());
+
+        Spliterator<Map.Entry<ID2BoundingBox, D2Point>> it = tree.getEntrySpliterator((b) -> true, true);
+        assertTrue(it.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+        assertEquals(tree.size(), it.getExactSizeIfKnown());
+        Spliterator<Map.Entry<ID2BoundingBox, D2Point>> split = it.trySplit();
+        assertNotNull(split);
+        assertTrue(split.estimateSize() > 0 && it.estimateSize() > 0);
+        assertEquals(tree.size(), split.estimateSize() + it.estimateSize());
+
+        List<Map.Entry<ID2BoundingBox, D2Point>> entries = tree.parallelEntryStream().collect(Collectors.toList());
+        assertEquals(tree.size(), entries.size());
+        assertEquals(new HashSet<>(baselist.subList(1, baselist.size())), new HashSet<>(entries));
+
+        final ID2BoundingBox box = getPoints(1, tree.getBounds()).get(0).getKey();
+        assertEquals(tree.selectiveEntryStream((b) -> b.intersects(box)).filter((en) -> box.contains(en.getKey())).count(),
+                tree.parallelSelectiveEntryStream((b) -> b.intersects(box)).filter((en) -> box.contains(en.getKey())).count());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testConcurrentModification() {
+        final QuadTree<ID2BoundingBox, D2Point> tree = newTree();
+        final List<Pair<ID2BoundingBox, D2Point>> baselist = getPoints(batchsize, tree.getBounds());
+        tree.putAll(baselist);
+        Iterator<Map.Entry<ID2BoundingBox, D2Point>> it = tree.entryIterator();
+        it.next();
+        tree.remove(baselist.get(0).getKey());
+        while (it.hasNext()) {
+            it.next();
+        }
+    }
+
     private final Random rand = new Random(9327490235L);
     private final Set<ID2BoundingBox> points = new HashSet<>();
 
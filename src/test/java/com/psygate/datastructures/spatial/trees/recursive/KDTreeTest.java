@@ -0,0 +1,280 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class KDTreeTest {
+
+    private final int batchsize = 500;
+
+    public KDTreeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private KDTree<ID2Boundable, Integer> newTree() {
+        return new KDTree<>(new D2BoundingBox(0, 0, 1, 1), 5);
+    }
+
+    /**
+     * Clustered keys, mostly points with a few small boxes that may cross
+     * split planes.
+     */
+    private List<ID2Boundable> fill(KDTree<ID2Boundable, Integer> tree, Random rand) {
+        List<ID2Boundable> keys = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            double x = 0.1 + rand.nextGaussian() * 0.01;
+            double y = 0.9 + rand.nextGaussian() * 0.01;
+            ID2Boundable key;
+            if (i % 10 == 0) {
+                key = new D2BoundingBox(x, y, x + 0.02, y + 0.02);
+            } else {
+                key = new D2Point(x, y);
+            }
+            keys.add(key);
+            tree.put(key, i);
+        }
+
+        return keys;
+    }
+
+    private int depth(AbstractSpatialNode<?, ?, ?, ?> node) {
+        int depth = 0;
+        for (int i = 0; i < node.getChildSlots(); i++) {
+            if (node.getChild(i) != null) {
+                depth = Math.max(depth, depth(node.getChild(i)));
+            }
+        }
+
+        return depth + 1;
+    }
+
+    /**
+     * Test of put method, of class KDTree.
+     */
+    @Test
+    public void testPut() {
+        KDTree<ID2Boundable, Integer> tree = newTree();
+        List<ID2Boundable> keys = fill(tree, new Random(1));
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.entryStream().count());
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.containsKey(keys.get(i)));
+            assertTrue(tree.contains(keys.get(i), i));
+            assertFalse(tree.contains(keys.get(i), -1));
+        }
+        assertTrue(tree.getRoot().subtreeSize() > 1);
+        assertTrue(depth(tree.getRoot()) < 30);
+    }
+
+    /**
+     * Test of selectiveEntryStream method, of class KDTree.
+     */
+    @Test
+    public void testWindow() {
+        Random rand = new Random(2);
+        KDTree<ID2Boundable, Integer> tree = newTree();
+        List<ID2Boundable> keys = fill(tree, rand);
+
+        for (int i = 0; i < 50; i++) {
+            double lx = 0.05 + rand.nextDouble() * 0.1;
+            double ly = 0.85 + rand.nextDouble() * 0.1;
+            ID2BoundingBox window = new D2BoundingBox(lx, ly, lx + 0.02, ly + 0.02);
+            Set<Integer> expected = IntStream.range(0, batchsize)
+                    .filter((j) -> keys.get(j).isInside(window))
+                    .boxed()
+                    .collect(Collectors.toSet());
+
+            Set<Integer> found = tree.selectiveEntryStream((b) -> b.intersects(window) || window.contains(b) || b.contains(window))
+                    .filter((en) -> en.getKey().isInside(window))
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toSet());
+            assertEquals(expected, found);
+        }
+    }
+
+    /**
+     * Test of nearest method, of class KDTree.
+     */
+    @Test
+    public void testNearest() {
+        Random rand = new Random(3);
+        KDTree<ID2Boundable, Integer> tree = newTree();
+        List<ID2Boundable> keys = fill(tree, rand);
+
+        for (int i = 0; i < 50; i++) {
+            ID2Point point = new D2Point(rand.nextDouble(), rand.nextDouble());
+            List<Double> expected = keys.stream()
+                    .map((k) -> k.distSqr(point))
+                    .sorted()
+                    .limit(10)
+                    .collect(Collectors.toList());
+            List<Double> found = tree.nearest(point, 10).stream()
+                    .map((en) -> en.getKey().distSqr(point))
+                    .collect(Collectors.toList());
+            assertEquals(expected, found);
+        }
+    }
+
+    /**
+     * Test of withinDistance method, of class KDTree.
+     */
+    @Test
+    public void testWithinDistance() {
+        Random rand = new Random(4);
+        KDTree<ID2Boundable, Integer> tree = newTree();
+        List<ID2Boundable> keys = fill(tree, rand);
+
+        for (int i = 0; i < 50; i++) {
+            ID2Point point = new D2Point(0.1 + rand.nextGaussian() * 0.02, 0.9 + rand.nextGaussian() * 0.02);
+            Set<Integer> expected = IntStream.range(0, batchsize)
+                    .filter((j) -> keys.get(j).distSqr(point) <= 0.01 * 0.01)
+                    .boxed()
+                    .collect(Collectors.toSet());
+            Set<Integer> found = tree.withinDistance(point, 0.01)
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toSet());
+            assertEquals(expected, found);
+        }
+    }
+
+    /**
+     * Test of remove method, of class KDTree.
+     */
+    @Test
+    public void testRemove() {
+        KDTree<ID2Boundable, Integer> tree = newTree();
+        List<ID2Boundable> keys = fill(tree, new Random(5));
+
+        for (int i = 0; i < batchsize; i += 2) {
+            assertEquals(1, tree.remove(keys.get(i)).size());
+            assertFalse(tree.containsKey(keys.get(i)));
+        }
+        for (int i = 1; i < batchsize; i += 2) {
+            assertTrue(tree.remove(keys.get(i), -1).isEmpty());
+            assertEquals(1, tree.remove(keys.get(i), i).size());
+        }
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.entryStream().count());
+    }
+
+    /**
+     * Test of removeValue method, of class KDTree.
+     */
+    @Test
+    public void testRemoveValue() {
+        KDTree<ID2Boundable, Integer> tree = newTree();
+        fill(tree, new Random(6));
+
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.containsValue(i));
+            assertEquals(1, tree.removeValue(i).size());
+            assertFalse(tree.containsValue(i));
+        }
+
+        assertEquals(0, tree.size());
+    }
+
+    /**
+     * Identical keys cannot be separated and must not split the node.
+     */
+    @Test
+    public void testDegenerateKeys() {
+        KDTree<ID2Boundable, Integer> tree = newTree();
+        for (int i = 0; i < batchsize; i++) {
+            tree.put(new D2Point(0.5, 0.5), i);
+        }
+
+        assertEquals(1, tree.getRoot().subtreeSize());
+        assertEquals(batchsize, tree.remove(new D2Point(0.5, 0.5)).size());
+        assertTrue(tree.isEmpty());
+    }
+
+    /**
+     * The median split adapts to the keys, the quad tree has to halve its
+     * bounds down to the cluster first.
+     */
+    @Test
+    public void testDepth() {
+        Random rand = new Random(7);
+        KDTree<ID2Boundable, Integer> kd = newTree();
+        QuadTree<ID2Boundable, Integer> quad = new QuadTree<>(new D2BoundingBox(0, 0, 1, 1), 5);
+        for (int i = 0; i < batchsize; i++) {
+            D2Point point = new D2Point(0.3 + rand.nextDouble() * 1e-4, 0.3 + rand.nextDouble() * 1e-4);
+            kd.put(point, i);
+            quad.put(point, i);
+        }
+
+        assertTrue(depth(kd.getRoot()) < depth(quad.getRoot()));
+    }
+
+    /**
+     * Test of clear method, of class KDTree.
+     */
+    @Test
+    public void testClear() {
+        KDTree<ID2Boundable, Integer> tree = newTree();
+        List<ID2Boundable> keys = fill(tree, new Random(8));
+        tree.clear();
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.entryStream().count());
+        assertFalse(tree.containsKey(keys.get(1)));
+        fill(tree, new Random(8));
+        assertTrue(tree.containsKey(keys.get(1)));
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.generalized.IDBoundingBox;
+import com.psygate.datastructures.spatial.generalized.IDBoundingBoxContainable;
+import com.psygate.datastructures.spatial.generalized.IDPoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class NDTreeTest {
+
+    private final int batchsize = 500;
+    private final int dimensions = 4;
+
+    public NDTreeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private NDTree<IDBoundingBoxContainable, Integer> newTree(int dimensions) {
+        return new NDTree<>(box(new double[dimensions], filled(dimensions, 1)), 5);
+    }
+
+    private static double[] filled(int dimensions, double value) {
+        final double[] values = new double[dimensions];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    private static IDBoundingBox box(double[] lower, double[] upper) {
+        final IDPoint[] lowers = new IDPoint[lower.length];
+        final IDPoint[] uppers = new IDPoint[upper.length];
+        Arrays.fill(lowers, IDPoint.build(lower));
+        Arrays.fill(uppers, IDPoint.build(upper));
+        return IDBoundingBox.build(lowers, uppers);
+    }
+
+    private static IDPoint point(Random rand, int dimensions) {
+        final double[] values = new double[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            values[i] = rand.nextDouble();
+        }
+
+        return IDPoint.build(values);
+    }
+
+    /**
+     * Uniform keys, mostly points with a few small boxes that may cross split
+     * planes.
+     */
+    private List<IDBoundingBoxContainable> fill(NDTree<IDBoundingBoxContainable, Integer> tree, Random rand) {
+        List<IDBoundingBoxContainable> keys = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            final IDPoint point = point(rand, tree.getDimensions());
+            IDBoundingBoxContainable key;
+            if (i % 10 == 0) {
+                final double[] upper = point.get().clone();
+                for (int j = 0; j < upper.length; j++) {
+                    upper[j] = Math.min(1, upper[j] + 0.05);
+                }
+                key = box(point.get(), upper);
+            } else {
+                key = point;
+            }
+            keys.add(key);
+            tree.put(key, i);
+        }
+
+        return keys;
+    }
+
+    private static double distSqr(IDBoundingBoxContainable key, IDPoint point) {
+        if (key instanceof IDPoint) {
+            return ((IDPoint) key).distSqr(point);
+        }
+
+        final IDBoundingBox box = (IDBoundingBox) key;
+        double sum = 0;
+        for (int i = 0; i < point.getDimensions(); i++) {
+            final double below = box.getLower(i).get(i) - point.get(i);
+            final double above = point.get(i) - box.getUpper(i).get(i);
+            final double dist = Math.max(0, Math.max(below, above));
+            sum += dist * dist;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Test of put method, of class NDTree.
+     */
+    @Test
+    public void testPut() {
+        NDTree<IDBoundingBoxContainable, Integer> tree = newTree(dimensions);
+        List<IDBoundingBoxContainable> keys = fill(tree, new Random(1));
+
+        assertEquals(dimensions, tree.getDimensions());
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.entryStream().count());
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.containsKey(keys.get(i)));
+            assertTrue(tree.contains(keys.get(i), i));
+            assertFalse(tree.contains(keys.get(i), -1));
+        }
+        assertTrue(tree.getRoot().subtreeSize() > 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutOutside() {
+        NDTree<IDBoundingBoxContainable, Integer> tree = newTree(dimensions);
+        tree.put(IDPoint.build(filled(dimensions, 2)), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDimensionMismatch() {
+        NDTree<IDBoundingBoxContainable, Integer> tree = newTree(dimensions);
+        tree.put(IDPoint.build(filled(dimensions + 1, 0.5)), 0);
+    }
+
+    /**
+     * Test of withinWindow method, of class NDTree.
+     */
+    @Test
+    public void testWindow() {
+        for (int d = 2; d <= 8; d += 3) {
+            Random rand = new Random(2);
+            NDTree<IDBoundingBoxContainable, Integer> tree = newTree(d);
+            List<IDBoundingBoxContainable> keys = fill(tree, rand);
+
+            for (int i = 0; i < 50; i++) {
+                final double[] lower = point(rand, d).get();
+                final double[] upper = new double[d];
+                for (int j = 0; j < d; j++) {
+                    upper[j] = lower[j] + rand.nextDouble() * 0.6;
+                }
+                IDBoundingBox window = box(lower, upper);
+                Set<Integer> expected = IntStream.range(0, batchsize)
+                        .filter((j) -> keys.get(j).isInside(window))
+                        .boxed()
+                        .collect(Collectors.toSet());
+                List<Integer> found = tree.withinWindow(window)
+                        .map(Map.Entry::getValue)
+                        .collect(Collectors.toList());
+                assertEquals(expected.size(), found.size());
+                assertEquals(expected, found.stream().collect(Collectors.toSet()));
+            }
+        }
+    }
+
+    /**
+     * Test of nearest method, of class NDTree.
+     */
+    @Test
+    public void testNearest() {
+        for (int d = 2; d <= 8; d += 3) {
+            Random rand = new Random(3);
+            NDTree<IDBoundingBoxContainable, Integer> tree = newTree(d);
+            List<IDBoundingBoxContainable> keys = fill(tree, rand);
+
+            for (int i = 0; i < 50; i++) {
+                IDPoint point = point(rand, d);
+                List<Double> expected = keys.stream()
+                        .map((k) -> distSqr(k, point))
+                        .sorted()
+                        .limit(10)
+                        .collect(Collectors.toList());
+                List<Double> found = tree.nearest(point, 10).stream()
+                        .map((en) -> distSqr(en.getKey(), point))
+                        .collect(Collectors.toList());
+                assertEquals(expected, found);
+            }
+        }
+    }
+
+    /**
+     * Test of withinDistance method, of class NDTree.
+     */
+    @Test
+    public void testWithinDistance() {
+        Random rand = new Random(4);
+        NDTree<IDBoundingBoxContainable, Integer> tree = newTree(dimensions);
+        List<IDBoundingBoxContainable> keys = fill(tree, rand);
+
+        for (int i = 0; i < 50; i++) {
+            IDPoint point = point(rand, dimensions);
+            Set<Integer> expected = IntStream.range(0, batchsize)
+                    .filter((j) -> distSqr(keys.get(j), point) <= 0.2 * 0.2)
+                    .boxed()
+                    .collect(Collectors.toSet());
+            Set<Integer> found = tree.withinDistance(point, 0.2)
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toSet());
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNearestDimensionMismatch() {
+        newTree(dimensions).nearest(IDPoint.build(filled(dimensions - 1, 0.5)), 1);
+    }
+
+    /**
+     * Test of remove method, of class NDTree.
+     */
+    @Test
+    public void testRemove() {
+        NDTree<IDBoundingBoxContainable, Integer> tree = newTree(dimensions);
+        List<IDBoundingBoxContainable> keys = fill(tree, new Random(5));
+
+        for (int i = 0; i < batchsize; i += 2) {
+            assertEquals(1, tree.remove(keys.get(i)).size());
+            assertFalse(tree.containsKey(keys.get(i)));
+        }
+        for (int i = 1; i < batchsize; i += 2) {
+            assertTrue(tree.remove(keys.get(i), -1).isEmpty());
+            assertEquals(1, tree.remove(keys.get(i), i).size());
+        }
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.entryStream().count());
+    }
+
+    /**
+     * Test of removeValue method, of class NDTree.
+     */
+    @Test
+    public void testRemoveValue() {
+        NDTree<IDBoundingBoxContainable, Integer> tree = newTree(dimensions);
+        fill(tree, new Random(6));
+
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.containsValue(i));
+            assertEquals(1, tree.removeValue(i).size());
+            assertFalse(tree.containsValue(i));
+        }
+
+        assertEquals(0, tree.size());
+    }
+
+    /**
+     * Identical keys cannot be separated, splitting has to stop once the
+     * bounds cannot be halved any further.
+     */
+    @Test
+    public void testDegenerateKeys() {
+        NDTree<IDBoundingBoxContainable, Integer> tree = newTree(dimensions);
+        final IDPoint point = IDPoint.build(filled(dimensions, 0.5));
+        for (int i = 0; i < batchsize; i++) {
+            tree.put(point, i);
+        }
+
+        assertEquals(batchsize, tree.entryStream().count());
+        assertEquals(batchsize, tree.remove(point).size());
+        assertTrue(tree.isEmpty());
+    }
+
+    /**
+     * Every split halves a single axis, the axis advancing with the depth.
+     */
+    @Test
+    public void testAxisCycle() {
+        NDTree<IDBoundingBoxContainable, Integer> tree = newTree(dimensions);
+        fill(tree, new Random(7));
+
+        NDNode<IDBoundingBoxContainable, Integer> node = tree.getRoot();
+        for (int depth = 0; node != null; depth++) {
+            assertEquals(depth % dimensions, node.getAxis());
+            NDNode<IDBoundingBoxContainable, Integer> next = null;
+            for (int i = 0; i < node.getChildSlots() && next == null; i++) {
+                next = node.getChild(i);
+            }
+            node = next;
+        }
+        assertEquals(2, tree.getRoot().getChildSlots());
+    }
+
+    /**
+     * Test of clear method, of class NDTree.
+     */
+    @Test
+    public void testClear() {
+        NDTree<IDBoundingBoxContainable, Integer> tree = newTree(dimensions);
+        List<IDBoundingBoxContainable> keys = fill(tree, new Random(8));
+        tree.clear();
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.entryStream().count());
+        assertFalse(tree.containsKey(keys.get(1)));
+        fill(tree, new Random(8));
+        assertEquals(batchsize, tree.size());
+    }
+}
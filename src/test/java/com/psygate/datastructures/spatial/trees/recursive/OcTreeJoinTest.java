@@ -0,0 +1,147 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D3BoundingBox;
+import com.psygate.datastructures.spatial.D3Point;
+import com.psygate.datastructures.spatial.ID3BoundingBox;
+import com.psygate.datastructures.spatial.ID3Point;
+import com.psygate.datastructures.spatial.trees.linear.LinearOcTree;
+import com.psygate.datastructures.util.Pair;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class OcTreeJoinTest {
+
+    private static final ID3BoundingBox BOUNDS = new D3BoundingBox(0, 0, 0, 1, 1, 1);
+    private final int batchsize = 500;
+    private OcTree<ID3Point, Integer> units;
+    private OcTree<ID3BoundingBox, Integer> zones;
+
+    public OcTreeJoinTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        final Random rand = new Random(1);
+        units = new OcTree<>(BOUNDS, 8);
+        for (int i = 0; i < batchsize * 2; i++) {
+            units.put(new D3Point(rand.nextDouble(), rand.nextDouble(), rand.nextDouble()), i);
+        }
+        zones = new OcTree<>(BOUNDS, 8);
+        for (int i = 0; i < batchsize; i++) {
+            final double c0 = rand.nextDouble() * 0.9;
+            final double c1 = rand.nextDouble() * 0.9;
+            final double c2 = rand.nextDouble() * 0.9;
+            zones.put(new D3BoundingBox(c0, c1, c2, c0 + rand.nextDouble() * 0.1, c1 + rand.nextDouble() * 0.1, c2 + rand.nextDouble() * 0.1), i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static <A, B> List<String> names(Stream<Pair<Map.Entry<A, Integer>, Map.Entry<B, Integer>>> pairs) {
+        return pairs.map((p) -> p.getKey().getValue() + ":" + p.getValue().getValue()).collect(Collectors.toList());
+    }
+
+    private Set<String> bruteForce(double distance) {
+        final Set<String> expected = new HashSet<>();
+        units.entryStream().forEach((a) -> zones.entryStream()
+                .filter((b) -> b.getKey().distSqr(a.getKey()) <= distance * distance)
+                .forEach((b) -> expected.add(a.getValue() + ":" + b.getValue())));
+        return expected;
+    }
+
+    /**
+     * Every matching pair has to be produced exactly once.
+     */
+    @Test
+    public void testJoin() {
+        for (double distance : new double[]{0, 0.02, 0.1}) {
+            final Set<String> expected = bruteForce(distance);
+            final List<String> found = names(OcTreeJoin.join(units, zones, distance, false));
+            assertEquals(expected.size(), found.size());
+            assertEquals(expected, new HashSet<>(found));
+        }
+    }
+
+    @Test
+    public void testParallelJoin() {
+        final Set<String> expected = bruteForce(0.05);
+        final List<String> found = names(OcTreeJoin.join(units, zones, 0.05, true));
+        assertEquals(expected.size(), found.size());
+        assertEquals(expected, new HashSet<>(found));
+    }
+
+    /**
+     * Trees that are not quad trees are joined by querying the right tree
+     * for every entry of the left tree.
+     */
+    @Test
+    public void testJoinOtherTree() {
+        final LinearOcTree<Integer> linear = new LinearOcTree<>(units);
+        final Set<String> expected = bruteForce(0.05);
+        final List<String> found = names(OcTreeJoin.join(linear, zones, 0.05, false));
+        assertEquals(expected.size(), found.size());
+        assertEquals(expected, new HashSet<>(found));
+    }
+
+    /**
+     * Boxes stored in inner nodes have to be matched against each other.
+     */
+    @Test
+    public void testSelfJoin() {
+        final List<String> found = names(OcTreeJoin.join(zones, zones, 0, false));
+        final Set<String> expected = new HashSet<>();
+        zones.entryStream().forEach((a) -> zones.entryStream()
+                .filter((b) -> a.getKey().intersects(b.getKey()))
+                .forEach((b) -> expected.add(a.getValue() + ":" + b.getValue())));
+        assertEquals(expected.size(), found.size());
+        assertEquals(expected, new HashSet<>(found));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeDistance() {
+        OcTreeJoin.join(units, zones, -1, false);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D3BoundingBox;
+import com.psygate.datastructures.spatial.D3Point;
+import com.psygate.datastructures.spatial.ID3Boundable;
+import com.psygate.datastructures.spatial.ID3BoundingBox;
+import com.psygate.datastructures.spatial.ID3Point;
+import com.psygate.datastructures.util.Codec;
+import com.psygate.datastructures.util.Pair;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class OcTreeSerializerTest {
+
+    private final int batchsize = 500;
+
+    public OcTreeSerializerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static <K extends ID3Boundable, V> byte[] write(ImmutableOcTree<K, V> tree,
+            Codec<? super K> keys, Codec<? super V> values) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            OcTreeSerializer.write(tree, out, keys, values);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static <K extends ID3Boundable, V> ImmutableOcTree<K, V> read(byte[] data,
+            Codec<? extends K> keys, Codec<? extends V> values) throws IOException {
+        return OcTreeSerializer.read(new DataInputStream(new ByteArrayInputStream(data)), keys, values);
+    }
+
+    /**
+     * Both nodes have to hold the same entries in the same order and have the
+     * same children.
+     */
+    private static void assertSameShape(OcNode<?, ?> expected, OcNode<?, ?> actual) {
+        assertEquals(expected.getBounds(), actual.getBounds());
+        assertEquals(expected.isSplit(), actual.isSplit());
+        assertEquals(expected.getValues(), actual.getValues());
+        assertEquals(expected.subtreeCount(), actual.subtreeCount());
+        assertEquals(expected.getChildSlots(), actual.getChildSlots());
+        for (int i = 0; i < expected.getChildSlots(); i++) {
+            if (expected.getChild(i) == null) {
+                assertNull(actual.getChild(i));
+            } else {
+                assertSameShape(expected.getChild(i), actual.getChild(i));
+            }
+        }
+    }
+
+    @Test
+    public void testPointRoundTrip() throws IOException {
+        final Random rand = new Random(1);
+        final List<Pair<D3Point, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < batchsize * 4; i++) {
+            entries.add(new Pair<>(new D3Point(rand.nextDouble(), rand.nextDouble(), rand.nextDouble()), i));
+        }
+        for (int i = 0; i < batchsize; i++) {
+            entries.add(new Pair<>(new D3Point(0.25, 0.25, 0.25), -i));
+        }
+
+        final ImmutableOcTree<D3Point, Integer> tree = new ImmutableOcTree<>(entries, new D3BoundingBox(0, 0, 0, 1, 1, 1), 8);
+        final ImmutableOcTree<ID3Point, Integer> copy = read(write(tree, OcTreeSerializer.POINT, Codec.INTEGER),
+                OcTreeSerializer.POINT, Codec.INTEGER);
+
+        assertEquals(tree.size(), copy.size());
+        assertEquals(tree.getMaxNodeSize(), copy.getMaxNodeSize());
+        assertEquals(tree.getBounds(), copy.getBounds());
+        assertSameShape(tree.getRoot(), copy.getRoot());
+        for (Pair<D3Point, Integer> entry : entries) {
+            assertTrue(copy.contains(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Boxes straddling a split line stay in inner nodes and have to be
+     * restored there.
+     */
+    @Test
+    public void testBoxRoundTrip() throws IOException {
+        final Random rand = new Random(2);
+        final List<Pair<D3BoundingBox, String>> entries = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            final double c0 = rand.nextDouble() * 0.9;
+            final double c1 = rand.nextDouble() * 0.9;
+            final double c2 = rand.nextDouble() * 0.9;
+            entries.add(new Pair<>(new D3BoundingBox(c0, c1, c2, c0 + rand.nextDouble() * 0.1, c1 + rand.nextDouble() * 0.1, c2 + rand.nextDouble() * 0.1), "v" + i));
+        }
+
+        final ImmutableOcTree<D3BoundingBox, String> tree = new ImmutableOcTree<>(entries, new D3BoundingBox(0, 0, 0, 1, 1, 1), 4);
+        final ImmutableOcTree<ID3BoundingBox, String> copy = read(write(tree, OcTreeSerializer.BOUNDING_BOX, Codec.STRING),
+                OcTreeSerializer.BOUNDING_BOX, Codec.STRING);
+
+        assertSameShape(tree.getRoot(), copy.getRoot());
+    }
+
+    /**
+     * Trees keyed by the interface types, with interface typed point values,
+     * have to be written with the provided codecs.
+     */
+    @Test
+    public void testInterfaceKeyRoundTrip() throws IOException {
+        final Random rand = new Random(5);
+        final OcTree<ID3BoundingBox, D3Point> tree = new OcTree<>(new D3BoundingBox(0, 0, 0, 1, 1, 1), 4);
+        for (int i = 0; i < batchsize; i++) {
+            final double c0 = rand.nextDouble() * 0.9;
+            final double c1 = rand.nextDouble() * 0.9;
+            final double c2 = rand.nextDouble() * 0.9;
+            tree.put(new D3BoundingBox(c0, c1, c2, c0 + rand.nextDouble() * 0.1, c1 + rand.nextDouble() * 0.1, c2 + rand.nextDouble() * 0.1),
+                    new D3Point(c0, c1, c2));
+        }
+
+        final ImmutableOcTree<ID3BoundingBox, ID3Point> copy = read(write(tree, OcTreeSerializer.BOUNDING_BOX, OcTreeSerializer.POINT),
+                OcTreeSerializer.BOUNDING_BOX, OcTreeSerializer.POINT);
+
+        assertEquals(tree.size(), copy.size());
+        assertSameShape(tree.getRoot(), copy.getRoot());
+        assertTrue(tree.entryStream().allMatch((en) -> copy.contains(en.getKey(), en.getValue())));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        final ImmutableOcTree<D3Point, Integer> tree = new ImmutableOcTree<>(new ArrayList<Pair<D3Point, Integer>>(), new D3BoundingBox(0, 0, 0, 1, 1, 1), 8);
+        final ImmutableOcTree<ID3Point, Integer> copy = read(write(tree, OcTreeSerializer.POINT, Codec.INTEGER),
+                OcTreeSerializer.POINT, Codec.INTEGER);
+
+        assertEquals(0, copy.size());
+        assertSameShape(tree.getRoot(), copy.getRoot());
+    }
+
+    @Test
+    public void testCorrupt() throws IOException {
+        final List<Pair<D3Point, Integer>> entries = new ArrayList<>();
+        final Random rand = new Random(3);
+        for (int i = 0; i < batchsize; i++) {
+            entries.add(new Pair<>(new D3Point(rand.nextDouble(), rand.nextDouble(), rand.nextDouble()), i));
+        }
+        final byte[] data = write(new ImmutableOcTree<>(entries, new D3BoundingBox(0, 0, 0, 1, 1, 1), 8), OcTreeSerializer.POINT, Codec.INTEGER);
+
+        final byte[] magic = data.clone();
+        magic[0]++;
+        assertFails(magic);
+
+        final byte[] version = data.clone();
+        version[5]++;
+        assertFails(version);
+
+        try {
+            read(Arrays.copyOf(data, data.length - 1), OcTreeSerializer.POINT, Codec.INTEGER);
+            fail("Truncated input was read.");
+        } catch (EOFException e) {
+        }
+
+        // Entry count in the header.
+        final int count = 4 + 2 + 6 * 8 + 4;
+        final byte[] size = data.clone();
+        size[count + 3]++;
+        assertFails(size);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoose() throws IOException {
+        final OcTree<D3Point, Integer> tree = new OcTree<>(new D3BoundingBox(0, 0, 0, 1, 1, 1), 8, 2, 2);
+        final Random rand = new Random(4);
+        for (int i = 0; i < batchsize; i++) {
+            tree.put(new Pair<>(new D3Point(rand.nextDouble(), rand.nextDouble(), rand.nextDouble()), i));
+        }
+
+        write(tree, OcTreeSerializer.POINT, Codec.INTEGER);
+    }
+
+    private static void assertFails(byte[] data) {
+        try {
+            read(data, OcTreeSerializer.POINT, Codec.INTEGER);
+            fail("Corrupt input was read.");
+        } catch (IOException e) {
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import com.psygate.datastructures.spatial.ID2Point;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class PackedPointQuadTreeTest {
+
+    private final int batchsize = 500;
+
+    public PackedPointQuadTreeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private PackedPointQuadTree<Integer> newTree() {
+        return new PackedPointQuadTree<>(new D2BoundingBox(0, 0, 1, 1), 5);
+    }
+
+    private List<D2Point> fill(PackedPointQuadTree<Integer> tree, Random rand) {
+        List<D2Point> points = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            D2Point point = new D2Point(rand.nextDouble(), rand.nextDouble());
+            points.add(point);
+            tree.put(point, i);
+        }
+
+        return points;
+    }
+
+    /**
+     * Test of put method, of class PackedPointQuadTree.
+     */
+    @Test
+    public void testPut() {
+        PackedPointQuadTree<Integer> tree = newTree();
+        List<D2Point> points = fill(tree, new Random(1));
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.entryStream().count());
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.containsKey(points.get(i)));
+            assertTrue(tree.contains(points.get(i), i));
+            assertFalse(tree.contains(points.get(i), -1));
+        }
+        assertFalse(tree.containsKey(new D2Point(2, 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutOutside() {
+        newTree().put(new D2Point(1.5, 0.5), 0);
+    }
+
+    /**
+     * Test of forEachInWindow method, of class PackedPointQuadTree.
+     */
+    @Test
+    public void testForEachInWindow() {
+        Random rand = new Random(2);
+        PackedPointQuadTree<Integer> tree = newTree();
+        List<D2Point> points = fill(tree, rand);
+
+        for (int i = 0; i < 50; i++) {
+            double lx = rand.nextDouble() * 0.8;
+            double ly = rand.nextDouble() * 0.8;
+            ID2BoundingBox window = new D2BoundingBox(lx, ly, lx + 0.2, ly + 0.2);
+            Set<Integer> expected = new HashSet<>();
+            for (int j = 0; j < points.size(); j++) {
+                if (window.contains(points.get(j))) {
+                    expected.add(j);
+                }
+            }
+
+            Set<Integer> found = new HashSet<>();
+            tree.forEachInWindow(lx, ly, lx + 0.2, ly + 0.2, (x, y, v) -> {
+                assertTrue(window.contains(ID2Point.build(x, y)));
+                assertTrue(found.add(v));
+            });
+            assertEquals(expected, found);
+            assertEquals(expected, new HashSet<>(tree.valuesInWindow(window)));
+        }
+    }
+
+    /**
+     * Test of remove method, of class PackedPointQuadTree.
+     */
+    @Test
+    public void testRemove() {
+        PackedPointQuadTree<Integer> tree = newTree();
+        List<D2Point> points = fill(tree, new Random(3));
+
+        for (int i = 0; i < batchsize; i += 2) {
+            Collection<Integer> removed = tree.remove(points.get(i));
+            assertEquals(1, removed.size());
+            assertEquals(i, (int) removed.iterator().next());
+        }
+        for (int i = 1; i < batchsize; i += 2) {
+            assertTrue(tree.remove(points.get(i), -1).isEmpty());
+            assertEquals(1, tree.remove(points.get(i), i).size());
+        }
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.entryStream().count());
+    }
+
+    /**
+     * Test of removeValue method, of class PackedPointQuadTree.
+     */
+    @Test
+    public void testRemoveValue() {
+        PackedPointQuadTree<Integer> tree = newTree();
+        List<D2Point> points = fill(tree, new Random(4));
+
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.containsValue(i));
+            assertEquals(1, tree.removeValue(i).size());
+            assertFalse(tree.containsValue(i));
+            assertFalse(tree.containsKey(points.get(i)));
+        }
+
+        assertEquals(0, tree.size());
+    }
+
+    /**
+     * Identical points must not cause endless splitting.
+     */
+    @Test
+    public void testDegeneratePoints() {
+        PackedPointQuadTree<Integer> tree = newTree();
+        for (int i = 0; i < batchsize; i++) {
+            tree.put(new D2Point(0.25, 0.25), i);
+        }
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.remove(new D2Point(0.25, 0.25)).size());
+        assertTrue(tree.isEmpty());
+    }
+
+    /**
+     * Test of entryStream method, of class PackedPointQuadTree.
+     */
+    @Test
+    public void testEntryStream() {
+        PackedPointQuadTree<Integer> tree = newTree();
+        List<D2Point> points = fill(tree, new Random(5));
+
+        Map<Integer, ID2Point> entries = tree.entryStream()
+                .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
+        for (int i = 0; i < batchsize; i++) {
+            assertEquals(points.get(i), entries.get(i));
+        }
+    }
+
+    /**
+     * Test of clear method, of class PackedPointQuadTree.
+     */
+    @Test
+    public void testClear() {
+        PackedPointQuadTree<Integer> tree = newTree();
+        List<D2Point> points = fill(tree, new Random(6));
+        tree.clear();
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.entryStream().count());
+        assertFalse(tree.containsKey(points.get(0)));
+        fill(tree, new Random(6));
+        assertTrue(tree.containsKey(points.get(0)));
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class PersistentQuadTreeTest {
+
+    private final int batchsize = 500;
+
+    public PersistentQuadTreeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private PersistentQuadTree<D2Point, Integer> newTree() {
+        return new PersistentQuadTree<>(new D2BoundingBox(0, 0, 1, 1), 5);
+    }
+
+    private List<D2Point> points(Random rand, int count) {
+        List<D2Point> points = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            points.add(new D2Point(rand.nextDouble(), rand.nextDouble()));
+        }
+
+        return points;
+    }
+
+    private PersistentQuadTree<D2Point, Integer> fill(List<D2Point> points) {
+        PersistentQuadTree<D2Point, Integer> tree = newTree();
+        for (int i = 0; i < points.size(); i++) {
+            tree = tree.put(points.get(i), i);
+        }
+
+        return tree;
+    }
+
+    private Set<Integer> values(PersistentQuadTree<D2Point, Integer> tree) {
+        return tree.valueStream().collect(Collectors.toSet());
+    }
+
+    /**
+     * Test of put method, of class PersistentQuadTree.
+     */
+    @Test
+    public void testPut() {
+        List<D2Point> points = points(new Random(1), batchsize);
+        PersistentQuadTree<D2Point, Integer> tree = fill(points);
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.entryStream().count());
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.containsKey(points.get(i)));
+            assertTrue(tree.contains(points.get(i), i));
+            assertFalse(tree.contains(points.get(i), -1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutOutside() {
+        newTree().put(new D2Point(1.5, 0.5), 0);
+    }
+
+    /**
+     * Older versions of the tree must not see later modifications.
+     */
+    @Test
+    public void testSnapshots() {
+        List<D2Point> points = points(new Random(2), batchsize);
+        List<PersistentQuadTree<D2Point, Integer>> versions = new ArrayList<>();
+        PersistentQuadTree<D2Point, Integer> tree = newTree();
+        for (int i = 0; i < batchsize; i++) {
+            versions.add(tree);
+            tree = tree.put(points.get(i), i);
+        }
+        for (int i = 0; i < batchsize; i += 2) {
+            tree = tree.remove(points.get(i));
+        }
+
+        for (int i = 0; i < batchsize; i++) {
+            PersistentQuadTree<D2Point, Integer> version = versions.get(i);
+            assertEquals(i, version.size());
+            assertEquals(i, version.entryStream().count());
+            if (i > 0) {
+                assertTrue(version.contains(points.get(i - 1), i - 1));
+            }
+            assertFalse(version.containsKey(points.get(i)));
+        }
+        assertEquals(batchsize / 2, tree.size());
+    }
+
+    /**
+     * Modifications copy only the path to the modified node.
+     */
+    @Test
+    public void testStructuralSharing() {
+        List<D2Point> points = points(new Random(3), batchsize);
+        PersistentQuadTree<D2Point, Integer> tree = fill(points);
+        PersistentQuadTree<D2Point, Integer> next = tree.put(new D2Point(0.1, 0.1), -1);
+
+        assertFalse(tree.getRoot().isLeaf());
+        assertNotSame(tree.getRoot(), next.getRoot());
+        assertNotSame(tree.getRoot().getChild(0), next.getRoot().getChild(0));
+        for (int i = 1; i < 4; i++) {
+            assertSame(tree.getRoot().getChild(i), next.getRoot().getChild(i));
+        }
+
+        assertSame(tree, tree.remove(new D2Point(0.5, 0.5)));
+        assertSame(tree, tree.removeValue(-1));
+    }
+
+    /**
+     * Keys crossing the split lines stay in the inner nodes and must still be
+     * found and removed.
+     */
+    @Test
+    public void testBoundingBoxKeys() {
+        Random rand = new Random(4);
+        PersistentQuadTree<ID2BoundingBox, Integer> tree = new PersistentQuadTree<>(new D2BoundingBox(0, 0, 1, 1), 5);
+        List<ID2BoundingBox> keys = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            double x = rand.nextDouble() * 0.9;
+            double y = rand.nextDouble() * 0.9;
+            ID2BoundingBox key = new D2BoundingBox(x, y, x + rand.nextDouble() * 0.1, y + rand.nextDouble() * 0.1);
+            keys.add(key);
+            tree = tree.put(key, i);
+        }
+
+        assertEquals(batchsize, tree.entryStream().count());
+        ID2BoundingBox window = new D2BoundingBox(0.2, 0.2, 0.6, 0.6);
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.contains(keys.get(i), i));
+            if (window.intersects(keys.get(i))) {
+                expected.add(i);
+            }
+        }
+        assertEquals(expected, tree.selectiveEntryStream(window::intersects)
+                .filter((e) -> window.intersects(e.getKey()))
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toSet()));
+
+        for (int i = 0; i < batchsize; i++) {
+            tree = tree.remove(keys.get(i), i);
+            assertEquals(batchsize - i - 1, tree.size());
+        }
+        assertEquals(0, tree.entryStream().count());
+    }
+
+    /**
+     * Equal keys must not split the tree endlessly.
+     */
+    @Test
+    public void testDuplicateKeys() {
+        PersistentQuadTree<D2Point, Integer> tree = newTree();
+        D2Point point = new D2Point(0.25, 0.75);
+        for (int i = 0; i < batchsize; i++) {
+            tree = tree.put(point, i);
+        }
+
+        assertEquals(batchsize, tree.size());
+        assertTrue(tree.remove(point).isEmpty());
+    }
+
+    /**
+     * Test of remove method, of class PersistentQuadTree.
+     */
+    @Test
+    public void testRemove() {
+        List<D2Point> points = points(new Random(5), batchsize);
+        PersistentQuadTree<D2Point, Integer> tree = fill(points);
+
+        for (int i = 0; i < batchsize; i += 2) {
+            assertSame(tree, tree.remove(points.get(i), -1));
+            tree = tree.remove(points.get(i), i);
+        }
+
+        assertEquals(batchsize / 2, tree.size());
+        assertEquals(batchsize / 2, tree.entryStream().count());
+        for (int i = 0; i < batchsize; i++) {
+            assertEquals(i % 2 != 0, tree.containsKey(points.get(i)));
+        }
+
+        for (int i = 1; i < batchsize; i += 2) {
+            tree = tree.remove(points.get(i));
+        }
+        assertTrue(tree.isEmpty());
+        assertTrue(tree.getRoot().isLeaf());
+    }
+
+    /**
+     * Test of removeValue method, of class PersistentQuadTree.
+     */
+    @Test
+    public void testRemoveValue() {
+        List<D2Point> points = points(new Random(6), batchsize);
+        PersistentQuadTree<D2Point, Integer> tree = newTree();
+        for (int i = 0; i < batchsize; i++) {
+            tree = tree.put(points.get(i), i % 10);
+        }
+
+        PersistentQuadTree<D2Point, Integer> removed = tree.removeValue(3);
+        assertFalse(removed.containsValue(3));
+        assertTrue(tree.containsValue(3));
+        assertEquals(batchsize - batchsize / 10, removed.size());
+        assertEquals(batchsize, tree.size());
+    }
+
+    /**
+     * Random inserts and removes must match a mutable quad tree.
+     */
+    @Test
+    public void testAgainstQuadTree() {
+        Random rand = new Random(7);
+        List<D2Point> points = points(rand, batchsize);
+        QuadTree<D2Point, Integer> expected = new QuadTree<>(new D2BoundingBox(0, 0, 1, 1), 5);
+        PersistentQuadTree<D2Point, Integer> tree = newTree();
+
+        for (int i = 0; i < batchsize * 4; i++) {
+            int index = rand.nextInt(points.size());
+            if (rand.nextBoolean() && !expected.containsKey(points.get(index))) {
+                expected.put(points.get(index), index);
+                tree = tree.put(points.get(index), index);
+            } else {
+                expected.remove(points.get(index));
+                tree = tree.remove(points.get(index));
+            }
+            assertEquals(expected.size(), tree.size());
+        }
+
+        assertEquals(expected.valueStream().sorted().collect(Collectors.toList()),
+                tree.valueStream().sorted().collect(Collectors.toList()));
+        assertEquals(values(new PersistentQuadTree<>(expected, 5)), values(tree));
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * General datastructures.
+ * Copyright (C) 2015  psygate (https://github.com/psygate)
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/gpl-3.0.html>.
+ * 
+ */
+package com.psygate.datastructures.spatial.trees.recursive;
+
+import com.psygate.datastructures.spatial.D2BoundingBox;
+import com.psygate.datastructures.spatial.D2Point;
+import com.psygate.datastructures.spatial.ID2Boundable;
+import com.psygate.datastructures.spatial.ID2BoundingBox;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author psygate (https://github.com/psygate)
+ */
+public class RTreeTest {
+
+    private final int batchsize = 500;
+
+    public RTreeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private RTree<ID2Boundable, Integer> newTree() {
+        return new RTree<>(5);
+    }
+
+    /**
+     * Overlapping boxes of very different sizes, a lot of them crossing the
+     * center, and a few points.
+     */
+    private List<ID2Boundable> fill(RTree<ID2Boundable, Integer> tree, Random rand) {
+        List<ID2Boundable> keys = new ArrayList<>();
+        for (int i = 0; i < batchsize; i++) {
+            double x = rand.nextDouble();
+            double y = rand.nextDouble();
+            ID2Boundable key;
+            if (i % 7 == 0) {
+                key = new D2Point(x, y);
+            } else {
+                double size = rand.nextDouble() * (i % 3 == 0 ? 0.5 : 0.01);
+                key = new D2BoundingBox(x - size, y - size, x + size, y + size);
+            }
+            keys.add(key);
+            tree.put(key, i);
+        }
+
+        return keys;
+    }
+
+    private static boolean overlaps(ID2BoundingBox a, ID2BoundingBox b) {
+        return a.getLower().getX() <= b.getUpper().getX() && b.getLower().getX() <= a.getUpper().getX()
+                && a.getLower().getY() <= b.getUpper().getY() && b.getLower().getY() <= a.getUpper().getY();
+    }
+
+    /**
+     * Checks node sizes, bounding boxes and the leaf depth of the subtree.
+     *
+     * @return Height of the subtree.
+     */
+    private int check(RTree<?, ?> tree, RNode<?, ?> node, boolean root) {
+        if (!root) {
+            assertTrue(node.size() >= tree.getMinNodeSize());
+        }
+        assertTrue(node.size() <= tree.getMaxNodeSize());
+
+        int height = -1;
+        for (int i = 0; i < node.size(); i++) {
+            assertTrue(node.getBounds().contains(node.getBox(i)));
+            if (node.isLeaf()) {
+                assertTrue(node.getBox(i).contains(node.getValues().get(i).getKey()));
+            } else {
+                RNode<?, ?> child = node.getChildren().get(i);
+                assertEquals(child.getBounds(), node.getBox(i));
+                int childHeight = check(tree, child, false);
+                assertTrue(height < 0 || height == childHeight);
+                height = childHeight;
+            }
+        }
+
+        return node.isLeaf() ? 1 : height + 1;
+    }
+
+    /**
+     * Test of put method, of class RTree.
+     */
+    @Test
+    public void testPut() {
+        RTree<ID2Boundable, Integer> tree = newTree();
+        List<ID2Boundable> keys = fill(tree, new Random(1));
+
+        assertEquals(batchsize, tree.size());
+        assertEquals(batchsize, tree.entryStream().count());
+        assertEquals(tree.height(), check(tree, tree.getRoot(), true));
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.containsKey(keys.get(i)));
+            assertTrue(tree.contains(keys.get(i), i));
+            assertFalse(tree.contains(keys.get(i), -1));
+        }
+        assertFalse(tree.containsKey(new D2Point(2, 2)));
+    }
+
+    /**
+     * Test of selectiveEntryStream method, of class RTree.
+     */
+    @Test
+    public void testWindow() {
+        Random rand = new Random(2);
+        RTree<ID2Boundable, Integer> tree = newTree();
+        List<ID2Boundable> keys = fill(tree, rand);
+
+        for (int i = 0; i < 50; i++) {
+            double lx = rand.nextDouble() * 0.9;
+            double ly = rand.nextDouble() * 0.9;
+            ID2BoundingBox window = new D2BoundingBox(lx, ly, lx + 0.1, ly + 0.1);
+            Set<Integer> expected = IntStream.range(0, batchsize)
+                    .filter((j) -> overlaps(RNode.boundsOf(keys.get(j)), window))
+                    .boxed()
+                    .collect(Collectors.toSet());
+
+            Set<Integer> found = tree.selectiveEntryStream((b) -> overlaps(b, window))
+                    .filter((en) -> overlaps(RNode.boundsOf(en.getKey()), window))
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toSet());
+            assertEquals(expected, found);
+        }
+    }
+
+    /**
+     * Test of remove method, of class RTree.
+     */
+    @Test
+    public void testRemove() {
+        RTree<ID2Boundable, Integer> tree = newTree();
+        List<ID2Boundable> keys = fill(tree, new Random(3));
+
+        for (int i = 0; i < batchsize; i += 2) {
+            assertEquals(1, tree.remove(keys.get(i)).size());
+            assertFalse(tree.containsKey(keys.get(i)));
+        }
+        assertEquals(batchsize / 2, tree.size());
+        assertEquals(tree.height(), check(tree, tree.getRoot(), true));
+
+        for (int i = 1; i < batchsize; i += 2) {
+            assertTrue(tree.remove(keys.get(i), -1).isEmpty());
+            assertEquals(1, tree.remove(keys.get(i), i).size());
+            assertTrue(tree.containsKey(keys.get(batchsize - 1)) || i == batchsize - 1);
+        }
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.entryStream().count());
+        assertEquals(1, tree.height());
+    }
+
+    /**
+     * Test of removeValue method, of class RTree.
+     */
+    @Test
+    public void testRemoveValue() {
+        RTree<ID2Boundable, Integer> tree = newTree();
+        fill(tree, new Random(4));
+
+        for (int i = 0; i < batchsize; i++) {
+            assertTrue(tree.containsValue(i));
+            assertEquals(1, tree.removeValue(i).size());
+            assertFalse(tree.containsValue(i));
+        }
+
+        assertEquals(0, tree.size());
+        assertEquals(1, tree.height());
+    }
+
+    /**
+     * Identical keys still produce a balanced tree.
+     */
+    @Test
+    public void testDegenerateKeys() {
+        RTree<ID2Boundable, Integer> tree = newTree();
+        for (int i = 0; i < batchsize; i++) {
+            tree.put(new D2Point(0.5, 0.5), i);
+        }
+
+        assertEquals(tree.height(), check(tree, tree.getRoot(), true));
+        assertEquals(batchsize, tree.remove(new D2Point(0.5, 0.5)).size());
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidNodeSize() {
+        new RTree<ID2Boundable, Integer>(4, 3);
+    }
+
+    /**
+     * Test of clear method, of class RTree.
+     */
+    @Test
+    public void testClear() {
+        RTree<ID2Boundable, Integer> tree = newTree();
+        List<ID2Boundable> keys = fill(tree, new Random(5));
+        tree.clear();
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.entryStream().count());
+        assertFalse(tree.containsKey(keys.get(1)));
+        fill(tree, new Random(5));
+        assertTrue(tree.containsKey(keys.get(1)));
+    }
+}